@@ -17,7 +17,13 @@
  */
 package ca.uqac.lif.crypto.apache;
 
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.codec.digest.Crypt;
+import org.apache.commons.codec.digest.Sha2Crypt;
 
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.hash.HashFunction;
@@ -62,6 +68,31 @@ public class GnuCrypt implements HashFunction<String,String>
 		}
 	}
 	
+	/**
+	 * Calculates the digests of several strings. As with
+	 * {@link #getDigest(String)}, each digest uses its own random salt and
+	 * SHA-512; however, instead of seeding a new {@link SecureRandom} for
+	 * each salt, all the salts of the list are drawn from the same one.
+	 */
+	@Override
+	public List<String> getDigests(List<? extends String> strings) throws CryptoException
+	{
+		SecureRandom random = new SecureRandom();
+		List<String> digests = new ArrayList<String>(strings.size());
+		try
+		{
+			for (String s : strings)
+			{
+				digests.add(Sha2Crypt.sha512Crypt(s.getBytes(StandardCharsets.UTF_8), null, random));
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new CryptoException(e);
+		}
+		return digests;
+	}
+	
 	/**
 	 * Calculates a digest with the <tt>crypt(3)</tt> function by specifying a
 	 * salt. This function behaves exactly like Commons Codec's
@@ -0,0 +1,107 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+
+/**
+ * Symmetric cipher on objects serialized with a {@link BinaryPrinter}. Since
+ * the printer already produces arrays of bytes, they are passed to the
+ * underlying cipher as is. When used as a streaming cipher, objects are
+ * printed directly into the encrypting stream and read directly from the
+ * decrypting stream.
+ */
+public class AzraelBinaryCipher extends AzraelStreamCipher<byte[]>
+{
+	/**
+	 * Creates a new binary cipher.
+	 * @param printer The printer used to serialize objects
+	 * @param reader The reader used to deserialize objects
+	 * @param cipher The underlying cipher
+	 */
+	public AzraelBinaryCipher(/*@ non_null @*/ BinaryPrinter printer, /*@ non_null @*/ BinaryReader reader, /*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		super(printer, reader, cipher);
+	}
+	
+	/**
+	 * Creates a new binary cipher with a default printer and reader.
+	 * @param cipher The underlying cipher
+	 */
+	public AzraelBinaryCipher(/*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		this(new BinaryPrinter(), new BinaryReader(), cipher);
+	}
+	
+	@Override
+	protected void printTo(Object m, OutputStream os) throws CryptoException, IOException
+	{
+		try
+		{
+			((BinaryPrinter) m_printer).print(m, os);
+		}
+		catch (PrintException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	protected Object readObjectFrom(InputStream is) throws CryptoException, IOException
+	{
+		try
+		{
+			return ((BinaryReader) m_reader).read(is);
+		}
+		catch (ReadException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	protected byte[] convertFrom(byte[] t)
+	{
+		return t;
+	}
+	
+	@Override
+	protected byte[] convertTo(byte[] m)
+	{
+		return m;
+	}
+	
+	@Override
+	protected void writeTo(byte[] t, OutputStream os) throws IOException
+	{
+		os.write(t);
+	}
+	
+	@Override
+	protected byte[] readFrom(InputStream is) throws IOException
+	{
+		return readAll(is);
+	}
+}
@@ -0,0 +1,545 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.Printable;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.BufferHashFunction;
+import ca.uqac.lif.crypto.hash.HashFunction;
+
+/**
+ * Hash function computing a content digest of an object graph. The graph
+ * is printed with the binary encoding of {@link BinaryPrinter}, and the
+ * bytes it produces are fed to a {@link MessageDigest} as they are
+ * printed, without building the printed form of the graph in memory.
+ * <p>
+ * Contrary to {@link Object#hashCode()}, the digest only depends on the
+ * contents of the graph, and is therefore the same from one JVM to the
+ * next. For this reason, sets and maps are not hashed in their iteration
+ * order: each element (or entry) is hashed on its own, and the digests of
+ * the elements are hashed in sorted order. The value printed by a
+ * {@link Printable} object is streamed into the digest like the rest of the
+ * graph.
+ * <p>
+ * The digest of an instance of a class annotated with {@link Immutable},
+ * or of one of the classes given to the constructor, is computed once and
+ * remembered; wherever the instance occurs, the graph contains its digest
+ * instead of its contents. Hashing a graph that shares such objects with
+ * other graphs, or contains them several times, therefore only prints
+ * them once. Instances are remembered by identity, and forgotten when
+ * they are garbage collected. Note that the digest of a graph depends on
+ * which of its objects are remembered; digests are only comparable
+ * between functions configured with the same classes.
+ * <p>
+ * The function can be used by multiple threads at the same time.
+ */
+public class AzraelHashFunction implements HashFunction<Object,byte[]>, BufferHashFunction<Object>
+{
+	/**
+	 * A single publicly visible instance of the hash function with SHA-256,
+	 * which only remembers instances of classes annotated with
+	 * {@link Immutable}.
+	 */
+	/*@ non_null @*/ public static final AzraelHashFunction SHA256 = new AzraelHashFunction("SHA-256");
+	
+	/**
+	 * Tag for the digest of an object replacing its contents. It is distinct
+	 * from all the tags of {@link BinaryPrinter}.
+	 */
+	protected static final int DIGEST = 32;
+	
+	/**
+	 * The number of bytes buffered before they are passed to the digest.
+	 * Since each element of a set or a map is printed with its own encoder,
+	 * the buffer is kept small.
+	 */
+	protected static final int BUFFER_SIZE = 256;
+	
+	/**
+	 * Flag of a class whose instances are remembered.
+	 */
+	protected static final int REMEMBERED = 1;
+	
+	/**
+	 * Flag of a class whose instances are printed as sets, whose order does
+	 * not matter.
+	 */
+	protected static final int UNORDERED_SET = 2;
+	
+	/**
+	 * Flag of a class whose instances are printed as maps, whose order does
+	 * not matter.
+	 */
+	protected static final int UNORDERED_MAP = 4;
+	
+	/**
+	 * Orders digests as unsigned bytes, in lexicographical order.
+	 */
+	/*@ non_null @*/ protected static final Comparator<byte[]> DIGEST_ORDER = new Comparator<byte[]>()
+	{
+		@Override
+		public int compare(byte[] d1, byte[] d2)
+		{
+			for (int i = 0; i < d1.length && i < d2.length; i++)
+			{
+				int diff = (d1[i] & 0xFF) - (d2[i] & 0xFF);
+				if (diff != 0)
+				{
+					return diff;
+				}
+			}
+			return d1.length - d2.length;
+		}
+	};
+	
+	/**
+	 * The MessageDigest object copied to compute each digest.
+	 */
+	/*@ non_null @*/ protected final MessageDigest m_digest;
+	
+	/**
+	 * The classes whose instances are remembered, besides those annotated
+	 * with {@link Immutable}.
+	 */
+	/*@ non_null @*/ protected final Set<Class<?>> m_immutable;
+	
+	/**
+	 * The properties of each class seen so far, as a combination of
+	 * {@link #REMEMBERED}, {@link #UNORDERED_SET} and {@link #UNORDERED_MAP}.
+	 * This avoids looking up the annotations and interfaces of a class for
+	 * each object that is printed.
+	 */
+	/*@ non_null @*/ protected final ConcurrentHashMap<Class<?>,Integer> m_classes;
+	
+	/**
+	 * The digests of the remembered instances.
+	 */
+	/*@ non_null @*/ protected final ConcurrentHashMap<Reference<Object>,byte[]> m_memo;
+	
+	/**
+	 * The queue receiving the references of the remembered instances that
+	 * have been collected.
+	 */
+	/*@ non_null @*/ protected final ReferenceQueue<Object> m_queue;
+	
+	/**
+	 * Creates a new hash function.
+	 * @param algorithm The name of the digest algorithm, such as
+	 * <tt>SHA-256</tt>
+	 * @param immutable The classes whose instances are remembered, besides
+	 * those annotated with {@link Immutable}
+	 * @throws IllegalArgumentException Thrown if the digest algorithm is not
+	 * available
+	 */
+	public AzraelHashFunction(/*@ non_null @*/ String algorithm, Class<?> ... immutable)
+	{
+		super();
+		try
+		{
+			m_digest = MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+		m_immutable = new HashSet<Class<?>>(Arrays.asList(immutable));
+		m_classes = new ConcurrentHashMap<Class<?>,Integer>();
+		m_memo = new ConcurrentHashMap<Reference<Object>,byte[]>();
+		m_queue = new ReferenceQueue<Object>();
+	}
+	
+	@Override
+	public byte[] getDigest(Object o) throws CryptoException
+	{
+		byte[] out = new byte[getDigestLength()];
+		getDigest(o, out, 0);
+		return out;
+	}
+	
+	@Override
+	public int getDigest(Object o, byte[] out, int offset) throws CryptoException
+	{
+		try
+		{
+			HashingPrinter printer = new HashingPrinter();
+			if (isImmutable(o))
+			{
+				byte[] digest = printer.remembered(o);
+				System.arraycopy(digest, 0, out, offset, digest.length);
+			}
+			else
+			{
+				printer.digest(o, true, out, offset);
+			}
+			return getDigestLength();
+		}
+		catch (PrintException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return m_digest.getDigestLength();
+	}
+	
+	/**
+	 * Gets the number of instances whose digest is remembered. This includes
+	 * instances that have been collected but not forgotten yet.
+	 * @return The number of instances
+	 */
+	/*@ pure @*/ public int getMemoSize()
+	{
+		return m_memo.size();
+	}
+	
+	/**
+	 * Forgets the digests of all the remembered instances.
+	 */
+	public void clearMemo()
+	{
+		m_memo.clear();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Azrael " + m_digest.getAlgorithm();
+	}
+	
+	/**
+	 * Determines if the digest of an object is remembered.
+	 * @param o The object
+	 * @return <tt>true</tt> if the digest is remembered, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean isImmutable(/*@ null @*/ Object o)
+	{
+		return (getFlags(o) & REMEMBERED) != 0;
+	}
+	
+	/**
+	 * Gets the properties of the class of an object.
+	 * @param o The object
+	 * @return A combination of {@link #REMEMBERED}, {@link #UNORDERED_SET}
+	 * and {@link #UNORDERED_MAP}
+	 */
+	protected int getFlags(/*@ null @*/ Object o)
+	{
+		if (o == null)
+		{
+			return 0;
+		}
+		Class<?> c = o.getClass();
+		Integer flags = m_classes.get(c);
+		if (flags == null)
+		{
+			int f = 0;
+			if (m_immutable.contains(c) || c.isAnnotationPresent(Immutable.class))
+			{
+				f |= REMEMBERED;
+			}
+			// Printable objects are checked first, as in BinaryPrinter
+			if (!Printable.class.isAssignableFrom(c))
+			{
+				if (Set.class.isAssignableFrom(c))
+				{
+					f |= UNORDERED_SET;
+				}
+				else if (Map.class.isAssignableFrom(c))
+				{
+					f |= UNORDERED_MAP;
+				}
+			}
+			flags = f;
+			m_classes.put(c, flags);
+		}
+		return flags;
+	}
+	
+	/**
+	 * Creates a new MessageDigest object computing the same algorithm as
+	 * {@link #m_digest}.
+	 * @return The new object
+	 */
+	protected MessageDigest newDigest()
+	{
+		try
+		{
+			return (MessageDigest) m_digest.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			try
+			{
+				return MessageDigest.getInstance(m_digest.getAlgorithm());
+			}
+			catch (NoSuchAlgorithmException ex)
+			{
+				// Not possible, since m_digest exists
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+	
+	/**
+	 * Forgets the digests of the remembered instances that have been
+	 * collected.
+	 */
+	protected void expunge()
+	{
+		Reference<?> ref;
+		while ((ref = m_queue.poll()) != null)
+		{
+			m_memo.remove(ref);
+		}
+	}
+	
+	/**
+	 * Binary printer writing into a digest. Each value whose digest is
+	 * computed on its own (a remembered instance, or an element of a set or
+	 * a map) is printed with a new encoder, so that its digest does not
+	 * depend on the strings printed before it.
+	 */
+	protected class HashingPrinter extends BinaryPrinter
+	{
+		/**
+		 * Creates a new hashing printer.
+		 */
+		public HashingPrinter()
+		{
+			super();
+		}
+		
+		/**
+		 * Computes the digest of values printed with a new encoder.
+		 * @param o The value, or an array of values to print one after the
+		 * other if <tt>contents</tt> is <tt>false</tt>
+		 * @param contents Set to <tt>true</tt> to print the contents of the
+		 * value even if its digest is remembered
+		 * @param out The array where the digest is written
+		 * @param offset The position in the array where the digest is written
+		 * @throws PrintException Thrown if a value cannot be printed
+		 */
+		protected void digest(Object o, boolean contents, byte[] out, int offset) throws PrintException
+		{
+			final MessageDigest md = newDigest();
+			Encoder e = new Encoder(new OutputStream()
+			{
+				@Override
+				public void write(int b)
+				{
+					md.update((byte) b);
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len)
+				{
+					md.update(b, off, len);
+				}
+			}, BUFFER_SIZE);
+			try
+			{
+				if (contents)
+				{
+					writeContents(o, getFlags(o), e);
+				}
+				else
+				{
+					for (Object value : (Object[]) o)
+					{
+						write(value, e);
+					}
+				}
+				e.flush();
+				md.digest(out, offset, md.getDigestLength());
+			}
+			catch (IOException ex)
+			{
+				throw new PrintException(ex);
+			}
+			catch (DigestException ex)
+			{
+				throw new PrintException(ex);
+			}
+		}
+		
+		/**
+		 * Gets the digest of an instance whose digest is remembered, computing
+		 * it if it is not known yet.
+		 * @param o The instance
+		 * @return The digest, which must not be modified
+		 * @throws PrintException Thrown if the instance cannot be printed
+		 */
+		protected byte[] remembered(Object o) throws PrintException
+		{
+			expunge();
+			byte[] digest = m_memo.get(new IdentityReference(o, null));
+			if (digest == null)
+			{
+				digest = new byte[getDigestLength()];
+				digest(o, true, digest, 0);
+				m_memo.put(new IdentityReference(o, m_queue), digest);
+			}
+			return digest;
+		}
+		
+		@Override
+		protected void write(Object o, Encoder e) throws PrintException, IOException
+		{
+			int flags = getFlags(o);
+			if ((flags & REMEMBERED) == 0)
+			{
+				writeContents(o, flags, e);
+				return;
+			}
+			byte[] digest = remembered(o);
+			e.writeByte(DIGEST);
+			e.write(digest, 0, digest.length);
+		}
+		
+		/**
+		 * Writes an object to an encoder, even if its digest is remembered.
+		 * @param o The object
+		 * @param flags The properties of the class of the object, as returned
+		 * by {@link AzraelHashFunction#getFlags(Object) getFlags()}
+		 * @param e The encoder
+		 * @throws PrintException Thrown if the object cannot be printed
+		 * @throws IOException Thrown if the digest cannot be updated
+		 */
+		protected void writeContents(Object o, int flags, Encoder e) throws PrintException, IOException
+		{
+			if ((flags & UNORDERED_SET) != 0)
+			{
+				writeUnordered(SET, (Set<?>) o, e);
+			}
+			else if ((flags & UNORDERED_MAP) != 0)
+			{
+				List<Object[]> entries = new ArrayList<Object[]>(((Map<?,?>) o).size());
+				for (Map.Entry<?,?> entry : ((Map<?,?>) o).entrySet())
+				{
+					entries.add(new Object[] {entry.getKey(), entry.getValue()});
+				}
+				writeUnordered(MAP, entries, e);
+			}
+			else
+			{
+				super.write(o, e);
+			}
+		}
+		
+		/**
+		 * Writes the elements of a collection to an encoder, as the sorted
+		 * digests of the elements.
+		 * @param tag The tag identifying the type of collection
+		 * @param c The collection, where each element of a map is an array
+		 * containing a key and its value
+		 * @param e The encoder
+		 * @throws PrintException Thrown if an element cannot be printed
+		 * @throws IOException Thrown if the digest cannot be updated
+		 */
+		protected void writeUnordered(int tag, Collection<?> c, Encoder e) throws PrintException, IOException
+		{
+			int length = getDigestLength();
+			byte[][] digests = new byte[c.size()][];
+			int i = 0;
+			for (Object element : c)
+			{
+				digests[i] = new byte[length];
+				Object[] values = tag == MAP ? (Object[]) element : new Object[] {element};
+				digest(values, false, digests[i++], 0);
+			}
+			Arrays.sort(digests, DIGEST_ORDER);
+			e.writeByte(tag);
+			e.writeVarint(digests.length);
+			for (byte[] digest : digests)
+			{
+				e.write(digest, 0, length);
+			}
+		}
+	}
+	
+	/**
+	 * A weak reference to an object, which is equal to the other references
+	 * to the same object. The identity hash code of the object is kept, so
+	 * that the reference can still be found once the object is collected; a
+	 * reference to a collected object is only equal to itself.
+	 */
+	protected static class IdentityReference extends WeakReference<Object>
+	{
+		/**
+		 * The identity hash code of the object.
+		 */
+		protected final int m_hashCode;
+		
+		/**
+		 * Creates a new reference.
+		 * @param o The object
+		 * @param q The queue receiving the reference once the object is
+		 * collected, or <tt>null</tt> for a reference only used to look up
+		 * another one
+		 */
+		public IdentityReference(/*@ non_null @*/ Object o, /*@ null @*/ ReferenceQueue<Object> q)
+		{
+			super(o, q);
+			m_hashCode = System.identityHashCode(o);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof IdentityReference))
+			{
+				return false;
+			}
+			Object mine = get();
+			return mine != null && mine == ((IdentityReference) o).get();
+		}
+	}
+}
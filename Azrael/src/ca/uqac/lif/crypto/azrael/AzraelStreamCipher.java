@@ -0,0 +1,232 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.ObjectReader;
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.StreamSymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Symmetric cipher on objects that can encrypt an object directly into an
+ * output stream, and decrypt it directly from an input stream. When the
+ * underlying cipher is a {@link StreamSymmetricCipher}, the serialized
+ * object is passed to the cipher as it is being written, and the decrypted
+ * bytes are passed to the parser as they are being read, so that no
+ * complete copy of the serialized or encrypted object is ever held in
+ * memory. Otherwise, the cipher falls back to encrypting and decrypting
+ * whole byte arrays.
+ * <p>
+ * How much memory is saved depends on the printer: by default, the object
+ * is first printed into a value of type <tt>T</tt> which is then written to
+ * the stream. Descendants whose printer can write directly to a stream
+ * should override {@link #printTo(Object, OutputStream) printTo()} and
+ * {@link #readObjectFrom(InputStream) readObjectFrom()}.
+ *
+ * @param <T> The type of the objects produced by the printer
+ */
+public abstract class AzraelStreamCipher<T> extends AzraelSymmetricCipher<T,byte[]>
+{
+	/**
+	 * Creates a new streaming cipher.
+	 * @param printer The printer used to serialize objects
+	 * @param reader The reader used to deserialize objects
+	 * @param cipher The underlying cipher
+	 */
+	public AzraelStreamCipher(/*@ non_null @*/ ObjectPrinter<T> printer, /*@ non_null @*/ ObjectReader<T> reader, /*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		super(printer, reader, cipher);
+	}
+	
+	/**
+	 * Encrypts an object and writes the result to a stream. The stream is
+	 * flushed, but not closed.
+	 * @param k The key
+	 * @param m The object to encrypt
+	 * @param os The stream receiving the encrypted bytes
+	 * @throws CryptoException Thrown if the object cannot be printed or
+	 * encrypted, or if the stream cannot be written to
+	 */
+	public void encrypt(/*@ non_null @*/ SymmetricKey k, Object m, /*@ non_null @*/ OutputStream os) throws CryptoException
+	{
+		try
+		{
+			if (m_cipher instanceof StreamSymmetricCipher)
+			{
+				OutputStream es = ((StreamSymmetricCipher) m_cipher).getEncryptionStream(k, os);
+				printTo(m, es);
+				es.close();
+			}
+			else
+			{
+				os.write(m_cipher.encrypt(k, print(m)));
+				os.flush();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Reads encrypted bytes from a stream, up to its end, and decrypts them
+	 * into an object.
+	 * @param k The key
+	 * @param is The stream providing the encrypted bytes
+	 * @return The decrypted object
+	 * @throws CryptoException Thrown if the stream cannot be read, or if its
+	 * contents cannot be decrypted or read back into an object
+	 */
+	public Object decrypt(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ InputStream is) throws CryptoException
+	{
+		try
+		{
+			InputStream ds;
+			if (m_cipher instanceof StreamSymmetricCipher)
+			{
+				ds = ((StreamSymmetricCipher) m_cipher).getDecryptionStream(k, is);
+			}
+			else
+			{
+				ds = new ByteArrayInputStream(m_cipher.decrypt(k, readAll(is)));
+			}
+			return readObjectFrom(ds);
+		}
+		catch (IOException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Prints an object and writes its serialized form to a stream. By
+	 * default, the object is printed in full and then passed to
+	 * {@link #writeTo(Object, OutputStream) writeTo()}.
+	 * @param m The object
+	 * @param os The stream
+	 * @throws CryptoException Thrown if the object cannot be printed
+	 * @throws IOException Thrown if the stream cannot be written to
+	 */
+	protected void printTo(Object m, /*@ non_null @*/ OutputStream os) throws CryptoException, IOException
+	{
+		try
+		{
+			writeTo(m_printer.print(m), os);
+		}
+		catch (PrintException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Reads an object from the serialized form provided by a stream. By
+	 * default, the printed object is read in full with
+	 * {@link #readFrom(InputStream) readFrom()} and then passed to the reader.
+	 * @param is The stream
+	 * @return The object
+	 * @throws CryptoException Thrown if the object cannot be read
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	protected Object readObjectFrom(/*@ non_null @*/ InputStream is) throws CryptoException, IOException
+	{
+		try
+		{
+			return m_reader.read(readFrom(is));
+		}
+		catch (ReadException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	protected byte[] convertFrom(T t)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try
+		{
+			writeTo(t, baos);
+		}
+		catch (IOException e)
+		{
+			// Not supposed to happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return baos.toByteArray();
+	}
+	
+	@Override
+	protected T convertTo(byte[] m)
+	{
+		try
+		{
+			return readFrom(new ByteArrayInputStream(m));
+		}
+		catch (IOException e)
+		{
+			// Not supposed to happen when reading from memory
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Writes a printed object to a stream.
+	 * @param t The printed object
+	 * @param os The stream
+	 * @throws IOException Thrown if the stream cannot be written to
+	 */
+	protected abstract void writeTo(T t, /*@ non_null @*/ OutputStream os) throws IOException;
+	
+	/**
+	 * Reads a printed object from a stream, up to its end.
+	 * @param is The stream
+	 * @return The printed object
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	protected abstract T readFrom(/*@ non_null @*/ InputStream is) throws IOException;
+	
+	/**
+	 * Reads the whole contents of a stream into an array.
+	 * @param is The stream
+	 * @return The array
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	/*@ non_null @*/ protected static byte[] readAll(/*@ non_null @*/ InputStream is) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) >= 0)
+		{
+			baos.write(buffer, 0, n);
+		}
+		return baos.toByteArray();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.ObjectReader;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+
+/**
+ * Streaming cipher for printers producing character strings, such as the
+ * JSON and XML printers of Azrael. The strings are encoded in UTF-8 as they
+ * are written to the cipher, and decoded as the decrypted bytes are read.
+ */
+public class AzraelStringStreamCipher extends AzraelStreamCipher<String>
+{
+	/**
+	 * Creates a new streaming cipher for strings.
+	 * @param printer The printer used to serialize objects
+	 * @param reader The reader used to deserialize objects
+	 * @param cipher The underlying cipher
+	 */
+	public AzraelStringStreamCipher(/*@ non_null @*/ ObjectPrinter<String> printer, /*@ non_null @*/ ObjectReader<String> reader, /*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		super(printer, reader, cipher);
+	}
+	
+	@Override
+	protected void writeTo(String t, OutputStream os) throws IOException
+	{
+		// The writer is flushed but not closed, so that os stays open
+		Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+		w.write(t);
+		w.flush();
+	}
+	
+	@Override
+	protected String readFrom(InputStream is) throws IOException
+	{
+		Reader r = new InputStreamReader(is, StandardCharsets.UTF_8);
+		StringBuilder out = new StringBuilder();
+		char[] buffer = new char[4096];
+		int n;
+		while ((n = r.read(buffer)) >= 0)
+		{
+			out.append(buffer, 0, n);
+		}
+		return out.toString();
+	}
+}
@@ -43,27 +43,56 @@ public abstract class AzraelSymmetricCipher<T,M> implements SymmetricCipher<Obje
 	
 	@Override
 	public Object encrypt(SymmetricKey k, Object m) throws CryptoException
+	{
+		return m_cipher.encrypt(k, print(m));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Object decrypt(SymmetricKey k, Object m) throws CryptoException
+	{
+		try
+		{
+			return read(m_cipher.decrypt(k, (M) m));
+		}
+		catch (ClassCastException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Performs the first half of the encryption, which is to convert an object
+	 * into the type of message handled by the underlying cipher.
+	 * @param m The object
+	 * @return The message to be encrypted by the cipher
+	 * @throws CryptoException Thrown if the object cannot be printed
+	 */
+	/*@ non_null @*/ public M print(Object m) throws CryptoException
 	{
 		try
 		{
 			T t = m_printer.print(m);
-			M o = convertFrom(t);
-			return m_cipher.encrypt(k, o);
+			return convertFrom(t);
 		}
 		catch (PrintException e)
 		{
 			throw new CryptoException(e);
 		}
 	}
-
-	@SuppressWarnings("unchecked")
-	@Override
-	public Object decrypt(SymmetricKey k, Object m) throws CryptoException
+	
+	/**
+	 * Performs the second half of the decryption, which is to recover an
+	 * object from a message decrypted by the underlying cipher.
+	 * @param m The decrypted message
+	 * @return The object
+	 * @throws CryptoException Thrown if the object cannot be read
+	 */
+	public Object read(/*@ non_null @*/ M m) throws CryptoException
 	{
 		try
 		{
-			M decrypted = m_cipher.decrypt(k, (M) m);
-			T object = convertTo(decrypted);
+			T object = convertTo(m);
 			return m_reader.read(object);
 		}
 		catch (ClassCastException e)
@@ -76,6 +105,63 @@ public abstract class AzraelSymmetricCipher<T,M> implements SymmetricCipher<Obje
 		}
 	}
 	
+	/**
+	 * Gets a {@link Pipeline} stage performing the printing half of the
+	 * encryption.
+	 * @return The stage
+	 * @see #print(Object)
+	 */
+	/*@ non_null @*/ public Pipeline.Stage getPrintStage()
+	{
+		return new Pipeline.Stage()
+		{
+			@Override
+			public Object process(Object o, Pipeline.ScratchBuffer b) throws CryptoException
+			{
+				return print(o);
+			}
+			
+			@Override
+			public String toString()
+			{
+				return "Print";
+			}
+		};
+	}
+	
+	/**
+	 * Gets a {@link Pipeline} stage passing its input to the underlying
+	 * cipher for encryption. Printing and encryption can thus be given
+	 * their own threads.
+	 * @param k The key used to encrypt the messages
+	 * @return The stage
+	 */
+	/*@ non_null @*/ public Pipeline.Stage getEncryptionStage(/*@ non_null @*/ final SymmetricKey k)
+	{
+		return new Pipeline.Stage()
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public Object process(Object o, Pipeline.ScratchBuffer b) throws CryptoException
+			{
+				try
+				{
+					return m_cipher.encrypt(k, (M) o);
+				}
+				catch (ClassCastException e)
+				{
+					throw new CryptoException(e);
+				}
+			}
+			
+			@Override
+			public String toString()
+			{
+				return "Encrypt";
+			}
+		};
+	}
+	
 	protected abstract M convertFrom(T t);
 	
 	protected abstract T convertTo(M m);
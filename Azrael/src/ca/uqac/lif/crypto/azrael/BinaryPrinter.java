@@ -0,0 +1,575 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.Printable;
+
+/**
+ * Prints objects into a compact binary form. Each value is written as a
+ * one-byte tag followed by its contents; integers and lengths are written
+ * as variable-length integers, and strings that occur more than once are
+ * written in full only the first time, and then replaced by their index in
+ * a table of strings already seen. Objects implementing {@link Printable}
+ * are written as their class name followed by the value they print.
+ * <p>
+ * The objects can be read back using a {@link BinaryReader}. Besides
+ * producing an array of bytes, the printer can write directly to an
+ * output stream with {@link #print(Object, OutputStream)}.
+ */
+public class BinaryPrinter extends ObjectPrinter<byte[]>
+{
+	/**
+	 * Tag for the <tt>null</tt> value.
+	 */
+	protected static final int NULL = 0;
+	
+	/**
+	 * Tag for the Boolean value <tt>false</tt>.
+	 */
+	protected static final int FALSE = 1;
+	
+	/**
+	 * Tag for the Boolean value <tt>true</tt>.
+	 */
+	protected static final int TRUE = 2;
+	
+	/**
+	 * Tag for a byte.
+	 */
+	protected static final int BYTE = 3;
+	
+	/**
+	 * Tag for a short integer.
+	 */
+	protected static final int SHORT = 4;
+	
+	/**
+	 * Tag for an integer.
+	 */
+	protected static final int INT = 5;
+	
+	/**
+	 * Tag for a long integer.
+	 */
+	protected static final int LONG = 6;
+	
+	/**
+	 * Tag for a float.
+	 */
+	protected static final int FLOAT = 7;
+	
+	/**
+	 * Tag for a double.
+	 */
+	protected static final int DOUBLE = 8;
+	
+	/**
+	 * Tag for a character.
+	 */
+	protected static final int CHAR = 9;
+	
+	/**
+	 * Tag for a string written in full.
+	 */
+	protected static final int STRING = 10;
+	
+	/**
+	 * Tag for a string replaced by its index in the string table.
+	 */
+	protected static final int STRING_REF = 11;
+	
+	/**
+	 * Tag for an array of bytes.
+	 */
+	protected static final int BYTES = 12;
+	
+	/**
+	 * Tag for a list.
+	 */
+	protected static final int LIST = 13;
+	
+	/**
+	 * Tag for a set.
+	 */
+	protected static final int SET = 14;
+	
+	/**
+	 * Tag for a map.
+	 */
+	protected static final int MAP = 15;
+	
+	/**
+	 * Tag for an enum constant.
+	 */
+	protected static final int ENUM = 16;
+	
+	/**
+	 * Tag for an object implementing {@link Printable}.
+	 */
+	protected static final int PRINTABLE = 17;
+	
+	/**
+	 * Tag for a value encrypted separately from the rest of the object. It
+	 * is not produced by this printer, but by {@link SelectiveCipher}.
+	 */
+	protected static final int SEALED = 18;
+	
+	/**
+	 * The maximum length of the strings that are added to the string table.
+	 * Longer strings are unlikely to repeat, and are always written in full.
+	 */
+	protected static final int MAX_TABLE_LENGTH = 64;
+	
+	/**
+	 * The value returned by a {@link NestedPrinter} in place of the printed
+	 * form of a value, which has already been written to the encoder.
+	 */
+	/*@ non_null @*/ protected static final byte[] PRINTED = new byte[0];
+	
+	/**
+	 * Creates a new binary printer.
+	 */
+	public BinaryPrinter()
+	{
+		super();
+	}
+	
+	@Override
+	public byte[] print(Object o) throws PrintException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		print(o, baos);
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Prints an object directly into an output stream. The stream is
+	 * flushed, but not closed.
+	 * @param o The object
+	 * @param os The stream
+	 * @throws PrintException Thrown if the object cannot be printed or the
+	 * stream cannot be written to
+	 */
+	public void print(Object o, /*@ non_null @*/ OutputStream os) throws PrintException
+	{
+		try
+		{
+			Encoder e = new Encoder(os);
+			write(o, e);
+			e.flush();
+		}
+		catch (IOException ex)
+		{
+			throw new PrintException(ex);
+		}
+	}
+	
+	/**
+	 * Writes an object to an encoder. Descendants can override this method
+	 * to handle some objects differently, and call it back for the others.
+	 * @param o The object
+	 * @param e The encoder
+	 * @throws PrintException Thrown if the object cannot be printed
+	 * @throws IOException Thrown if the underlying stream cannot be written to
+	 */
+	protected void write(Object o, /*@ non_null @*/ Encoder e) throws PrintException, IOException
+	{
+		if (o == null)
+		{
+			e.writeByte(NULL);
+		}
+		else if (o instanceof Boolean)
+		{
+			e.writeByte(((Boolean) o) ? TRUE : FALSE);
+		}
+		else if (o instanceof String)
+		{
+			e.writeString((String) o);
+		}
+		else if (o instanceof Integer)
+		{
+			e.writeByte(INT);
+			e.writeSignedVarint((Integer) o);
+		}
+		else if (o instanceof Long)
+		{
+			e.writeByte(LONG);
+			e.writeSignedVarint((Long) o);
+		}
+		else if (o instanceof Short)
+		{
+			e.writeByte(SHORT);
+			e.writeSignedVarint((Short) o);
+		}
+		else if (o instanceof Byte)
+		{
+			e.writeByte(BYTE);
+			e.writeByte((Byte) o);
+		}
+		else if (o instanceof Float)
+		{
+			e.writeByte(FLOAT);
+			e.writeFixed(Float.floatToIntBits((Float) o), 4);
+		}
+		else if (o instanceof Double)
+		{
+			e.writeByte(DOUBLE);
+			e.writeFixed(Double.doubleToLongBits((Double) o), 8);
+		}
+		else if (o instanceof Character)
+		{
+			e.writeByte(CHAR);
+			e.writeVarint((Character) o);
+		}
+		else if (o instanceof byte[])
+		{
+			byte[] bytes = (byte[]) o;
+			e.writeByte(BYTES);
+			e.writeVarint(bytes.length);
+			e.write(bytes, 0, bytes.length);
+		}
+		else if (o instanceof Printable)
+		{
+			// Checked before collections, as a printable object may be one
+			e.writeByte(PRINTABLE);
+			e.writeString(o.getClass().getName());
+			writePrintable((Printable) o, e);
+		}
+		else if (o instanceof List)
+		{
+			writeCollection(LIST, (List<?>) o, e);
+		}
+		else if (o instanceof Set)
+		{
+			writeCollection(SET, (Set<?>) o, e);
+		}
+		else if (o instanceof Map)
+		{
+			writeMap((Map<?,?>) o, e);
+		}
+		else if (o instanceof Enum)
+		{
+			e.writeByte(ENUM);
+			e.writeString(((Enum<?>) o).getDeclaringClass().getName());
+			e.writeString(((Enum<?>) o).name());
+		}
+		else
+		{
+			throw new PrintException("Cannot print objects of class " + o.getClass().getName());
+		}
+	}
+	
+	/**
+	 * Writes the value printed by a printable object to an encoder. The
+	 * object receives a printer that writes the value it prints directly to
+	 * the encoder, instead of printing it into an array of its own; nested
+	 * printable objects are therefore streamed, and share the string table
+	 * of the graph. The object must either print a single value through this
+	 * printer and return what the printer returns, or return the value
+	 * without printing it.
+	 * @param p The printable object
+	 * @param e The encoder
+	 * @throws PrintException Thrown if the value cannot be printed
+	 * @throws IOException Thrown if the underlying stream cannot be written to
+	 */
+	protected void writePrintable(/*@ non_null @*/ Printable p, /*@ non_null @*/ Encoder e) throws PrintException, IOException
+	{
+		NestedPrinter printer = new NestedPrinter(e);
+		Object printed = p.print(printer);
+		if (!printer.m_printed)
+		{
+			write(printed, e);
+		}
+		else if (printed != PRINTED)
+		{
+			throw new PrintException("Object of class " + p.getClass().getName() + " does not return the value it printed");
+		}
+	}
+	
+	/**
+	 * Writes the elements of a collection to an encoder.
+	 * @param tag The tag identifying the type of collection
+	 * @param c The collection
+	 * @param e The encoder
+	 * @throws PrintException Thrown if an element cannot be printed
+	 * @throws IOException Thrown if the underlying stream cannot be written to
+	 */
+	protected void writeCollection(int tag, /*@ non_null @*/ Collection<?> c, /*@ non_null @*/ Encoder e) throws PrintException, IOException
+	{
+		e.writeByte(tag);
+		e.writeVarint(c.size());
+		for (Object element : c)
+		{
+			write(element, e);
+		}
+	}
+	
+	/**
+	 * Writes the entries of a map to an encoder.
+	 * @param map The map
+	 * @param e The encoder
+	 * @throws PrintException Thrown if a key or a value cannot be printed
+	 * @throws IOException Thrown if the underlying stream cannot be written to
+	 */
+	protected void writeMap(/*@ non_null @*/ Map<?,?> map, /*@ non_null @*/ Encoder e) throws PrintException, IOException
+	{
+		e.writeByte(MAP);
+		e.writeVarint(map.size());
+		for (Map.Entry<?,?> entry : map.entrySet())
+		{
+			write(entry.getKey(), e);
+			write(entry.getValue(), e);
+		}
+	}
+	
+	/**
+	 * Printer given to a printable object, which writes the value printed by
+	 * the object to the encoder of the graph it belongs to.
+	 */
+	protected class NestedPrinter extends ObjectPrinter<byte[]>
+	{
+		/**
+		 * The encoder to write to.
+		 */
+		/*@ non_null @*/ protected final Encoder m_encoder;
+		
+		/**
+		 * Whether a value has been printed.
+		 */
+		protected boolean m_printed;
+		
+		/**
+		 * Creates a new nested printer.
+		 * @param e The encoder to write to
+		 */
+		protected NestedPrinter(/*@ non_null @*/ Encoder e)
+		{
+			super();
+			m_encoder = e;
+			m_printed = false;
+		}
+		
+		@Override
+		public byte[] print(Object o) throws PrintException
+		{
+			if (m_printed)
+			{
+				throw new PrintException("A printable object can only print a single value");
+			}
+			m_printed = true;
+			try
+			{
+				write(o, m_encoder);
+			}
+			catch (IOException ex)
+			{
+				throw new PrintException(ex);
+			}
+			return PRINTED;
+		}
+	}
+	
+	/**
+	 * Buffers the bytes written to an output stream, and keeps the table of
+	 * the strings already written. An encoder is used for a single call to
+	 * {@link BinaryPrinter#print(Object, OutputStream) print()}.
+	 */
+	protected static class Encoder
+	{
+		/**
+		 * The stream to write to.
+		 */
+		/*@ non_null @*/ protected final OutputStream m_out;
+		
+		/**
+		 * The buffer holding the bytes not yet written to the stream.
+		 */
+		/*@ non_null @*/ protected final byte[] m_buffer;
+		
+		/**
+		 * The number of bytes in the buffer.
+		 */
+		protected int m_position;
+		
+		/**
+		 * The strings already written, associated to their index in the
+		 * table.
+		 */
+		/*@ non_null @*/ protected final Map<String,Integer> m_strings;
+		
+		/**
+		 * Creates a new encoder.
+		 * @param os The stream to write to
+		 * @param buffer_size The number of bytes buffered before they are
+		 * written to the stream
+		 */
+		protected Encoder(/*@ non_null @*/ OutputStream os, int buffer_size)
+		{
+			super();
+			m_out = os;
+			m_buffer = new byte[buffer_size];
+			m_position = 0;
+			m_strings = new HashMap<String,Integer>();
+		}
+		
+		/**
+		 * Creates a new encoder buffering 8 KiB.
+		 * @param os The stream to write to
+		 */
+		protected Encoder(/*@ non_null @*/ OutputStream os)
+		{
+			this(os, 8192);
+		}
+		
+		/**
+		 * Writes a single byte.
+		 * @param b The byte
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void writeByte(int b) throws IOException
+		{
+			if (m_position == m_buffer.length)
+			{
+				drain();
+			}
+			m_buffer[m_position++] = (byte) b;
+		}
+		
+		/**
+		 * Writes a portion of an array of bytes.
+		 * @param b The array
+		 * @param off The position of the first byte to write
+		 * @param len The number of bytes to write
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (len > m_buffer.length - m_position)
+			{
+				drain();
+				if (len > m_buffer.length)
+				{
+					m_out.write(b, off, len);
+					return;
+				}
+			}
+			System.arraycopy(b, off, m_buffer, m_position, len);
+			m_position += len;
+		}
+		
+		/**
+		 * Writes a non-negative integer using 7 bits per byte, the highest
+		 * bit of each byte indicating whether more bytes follow.
+		 * @param v The integer
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void writeVarint(long v) throws IOException
+		{
+			while ((v & ~0x7FL) != 0)
+			{
+				writeByte((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			writeByte((int) v);
+		}
+		
+		/**
+		 * Writes an integer as a variable-length integer, using the zigzag
+		 * encoding so that small negative values also take few bytes.
+		 * @param v The integer
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void writeSignedVarint(long v) throws IOException
+		{
+			writeVarint((v << 1) ^ (v >> 63));
+		}
+		
+		/**
+		 * Writes the lowest bytes of an integer, in big-endian order.
+		 * @param v The integer
+		 * @param num_bytes The number of bytes to write
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void writeFixed(long v, int num_bytes) throws IOException
+		{
+			for (int i = num_bytes - 1; i >= 0; i--)
+			{
+				writeByte((int) (v >>> (8 * i)));
+			}
+		}
+		
+		/**
+		 * Writes a string, or its index if it has already been written.
+		 * @param s The string
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void writeString(/*@ non_null @*/ String s) throws IOException
+		{
+			Integer index = m_strings.get(s);
+			if (index != null)
+			{
+				writeByte(STRING_REF);
+				writeVarint(index);
+				return;
+			}
+			if (s.length() <= MAX_TABLE_LENGTH)
+			{
+				m_strings.put(s, m_strings.size());
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeByte(STRING);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+		
+		/**
+		 * Writes the contents of the buffer to the stream and flushes it.
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		public void flush() throws IOException
+		{
+			drain();
+			m_out.flush();
+		}
+		
+		/**
+		 * Writes the contents of the buffer to the stream.
+		 * @throws IOException Thrown if the stream cannot be written to
+		 */
+		protected void drain() throws IOException
+		{
+			if (m_position > 0)
+			{
+				m_out.write(m_buffer, 0, m_position);
+				m_position = 0;
+			}
+		}
+	}
+}
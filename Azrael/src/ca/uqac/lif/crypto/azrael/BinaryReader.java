@@ -0,0 +1,553 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.azrael.ObjectReader;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.azrael.Readable;
+
+/**
+ * Reads objects from the binary form produced by a {@link BinaryPrinter}.
+ * Lists, sets and maps are read as instances of {@link ArrayList},
+ * {@link HashSet} and {@link HashMap}. Printable objects are instantiated
+ * from their class name using their no-argument constructor, which may be
+ * protected or private, and must implement {@link Readable}.
+ */
+public class BinaryReader extends ObjectReader<byte[]>
+{
+	/**
+	 * The maximum number of levels of values nested in one another. Since
+	 * nested values are read recursively, deeper input is rejected rather
+	 * than allowed to overflow the stack.
+	 */
+	protected static final int MAX_DEPTH = 1000;
+	
+	/**
+	 * Creates a new binary reader.
+	 */
+	public BinaryReader()
+	{
+		super();
+	}
+	
+	@Override
+	public Object read(Object o) throws ReadException
+	{
+		if (!(o instanceof byte[]))
+		{
+			throw new ReadException("Expected a byte array");
+		}
+		return read(new ByteArrayInputStream((byte[]) o));
+	}
+	
+	/**
+	 * Reads an object directly from an input stream. Since the stream is read
+	 * ahead, bytes following the object may be consumed as well; the stream
+	 * should therefore not be read any further by the caller.
+	 * @param is The stream
+	 * @return The object
+	 * @throws ReadException Thrown if the stream cannot be read, or does not
+	 * contain a valid object
+	 */
+	public Object read(/*@ non_null @*/ InputStream is) throws ReadException
+	{
+		try
+		{
+			return read(new Decoder(is));
+		}
+		catch (IOException e)
+		{
+			throw new ReadException(e);
+		}
+	}
+	
+	/**
+	 * Reads an object from a decoder. Descendants can override this method
+	 * to handle some tags differently, and call it back for the others.
+	 * @param d The decoder
+	 * @return The object
+	 * @throws ReadException Thrown if the contents of the stream is not a
+	 * valid object
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	protected Object read(/*@ non_null @*/ Decoder d) throws ReadException, IOException
+	{
+		if (d.m_depth == MAX_DEPTH)
+		{
+			throw new ReadException("Values are nested more than " + MAX_DEPTH + " levels deep");
+		}
+		d.m_depth++;
+		try
+		{
+			return read(d.readByte(), d);
+		}
+		finally
+		{
+			d.m_depth--;
+		}
+	}
+	
+	/**
+	 * Reads an object whose tag has already been read from a decoder.
+	 * @param tag The tag
+	 * @param d The decoder
+	 * @return The object
+	 * @throws ReadException Thrown if the contents of the stream is not a
+	 * valid object
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	protected Object read(int tag, /*@ non_null @*/ Decoder d) throws ReadException, IOException
+	{
+		switch (tag)
+		{
+		case BinaryPrinter.NULL:
+			return null;
+		case BinaryPrinter.FALSE:
+			return false;
+		case BinaryPrinter.TRUE:
+			return true;
+		case BinaryPrinter.BYTE:
+			return (byte) d.readByte();
+		case BinaryPrinter.SHORT:
+			return (short) d.readSignedVarint();
+		case BinaryPrinter.INT:
+			return (int) d.readSignedVarint();
+		case BinaryPrinter.LONG:
+			return d.readSignedVarint();
+		case BinaryPrinter.FLOAT:
+			return Float.intBitsToFloat((int) d.readFixed(4));
+		case BinaryPrinter.DOUBLE:
+			return Double.longBitsToDouble(d.readFixed(8));
+		case BinaryPrinter.CHAR:
+			return (char) d.readVarint();
+		case BinaryPrinter.STRING:
+		case BinaryPrinter.STRING_REF:
+			return d.readString(tag);
+		case BinaryPrinter.BYTES:
+			return d.readBytes(d.readLength());
+		case BinaryPrinter.LIST:
+		{
+			int size = d.readLength();
+			return readElements(new ArrayList<Object>(Math.min(size, 1024)), size, d);
+		}
+		case BinaryPrinter.SET:
+		{
+			int size = d.readLength();
+			return readElements(new HashSet<Object>(), size, d);
+		}
+		case BinaryPrinter.MAP:
+		{
+			int size = d.readLength();
+			Map<Object,Object> map = new HashMap<Object,Object>();
+			for (int i = 0; i < size; i++)
+			{
+				Object key = read(d);
+				map.put(key, read(d));
+			}
+			return map;
+		}
+		case BinaryPrinter.ENUM:
+			return readEnum(readString(d), readString(d));
+		case BinaryPrinter.PRINTABLE:
+		{
+			String class_name = readString(d);
+			return readPrintable(class_name, read(d));
+		}
+		default:
+			throw new ReadException("Unknown tag " + tag);
+		}
+	}
+	
+	/**
+	 * Reads a string from a decoder.
+	 * @param d The decoder
+	 * @return The string
+	 * @throws ReadException Thrown if the next value is not a string
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	/*@ non_null @*/ protected String readString(/*@ non_null @*/ Decoder d) throws ReadException, IOException
+	{
+		int tag = d.readByte();
+		if (tag != BinaryPrinter.STRING && tag != BinaryPrinter.STRING_REF)
+		{
+			throw new ReadException("Expected a string");
+		}
+		return d.readString(tag);
+	}
+	
+	/**
+	 * Reads a number of elements from a decoder and adds them to a collection.
+	 * @param c The collection
+	 * @param size The number of elements
+	 * @param d The decoder
+	 * @return The collection
+	 * @throws ReadException Thrown if an element cannot be read
+	 * @throws IOException Thrown if the stream cannot be read
+	 */
+	protected Collection<Object> readElements(/*@ non_null @*/ Collection<Object> c, int size, /*@ non_null @*/ Decoder d) throws ReadException, IOException
+	{
+		for (int i = 0; i < size; i++)
+		{
+			c.add(read(d));
+		}
+		return c;
+	}
+	
+	/**
+	 * Gets an enum constant from the name of its class and its own name.
+	 * @param class_name The name of the enum class
+	 * @param name The name of the constant
+	 * @return The constant
+	 * @throws ReadException Thrown if the constant does not exist
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected Object readEnum(/*@ non_null @*/ String class_name, /*@ non_null @*/ String name) throws ReadException
+	{
+		try
+		{
+			Class<?> c = loadClass(class_name);
+			if (!c.isEnum())
+			{
+				throw new ReadException("Class " + class_name + " is not an enum");
+			}
+			return Enum.valueOf((Class<? extends Enum>) c, name);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ReadException(e);
+		}
+	}
+	
+	/**
+	 * Instantiates a printable object and lets it read its contents. Since
+	 * the value printed by the object has already been read from the stream,
+	 * the object is given a reader that returns that value as is.
+	 * @param class_name The name of the object's class
+	 * @param contents The value printed by the object
+	 * @return The object
+	 * @throws ReadException Thrown if the object cannot be instantiated
+	 */
+	protected Object readPrintable(/*@ non_null @*/ String class_name, Object contents) throws ReadException
+	{
+		Class<?> c = loadClass(class_name);
+		// The class is checked before any of its code can run
+		if (!Readable.class.isAssignableFrom(c))
+		{
+			throw new ReadException("Class " + class_name + " does not implement Readable");
+		}
+		Object o;
+		try
+		{
+			Constructor<?> cons = c.getDeclaredConstructor();
+			cons.setAccessible(true);
+			o = cons.newInstance();
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ReadException(e);
+		}
+		catch (SecurityException e)
+		{
+			throw new ReadException(e);
+		}
+		return ((Readable) o).read(new NestedReader(contents), contents);
+	}
+	
+	/**
+	 * Loads a class whose name was read from the input, without initializing
+	 * it, so that its static initializer does not run before the class is
+	 * known to be of the expected kind.
+	 * @param class_name The name of the class
+	 * @return The class
+	 * @throws ReadException Thrown if the class cannot be found
+	 */
+	/*@ non_null @*/ protected Class<?> loadClass(/*@ non_null @*/ String class_name) throws ReadException
+	{
+		try
+		{
+			return Class.forName(class_name, false, getClass().getClassLoader());
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new ReadException(e);
+		}
+		catch (LinkageError e)
+		{
+			throw new ReadException(e);
+		}
+	}
+	
+	/**
+	 * Reader given to a printable object, which returns the value the object
+	 * printed, already read from the stream. Other values are read as by the
+	 * enclosing reader.
+	 */
+	protected class NestedReader extends ObjectReader<byte[]>
+	{
+		/**
+		 * The value printed by the object.
+		 */
+		/*@ null @*/ protected final Object m_contents;
+		
+		/**
+		 * Creates a new nested reader.
+		 * @param contents The value printed by the object
+		 */
+		protected NestedReader(/*@ null @*/ Object contents)
+		{
+			super();
+			m_contents = contents;
+		}
+		
+		@Override
+		public Object read(Object o) throws ReadException
+		{
+			if (o == m_contents)
+			{
+				return o;
+			}
+			return BinaryReader.this.read(o);
+		}
+	}
+	
+	/**
+	 * Reads bytes ahead from an input stream, and keeps the table of the
+	 * strings already read. A decoder is used for a single call to
+	 * {@link BinaryReader#read(InputStream) read()}.
+	 */
+	protected static class Decoder
+	{
+		/**
+		 * The stream to read from.
+		 */
+		/*@ non_null @*/ protected final InputStream m_in;
+		
+		/**
+		 * The buffer holding the bytes read ahead from the stream.
+		 */
+		/*@ non_null @*/ protected final byte[] m_buffer;
+		
+		/**
+		 * The position of the next byte to read in the buffer.
+		 */
+		protected int m_position;
+		
+		/**
+		 * The number of valid bytes in the buffer.
+		 */
+		protected int m_limit;
+		
+		/**
+		 * The strings already read, in the order they were added to the table.
+		 */
+		/*@ non_null @*/ protected final List<String> m_strings;
+		
+		/**
+		 * The number of values being read, each nested in the previous one.
+		 */
+		protected int m_depth;
+		
+		/**
+		 * Creates a new decoder.
+		 * @param is The stream to read from
+		 */
+		protected Decoder(/*@ non_null @*/ InputStream is)
+		{
+			super();
+			m_in = is;
+			m_buffer = new byte[8192];
+			m_position = 0;
+			m_limit = 0;
+			m_strings = new ArrayList<String>();
+			m_depth = 0;
+		}
+		
+		/**
+		 * Reads a single byte.
+		 * @return The byte, as a value between 0 and 255
+		 * @throws IOException Thrown if the stream cannot be read or ends
+		 * prematurely
+		 */
+		public int readByte() throws IOException
+		{
+			if (m_position == m_limit)
+			{
+				fill();
+			}
+			return m_buffer[m_position++] & 0xFF;
+		}
+		
+		/**
+		 * Reads an array of bytes. Since the length comes from the input, the
+		 * array is not allocated at once; it grows as the bytes are read, so
+		 * that a large length followed by few bytes fails before using much
+		 * memory.
+		 * @param len The number of bytes to read
+		 * @return The array
+		 * @throws IOException Thrown if the stream cannot be read or ends
+		 * prematurely
+		 */
+		/*@ non_null @*/ public byte[] readBytes(int len) throws IOException
+		{
+			byte[] out = new byte[Math.min(len, m_buffer.length)];
+			int done = 0;
+			while (done < len)
+			{
+				if (m_position == m_limit)
+				{
+					fill();
+				}
+				if (done == out.length)
+				{
+					out = Arrays.copyOf(out, (int) Math.min(len, 2L * out.length));
+				}
+				int n = Math.min(out.length - done, m_limit - m_position);
+				System.arraycopy(m_buffer, m_position, out, done, n);
+				m_position += n;
+				done += n;
+			}
+			return out;
+		}
+		
+		/**
+		 * Reads a variable-length integer written by
+		 * {@link BinaryPrinter.Encoder#writeVarint(long)}.
+		 * @return The integer
+		 * @throws IOException Thrown if the stream cannot be read or ends
+		 * prematurely
+		 */
+		public long readVarint() throws IOException
+		{
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7)
+			{
+				int b = readByte();
+				v |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+				{
+					return v;
+				}
+			}
+			throw new IOException("Malformed variable-length integer");
+		}
+		
+		/**
+		 * Reads a variable-length integer written by
+		 * {@link BinaryPrinter.Encoder#writeSignedVarint(long)}.
+		 * @return The integer
+		 * @throws IOException Thrown if the stream cannot be read or ends
+		 * prematurely
+		 */
+		public long readSignedVarint() throws IOException
+		{
+			long v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+		
+		/**
+		 * Reads a length, making sure it fits into an integer.
+		 * @return The length
+		 * @throws IOException Thrown if the stream cannot be read or the length
+		 * is not valid
+		 */
+		public int readLength() throws IOException
+		{
+			long len = readVarint();
+			if (len < 0 || len > Integer.MAX_VALUE)
+			{
+				throw new IOException("Invalid length " + len);
+			}
+			return (int) len;
+		}
+		
+		/**
+		 * Reads an integer written by
+		 * {@link BinaryPrinter.Encoder#writeFixed(long, int)}.
+		 * @param num_bytes The number of bytes of the integer
+		 * @return The integer
+		 * @throws IOException Thrown if the stream cannot be read or ends
+		 * prematurely
+		 */
+		public long readFixed(int num_bytes) throws IOException
+		{
+			long v = 0;
+			for (int i = 0; i < num_bytes; i++)
+			{
+				v = (v << 8) | readByte();
+			}
+			return v;
+		}
+		
+		/**
+		 * Reads a string whose tag has already been read.
+		 * @param tag The tag, indicating whether the string is written in full
+		 * or as an index in the string table
+		 * @return The string
+		 * @throws IOException Thrown if the stream cannot be read or refers to
+		 * a string that is not in the table
+		 */
+		/*@ non_null @*/ public String readString(int tag) throws IOException
+		{
+			if (tag == BinaryPrinter.STRING_REF)
+			{
+				int index = readLength();
+				if (index >= m_strings.size())
+				{
+					throw new IOException("Invalid string index " + index);
+				}
+				return m_strings.get(index);
+			}
+			String s = new String(readBytes(readLength()), StandardCharsets.UTF_8);
+			if (s.length() <= BinaryPrinter.MAX_TABLE_LENGTH)
+			{
+				m_strings.add(s);
+			}
+			return s;
+		}
+		
+		/**
+		 * Reads more bytes from the stream into the buffer.
+		 * @throws IOException Thrown if the stream cannot be read or has no more
+		 * bytes
+		 */
+		protected void fill() throws IOException
+		{
+			int n = m_in.read(m_buffer, 0, m_buffer.length);
+			if (n < 0)
+			{
+				throw new EOFException("Unexpected end of stream");
+			}
+			m_position = 0;
+			m_limit = n;
+		}
+	}
+}
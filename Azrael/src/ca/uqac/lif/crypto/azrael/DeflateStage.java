@@ -0,0 +1,148 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.azrael.Pipeline.ScratchBuffer;
+
+/**
+ * Pipeline stage that compresses arrays of bytes with the DEFLATE
+ * algorithm. The stage keeps a pool of {@link Deflater} objects, which are
+ * reused from one item to the next, and the compressed bytes are first
+ * written into the scratch buffer of the slot carrying the item, so that
+ * only the final array of the exact size is allocated for each item.
+ * <p>
+ * Deflaters hold native memory until they are ended. Once the pipelines
+ * using the stage are closed, {@link #close()} ends the deflaters of the
+ * pool instead of leaving them to garbage collection.
+ */
+public class DeflateStage implements Pipeline.Stage, AutoCloseable
+{
+	/**
+	 * The compression level passed to the deflaters.
+	 */
+	protected final int m_level;
+	
+	/**
+	 * The deflaters not in use.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<Deflater> m_deflaters;
+	
+	/**
+	 * Whether the stage has been closed. Deflaters are then ended after use
+	 * instead of being returned to the pool.
+	 */
+	protected volatile boolean m_closed;
+	
+	/**
+	 * Creates a new compression stage.
+	 * @param level The compression level, between 0 and 9
+	 */
+	public DeflateStage(int level)
+	{
+		super();
+		m_level = level;
+		m_deflaters = new ConcurrentLinkedQueue<Deflater>();
+		m_closed = false;
+	}
+	
+	/**
+	 * Creates a new compression stage with the default compression level.
+	 */
+	public DeflateStage()
+	{
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	@Override
+	public Object process(Object o, ScratchBuffer b) throws CryptoException
+	{
+		if (!(o instanceof byte[]))
+		{
+			throw new CryptoException("Expected a byte array");
+		}
+		byte[] in = (byte[]) o;
+		Deflater d = m_deflaters.poll();
+		if (d == null)
+		{
+			d = new Deflater(m_level);
+		}
+		try
+		{
+			d.setInput(in);
+			d.finish();
+			// Worst case of DEFLATE is a few bytes per 16 KB block of stored data
+			byte[] out = b.get(in.length + in.length / 1000 + 64);
+			int len = 0;
+			while (!d.finished())
+			{
+				if (len == out.length)
+				{
+					out = b.get(out.length * 2);
+				}
+				len += d.deflate(out, len, out.length - len);
+			}
+			return Arrays.copyOf(out, len);
+		}
+		finally
+		{
+			release(d);
+		}
+	}
+	
+	/**
+	 * Returns a deflater to the pool, or ends it if the stage is closed.
+	 * @param d The deflater
+	 */
+	protected void release(/*@ non_null @*/ Deflater d)
+	{
+		d.reset();
+		m_deflaters.offer(d);
+		// If the stage was closed meanwhile, the pool may already have been emptied
+		if (m_closed && m_deflaters.remove(d))
+		{
+			d.end();
+		}
+	}
+	
+	/**
+	 * Ends the deflaters of the pool, releasing their native memory. The
+	 * stage can still be used afterwards, but its deflaters are then ended
+	 * after each item.
+	 */
+	@Override
+	public void close()
+	{
+		m_closed = true;
+		Deflater d;
+		while ((d = m_deflaters.poll()) != null)
+		{
+			d.end();
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Deflate";
+	}
+}
@@ -0,0 +1,940 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * A chain of processing stages through which a stream of objects is pushed,
+ * each stage running on its own thread(s). A typical use is to split the
+ * export of objects into the steps performed by an
+ * {@link AzraelSymmetricCipher} (see
+ * {@link AzraelSymmetricCipher#getPrintStage() getPrintStage()} and
+ * {@link AzraelSymmetricCipher#getEncryptionStage(ca.uqac.lif.crypto.symmetric.SymmetricKey)
+ * getEncryptionStage()}), interleaved with other steps such as
+ * {@link DeflateStage compression} and {@link WriteStage writing}, so that
+ * these steps proceed in parallel on different cores.
+ * <p>
+ * Consecutive stages are connected by bounded queues. When a stage lags
+ * behind, the queue in front of it fills up and the stages upstream
+ * eventually block when trying to hand it more items (backpressure); in
+ * the end, {@link #put(Object) put()} itself blocks. Items travel through
+ * the pipeline inside a fixed set of slots that are recycled once they exit
+ * the last stage; each slot also carries a {@link ScratchBuffer} that
+ * stages can reuse from one item to the next instead of allocating
+ * temporary arrays.
+ * <p>
+ * A stage given more than one thread may output items in a different order
+ * than they came in. A stage running on a single thread, on the contrary,
+ * always processes items in the order in which they were put into the
+ * pipeline; it is hence recommended that a stage writing to a file run on a
+ * single thread.
+ * <p>
+ * Each stage keeps statistics about its activity (see
+ * {@link #getStatistics()}), which can be used to identify the stage that
+ * is the bottleneck of the chain.
+ * <p>
+ * As soon as a stage fails, {@link #put(Object) put()} and
+ * {@link #close()} throw the error instead of waiting; <tt>close()</tt>
+ * also interrupts the threads of all the stages.
+ */
+public class Pipeline
+{
+	/**
+	 * The time, in milliseconds, after which a thread waiting for a queue
+	 * checks again whether a stage has failed.
+	 */
+	protected static final long POLL_INTERVAL = 100;
+	
+	/**
+	 * A step of processing in the pipeline.
+	 */
+	public interface Stage
+	{
+		/**
+		 * Processes an item. If the stage runs on more than one thread, this
+		 * method may be called concurrently.
+		 * @param o The item to process
+		 * @param b A buffer attached to the slot carrying the item, which the
+		 * stage can use as temporary storage
+		 * @return The processed item, which is passed to the next stage
+		 * @throws CryptoException Thrown if the item could not be processed
+		 */
+		/*@ non_null @*/ public Object process(/*@ non_null @*/ Object o, /*@ non_null @*/ ScratchBuffer b) throws CryptoException;
+	}
+	
+	/**
+	 * A growable array of bytes that is recycled along with the slot that
+	 * carries it.
+	 */
+	public static class ScratchBuffer
+	{
+		/**
+		 * The underlying array.
+		 */
+		/*@ non_null @*/ protected byte[] m_bytes = new byte[0];
+		
+		/**
+		 * Gets the array of this buffer, growing it if necessary. When the
+		 * array grows, its current contents are copied into the new one.
+		 * @param min_size The minimum size of the array
+		 * @return The array, whose size is at least <tt>min_size</tt>
+		 */
+		/*@ non_null @*/ public byte[] get(int min_size)
+		{
+			if (m_bytes.length < min_size)
+			{
+				m_bytes = Arrays.copyOf(m_bytes, Math.max(min_size, m_bytes.length * 2));
+			}
+			return m_bytes;
+		}
+	}
+	
+	/**
+	 * The maximum number of items in each of the queues between stages.
+	 */
+	protected final int m_capacity;
+	
+	/**
+	 * The stages of this pipeline.
+	 */
+	/*@ non_null @*/ protected final List<StageRunner> m_runners;
+	
+	/**
+	 * The slots available to carry new items.
+	 */
+	/*@ null @*/ protected BlockingQueue<Slot> m_freeSlots;
+	
+	/**
+	 * The sequence number to be given to the next item put into the pipeline.
+	 */
+	protected long m_nextSequence;
+	
+	/**
+	 * The first error that occurred in one of the stages.
+	 */
+	/*@ null @*/ protected volatile CryptoException m_error;
+	
+	/**
+	 * The lock taken when recording an error.
+	 */
+	/*@ non_null @*/ protected final Object m_errorLock = new Object();
+	
+	/**
+	 * The moment the pipeline was started, in nanoseconds.
+	 */
+	protected long m_startTime;
+	
+	/**
+	 * The moment the pipeline finished processing its last item, in
+	 * nanoseconds; -1 if it is still running.
+	 */
+	protected volatile long m_endTime;
+	
+	/**
+	 * Whether {@link #close()} has been called.
+	 */
+	protected boolean m_closed;
+	
+	/**
+	 * Creates a new empty pipeline.
+	 * @param capacity The maximum number of items in each of the queues
+	 * between stages
+	 */
+	public Pipeline(int capacity)
+	{
+		super();
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		m_capacity = capacity;
+		m_runners = new ArrayList<StageRunner>();
+		m_freeSlots = null;
+		m_nextSequence = 0;
+		m_error = null;
+		m_endTime = -1;
+		m_closed = false;
+	}
+	
+	/**
+	 * Appends a stage running on a single thread at the end of the pipeline.
+	 * @param name A name given to the stage
+	 * @param s The stage
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public Pipeline add(/*@ non_null @*/ String name, /*@ non_null @*/ Stage s)
+	{
+		return add(name, s, 1);
+	}
+	
+	/**
+	 * Appends a stage at the end of the pipeline.
+	 * @param name A name given to the stage
+	 * @param s The stage
+	 * @param threads The number of threads running the stage
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public synchronized Pipeline add(/*@ non_null @*/ String name, /*@ non_null @*/ Stage s, int threads)
+	{
+		if (m_freeSlots != null)
+		{
+			throw new IllegalStateException("Pipeline is already started");
+		}
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		m_runners.add(new StageRunner(name, s, threads, m_capacity));
+		return this;
+	}
+	
+	/**
+	 * Starts the threads of every stage in the pipeline.
+	 * @return This pipeline
+	 */
+	/*@ non_null @*/ public synchronized Pipeline start()
+	{
+		if (m_freeSlots != null)
+		{
+			throw new IllegalStateException("Pipeline is already started");
+		}
+		if (m_runners.isEmpty())
+		{
+			throw new IllegalStateException("Pipeline has no stage");
+		}
+		// Enough slots to fill every queue and keep every thread busy
+		int num_slots = 1;
+		for (StageRunner r : m_runners)
+		{
+			num_slots += m_capacity + r.m_threads;
+		}
+		m_freeSlots = new ArrayBlockingQueue<Slot>(num_slots);
+		for (int i = 0; i < num_slots; i++)
+		{
+			m_freeSlots.add(new Slot());
+		}
+		m_startTime = System.nanoTime();
+		for (int i = 0; i < m_runners.size(); i++)
+		{
+			StageRunner next = i < m_runners.size() - 1 ? m_runners.get(i + 1) : null;
+			m_runners.get(i).start(next);
+		}
+		return this;
+	}
+	
+	/**
+	 * Puts an item at the start of the pipeline. This method blocks as long as
+	 * the first stage cannot accept new items.
+	 * @param o The item
+	 * @throws CryptoException Thrown if the pipeline is closed, if one of the
+	 * stages has failed, or if the thread is interrupted while waiting
+	 */
+	public synchronized void put(/*@ non_null @*/ Object o) throws CryptoException
+	{
+		if (m_closed)
+		{
+			throw new CryptoException("Pipeline is closed");
+		}
+		if (m_freeSlots == null)
+		{
+			start();
+		}
+		try
+		{
+			Slot s = null;
+			while (s == null)
+			{
+				checkError();
+				s = m_freeSlots.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			s.m_value = o;
+			s.m_sequence = m_nextSequence++;
+			transfer(m_runners.get(0).m_input, s);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Signals that no more items will be put into the pipeline, and waits for
+	 * every stage to process the items already in it. If a stage fails, the
+	 * threads of all the stages are interrupted and the error is thrown
+	 * without waiting for the other items. Calling this method again has no
+	 * effect, except throwing the error again.
+	 * @throws CryptoException Thrown if one of the stages failed to process an
+	 * item, or if the thread is interrupted while waiting
+	 */
+	public synchronized void close() throws CryptoException
+	{
+		if (m_closed)
+		{
+			checkError();
+			return;
+		}
+		m_closed = true;
+		if (m_freeSlots == null)
+		{
+			start();
+		}
+		try
+		{
+			Slot end = new Slot();
+			end.m_last = true;
+			end.m_sequence = m_nextSequence;
+			transfer(m_runners.get(0).m_input, end);
+			for (StageRunner r : m_runners)
+			{
+				for (Thread t : r.m_workers)
+				{
+					while (t.isAlive())
+					{
+						checkError();
+						t.join(POLL_INTERVAL);
+					}
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			abort();
+			throw new CryptoException(e);
+		}
+		catch (CryptoException e)
+		{
+			abort();
+			throw e;
+		}
+		checkError();
+	}
+	
+	/**
+	 * Gets a snapshot of the statistics of each stage of this pipeline.
+	 * @return The list of statistics, in the order of the stages
+	 */
+	/*@ non_null @*/ public List<StageStatistics> getStatistics()
+	{
+		long end = m_endTime < 0 ? System.nanoTime() : m_endTime;
+		long elapsed = m_freeSlots == null ? 0 : end - m_startTime;
+		List<StageStatistics> list = new ArrayList<StageStatistics>(m_runners.size());
+		for (StageRunner r : m_runners)
+		{
+			list.add(r.getStatistics(elapsed));
+		}
+		return list;
+	}
+	
+	/**
+	 * Throws the error that occurred in a stage, if any.
+	 * @throws CryptoException The error
+	 */
+	protected void checkError() throws CryptoException
+	{
+		CryptoException e = m_error;
+		if (e != null)
+		{
+			throw e;
+		}
+	}
+	
+	/**
+	 * Puts a slot in a queue, giving up if a stage fails while waiting for
+	 * room in the queue.
+	 * @param q The queue
+	 * @param s The slot
+	 * @throws CryptoException Thrown if a stage has failed
+	 * @throws InterruptedException Thrown if the thread is interrupted while
+	 * waiting
+	 */
+	protected void transfer(/*@ non_null @*/ BlockingQueue<Slot> q, /*@ non_null @*/ Slot s) throws CryptoException, InterruptedException
+	{
+		do
+		{
+			checkError();
+		}
+		while (!q.offer(s, POLL_INTERVAL, TimeUnit.MILLISECONDS));
+	}
+	
+	/**
+	 * Interrupts the threads of all the stages, after a failure.
+	 */
+	protected void abort()
+	{
+		for (StageRunner r : m_runners)
+		{
+			for (Thread t : r.m_workers)
+			{
+				t.interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Records an error occurring in a stage. Only the first error is kept.
+	 * @param e The error
+	 */
+	protected void setError(CryptoException e)
+	{
+		// Not synchronized on the pipeline, which put() and close() hold while waiting
+		synchronized (m_errorLock)
+		{
+			if (m_error == null)
+			{
+				m_error = e;
+			}
+		}
+	}
+	
+	/**
+	 * Container carrying an item from one stage to the next.
+	 */
+	protected static class Slot
+	{
+		/**
+		 * The item.
+		 */
+		/*@ null @*/ protected Object m_value;
+		
+		/**
+		 * The position of the item in the input stream.
+		 */
+		protected long m_sequence;
+		
+		/**
+		 * Whether processing of this item failed in some stage.
+		 */
+		protected boolean m_failed;
+		
+		/**
+		 * Whether this slot is the marker signaling the end of the input.
+		 */
+		protected boolean m_last;
+		
+		/**
+		 * A buffer stages can use when processing the item.
+		 */
+		/*@ non_null @*/ protected final ScratchBuffer m_buffer = new ScratchBuffer();
+		
+		/**
+		 * Clears the contents of this slot so that it can be recycled.
+		 */
+		protected void clear()
+		{
+			m_value = null;
+			m_failed = false;
+			m_last = false;
+		}
+	}
+	
+	/**
+	 * Runs a stage on one or more threads.
+	 */
+	protected class StageRunner
+	{
+		/**
+		 * The name of the stage.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * The stage.
+		 */
+		/*@ non_null @*/ protected final Stage m_stage;
+		
+		/**
+		 * The number of threads running the stage.
+		 */
+		protected final int m_threads;
+		
+		/**
+		 * The queue of items waiting to be processed by the stage.
+		 */
+		/*@ non_null @*/ protected final BlockingQueue<Slot> m_input;
+		
+		/**
+		 * The threads running the stage.
+		 */
+		/*@ non_null @*/ protected final List<Thread> m_workers;
+		
+		/**
+		 * The number of threads that have not yet seen the end of the input.
+		 */
+		/*@ non_null @*/ protected final AtomicInteger m_running;
+		
+		/**
+		 * The number of items processed by the stage.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_processed = new AtomicLong();
+		
+		/**
+		 * The cumulative time spent processing items, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_busyTime = new AtomicLong();
+		
+		/**
+		 * The cumulative time spent waiting for the next stage to accept
+		 * items, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_blockedTime = new AtomicLong();
+		
+		/**
+		 * The sum of the sizes of the input queue observed each time an item
+		 * is taken from it.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_occupancySum = new AtomicLong();
+		
+		/**
+		 * The next stage in the pipeline, or <tt>null</tt> if this stage is
+		 * the last.
+		 */
+		/*@ null @*/ protected StageRunner m_next;
+		
+		/**
+		 * Creates a new stage runner.
+		 * @param name The name of the stage
+		 * @param s The stage
+		 * @param threads The number of threads running the stage
+		 * @param capacity The capacity of the input queue of the stage
+		 */
+		public StageRunner(String name, Stage s, int threads, int capacity)
+		{
+			super();
+			m_name = name;
+			m_stage = s;
+			m_threads = threads;
+			m_input = new ArrayBlockingQueue<Slot>(capacity);
+			m_workers = new ArrayList<Thread>(threads);
+			m_running = new AtomicInteger(threads);
+		}
+		
+		/**
+		 * Starts the threads of this stage.
+		 * @param next The next stage in the pipeline, or <tt>null</tt> if this
+		 * stage is the last
+		 */
+		protected void start(/*@ null @*/ StageRunner next)
+		{
+			m_next = next;
+			for (int i = 0; i < m_threads; i++)
+			{
+				Thread t = new Thread(m_threads == 1 ? new OrderedWorker() : new Worker(), "Pipeline-" + m_name + "-" + i);
+				t.setDaemon(true);
+				m_workers.add(t);
+				t.start();
+			}
+		}
+		
+		/**
+		 * Takes a slot from the input queue.
+		 * @return The slot
+		 * @throws InterruptedException Thrown if the thread is interrupted
+		 * while waiting
+		 */
+		protected Slot take() throws InterruptedException
+		{
+			Slot s = m_input.take();
+			m_occupancySum.addAndGet(m_input.size() + 1);
+			return s;
+		}
+		
+		/**
+		 * Processes the item in a slot and hands it to the next stage.
+		 * @param s The slot
+		 * @throws InterruptedException Thrown if the thread is interrupted
+		 * while waiting for the next stage
+		 */
+		protected void process(Slot s) throws InterruptedException
+		{
+			if (!s.m_failed)
+			{
+				long start = System.nanoTime();
+				try
+				{
+					s.m_value = m_stage.process(s.m_value, s.m_buffer);
+				}
+				catch (CryptoException e)
+				{
+					s.m_failed = true;
+					setError(e);
+				}
+				catch (RuntimeException e)
+				{
+					s.m_failed = true;
+					setError(new CryptoException(e));
+				}
+				m_busyTime.addAndGet(System.nanoTime() - start);
+				m_processed.incrementAndGet();
+			}
+			forward(s);
+		}
+		
+		/**
+		 * Hands a slot to the next stage, or recycles it if this stage is the
+		 * last.
+		 * @param s The slot
+		 * @throws InterruptedException Thrown if the thread is interrupted
+		 * while waiting for the next stage
+		 */
+		protected void forward(Slot s) throws InterruptedException
+		{
+			if (s.m_last && m_error != null)
+			{
+				// Items may have been lost; the next stages must not wait for them
+				s.m_failed = true;
+			}
+			if (m_next == null)
+			{
+				if (s.m_last)
+				{
+					m_endTime = System.nanoTime();
+				}
+				else
+				{
+					s.clear();
+					m_freeSlots.put(s);
+				}
+				return;
+			}
+			long start = System.nanoTime();
+			m_next.m_input.put(s);
+			m_blockedTime.addAndGet(System.nanoTime() - start);
+		}
+		
+		/**
+		 * Called when a thread of this stage ends without having seen the end
+		 * marker, after an error. If it is the last thread of the stage, a
+		 * failed end marker is offered to the next stage, so that it can end
+		 * too; if the queue of the next stage is full, its threads are left
+		 * to be interrupted by {@link Pipeline#close() close()}.
+		 */
+		protected void abandon()
+		{
+			if (m_running.decrementAndGet() == 0 && m_next != null)
+			{
+				Slot end = new Slot();
+				end.m_last = true;
+				end.m_failed = true;
+				m_next.m_input.offer(end);
+			}
+		}
+		
+		/**
+		 * Gets a snapshot of the statistics of this stage.
+		 * @param elapsed The time elapsed since the start of the pipeline, in
+		 * nanoseconds
+		 * @return The statistics
+		 */
+		protected StageStatistics getStatistics(long elapsed)
+		{
+			return new StageStatistics(m_name, m_threads, m_input.remainingCapacity() + m_input.size(), m_input.size(), m_processed.get(), m_busyTime.get(), m_blockedTime.get(), m_occupancySum.get(), elapsed);
+		}
+		
+		/**
+		 * Worker used when the stage runs on multiple threads. Items are
+		 * processed in the order they are taken from the queue.
+		 */
+		protected class Worker implements Runnable
+		{
+			@Override
+			public void run()
+			{
+				boolean counted = false;
+				try
+				{
+					while (true)
+					{
+						Slot s = take();
+						if (s.m_last)
+						{
+							counted = true;
+							if (m_running.decrementAndGet() == 0)
+							{
+								// Last thread of the stage: pass the marker along
+								forward(s);
+							}
+							else
+							{
+								// Put the marker back for the other threads to see
+								m_input.put(s);
+							}
+							return;
+						}
+						process(s);
+					}
+				}
+				catch (InterruptedException e)
+				{
+					setError(new CryptoException(e));
+				}
+				catch (Error e)
+				{
+					setError(new CryptoException(e));
+					throw e;
+				}
+				finally
+				{
+					if (!counted)
+					{
+						abandon();
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Worker used when the stage runs on a single thread. Items that
+		 * arrive out of order are set aside until the items that precede them
+		 * have been processed.
+		 */
+		protected class OrderedWorker implements Runnable
+		{
+			@Override
+			public void run()
+			{
+				Map<Long,Slot> pending = new HashMap<Long,Slot>();
+				long expected = 0;
+				boolean counted = false;
+				try
+				{
+					while (true)
+					{
+						Slot s = take();
+						if (s.m_last && s.m_failed)
+						{
+							// The items still missing will never come
+							counted = true;
+							m_running.decrementAndGet();
+							forward(s);
+							return;
+						}
+						pending.put(s.m_sequence, s);
+						while (pending.containsKey(expected))
+						{
+							s = pending.remove(expected++);
+							if (s.m_last)
+							{
+								counted = true;
+								m_running.decrementAndGet();
+								forward(s);
+								return;
+							}
+							process(s);
+						}
+					}
+				}
+				catch (InterruptedException e)
+				{
+					setError(new CryptoException(e));
+				}
+				catch (Error e)
+				{
+					setError(new CryptoException(e));
+					throw e;
+				}
+				finally
+				{
+					if (!counted)
+					{
+						abandon();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A snapshot of the activity of a stage in a pipeline.
+	 */
+	public static class StageStatistics
+	{
+		/**
+		 * The name of the stage.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * The number of threads running the stage.
+		 */
+		protected final int m_threads;
+		
+		/**
+		 * The capacity of the input queue of the stage.
+		 */
+		protected final int m_capacity;
+		
+		/**
+		 * The number of items in the input queue at the moment of the
+		 * snapshot.
+		 */
+		protected final int m_queueSize;
+		
+		/**
+		 * The number of items processed by the stage.
+		 */
+		protected final long m_processed;
+		
+		/**
+		 * The cumulative time spent processing items, in nanoseconds.
+		 */
+		protected final long m_busyTime;
+		
+		/**
+		 * The cumulative time spent waiting for the next stage, in
+		 * nanoseconds.
+		 */
+		protected final long m_blockedTime;
+		
+		/**
+		 * The sum of the sizes of the input queue observed each time an item
+		 * was taken from it.
+		 */
+		protected final long m_occupancySum;
+		
+		/**
+		 * The time elapsed since the start of the pipeline, in nanoseconds.
+		 */
+		protected final long m_elapsed;
+		
+		StageStatistics(String name, int threads, int capacity, int queue_size, long processed, long busy_time, long blocked_time, long occupancy_sum, long elapsed)
+		{
+			super();
+			m_name = name;
+			m_threads = threads;
+			m_capacity = capacity;
+			m_queueSize = queue_size;
+			m_processed = processed;
+			m_busyTime = busy_time;
+			m_blockedTime = blocked_time;
+			m_occupancySum = occupancy_sum;
+			m_elapsed = elapsed;
+		}
+		
+		/**
+		 * Gets the name of the stage.
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+		
+		/**
+		 * Gets the number of threads running the stage.
+		 * @return The number of threads
+		 */
+		/*@ pure @*/ public int getThreads()
+		{
+			return m_threads;
+		}
+		
+		/**
+		 * Gets the number of items in the input queue of the stage at the
+		 * moment of the snapshot.
+		 * @return The number of items
+		 */
+		/*@ pure @*/ public int getQueueSize()
+		{
+			return m_queueSize;
+		}
+		
+		/**
+		 * Gets the average fraction of the input queue of the stage that was
+		 * filled when the stage took an item from it. A value close to 1
+		 * indicates that the stage cannot keep up with the stages upstream.
+		 * @return The occupancy, between 0 and 1
+		 */
+		/*@ pure @*/ public double getOccupancy()
+		{
+			long taken = m_processed + 1;
+			return Math.min(1, (double) m_occupancySum / (double) taken / (double) m_capacity);
+		}
+		
+		/**
+		 * Gets the number of items processed by the stage.
+		 * @return The number of items
+		 */
+		/*@ pure @*/ public long getProcessed()
+		{
+			return m_processed;
+		}
+		
+		/**
+		 * Gets the number of items processed by the stage per second since the
+		 * start of the pipeline.
+		 * @return The throughput
+		 */
+		/*@ pure @*/ public double getThroughput()
+		{
+			if (m_elapsed == 0)
+			{
+				return 0;
+			}
+			return (double) m_processed * 1e9 / (double) m_elapsed;
+		}
+		
+		/**
+		 * Gets the fraction of the time the threads of the stage spent
+		 * processing items. A stage whose utilization is close to 1 is the
+		 * bottleneck of the pipeline.
+		 * @return The utilization, between 0 and 1
+		 */
+		/*@ pure @*/ public double getUtilization()
+		{
+			if (m_elapsed == 0)
+			{
+				return 0;
+			}
+			return Math.min(1, (double) m_busyTime / (double) m_elapsed / (double) m_threads);
+		}
+		
+		/**
+		 * Gets the fraction of the time the threads of the stage spent waiting
+		 * for the next stage to accept items.
+		 * @return The fraction, between 0 and 1
+		 */
+		/*@ pure @*/ public double getBlockedRatio()
+		{
+			if (m_elapsed == 0)
+			{
+				return 0;
+			}
+			return Math.min(1, (double) m_blockedTime / (double) m_elapsed / (double) m_threads);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("%s (%d thread%s): %d items, %.1f items/s, utilization %.0f%%, occupancy %.0f%%, blocked %.0f%%", m_name, m_threads, m_threads > 1 ? "s" : "", m_processed, getThroughput(), getUtilization() * 100, getOccupancy() * 100, getBlockedRatio() * 100);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Placeholder for a value of an object graph that was encrypted separately
+ * by a {@link SelectiveCipher}. The value is only decrypted when
+ * {@link #open(SymmetricKey) open()} is called, and is then kept, so that
+ * reading a record does not require decrypting all its sensitive fields.
+ * The kept value is only returned to callers passing the same key object
+ * as the one that decrypted it; any other key decrypts the value again.
+ * <p>
+ * When an object graph containing sealed values is encrypted again by a
+ * {@link SelectiveCipher}, the sealed values are written back as they are,
+ * without being decrypted.
+ */
+public class SealedValue
+{
+	/**
+	 * The encrypted form of the value.
+	 */
+	/*@ non_null @*/ protected final byte[] m_contents;
+	
+	/**
+	 * The cipher used to decrypt the value.
+	 */
+	/*@ non_null @*/ protected final SymmetricCipher<byte[]> m_cipher;
+	
+	/**
+	 * The key that decrypted the value, or <tt>null</tt> if it has not been
+	 * decrypted yet.
+	 */
+	/*@ null @*/ protected SymmetricKey m_key = null;
+	
+	/**
+	 * The decrypted value, once it has been obtained.
+	 */
+	/*@ null @*/ protected Object m_value = null;
+	
+	/**
+	 * Creates a new sealed value.
+	 * @param contents The encrypted form of the value
+	 * @param cipher The cipher used to decrypt the value
+	 */
+	SealedValue(/*@ non_null @*/ byte[] contents, /*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		super();
+		m_contents = contents;
+		m_cipher = cipher;
+	}
+	
+	/**
+	 * Decrypts the value, or returns it directly if it has already been
+	 * decrypted with the same key object.
+	 * @param k The key
+	 * @return The value
+	 * @throws CryptoException Thrown if the key is <tt>null</tt> or the value
+	 * cannot be decrypted
+	 */
+	public synchronized Object open(/*@ non_null @*/ SymmetricKey k) throws CryptoException
+	{
+		if (k == null)
+		{
+			// Otherwise a value never opened would be returned as null
+			throw new CryptoException("No key given to open a sealed value");
+		}
+		if (k == m_key)
+		{
+			return m_value;
+		}
+		Object value;
+		try
+		{
+			value = new BinaryReader().read(m_cipher.decrypt(k, m_contents));
+		}
+		catch (ReadException e)
+		{
+			throw new CryptoException(e);
+		}
+		// A value obtained with another key replaces the one that was kept
+		m_key = k;
+		m_value = value;
+		return value;
+	}
+	
+	/**
+	 * Gets the encrypted form of the value.
+	 * @return The encrypted bytes
+	 */
+	/*@ pure non_null @*/ public byte[] getContents()
+	{
+		return m_contents;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "[sealed]";
+	}
+}
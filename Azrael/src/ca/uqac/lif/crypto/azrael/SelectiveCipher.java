@@ -0,0 +1,319 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Symmetric cipher that encrypts only some of the values of an object graph,
+ * and leaves the rest of it readable. The graph is printed with a
+ * {@link BinaryPrinter}, and the values to encrypt are replaced by their
+ * encrypted form, each one encrypted on its own. A value is encrypted if:
+ * <ul>
+ * <li>its class is annotated with {@link Sensitive}, or</li>
+ * <li>its path in the printed graph matches one of the paths given to the
+ * cipher.</li>
+ * </ul>
+ * A path is a sequence of elements separated by slashes. Each element is
+ * the key of an entry in a map, or the position of an element in a list,
+ * and the element <tt>*</tt> matches any key or position. For example, the
+ * path <tt>records/&#42;/ssn</tt> matches the value of key <tt>ssn</tt> in
+ * every element of the list under key <tt>records</tt>. The value printed
+ * by a {@link ca.uqac.lif.azrael.Printable Printable} object has the same
+ * path as the object itself. The keys of maps are never encrypted, even if
+ * they are of a class annotated with {@link Sensitive}, so that a map read
+ * back by {@link #read(byte[]) read()} can still be looked up by its keys.
+ * <p>
+ * {@link #decrypt(SymmetricKey, Object) decrypt()} returns the graph with
+ * all its values decrypted. Alternately, {@link #read(byte[]) read()}
+ * returns the graph without a key, where each encrypted value is replaced
+ * by a {@link SealedValue} that can be decrypted individually.
+ */
+public class SelectiveCipher implements SymmetricCipher<Object>
+{
+	/**
+	 * The cipher used to encrypt the selected values.
+	 */
+	/*@ non_null @*/ protected final SymmetricCipher<byte[]> m_cipher;
+	
+	/**
+	 * The paths of the values to encrypt, split into their elements.
+	 */
+	/*@ non_null @*/ protected final List<String[]> m_paths;
+	
+	/**
+	 * Creates a new selective cipher.
+	 * @param cipher The cipher used to encrypt the selected values
+	 * @param paths The paths of the values to encrypt
+	 */
+	public SelectiveCipher(/*@ non_null @*/ SymmetricCipher<byte[]> cipher, String ... paths)
+	{
+		super();
+		m_cipher = cipher;
+		m_paths = new ArrayList<String[]>(paths.length);
+		for (String path : paths)
+		{
+			m_paths.add(path.split("/"));
+		}
+	}
+	
+	/**
+	 * Prints an object graph and encrypts the selected values in it.
+	 * @param k The key
+	 * @param m The object graph
+	 * @return An array of bytes, which can be passed to
+	 * {@link #decrypt(SymmetricKey, Object) decrypt()} or
+	 * {@link #read(byte[]) read()}
+	 */
+	@Override
+	public Object encrypt(SymmetricKey k, Object m) throws CryptoException
+	{
+		try
+		{
+			return new SealingPrinter(k).print(m);
+		}
+		catch (PrintException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	public Object decrypt(SymmetricKey k, Object m) throws CryptoException
+	{
+		if (!(m instanceof byte[]))
+		{
+			throw new CryptoException("Expected a byte array");
+		}
+		try
+		{
+			return new SealingReader(k).read(m);
+		}
+		catch (ReadException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Reads an object graph without decrypting its encrypted values, which are
+	 * replaced by instances of {@link SealedValue}. Printable objects whose
+	 * contents include encrypted values may fail to read themselves in this
+	 * case, as they receive the sealed values instead of their contents.
+	 * @param m The array of bytes produced by
+	 * {@link #encrypt(SymmetricKey, Object) encrypt()}
+	 * @return The object graph
+	 * @throws CryptoException Thrown if the graph cannot be read
+	 */
+	public Object read(/*@ non_null @*/ byte[] m) throws CryptoException
+	{
+		try
+		{
+			return new SealingReader(null).read(m);
+		}
+		catch (ReadException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Determines if a value must be encrypted.
+	 * @param o The value
+	 * @param path The path of the value in the graph
+	 * @return <tt>true</tt> if the value must be encrypted, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean isSelected(/*@ non_null @*/ Object o, /*@ non_null @*/ List<String> path)
+	{
+		if (o.getClass().isAnnotationPresent(Sensitive.class))
+		{
+			return true;
+		}
+		for (String[] pattern : m_paths)
+		{
+			if (pattern.length != path.size())
+			{
+				continue;
+			}
+			boolean matches = true;
+			for (int i = 0; i < pattern.length && matches; i++)
+			{
+				matches = pattern[i].equals("*") || pattern[i].equals(path.get(i));
+			}
+			if (matches)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Binary printer keeping track of the path of the value it is printing,
+	 * and encrypting the selected values. A new printer is used for each
+	 * object graph.
+	 */
+	protected class SealingPrinter extends BinaryPrinter
+	{
+		/**
+		 * The key used to encrypt the selected values.
+		 */
+		/*@ non_null @*/ protected final SymmetricKey m_key;
+		
+		/**
+		 * The path of the value being printed.
+		 */
+		/*@ non_null @*/ protected final List<String> m_path;
+		
+		/**
+		 * The number of map keys being printed, each one containing the next.
+		 * Nothing is encrypted while it is not zero.
+		 */
+		protected int m_keyDepth;
+		
+		/**
+		 * Creates a new sealing printer.
+		 * @param k The key used to encrypt the selected values
+		 */
+		public SealingPrinter(/*@ non_null @*/ SymmetricKey k)
+		{
+			super();
+			m_key = k;
+			m_path = new ArrayList<String>();
+			m_keyDepth = 0;
+		}
+		
+		@Override
+		protected void write(Object o, Encoder e) throws PrintException, IOException
+		{
+			byte[] sealed = null;
+			if (o instanceof SealedValue)
+			{
+				sealed = ((SealedValue) o).getContents();
+			}
+			else if (o != null && m_keyDepth == 0 && isSelected(o, m_path))
+			{
+				try
+				{
+					// Sealed values do not share the string table of the graph
+					sealed = m_cipher.encrypt(m_key, new BinaryPrinter().print(o));
+				}
+				catch (CryptoException ex)
+				{
+					throw new PrintException(ex);
+				}
+			}
+			if (sealed == null)
+			{
+				super.write(o, e);
+				return;
+			}
+			e.writeByte(SEALED);
+			e.writeVarint(sealed.length);
+			e.write(sealed, 0, sealed.length);
+		}
+		
+		@Override
+		protected void writeCollection(int tag, Collection<?> c, Encoder e) throws PrintException, IOException
+		{
+			e.writeByte(tag);
+			e.writeVarint(c.size());
+			int index = 0;
+			for (Object element : c)
+			{
+				m_path.add(Integer.toString(index++));
+				write(element, e);
+				m_path.remove(m_path.size() - 1);
+			}
+		}
+		
+		@Override
+		protected void writeMap(Map<?,?> map, Encoder e) throws PrintException, IOException
+		{
+			e.writeByte(MAP);
+			e.writeVarint(map.size());
+			for (Map.Entry<?,?> entry : map.entrySet())
+			{
+				m_keyDepth++;
+				write(entry.getKey(), e);
+				m_keyDepth--;
+				m_path.add(String.valueOf(entry.getKey()));
+				write(entry.getValue(), e);
+				m_path.remove(m_path.size() - 1);
+			}
+		}
+	}
+	
+	/**
+	 * Binary reader handling the values encrypted by a
+	 * {@link SealingPrinter}. They are either decrypted immediately, or
+	 * replaced by a {@link SealedValue}.
+	 */
+	protected class SealingReader extends BinaryReader
+	{
+		/**
+		 * The key used to decrypt the encrypted values, or <tt>null</tt> to
+		 * leave them encrypted.
+		 */
+		/*@ null @*/ protected final SymmetricKey m_key;
+		
+		/**
+		 * Creates a new sealing reader.
+		 * @param k The key used to decrypt the encrypted values, or
+		 * <tt>null</tt> to leave them encrypted
+		 */
+		public SealingReader(/*@ null @*/ SymmetricKey k)
+		{
+			super();
+			m_key = k;
+		}
+		
+		@Override
+		protected Object read(int tag, Decoder d) throws ReadException, IOException
+		{
+			if (tag != BinaryPrinter.SEALED)
+			{
+				return super.read(tag, d);
+			}
+			SealedValue v = new SealedValue(d.readBytes(d.readLength()), m_cipher);
+			if (m_key == null)
+			{
+				return v;
+			}
+			try
+			{
+				return v.open(m_key);
+			}
+			catch (CryptoException e)
+			{
+				throw new ReadException(e);
+			}
+		}
+	}
+}
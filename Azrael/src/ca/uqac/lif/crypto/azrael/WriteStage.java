@@ -0,0 +1,82 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.azrael;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.azrael.Pipeline.ScratchBuffer;
+
+/**
+ * Pipeline stage that writes arrays of bytes to an output stream. Each array
+ * is preceded by its length, written as a 4-byte big-endian integer, so
+ * that the records can be separated again when reading the stream. The
+ * stage returns its input unchanged.
+ * <p>
+ * The stage is meant to run on a single thread, in which case the records
+ * are written in the order they were put into the pipeline.
+ */
+public class WriteStage implements Pipeline.Stage
+{
+	/**
+	 * The stream to write to.
+	 */
+	/*@ non_null @*/ protected final OutputStream m_out;
+	
+	/**
+	 * Creates a new write stage.
+	 * @param os The stream to write to
+	 */
+	public WriteStage(/*@ non_null @*/ OutputStream os)
+	{
+		super();
+		m_out = os;
+	}
+	
+	@Override
+	public synchronized Object process(Object o, ScratchBuffer b) throws CryptoException
+	{
+		if (!(o instanceof byte[]))
+		{
+			throw new CryptoException("Expected a byte array");
+		}
+		byte[] bytes = (byte[]) o;
+		byte[] header = b.get(4);
+		header[0] = (byte) (bytes.length >>> 24);
+		header[1] = (byte) (bytes.length >>> 16);
+		header[2] = (byte) (bytes.length >>> 8);
+		header[3] = (byte) bytes.length;
+		try
+		{
+			m_out.write(header, 0, 4);
+			m_out.write(bytes);
+		}
+		catch (IOException e)
+		{
+			throw new CryptoException(e);
+		}
+		return o;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Write";
+	}
+}
@@ -0,0 +1,47 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Function that writes the digest it produces into an array of bytes
+ * supplied by the caller, instead of allocating a new one for each digest.
+ * 
+ * @param <O> The type of the hashed objects
+ */
+public interface BufferHashFunction<O>
+{
+	/**
+	 * Gets the length of the digests produced by this function.
+	 * @return The length, in bytes
+	 */
+	/*@ pure @*/ public int getDigestLength();
+	
+	/**
+	 * Computes the digest of an input object and writes it into an array.
+	 * @param o The object
+	 * @param out The array where the digest is written, which must have room
+	 * for {@link #getDigestLength()} bytes from <tt>offset</tt>
+	 * @param offset The position in the array where the digest is written
+	 * @return The number of bytes written
+	 * @throws CryptoException Thrown if the digest calculation cannot be
+	 * executed
+	 */
+	public int getDigest(/*@ non_null @*/ O o, /*@ non_null @*/ byte[] out, int offset) throws CryptoException;
+}
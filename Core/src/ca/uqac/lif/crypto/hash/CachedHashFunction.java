@@ -0,0 +1,698 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Hash function that remembers the digests computed by another function,
+ * so that hashing the same object again returns the digest without
+ * computing it. This is meant for large immutable objects that are hashed
+ * repeatedly.
+ * <p>
+ * Objects are matched either by identity, or by a cheap pre-hash given as
+ * a {@link LongHashFunction}. In the first case, the cache only holds weak
+ * references to the objects, so that it does not keep them in memory; the
+ * digest of an object is discarded once the object is garbage collected.
+ * In the second case, two different objects
+ * with the same pre-hash get the same digest; the pre-hash must therefore
+ * only be used when such collisions are acceptable, or impossible for the
+ * objects that are hashed.
+ * <p>
+ * The number of digests kept is bounded. With the {@link Eviction#LRU LRU}
+ * policy, the least recently used digest is discarded first. With the
+ * {@link Eviction#TINY_LFU TINY_LFU} policy, new digests go into a small
+ * LRU window; a digest leaving the window only enters the main part of
+ * the cache if its object has been requested more often than the object of
+ * the digest it would replace. Request frequencies are estimated with a
+ * count-min sketch whose counters are halved periodically, so that old
+ * requests weigh less. This protects frequently used digests from scans of
+ * objects that are hashed only once.
+ * <p>
+ * When several threads request the digest of the same object while it is
+ * missing, only one of them computes it; the others wait for its result.
+ * The function can be used by multiple threads at the same time. The
+ * function computing the digests must not request the digest of the same
+ * object from this cache: from the same thread, such a request fails with
+ * a {@link CryptoException}, and from another thread that the computation
+ * waits for, it deadlocks.
+ * 
+ * @param <O> The type of the hashed objects
+ * @param <H> The type of the computed hash
+ */
+public class CachedHashFunction<O,H> implements HashFunction<O,H>
+{
+	/**
+	 * The policies deciding which digest to discard when the cache is full.
+	 */
+	public enum Eviction
+	{
+		/**
+		 * Discard the least recently used digest.
+		 */
+		LRU,
+		
+		/**
+		 * Keep the digests of the most frequently requested objects, as
+		 * estimated by a frequency sketch.
+		 */
+		TINY_LFU
+	}
+	
+	/**
+	 * The percentage of the cache used as the window of the
+	 * {@link Eviction#TINY_LFU TINY_LFU} policy.
+	 */
+	protected static final int WINDOW_PERCENT = 1;
+	
+	/**
+	 * The function computing the digests.
+	 */
+	/*@ non_null @*/ protected final HashFunction<O,H> m_hash;
+	
+	/**
+	 * The function computing the pre-hash used as the key of an object, or
+	 * <tt>null</tt> to match objects by identity.
+	 */
+	/*@ null @*/ protected final LongHashFunction<? super O> m_prehash;
+	
+	/**
+	 * The eviction policy.
+	 */
+	/*@ non_null @*/ protected final Eviction m_eviction;
+	
+	/**
+	 * The maximum number of digests in the window.
+	 */
+	protected final int m_windowSize;
+	
+	/**
+	 * The maximum number of digests in the main part of the cache.
+	 */
+	protected final int m_mainSize;
+	
+	/**
+	 * The most recently stored digests, in order of last access.
+	 */
+	/*@ non_null @*/ protected final LinkedHashMap<Object,H> m_window;
+	
+	/**
+	 * The digests admitted into the main part of the cache, in order of last
+	 * access. This part is empty with the {@link Eviction#LRU LRU} policy.
+	 */
+	/*@ non_null @*/ protected final LinkedHashMap<Object,H> m_main;
+	
+	/**
+	 * The estimator of the request frequency of each key, or <tt>null</tt>
+	 * with the {@link Eviction#LRU LRU} policy.
+	 */
+	/*@ null @*/ protected final FrequencySketch m_sketch;
+	
+	/**
+	 * The digests being computed, associated with their key.
+	 */
+	/*@ non_null @*/ protected final ConcurrentHashMap<Object,Computation> m_inFlight;
+	
+	/**
+	 * The queue receiving the identity keys whose object has been collected.
+	 */
+	/*@ non_null @*/ protected final ReferenceQueue<Object> m_queue;
+	
+	/**
+	 * The number of requests served from the cache.
+	 */
+	/*@ non_null @*/ protected final LongAdder m_hits = new LongAdder();
+	
+	/**
+	 * The number of requests not served from the cache.
+	 */
+	/*@ non_null @*/ protected final LongAdder m_misses = new LongAdder();
+	
+	/**
+	 * The number of missed requests that waited for the computation of
+	 * another thread instead of computing the digest.
+	 */
+	/*@ non_null @*/ protected final LongAdder m_coalesced = new LongAdder();
+	
+	/**
+	 * The number of digests discarded from the cache, or not admitted into
+	 * it.
+	 */
+	/*@ non_null @*/ protected final LongAdder m_evictions = new LongAdder();
+	
+	/**
+	 * Creates a new cached hash function.
+	 * @param h The function computing the digests
+	 * @param max_size The maximum number of digests kept
+	 * @param prehash The function computing the pre-hash used as the key of
+	 * an object, or <tt>null</tt> to match objects by identity
+	 * @param eviction The eviction policy
+	 */
+	public CachedHashFunction(/*@ non_null @*/ HashFunction<O,H> h, int max_size, /*@ null @*/ LongHashFunction<? super O> prehash, /*@ non_null @*/ Eviction eviction)
+	{
+		super();
+		if (max_size < 1)
+		{
+			throw new IllegalArgumentException("The cache must hold at least one digest");
+		}
+		m_hash = h;
+		m_prehash = prehash;
+		m_eviction = eviction;
+		if (eviction == Eviction.LRU)
+		{
+			m_windowSize = max_size;
+			m_sketch = null;
+		}
+		else
+		{
+			m_windowSize = Math.max(1, (int) ((long) max_size * WINDOW_PERCENT / 100));
+			m_sketch = new FrequencySketch(max_size);
+		}
+		m_mainSize = max_size - m_windowSize;
+		m_window = new LinkedHashMap<Object,H>(16, 0.75f, true);
+		m_main = new LinkedHashMap<Object,H>(16, 0.75f, true);
+		m_inFlight = new ConcurrentHashMap<Object,Computation>();
+		m_queue = new ReferenceQueue<Object>();
+	}
+	
+	/**
+	 * Creates a new cached hash function matching objects by identity, with
+	 * the {@link Eviction#TINY_LFU TINY_LFU} policy.
+	 * @param h The function computing the digests
+	 * @param max_size The maximum number of digests kept
+	 */
+	public CachedHashFunction(/*@ non_null @*/ HashFunction<O,H> h, int max_size)
+	{
+		this(h, max_size, null, Eviction.TINY_LFU);
+	}
+	
+	@Override
+	public H getDigest(final O o) throws CryptoException
+	{
+		final Object key = getKey(o);
+		H h = get(key, true);
+		if (h != null)
+		{
+			m_hits.increment();
+			return h;
+		}
+		m_misses.increment();
+		Computation task = new Computation(new Callable<H>()
+		{
+			@Override
+			public H call() throws CryptoException
+			{
+				// Another thread may have stored the digest since the lookup
+				H h = get(key, false);
+				if (h == null)
+				{
+					h = m_hash.getDigest(o);
+					put(key, h);
+				}
+				return h;
+			}
+		});
+		Computation running = m_inFlight.putIfAbsent(key, task);
+		if (running != null && running.m_owner == Thread.currentThread())
+		{
+			// Waiting for the computation would never end
+			throw new CryptoException("Digest of the object requested while computing it");
+		}
+		if (running == null)
+		{
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				m_inFlight.remove(key, task);
+			}
+		}
+		else
+		{
+			m_coalesced.increment();
+			task = running;
+		}
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CryptoException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof CryptoException)
+			{
+				throw (CryptoException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CryptoException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Gets the number of digests in the cache.
+	 * @return The number of digests
+	 */
+	/*@ pure @*/ public synchronized int size()
+	{
+		return m_window.size() + m_main.size();
+	}
+	
+	/**
+	 * Discards all the digests in the cache. The statistics are kept.
+	 */
+	public synchronized void clear()
+	{
+		m_window.clear();
+		m_main.clear();
+	}
+	
+	/**
+	 * Gets the statistics of the cache since its creation.
+	 * @return The statistics
+	 */
+	/*@ non_null @*/ public Stats getStats()
+	{
+		return new Stats(m_hits.sum(), m_misses.sum(), m_coalesced.sum(), m_evictions.sum());
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Cached " + m_hash;
+	}
+	
+	/**
+	 * Gets the key under which the digest of an object is stored.
+	 * @param o The object
+	 * @return The key
+	 * @throws CryptoException Thrown if the pre-hash cannot be computed
+	 */
+	protected Object getKey(O o) throws CryptoException
+	{
+		if (m_prehash == null)
+		{
+			return new IdentityKey(o, m_queue);
+		}
+		return m_prehash.getLongDigest(o);
+	}
+	
+	/**
+	 * Gets the digest stored under a key.
+	 * @param key The key
+	 * @param record Set to <tt>true</tt> to count the lookup as a request
+	 * for the key in the frequency sketch
+	 * @return The digest, or <tt>null</tt> if the cache does not contain it
+	 */
+	protected synchronized H get(Object key, boolean record)
+	{
+		expunge();
+		if (record && m_sketch != null)
+		{
+			m_sketch.increment(key);
+		}
+		H h = m_window.get(key);
+		return h != null ? h : m_main.get(key);
+	}
+	
+	/**
+	 * Stores a digest in the window, and moves the digest leaving the window
+	 * to the main part of the cache if it is admitted there.
+	 * @param key The key of the digest
+	 * @param h The digest
+	 */
+	protected synchronized void put(Object key, H h)
+	{
+		expunge();
+		if (m_window.containsKey(key) || m_main.containsKey(key))
+		{
+			return;
+		}
+		m_window.put(key, h);
+		if (m_window.size() <= m_windowSize)
+		{
+			return;
+		}
+		Iterator<Map.Entry<Object,H>> it = m_window.entrySet().iterator();
+		Map.Entry<Object,H> eldest = it.next();
+		Object candidate = eldest.getKey();
+		H candidate_digest = eldest.getValue();
+		it.remove();
+		if (m_mainSize == 0)
+		{
+			m_evictions.increment();
+			return;
+		}
+		if (m_main.size() < m_mainSize)
+		{
+			m_main.put(candidate, candidate_digest);
+			return;
+		}
+		it = m_main.entrySet().iterator();
+		Object victim = it.next().getKey();
+		if (m_sketch.frequency(candidate) > m_sketch.frequency(victim))
+		{
+			it.remove();
+			m_main.put(candidate, candidate_digest);
+		}
+		m_evictions.increment();
+	}
+	
+	/**
+	 * Discards the digests of the objects that have been collected. Must be
+	 * called while holding the lock of this object.
+	 */
+	protected void expunge()
+	{
+		Reference<?> ref;
+		while ((ref = m_queue.poll()) != null)
+		{
+			if (m_window.remove(ref) == null)
+			{
+				m_main.remove(ref);
+			}
+		}
+	}
+	
+	/**
+	 * Computation of a digest, which remembers the thread running it.
+	 */
+	protected class Computation extends FutureTask<H>
+	{
+		/**
+		 * The thread that created the computation, and runs it.
+		 */
+		/*@ non_null @*/ protected final Thread m_owner;
+		
+		/**
+		 * Creates a new computation.
+		 * @param c The callable computing the digest
+		 */
+		public Computation(/*@ non_null @*/ Callable<H> c)
+		{
+			super(c);
+			m_owner = Thread.currentThread();
+		}
+	}
+	
+	/**
+	 * Weak reference matching an object by identity. The identity hash code
+	 * of the object is kept, so that the key can still be found once the
+	 * object is collected; a key whose object has been collected is only
+	 * equal to itself.
+	 */
+	protected static class IdentityKey extends WeakReference<Object>
+	{
+		/**
+		 * The identity hash code of the object.
+		 */
+		protected final int m_hashCode;
+		
+		/**
+		 * Creates a new key.
+		 * @param o The object
+		 * @param q The queue receiving the key once the object is collected
+		 */
+		public IdentityKey(/*@ non_null @*/ Object o, /*@ non_null @*/ ReferenceQueue<Object> q)
+		{
+			super(o, q);
+			m_hashCode = System.identityHashCode(o);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof IdentityKey))
+			{
+				return false;
+			}
+			Object mine = get();
+			return mine != null && mine == ((IdentityKey) o).get();
+		}
+	}
+	
+	/**
+	 * Count-min sketch estimating the number of recent requests for each
+	 * key. Each key increments one counter in each of four rows of a single
+	 * table, and its frequency is the smallest of these counters. Counters
+	 * saturate at 15, and all of them are halved once the number of
+	 * increments reaches ten times the size of the cache.
+	 */
+	protected static class FrequencySketch
+	{
+		/**
+		 * The maximum value of a counter.
+		 */
+		protected static final int MAX_COUNT = 15;
+		
+		/**
+		 * The multipliers used to compute the counter of a key in each row.
+		 */
+		protected static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+		
+		/**
+		 * The counters.
+		 */
+		/*@ non_null @*/ protected final byte[] m_table;
+		
+		/**
+		 * The mask giving a position in the table.
+		 */
+		protected final int m_mask;
+		
+		/**
+		 * The number of increments after which the counters are halved.
+		 */
+		protected final int m_sampleSize;
+		
+		/**
+		 * The number of increments since the counters were last halved.
+		 */
+		protected int m_increments;
+		
+		/**
+		 * Creates a new sketch.
+		 * @param max_size The maximum number of digests in the cache
+		 */
+		public FrequencySketch(int max_size)
+		{
+			super();
+			int size = Integer.highestOneBit(Math.max(16, Math.min(max_size, 1 << 26)) * 8 - 1);
+			m_table = new byte[size];
+			m_mask = size - 1;
+			m_sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * max_size);
+		}
+		
+		/**
+		 * Records a request for a key.
+		 * @param key The key
+		 */
+		public void increment(/*@ non_null @*/ Object key)
+		{
+			int h = key.hashCode();
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				int index = index(h, i);
+				if (m_table[index] < MAX_COUNT)
+				{
+					m_table[index]++;
+					added = true;
+				}
+			}
+			if (added && ++m_increments >= m_sampleSize)
+			{
+				for (int i = 0; i < m_table.length; i++)
+				{
+					m_table[i] >>>= 1;
+				}
+				m_increments /= 2;
+			}
+		}
+		
+		/**
+		 * Estimates the number of recent requests for a key.
+		 * @param key The key
+		 * @return The estimate, between 0 and {@link #MAX_COUNT}
+		 */
+		/*@ pure @*/ public int frequency(/*@ non_null @*/ Object key)
+		{
+			int h = key.hashCode();
+			int min = MAX_COUNT;
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				min = Math.min(min, m_table[index(h, i)]);
+			}
+			return min;
+		}
+		
+		/**
+		 * Gets the position of the counter of a key in a row.
+		 * @param h The hash code of the key
+		 * @param row The row
+		 * @return The position in the table
+		 */
+		protected int index(int h, int row)
+		{
+			long x = (h + SEEDS[row]) * SEEDS[row];
+			return (int) (x ^ (x >>> 32)) & m_mask;
+		}
+	}
+	
+	/**
+	 * The statistics of a cached hash function at some point in time.
+	 */
+	public static class Stats
+	{
+		/**
+		 * The number of requests served from the cache.
+		 */
+		protected final long m_hits;
+		
+		/**
+		 * The number of requests not served from the cache.
+		 */
+		protected final long m_misses;
+		
+		/**
+		 * The number of missed requests that waited for the computation of
+		 * another thread.
+		 */
+		protected final long m_coalesced;
+		
+		/**
+		 * The number of digests discarded from the cache, or not admitted into
+		 * it.
+		 */
+		protected final long m_evictions;
+		
+		/**
+		 * Creates new statistics.
+		 * @param hits The number of requests served from the cache
+		 * @param misses The number of requests not served from the cache
+		 * @param coalesced The number of missed requests that waited for the
+		 * computation of another thread
+		 * @param evictions The number of digests discarded from the cache
+		 */
+		protected Stats(long hits, long misses, long coalesced, long evictions)
+		{
+			super();
+			m_hits = hits;
+			m_misses = misses;
+			m_coalesced = coalesced;
+			m_evictions = evictions;
+		}
+		
+		/**
+		 * Gets the number of requests served from the cache.
+		 * @return The number of requests
+		 */
+		/*@ pure @*/ public long getHits()
+		{
+			return m_hits;
+		}
+		
+		/**
+		 * Gets the number of requests not served from the cache. This includes
+		 * the requests that waited for the computation of another thread.
+		 * @return The number of requests
+		 */
+		/*@ pure @*/ public long getMisses()
+		{
+			return m_misses;
+		}
+		
+		/**
+		 * Gets the number of missed requests that waited for the computation
+		 * of another thread instead of computing the digest.
+		 * @return The number of requests
+		 */
+		/*@ pure @*/ public long getCoalesced()
+		{
+			return m_coalesced;
+		}
+		
+		/**
+		 * Gets the number of missed requests that did not wait for another
+		 * thread. This is an upper bound on the number of digests computed by
+		 * the underlying function, since such a request may find the digest
+		 * stored by another thread just after its lookup.
+		 * @return The number of requests
+		 */
+		/*@ pure @*/ public long getComputations()
+		{
+			return m_misses - m_coalesced;
+		}
+		
+		/**
+		 * Gets the number of digests discarded from the cache, or not admitted
+		 * into it.
+		 * @return The number of digests
+		 */
+		/*@ pure @*/ public long getEvictions()
+		{
+			return m_evictions;
+		}
+		
+		/**
+		 * Gets the fraction of the requests served from the cache.
+		 * @return The fraction, between 0 and 1, or 0 if there was no request
+		 */
+		/*@ pure @*/ public double getHitRate()
+		{
+			long total = m_hits + m_misses;
+			return total == 0 ? 0 : (double) m_hits / total;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("%d hits, %d misses (%d coalesced), %d evictions, hit rate %.3f", m_hits, m_misses, m_coalesced, m_evictions, getHitRate());
+		}
+	}
+}
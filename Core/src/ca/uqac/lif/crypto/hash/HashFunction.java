@@ -17,6 +17,13 @@
  */
 package ca.uqac.lif.crypto.hash;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 import ca.uqac.lif.crypto.CryptoException;
 
 /**
@@ -37,4 +44,89 @@ public interface HashFunction<O,H>
 	 * executed
 	 */
 	/*@ non_null @*/ public H getDigest(/*@ non_null @*/ O o) throws CryptoException;
+	
+	/**
+	 * Gets the digests of several input objects. By default, this method calls
+	 * {@link #getDigest(Object) getDigest()} on each object; functions can
+	 * override it to set up their computation once for the whole list.
+	 * @param objects The objects
+	 * @return The digests, in the same order as the objects
+	 * @throws CryptoException Thrown if the calculation of a digest cannot be
+	 * executed
+	 */
+	/*@ non_null @*/ public default List<H> getDigests(/*@ non_null @*/ List<? extends O> objects) throws CryptoException
+	{
+		List<H> digests = new ArrayList<H>(objects.size());
+		for (O o : objects)
+		{
+			digests.add(getDigest(o));
+		}
+		return digests;
+	}
+	
+	/**
+	 * Gets the digests of several input objects in parallel. The list is split
+	 * into one slice per available processor, and the digests of each slice
+	 * are computed with {@link #getDigests(List)} by a task given to an
+	 * executor. The current thread waits until all the tasks are done.
+	 * @param objects The objects
+	 * @param executor The executor running the tasks
+	 * @return The digests, in the same order as the objects
+	 * @throws CryptoException Thrown if the calculation of a digest cannot be
+	 * executed, or if the current thread is interrupted while waiting
+	 */
+	/*@ non_null @*/ public default List<H> getDigests(/*@ non_null @*/ List<? extends O> objects, /*@ non_null @*/ Executor executor) throws CryptoException
+	{
+		int size = objects.size();
+		int slices = Math.min(size, Runtime.getRuntime().availableProcessors());
+		if (slices <= 1)
+		{
+			return getDigests(objects);
+		}
+		List<FutureTask<List<H>>> tasks = new ArrayList<FutureTask<List<H>>>(slices);
+		for (int i = 0; i < slices; i++)
+		{
+			final List<? extends O> slice = objects.subList((int) ((long) size * i / slices), (int) ((long) size * (i + 1) / slices));
+			FutureTask<List<H>> task = new FutureTask<List<H>>(new Callable<List<H>>()
+			{
+				@Override
+				public List<H> call() throws CryptoException
+				{
+					return HashFunction.this.getDigests(slice);
+				}
+			});
+			tasks.add(task);
+			executor.execute(task);
+		}
+		List<H> digests = new ArrayList<H>(size);
+		try
+		{
+			for (FutureTask<List<H>> task : tasks)
+			{
+				digests.addAll(task.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CryptoException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof CryptoException)
+			{
+				throw (CryptoException) e.getCause();
+			}
+			throw new CryptoException(e.getCause());
+		}
+		finally
+		{
+			// Tasks still pending after a failure are not needed anymore
+			for (FutureTask<List<H>> task : tasks)
+			{
+				task.cancel(false);
+			}
+		}
+		return digests;
+	}
 }
@@ -0,0 +1,40 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Function that produces a digest in the form of an <tt>int</tt>. Compared
+ * to a {@link HashFunction HashFunction&lt;O,Integer&gt;}, the digest is
+ * returned without being boxed, which matters to code computing many
+ * digests, such as hash tables and sketches.
+ * 
+ * @param <O> The type of the hashed objects
+ */
+public interface IntHashFunction<O>
+{
+	/**
+	 * Gets a digest out of an input object.
+	 * @param o The object
+	 * @return The digest
+	 * @throws CryptoException Thrown if the digest calculation cannot be
+	 * executed
+	 */
+	public int getIntDigest(/*@ non_null @*/ O o) throws CryptoException;
+}
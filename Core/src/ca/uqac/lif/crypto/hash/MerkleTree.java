@@ -0,0 +1,420 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.security.MessageDigest;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Binary tree of digests over a sequence of leaves, whose root is a digest
+ * of the whole sequence. The digest of a leaf is the digest of the byte
+ * <tt>0x00</tt> followed by its contents, and the digest of an inner node
+ * is the digest of the byte <tt>0x01</tt> followed by the digests of its
+ * two children; these prefixes prevent a leaf from being passed off as an
+ * inner node. At each level, the nodes are paired from left to right, and
+ * a last node left without a sibling is moved up as is. The root is
+ * therefore the same as the one defined by RFC 6962.
+ * <p>
+ * The tree keeps the digests of all its nodes. When a leaf changes, only
+ * the nodes on its path to the root are computed again, which takes a
+ * number of digests logarithmic in the number of leaves. The tree can also
+ * produce a {@link Proof} that a leaf is part of it, made of the siblings
+ * of the nodes on this path, which can be checked against the root alone
+ * with {@link #verify(HashFunction, byte[], byte[], Proof) verify()}.
+ * <p>
+ * When the tree is built, the digests of each level can be computed in
+ * parallel with
+ * {@link HashFunction#getDigests(List, Executor) getDigests()}. The tree
+ * can be used by multiple threads at the same time.
+ */
+public class MerkleTree
+{
+	/**
+	 * The byte put in front of the contents of a leaf.
+	 */
+	protected static final byte LEAF = 0x00;
+	
+	/**
+	 * The byte put in front of the digests of the children of an inner node.
+	 */
+	protected static final byte NODE = 0x01;
+	
+	/**
+	 * The minimum number of digests in a level for them to be computed in
+	 * parallel. Smaller levels are not worth the cost of the tasks.
+	 */
+	protected static final int PARALLEL_THRESHOLD = 1024;
+	
+	/**
+	 * The hash function computing the digests of the nodes.
+	 */
+	/*@ non_null @*/ protected final HashFunction<byte[],byte[]> m_hash;
+	
+	/**
+	 * The digests of the nodes of each level, from the leaves to the root.
+	 */
+	/*@ non_null @*/ protected final byte[][][] m_levels;
+	
+	/**
+	 * The number of leaves of the tree.
+	 */
+	protected final int m_size;
+	
+	/**
+	 * Creates a new tree, computing its digests in the current thread.
+	 * @param h The hash function computing the digests of the nodes
+	 * @param leaves The contents of the leaves
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 */
+	public MerkleTree(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ List<byte[]> leaves) throws CryptoException
+	{
+		this(h, leaves, null);
+	}
+	
+	/**
+	 * Creates a new tree, computing its digests in parallel.
+	 * @param h The hash function computing the digests of the nodes
+	 * @param leaves The contents of the leaves
+	 * @param executor The executor running the tasks computing the digests,
+	 * or <tt>null</tt> to compute them in the current thread
+	 * @throws CryptoException Thrown if a digest cannot be computed, or if
+	 * the current thread is interrupted while waiting for the tasks
+	 */
+	public MerkleTree(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ final List<byte[]> leaves, /*@ null @*/ Executor executor) throws CryptoException
+	{
+		super();
+		m_hash = h;
+		m_size = leaves.size();
+		int height = 1;
+		for (int n = leaves.size(); n > 1; n = (n + 1) / 2)
+		{
+			height++;
+		}
+		m_levels = new byte[height][][];
+		if (leaves.isEmpty())
+		{
+			// The root of an empty tree is the digest of nothing
+			m_levels[0] = new byte[][] {h.getDigest(new byte[0])};
+			return;
+		}
+		// The inputs of the digests are only built when a task asks for them
+		m_levels[0] = getDigests(new AbstractList<byte[]>()
+		{
+			@Override
+			public byte[] get(int index)
+			{
+				return leafInput(leaves.get(index));
+			}
+			
+			@Override
+			public int size()
+			{
+				return leaves.size();
+			}
+		}, executor);
+		for (int i = 1; i < height; i++)
+		{
+			final byte[][] below = m_levels[i - 1];
+			m_levels[i] = getDigests(new AbstractList<byte[]>()
+			{
+				@Override
+				public byte[] get(int index)
+				{
+					return nodeInput(below[2 * index], below[2 * index + 1]);
+				}
+				
+				@Override
+				public int size()
+				{
+					return below.length / 2;
+				}
+			}, executor);
+			if (below.length % 2 == 1)
+			{
+				// The last node has no sibling and moves up as is
+				byte[][] level = new byte[m_levels[i].length + 1][];
+				System.arraycopy(m_levels[i], 0, level, 0, m_levels[i].length);
+				level[level.length - 1] = below[below.length - 1];
+				m_levels[i] = level;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of leaves of the tree.
+	 * @return The number of leaves
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Gets the digest of the root of the tree.
+	 * @return The digest
+	 */
+	/*@ pure non_null @*/ public synchronized byte[] getRoot()
+	{
+		return m_levels[m_levels.length - 1][0].clone();
+	}
+	
+	/**
+	 * Gets the digest of a leaf of the tree.
+	 * @param index The position of the leaf
+	 * @return The digest
+	 * @throws IndexOutOfBoundsException Thrown if there is no leaf at this
+	 * position
+	 */
+	/*@ pure non_null @*/ public synchronized byte[] getLeafDigest(int index)
+	{
+		checkIndex(index);
+		return m_levels[0][index].clone();
+	}
+	
+	/**
+	 * Replaces the contents of a leaf, and computes again the digests of the
+	 * nodes on its path to the root.
+	 * @param index The position of the leaf
+	 * @param leaf The new contents of the leaf
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 * @throws IndexOutOfBoundsException Thrown if there is no leaf at this
+	 * position
+	 */
+	public synchronized void update(int index, /*@ non_null @*/ byte[] leaf) throws CryptoException
+	{
+		checkIndex(index);
+		m_levels[0][index] = m_hash.getDigest(leafInput(leaf));
+		for (int i = 1; i < m_levels.length; i++)
+		{
+			byte[][] below = m_levels[i - 1];
+			index /= 2;
+			if (2 * index + 1 < below.length)
+			{
+				m_levels[i][index] = m_hash.getDigest(nodeInput(below[2 * index], below[2 * index + 1]));
+			}
+			else
+			{
+				// The node has no sibling and moves up as is
+				m_levels[i][index] = below[2 * index];
+			}
+		}
+	}
+	
+	/**
+	 * Gets a proof that a leaf is part of the tree.
+	 * @param index The position of the leaf
+	 * @return The proof
+	 * @throws IndexOutOfBoundsException Thrown if there is no leaf at this
+	 * position
+	 */
+	/*@ non_null @*/ public synchronized Proof getProof(int index)
+	{
+		checkIndex(index);
+		List<byte[]> path = new ArrayList<byte[]>(m_levels.length - 1);
+		int position = index;
+		for (int i = 0; i < m_levels.length - 1; i++)
+		{
+			int sibling = position ^ 1;
+			if (sibling < m_levels[i].length)
+			{
+				path.add(m_levels[i][sibling].clone());
+			}
+			position /= 2;
+		}
+		return new Proof(index, m_size, path.toArray(new byte[path.size()][]));
+	}
+	
+	/**
+	 * Checks that a leaf is part of a tree, given the root of the tree and a
+	 * proof produced by {@link #getProof(int) getProof()}.
+	 * @param h The hash function computing the digests of the nodes
+	 * @param root The digest of the root of the tree
+	 * @param leaf The contents of the leaf
+	 * @param proof The proof
+	 * @return <tt>true</tt> if the proof shows that the leaf is part of the
+	 * tree at the position given in the proof, <tt>false</tt> otherwise
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 */
+	public static boolean verify(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ byte[] root, /*@ non_null @*/ byte[] leaf, /*@ non_null @*/ Proof proof) throws CryptoException
+	{
+		int index = proof.getIndex();
+		int count = proof.getSize();
+		if (index < 0 || index >= count)
+		{
+			return false;
+		}
+		byte[] digest = h.getDigest(leafInput(leaf));
+		int used = 0;
+		for (; count > 1; count = (count + 1) / 2, index /= 2)
+		{
+			if ((index & 1) == 1)
+			{
+				if (used == proof.m_path.length)
+				{
+					return false;
+				}
+				digest = h.getDigest(nodeInput(proof.m_path[used++], digest));
+			}
+			else if (index + 1 < count)
+			{
+				if (used == proof.m_path.length)
+				{
+					return false;
+				}
+				digest = h.getDigest(nodeInput(digest, proof.m_path[used++]));
+			}
+		}
+		return used == proof.m_path.length && MessageDigest.isEqual(digest, root);
+	}
+	
+	/**
+	 * Computes the digests of a level of the tree.
+	 * @param inputs The inputs of the digests
+	 * @param executor The executor running the tasks computing the digests,
+	 * or <tt>null</tt> to compute them in the current thread
+	 * @return The digests
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 */
+	protected byte[][] getDigests(/*@ non_null @*/ List<byte[]> inputs, /*@ null @*/ Executor executor) throws CryptoException
+	{
+		List<byte[]> digests;
+		if (executor == null || inputs.size() < PARALLEL_THRESHOLD)
+		{
+			digests = m_hash.getDigests(inputs);
+		}
+		else
+		{
+			digests = m_hash.getDigests(inputs, executor);
+		}
+		return digests.toArray(new byte[digests.size()][]);
+	}
+	
+	/**
+	 * Checks that a leaf exists at a given position.
+	 * @param index The position
+	 * @throws IndexOutOfBoundsException Thrown if there is no leaf at this
+	 * position
+	 */
+	protected void checkIndex(int index)
+	{
+		if (index < 0 || index >= m_size)
+		{
+			throw new IndexOutOfBoundsException("No leaf at position " + index);
+		}
+	}
+	
+	/**
+	 * Builds the input of the digest of a leaf.
+	 * @param leaf The contents of the leaf
+	 * @return The input
+	 */
+	/*@ non_null @*/ protected static byte[] leafInput(/*@ non_null @*/ byte[] leaf)
+	{
+		byte[] input = new byte[leaf.length + 1];
+		input[0] = LEAF;
+		System.arraycopy(leaf, 0, input, 1, leaf.length);
+		return input;
+	}
+	
+	/**
+	 * Builds the input of the digest of an inner node.
+	 * @param left The digest of the left child
+	 * @param right The digest of the right child
+	 * @return The input
+	 */
+	/*@ non_null @*/ protected static byte[] nodeInput(/*@ non_null @*/ byte[] left, /*@ non_null @*/ byte[] right)
+	{
+		byte[] input = new byte[left.length + right.length + 1];
+		input[0] = NODE;
+		System.arraycopy(left, 0, input, 1, left.length);
+		System.arraycopy(right, 0, input, left.length + 1, right.length);
+		return input;
+	}
+	
+	/**
+	 * Proof that a leaf is part of a tree. It is made of the position of the
+	 * leaf, the number of leaves of the tree, and the digests of the siblings
+	 * of the nodes on the path from the leaf to the root, from the bottom up.
+	 * Nodes without a sibling are skipped, so that the proof holds at most
+	 * one digest per level.
+	 */
+	public static class Proof
+	{
+		/**
+		 * The position of the leaf.
+		 */
+		protected final int m_index;
+		
+		/**
+		 * The number of leaves of the tree.
+		 */
+		protected final int m_size;
+		
+		/**
+		 * The digests of the siblings, from the bottom up.
+		 */
+		/*@ non_null @*/ protected final byte[][] m_path;
+		
+		/**
+		 * Creates a new proof.
+		 * @param index The position of the leaf
+		 * @param size The number of leaves of the tree
+		 * @param path The digests of the siblings, from the bottom up
+		 */
+		public Proof(int index, int size, /*@ non_null @*/ byte[][] path)
+		{
+			super();
+			m_index = index;
+			m_size = size;
+			m_path = path;
+		}
+		
+		/**
+		 * Gets the position of the leaf.
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getIndex()
+		{
+			return m_index;
+		}
+		
+		/**
+		 * Gets the number of leaves of the tree.
+		 * @return The number of leaves
+		 */
+		/*@ pure @*/ public int getSize()
+		{
+			return m_size;
+		}
+		
+		/**
+		 * Gets the digests of the siblings of the nodes on the path from the
+		 * leaf to the root.
+		 * @return The digests, from the bottom up
+		 */
+		/*@ pure non_null @*/ public byte[][] getPath()
+		{
+			return m_path;
+		}
+	}
+}
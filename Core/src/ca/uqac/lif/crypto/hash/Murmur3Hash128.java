@@ -0,0 +1,239 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ca.uqac.lif.crypto.util.ByteArray;
+
+/**
+ * Implementation of the 128-bit variant (x64_128) of the
+ * <a href="https://github.com/aappleby/smhasher">MurmurHash3</a> hash
+ * function. This function is not cryptographic: it is meant for uses where
+ * a fast and well-distributed hash is enough, such as sharding and
+ * deduplication.
+ * <p>
+ * The input is read eight bytes at a time through a little-endian
+ * {@link ByteBuffer}, which works on arrays as well as on direct
+ * (off-heap) buffers. The digest is made of two <tt>long</tt>s; as an
+ * array, it is the 8 bytes of the first followed by the 8 bytes of the
+ * second, each in little-endian order. As a single <tt>long</tt>, it is
+ * the first of the two.
+ */
+public class Murmur3Hash128 implements HashFunction<byte[],byte[]>, LongHashFunction<byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * A single publicly visible instance of the hash function, with a seed
+	 * of 0.
+	 */
+	public static final Murmur3Hash128 instance = new Murmur3Hash128(0);
+	
+	/**
+	 * The first multiplier of the algorithm.
+	 */
+	protected static final long C1 = 0x87c37b91114253d5L;
+	
+	/**
+	 * The second multiplier of the algorithm.
+	 */
+	protected static final long C2 = 0x4cf5ad432745937fL;
+	
+	/**
+	 * The seed of the function.
+	 */
+	protected final long m_seed;
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param seed The seed of the function
+	 */
+	public Murmur3Hash128(long seed)
+	{
+		super();
+		m_seed = seed;
+	}
+	
+	@Override
+	public long getLongDigest(byte[] m)
+	{
+		return hash(ByteBuffer.wrap(m).order(ByteOrder.LITTLE_ENDIAN), 0, m.length, null, 0);
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		byte[] out = new byte[16];
+		getDigest(m, out, 0);
+		return out;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return 16;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset)
+	{
+		hash(ByteBuffer.wrap(m).order(ByteOrder.LITTLE_ENDIAN), 0, m.length, out, offset);
+		return 16;
+	}
+	
+	/**
+	 * Computes the digest of the remaining bytes of a buffer, and writes it
+	 * into an array. The position of the buffer is left unchanged.
+	 * @param b The buffer
+	 * @param out The array where the digest is written
+	 * @param offset The position in the array where the digest is written
+	 * @return The first <tt>long</tt> of the digest
+	 */
+	public long hash(/*@ non_null @*/ ByteBuffer b, /*@ null @*/ byte[] out, int offset)
+	{
+		return hash(ByteArray.littleEndian(b), b.position(), b.remaining(), out, offset);
+	}
+	
+	/**
+	 * Gets a view of this hash function operating on buffers. The digest of a
+	 * buffer is computed over its remaining bytes.
+	 * @return The function
+	 */
+	/*@ non_null @*/ public LongHashFunction<ByteBuffer> forBuffers()
+	{
+		return new LongHashFunction<ByteBuffer>()
+		{
+			@Override
+			public long getLongDigest(ByteBuffer b)
+			{
+				return hash(b, null, 0);
+			}
+		};
+	}
+	
+	/**
+	 * Computes the digest of a part of a little-endian buffer.
+	 * @param b The buffer
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @param out The array where the whole digest is written, or
+	 * <tt>null</tt> to only return its first <tt>long</tt>
+	 * @param out_offset The position in the array where the digest is
+	 * written
+	 * @return The first <tt>long</tt> of the digest
+	 */
+	protected long hash(/*@ non_null @*/ ByteBuffer b, int offset, int length, /*@ null @*/ byte[] out, int out_offset)
+	{
+		long h1 = m_seed;
+		long h2 = m_seed;
+		int i = offset;
+		int limit = offset + (length & ~15);
+		for (; i < limit; i += 16)
+		{
+			h1 ^= mixK1(b.getLong(i));
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(b.getLong(i + 8));
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		int rest = length & 15;
+		if (rest > 8)
+		{
+			long k2 = 0;
+			for (int j = rest - 1; j >= 8; j--)
+			{
+				k2 = (k2 << 8) | (b.get(i + j) & 0xFF);
+			}
+			h2 ^= mixK2(k2);
+		}
+		if (rest > 0)
+		{
+			long k1 = 0;
+			for (int j = Math.min(rest, 8) - 1; j >= 0; j--)
+			{
+				k1 = (k1 << 8) | (b.get(i + j) & 0xFF);
+			}
+			h1 ^= mixK1(k1);
+		}
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		if (out != null)
+		{
+			for (int j = 0; j < 8; j++)
+			{
+				out[out_offset + j] = (byte) (h1 >>> (8 * j));
+				out[out_offset + 8 + j] = (byte) (h2 >>> (8 * j));
+			}
+		}
+		return h1;
+	}
+	
+	/**
+	 * Scrambles the first eight bytes of a block of input.
+	 * @param k The input
+	 * @return The scrambled input
+	 */
+	protected static long mixK1(long k)
+	{
+		k *= C1;
+		k = Long.rotateLeft(k, 31);
+		return k * C2;
+	}
+	
+	/**
+	 * Scrambles the last eight bytes of a block of input.
+	 * @param k The input
+	 * @return The scrambled input
+	 */
+	protected static long mixK2(long k)
+	{
+		k *= C2;
+		k = Long.rotateLeft(k, 33);
+		return k * C1;
+	}
+	
+	/**
+	 * Applies the final mix of the algorithm to one half of the digest.
+	 * @param k The half of the digest
+	 * @return The mixed value
+	 */
+	protected static long fmix(long k)
+	{
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Murmur3-128";
+	}
+}
@@ -0,0 +1,195 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ca.uqac.lif.crypto.util.ByteArray;
+
+/**
+ * Implementation of the 32-bit variant (x86_32) of the
+ * <a href="https://github.com/aappleby/smhasher">MurmurHash3</a> hash
+ * function. This function is not cryptographic: it is meant for uses where
+ * a fast and well-distributed hash is enough, such as hash tables and Bloom
+ * filters.
+ * <p>
+ * The input is read four bytes at a time through a little-endian
+ * {@link ByteBuffer}, which works on arrays as well as on direct
+ * (off-heap) buffers. The digest is an <tt>int</tt>; as an array, it is
+ * the 4 bytes of this <tt>int</tt> in little-endian order.
+ */
+public class Murmur3Hash32 implements HashFunction<byte[],byte[]>, IntHashFunction<byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * A single publicly visible instance of the hash function, with a seed
+	 * of 0.
+	 */
+	public static final Murmur3Hash32 instance = new Murmur3Hash32(0);
+	
+	/**
+	 * The first multiplier of the algorithm.
+	 */
+	protected static final int C1 = 0xcc9e2d51;
+	
+	/**
+	 * The second multiplier of the algorithm.
+	 */
+	protected static final int C2 = 0x1b873593;
+	
+	/**
+	 * The seed of the function.
+	 */
+	protected final int m_seed;
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param seed The seed of the function
+	 */
+	public Murmur3Hash32(int seed)
+	{
+		super();
+		m_seed = seed;
+	}
+	
+	@Override
+	public int getIntDigest(byte[] m)
+	{
+		return hash(m, 0, m.length);
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		byte[] out = new byte[4];
+		getDigest(m, out, 0);
+		return out;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return 4;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset)
+	{
+		int h = hash(m, 0, m.length);
+		for (int i = 0; i < 4; i++)
+		{
+			out[offset + i] = (byte) (h >>> (8 * i));
+		}
+		return 4;
+	}
+	
+	/**
+	 * Computes the digest of a part of an array.
+	 * @param m The array
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @return The digest
+	 */
+	public int hash(/*@ non_null @*/ byte[] m, int offset, int length)
+	{
+		return hash(ByteBuffer.wrap(m).order(ByteOrder.LITTLE_ENDIAN), offset, length);
+	}
+	
+	/**
+	 * Computes the digest of the remaining bytes of a buffer. The position of
+	 * the buffer is left unchanged.
+	 * @param b The buffer
+	 * @return The digest
+	 */
+	public int hash(/*@ non_null @*/ ByteBuffer b)
+	{
+		return hash(ByteArray.littleEndian(b), b.position(), b.remaining());
+	}
+	
+	/**
+	 * Gets a view of this hash function operating on buffers. The digest of a
+	 * buffer is computed over its remaining bytes.
+	 * @return The function
+	 */
+	/*@ non_null @*/ public IntHashFunction<ByteBuffer> forBuffers()
+	{
+		return new IntHashFunction<ByteBuffer>()
+		{
+			@Override
+			public int getIntDigest(ByteBuffer b)
+			{
+				return hash(b);
+			}
+		};
+	}
+	
+	/**
+	 * Computes the digest of a part of a little-endian buffer.
+	 * @param b The buffer
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @return The digest
+	 */
+	protected int hash(/*@ non_null @*/ ByteBuffer b, int offset, int length)
+	{
+		int h = m_seed;
+		int i = offset;
+		int limit = offset + (length & ~3);
+		for (; i < limit; i += 4)
+		{
+			h ^= mixK(b.getInt(i));
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int rest = length & 3;
+		if (rest > 0)
+		{
+			int k = 0;
+			for (int j = rest - 1; j >= 0; j--)
+			{
+				k = (k << 8) | (b.get(i + j) & 0xFF);
+			}
+			h ^= mixK(k);
+		}
+		h ^= length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	/**
+	 * Scrambles four bytes of input before they are mixed into the digest.
+	 * @param k The input
+	 * @return The scrambled input
+	 */
+	protected static int mixK(int k)
+	{
+		k *= C1;
+		k = Integer.rotateLeft(k, 15);
+		return k * C2;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Murmur3-32";
+	}
+}
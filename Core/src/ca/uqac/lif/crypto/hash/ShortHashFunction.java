@@ -17,6 +17,9 @@
  */
 package ca.uqac.lif.crypto.hash;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import ca.uqac.lif.crypto.CryptoException;
 
 /**
@@ -25,12 +28,18 @@ import ca.uqac.lif.crypto.CryptoException;
  * instantiating the function, otherwise it defaults to 8. If the underlying
  * function produces a byte array of smaller length, the output is right-padded
  * with zeros.
+ * <p>
+ * The function can also return the first 8 bytes of the digest as a
+ * <tt>long</tt>, read in big-endian order, or write the digest into an array
+ * supplied by the caller. If the underlying function is a
+ * {@link BufferHashFunction}, its digest is then computed into an array
+ * kept by each thread, so that neither operation allocates anything.
  * 
  * @author Sylvain Hallé
  *
  * @param <O> The type of objects used as the input of the hash function
  */
-public class ShortHashFunction<O> implements HashFunction<O,byte[]>
+public class ShortHashFunction<O> implements HashFunction<O,byte[]>, LongHashFunction<O>, BufferHashFunction<O>
 {
 	/**
 	 * The hash function used to calculate the original digest.
@@ -42,16 +51,49 @@ public class ShortHashFunction<O> implements HashFunction<O,byte[]>
 	 */
 	protected final int m_maxBytes;
 	
+	/**
+	 * The hash function used to calculate the original digest, if it can
+	 * write its digest into an array, or <tt>null</tt> otherwise.
+	 */
+	/*@ null @*/ protected final BufferHashFunction<O> m_innerBuffer;
+	
+	/**
+	 * The array in which each thread computes the original digest, if the
+	 * function can write its digest into an array, or <tt>null</tt>
+	 * otherwise.
+	 */
+	/*@ null @*/ protected final ThreadLocal<byte[]> m_buffers;
+	
 	/**
 	 * Creates a new short hash function.
 	 * @param h The hash function used to calculate the original digest
 	 * @param max_bytes The maximum number of bytes to be returned in a digest
 	 */
+	@SuppressWarnings("unchecked")
 	public ShortHashFunction(/*@ non_null @*/ HashFunction<O,byte[]> h, int max_bytes)
 	{
 		super();
 		m_innerHash = h;
 		m_maxBytes = max_bytes;
+		if (h instanceof BufferHashFunction)
+		{
+			// A HashFunction<O,...> that is a BufferHashFunction takes the same inputs
+			m_innerBuffer = (BufferHashFunction<O>) h;
+			final int length = m_innerBuffer.getDigestLength();
+			m_buffers = new ThreadLocal<byte[]>()
+			{
+				@Override
+				protected byte[] initialValue()
+				{
+					return new byte[length];
+				}
+			};
+		}
+		else
+		{
+			m_innerBuffer = null;
+			m_buffers = null;
+		}
 	}
 	
 	/**
@@ -67,12 +109,105 @@ public class ShortHashFunction<O> implements HashFunction<O,byte[]>
 	@Override
 	public byte[] getDigest(O o) throws CryptoException
 	{
-		byte[] digest = m_innerHash.getDigest(o);
-		byte[] out_digest = new byte[m_maxBytes];
-		for (int i = 0; i < out_digest.length; i++)
+		return truncate(m_innerHash.getDigest(o));
+	}
+	
+	/**
+	 * Gets the digests of several objects. If the underlying function can
+	 * write its digest into an array, every original digest is computed into
+	 * the array of the current thread; otherwise, the original digests are
+	 * computed with the batch method of the underlying function.
+	 */
+	@Override
+	public List<byte[]> getDigests(List<? extends O> objects) throws CryptoException
+	{
+		List<byte[]> digests = new ArrayList<byte[]>(objects.size());
+		if (m_innerBuffer == null)
+		{
+			for (byte[] digest : m_innerHash.getDigests(objects))
+			{
+				digests.add(truncate(digest));
+			}
+			return digests;
+		}
+		byte[] digest = m_buffers.get();
+		for (O o : objects)
 		{
-			out_digest[i] = i < digest.length ? digest[i] : 0;
+			m_innerBuffer.getDigest(o, digest, 0);
+			digests.add(truncate(digest));
 		}
+		return digests;
+	}
+	
+	/**
+	 * Gets the first 8 bytes of the digest as a <tt>long</tt>. If the
+	 * function is limited to fewer than 8 bytes, the missing bytes are zeros,
+	 * so that the result is the array returned by
+	 * {@link #getDigest(Object) getDigest()}, padded to 8 bytes and read in
+	 * big-endian order.
+	 */
+	@Override
+	public long getLongDigest(O o) throws CryptoException
+	{
+		byte[] digest = getInnerDigest(o);
+		int len = Math.min(Math.min(m_maxBytes, 8), digest.length);
+		long out = 0;
+		for (int i = 0; i < len; i++)
+		{
+			out |= (digest[i] & 0xFFL) << (56 - 8 * i);
+		}
+		return out;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return m_maxBytes;
+	}
+	
+	@Override
+	public int getDigest(O o, byte[] out, int offset) throws CryptoException
+	{
+		byte[] digest = getInnerDigest(o);
+		int len = Math.min(m_maxBytes, digest.length);
+		System.arraycopy(digest, 0, out, offset, len);
+		for (int i = len; i < m_maxBytes; i++)
+		{
+			out[offset + i] = 0;
+		}
+		return m_maxBytes;
+	}
+	
+	/**
+	 * Truncates an original digest to the length of the digests of this
+	 * function, or pads it with zeros if it is shorter.
+	 * @param digest The original digest
+	 * @return A new array containing the truncated digest
+	 */
+	protected byte[] truncate(byte[] digest)
+	{
+		byte[] out_digest = new byte[m_maxBytes];
+		System.arraycopy(digest, 0, out_digest, 0, Math.min(m_maxBytes, digest.length));
 		return out_digest;
 	}
+	
+	/**
+	 * Computes the original digest of an object. If the underlying function
+	 * can write its digest into an array, the digest is computed into the
+	 * array of the current thread, which is overwritten by the next call.
+	 * @param o The object
+	 * @return The digest
+	 * @throws CryptoException Thrown if the digest calculation cannot be
+	 * executed
+	 */
+	protected byte[] getInnerDigest(O o) throws CryptoException
+	{
+		if (m_innerBuffer == null)
+		{
+			return m_innerHash.getDigest(o);
+		}
+		byte[] digest = m_buffers.get();
+		m_innerBuffer.getDigest(o, digest, 0);
+		return digest;
+	}
 }
@@ -0,0 +1,469 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.ByteKeyConverter;
+import ca.uqac.lif.crypto.symmetric.KeyGenerator;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Implementation of the <a href="https://www.aumasson.jp/siphash/">SipHash</a>
+ * keyed hash function. Without the key, an attacker cannot predict the
+ * digest of an input, and hence cannot build inputs that all fall in the
+ * same bucket of a hash table. The function is meant to be used with a
+ * secret random key, such as one produced by {@link #generator}.
+ * <p>
+ * The function is defined by its number of compression and finalization
+ * rounds: SipHash-2-4 is the original version, and SipHash-1-3 is a faster
+ * version that is commonly used for hash tables. Byte arrays are hashed as
+ * is; character strings are hashed as their UTF-16 encoding in
+ * little-endian order, without building this encoding. The digest is a
+ * <tt>long</tt>; as an array, it is the 8 bytes of this <tt>long</tt> in
+ * little-endian order, as in the reference implementation.
+ */
+public class SipHash implements HashFunction<byte[],byte[]>, LongHashFunction<byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * A generator for SipHash keys using a default source of randomness.
+	 */
+	/*@ non_null @*/ public static final SipHashKeyGenerator generator = new SipHashKeyGenerator();
+	
+	/**
+	 * A converter of SipHash keys to and from arrays of bytes.
+	 */
+	/*@ non_null @*/ public static final SipHashKeyConverter converter = new SipHashKeyConverter();
+	
+	/**
+	 * The first half of the key.
+	 */
+	protected final long m_k0;
+	
+	/**
+	 * The second half of the key.
+	 */
+	protected final long m_k1;
+	
+	/**
+	 * The number of rounds after each block of input.
+	 */
+	protected final int m_cRounds;
+	
+	/**
+	 * The number of rounds at the end of the input.
+	 */
+	protected final int m_dRounds;
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param k The key
+	 * @param c_rounds The number of rounds after each block of input
+	 * @param d_rounds The number of rounds at the end of the input
+	 */
+	public SipHash(/*@ non_null @*/ SipHashKey k, int c_rounds, int d_rounds)
+	{
+		super();
+		m_k0 = k.m_k0;
+		m_k1 = k.m_k1;
+		m_cRounds = c_rounds;
+		m_dRounds = d_rounds;
+	}
+	
+	/**
+	 * Creates a new instance of SipHash-2-4.
+	 * @param k The key
+	 */
+	public SipHash(/*@ non_null @*/ SipHashKey k)
+	{
+		this(k, 2, 4);
+	}
+	
+	/**
+	 * Creates a new instance of SipHash-1-3.
+	 * @param k The key
+	 * @return The hash function
+	 */
+	/*@ non_null @*/ public static SipHash sip13(/*@ non_null @*/ SipHashKey k)
+	{
+		return new SipHash(k, 1, 3);
+	}
+	
+	@Override
+	public long getLongDigest(byte[] m)
+	{
+		return hash(m, 0, m.length);
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		byte[] out = new byte[8];
+		getDigest(m, out, 0);
+		return out;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return 8;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset)
+	{
+		long h = hash(m, 0, m.length);
+		for (int i = 0; i < 8; i++)
+		{
+			out[offset + i] = (byte) (h >>> (8 * i));
+		}
+		return 8;
+	}
+	
+	/**
+	 * Computes the digest of a part of an array.
+	 * @param m The array
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @return The digest
+	 */
+	public long hash(/*@ non_null @*/ byte[] m, int offset, int length)
+	{
+		ByteBuffer b = ByteBuffer.wrap(m).order(ByteOrder.LITTLE_ENDIAN);
+		State s = new State(m_k0, m_k1);
+		int i = offset;
+		int limit = offset + (length & ~7);
+		for (; i < limit; i += 8)
+		{
+			s.compress(b.getLong(i), m_cRounds);
+		}
+		long last = (long) length << 56;
+		for (int j = (length & 7) - 1; j >= 0; j--)
+		{
+			last |= (m[i + j] & 0xFFL) << (8 * j);
+		}
+		s.compress(last, m_cRounds);
+		return s.finish(m_dRounds);
+	}
+	
+	/**
+	 * Computes the digest of a character string, as the digest of its UTF-16
+	 * encoding in little-endian order.
+	 * @param cs The string
+	 * @return The digest
+	 */
+	public long hash(/*@ non_null @*/ CharSequence cs)
+	{
+		State s = new State(m_k0, m_k1);
+		int length = cs.length();
+		int i = 0;
+		int limit = length & ~3;
+		for (; i < limit; i += 4)
+		{
+			s.compress(cs.charAt(i) | (long) cs.charAt(i + 1) << 16 | (long) cs.charAt(i + 2) << 32 | (long) cs.charAt(i + 3) << 48, m_cRounds);
+		}
+		long last = (long) (2 * length) << 56;
+		for (int j = 0; i + j < length; j++)
+		{
+			last |= (long) cs.charAt(i + j) << (16 * j);
+		}
+		s.compress(last, m_cRounds);
+		return s.finish(m_dRounds);
+	}
+	
+	/**
+	 * Computes the digest of a single <tt>long</tt>, as the digest of its 8
+	 * bytes in little-endian order.
+	 * @param x The value
+	 * @return The digest
+	 */
+	public long hash(long x)
+	{
+		State s = new State(m_k0, m_k1);
+		s.compress(x, m_cRounds);
+		s.compress(8L << 56, m_cRounds);
+		return s.finish(m_dRounds);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "SipHash-" + m_cRounds + "-" + m_dRounds;
+	}
+	
+	/**
+	 * The internal state of the function while it hashes an input.
+	 */
+	protected static class State
+	{
+		/**
+		 * Word 0 of the state.
+		 */
+		protected long m_v0;
+		
+		/**
+		 * Word 1 of the state.
+		 */
+		protected long m_v1;
+		
+		/**
+		 * Word 2 of the state.
+		 */
+		protected long m_v2;
+		
+		/**
+		 * Word 3 of the state.
+		 */
+		protected long m_v3;
+		
+		/**
+		 * Creates the initial state for a key.
+		 * @param k0 The first half of the key
+		 * @param k1 The second half of the key
+		 */
+		State(long k0, long k1)
+		{
+			super();
+			m_v0 = k0 ^ 0x736f6d6570736575L;
+			m_v1 = k1 ^ 0x646f72616e646f6dL;
+			m_v2 = k0 ^ 0x6c7967656e657261L;
+			m_v3 = k1 ^ 0x7465646279746573L;
+		}
+		
+		/**
+		 * Mixes a block of eight bytes of input into the state.
+		 * @param m The block, read in little-endian order
+		 * @param rounds The number of rounds
+		 */
+		void compress(long m, int rounds)
+		{
+			m_v3 ^= m;
+			rounds(rounds);
+			m_v0 ^= m;
+		}
+		
+		/**
+		 * Finishes the computation of the digest.
+		 * @param rounds The number of rounds
+		 * @return The digest
+		 */
+		long finish(int rounds)
+		{
+			m_v2 ^= 0xFF;
+			rounds(rounds);
+			return m_v0 ^ m_v1 ^ m_v2 ^ m_v3;
+		}
+		
+		/**
+		 * Applies SipRound to the state a number of times.
+		 * @param rounds The number of times
+		 */
+		void rounds(int rounds)
+		{
+			long v0 = m_v0, v1 = m_v1, v2 = m_v2, v3 = m_v3;
+			for (int i = 0; i < rounds; i++)
+			{
+				v0 += v1;
+				v1 = Long.rotateLeft(v1, 13);
+				v1 ^= v0;
+				v0 = Long.rotateLeft(v0, 32);
+				v2 += v3;
+				v3 = Long.rotateLeft(v3, 16);
+				v3 ^= v2;
+				v0 += v3;
+				v3 = Long.rotateLeft(v3, 21);
+				v3 ^= v0;
+				v2 += v1;
+				v1 = Long.rotateLeft(v1, 17);
+				v1 ^= v2;
+				v2 = Long.rotateLeft(v2, 32);
+			}
+			m_v0 = v0;
+			m_v1 = v1;
+			m_v2 = v2;
+			m_v3 = v3;
+		}
+	}
+	
+	/**
+	 * A key for SipHash, made of 16 bytes.
+	 */
+	public static class SipHashKey implements SymmetricKey
+	{
+		/**
+		 * The first 8 bytes of the key, read in little-endian order.
+		 */
+		protected final long m_k0;
+		
+		/**
+		 * The last 8 bytes of the key, read in little-endian order.
+		 */
+		protected final long m_k1;
+		
+		/**
+		 * The key's optional name.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * Creates a new key.
+		 * @param contents The 16 bytes of the key
+		 * @param name The key's name
+		 * @throws CryptoException Thrown if the key does not have 16 bytes
+		 */
+		public SipHashKey(/*@ non_null @*/ byte[] contents, /*@ non_null @*/ String name) throws CryptoException
+		{
+			super();
+			if (contents.length != 16)
+			{
+				throw new CryptoException("A SipHash key must have 16 bytes");
+			}
+			ByteBuffer b = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+			m_k0 = b.getLong(0);
+			m_k1 = b.getLong(8);
+			m_name = name;
+		}
+		
+		/**
+		 * Creates a new key from its two halves.
+		 * @param k0 The first 8 bytes of the key, read in little-endian order
+		 * @param k1 The last 8 bytes of the key, read in little-endian order
+		 * @param name The key's name
+		 */
+		protected SipHashKey(long k0, long k1, /*@ non_null @*/ String name)
+		{
+			super();
+			m_k0 = k0;
+			m_k1 = k1;
+			m_name = name;
+		}
+		
+		/**
+		 * Gets the 16 bytes of the key.
+		 * @return The bytes
+		 */
+		/*@ non_null @*/ public byte[] getContents()
+		{
+			return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(m_k0).putLong(m_k1).array();
+		}
+		
+		@Override
+		public String getName()
+		{
+			return m_name;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return Long.hashCode(m_k0 ^ m_k1);
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof SipHashKey))
+			{
+				return false;
+			}
+			SipHashKey k = (SipHashKey) o;
+			return k.m_k0 == m_k0 && k.m_k1 == m_k1;
+		}
+		
+		@Override
+		public String toString()
+		{
+			// The contents of the key are not shown, as it is meant to be secret
+			return "SipHash key " + m_name;
+		}
+	}
+	
+	/**
+	 * A generator for random SipHash keys.
+	 */
+	public static class SipHashKeyGenerator implements KeyGenerator
+	{
+		/**
+		 * The source of randomness of the keys.
+		 */
+		/*@ non_null @*/ protected final SecureRandom m_random;
+		
+		/**
+		 * Creates a new key generator.
+		 * @param random The source of randomness of the keys
+		 */
+		public SipHashKeyGenerator(/*@ non_null @*/ SecureRandom random)
+		{
+			super();
+			m_random = random;
+		}
+		
+		/**
+		 * Creates a new key generator with a default source of randomness.
+		 */
+		public SipHashKeyGenerator()
+		{
+			this(new SecureRandom());
+		}
+		
+		@Override
+		public SipHashKey generateKey(String name) throws CryptoException
+		{
+			byte[] contents = new byte[16];
+			m_random.nextBytes(contents);
+			return new SipHashKey(contents, name);
+		}
+		
+		@Override
+		public SipHashKey generateKey() throws CryptoException
+		{
+			return generateKey("");
+		}
+	}
+	
+	/**
+	 * Converts SipHash keys into byte arrays.
+	 */
+	public static class SipHashKeyConverter implements ByteKeyConverter<SipHashKey>
+	{
+		@Override
+		public byte[] getBytes(SipHashKey key)
+		{
+			return key.getContents();
+		}
+		
+		/**
+		 * Gets a key from its 16 bytes.
+		 * @throws IllegalArgumentException Thrown if the array does not have
+		 * 16 bytes
+		 */
+		@Override
+		public SipHashKey getKey(byte[] contents)
+		{
+			if (contents.length != 16)
+			{
+				throw new IllegalArgumentException("A SipHash key must have 16 bytes");
+			}
+			ByteBuffer b = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+			return new SipHashKey(b.getLong(0), b.getLong(8), "");
+		}
+	}
+}
@@ -0,0 +1,500 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Hash map whose buckets are selected with {@link SipHash} instead of
+ * {@link Object#hashCode()}, so that lookups remain in constant time even
+ * when an attacker chooses the keys. The keys are hashed as follows:
+ * <ul>
+ * <li>strings are hashed from their characters;</li>
+ * <li>arrays of bytes are hashed from their contents, and are also compared
+ * by their contents, contrary to a {@link java.util.HashMap HashMap};</li>
+ * <li>other keys are hashed from their own hash code. SipHash spreads these
+ * codes over the buckets, but keys with the same hash code still collide,
+ * so such keys are only protected if their hash code is.</li>
+ * </ul>
+ * Each map uses its own random key by default, so that inputs colliding in
+ * one map do not collide in another. The map does not accept <tt>null</tt>
+ * keys, and cannot be used by multiple threads at the same time.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class SipHashMap<K,V> extends AbstractMap<K,V>
+{
+	/**
+	 * The initial number of buckets of a map.
+	 */
+	protected static final int INITIAL_CAPACITY = 16;
+	
+	/**
+	 * The hash function selecting the buckets.
+	 */
+	/*@ non_null @*/ protected final SipHash m_function;
+	
+	/**
+	 * The buckets of the map, whose number is a power of 2.
+	 */
+	/*@ non_null @*/ protected Node<K,V>[] m_table;
+	
+	/**
+	 * The number of entries in the map.
+	 */
+	protected int m_size;
+	
+	/**
+	 * The number of structural modifications made to the map, used to detect
+	 * modifications during an iteration.
+	 */
+	protected int m_modCount;
+	
+	/**
+	 * Creates a new empty map using SipHash-1-3 with a random key.
+	 */
+	public SipHashMap()
+	{
+		this(newFunction());
+	}
+	
+	/**
+	 * Creates a new empty map.
+	 * @param function The hash function selecting the buckets
+	 */
+	public SipHashMap(/*@ non_null @*/ SipHash function)
+	{
+		super();
+		m_function = function;
+		m_table = newTable(INITIAL_CAPACITY);
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_size;
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return getNode(key) != null;
+	}
+	
+	@Override
+	public V get(Object key)
+	{
+		Node<K,V> n = getNode(key);
+		return n == null ? null : n.m_value;
+	}
+	
+	@Override
+	public V put(K key, V value)
+	{
+		long h = hash(key);
+		int index = (int) h & (m_table.length - 1);
+		for (Node<K,V> n = m_table[index]; n != null; n = n.m_next)
+		{
+			if (n.m_hash == h && sameKey(n.m_key, key))
+			{
+				V old = n.m_value;
+				n.m_value = value;
+				return old;
+			}
+		}
+		m_table[index] = new Node<K,V>(h, key, value, m_table[index]);
+		m_modCount++;
+		if (++m_size > m_table.length - (m_table.length >>> 2))
+		{
+			resize();
+		}
+		return null;
+	}
+	
+	@Override
+	public V remove(Object key)
+	{
+		Node<K,V> n = removeNode(key);
+		return n == null ? null : n.m_value;
+	}
+	
+	@Override
+	public void clear()
+	{
+		Arrays.fill(m_table, null);
+		m_size = 0;
+		m_modCount++;
+	}
+	
+	@Override
+	public Set<Map.Entry<K,V>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<K,V>>()
+		{
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator()
+			{
+				return new NodeIterator();
+			}
+			
+			@Override
+			public int size()
+			{
+				return m_size;
+			}
+			
+			@Override
+			public void clear()
+			{
+				SipHashMap.this.clear();
+			}
+		};
+	}
+	
+	/**
+	 * Finds the entry of a key.
+	 * @param key The key
+	 * @return The entry, or <tt>null</tt> if the map does not contain the key
+	 */
+	/*@ null @*/ protected Node<K,V> getNode(Object key)
+	{
+		long h = hash(key);
+		for (Node<K,V> n = m_table[(int) h & (m_table.length - 1)]; n != null; n = n.m_next)
+		{
+			if (n.m_hash == h && sameKey(n.m_key, key))
+			{
+				return n;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes the entry of a key.
+	 * @param key The key
+	 * @return The removed entry, or <tt>null</tt> if the map does not contain
+	 * the key
+	 */
+	/*@ null @*/ protected Node<K,V> removeNode(Object key)
+	{
+		long h = hash(key);
+		int index = (int) h & (m_table.length - 1);
+		Node<K,V> previous = null;
+		for (Node<K,V> n = m_table[index]; n != null; n = n.m_next)
+		{
+			if (n.m_hash == h && sameKey(n.m_key, key))
+			{
+				if (previous == null)
+				{
+					m_table[index] = n.m_next;
+				}
+				else
+				{
+					previous.m_next = n.m_next;
+				}
+				m_size--;
+				m_modCount++;
+				return n;
+			}
+			previous = n;
+		}
+		return null;
+	}
+	
+	/**
+	 * Computes the digest of a key.
+	 * @param key The key
+	 * @return The digest
+	 */
+	protected long hash(Object key)
+	{
+		if (key instanceof String)
+		{
+			return m_function.hash((String) key);
+		}
+		if (key instanceof byte[])
+		{
+			byte[] b = (byte[]) key;
+			return m_function.hash(b, 0, b.length);
+		}
+		if (key == null)
+		{
+			throw new NullPointerException("This map does not accept null keys");
+		}
+		return m_function.hash(key.hashCode());
+	}
+	
+	/**
+	 * Determines if two keys are equal. Arrays of bytes are compared by their
+	 * contents.
+	 * @param k1 The first key
+	 * @param k2 The second key
+	 * @return <tt>true</tt> if the keys are equal, <tt>false</tt> otherwise
+	 */
+	protected static boolean sameKey(Object k1, Object k2)
+	{
+		if (k1 == k2)
+		{
+			return true;
+		}
+		if (k1 instanceof byte[] && k2 instanceof byte[])
+		{
+			return Arrays.equals((byte[]) k1, (byte[]) k2);
+		}
+		return k1.equals(k2);
+	}
+	
+	/**
+	 * Doubles the number of buckets of the map.
+	 */
+	protected void resize()
+	{
+		Node<K,V>[] old = m_table;
+		Node<K,V>[] table = newTable(old.length * 2);
+		for (Node<K,V> n : old)
+		{
+			while (n != null)
+			{
+				Node<K,V> next = n.m_next;
+				int index = (int) n.m_hash & (table.length - 1);
+				n.m_next = table[index];
+				table[index] = n;
+				n = next;
+			}
+		}
+		m_table = table;
+	}
+	
+	/**
+	 * Creates an array of buckets.
+	 * @param capacity The number of buckets
+	 * @return The array
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <K,V> Node<K,V>[] newTable(int capacity)
+	{
+		return (Node<K,V>[]) new Node<?,?>[capacity];
+	}
+	
+	/**
+	 * Creates an instance of SipHash-1-3 with a random key.
+	 * @return The hash function
+	 */
+	/*@ non_null @*/ protected static SipHash newFunction()
+	{
+		try
+		{
+			return SipHash.sip13(SipHash.generator.generateKey());
+		}
+		catch (CryptoException e)
+		{
+			// Cannot happen, as random keys always have the right length
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * An entry of the map, which is also an element of the linked list of
+	 * its bucket.
+	 *
+	 * @param <K> The type of the key
+	 * @param <V> The type of the value
+	 */
+	protected static class Node<K,V> implements Map.Entry<K,V>
+	{
+		/**
+		 * The digest of the key.
+		 */
+		protected final long m_hash;
+		
+		/**
+		 * The key.
+		 */
+		/*@ non_null @*/ protected final K m_key;
+		
+		/**
+		 * The value.
+		 */
+		/*@ null @*/ protected V m_value;
+		
+		/**
+		 * The next entry in the same bucket.
+		 */
+		/*@ null @*/ protected Node<K,V> m_next;
+		
+		/**
+		 * Creates a new entry.
+		 * @param hash The digest of the key
+		 * @param key The key
+		 * @param value The value
+		 * @param next The next entry in the same bucket
+		 */
+		Node(long hash, /*@ non_null @*/ K key, /*@ null @*/ V value, /*@ null @*/ Node<K,V> next)
+		{
+			super();
+			m_hash = hash;
+			m_key = key;
+			m_value = value;
+			m_next = next;
+		}
+		
+		@Override
+		public K getKey()
+		{
+			return m_key;
+		}
+		
+		@Override
+		public V getValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public V setValue(V value)
+		{
+			V old = m_value;
+			m_value = value;
+			return old;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Map.Entry))
+			{
+				return false;
+			}
+			Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+			return sameKey(m_key, e.getKey()) && (m_value == null ? e.getValue() == null : m_value.equals(e.getValue()));
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			// Same definition as Map.Entry, except for arrays of bytes which are compared by contents
+			int h = m_key instanceof byte[] ? Arrays.hashCode((byte[]) m_key) : m_key.hashCode();
+			return h ^ (m_value == null ? 0 : m_value.hashCode());
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_key + "=" + m_value;
+		}
+	}
+	
+	/**
+	 * Iterator over the entries of the map.
+	 */
+	protected class NodeIterator implements Iterator<Map.Entry<K,V>>
+	{
+		/**
+		 * The next entry to return, or <tt>null</tt> if there is none.
+		 */
+		/*@ null @*/ protected Node<K,V> m_nextNode;
+		
+		/**
+		 * The index of the bucket of the next entry.
+		 */
+		protected int m_index;
+		
+		/**
+		 * The last entry returned, or <tt>null</tt> if it has been removed.
+		 */
+		/*@ null @*/ protected Node<K,V> m_current;
+		
+		/**
+		 * The number of modifications of the map this iterator expects.
+		 */
+		protected int m_expectedModCount;
+		
+		/**
+		 * Creates a new iterator positioned before the first entry.
+		 */
+		NodeIterator()
+		{
+			super();
+			m_expectedModCount = m_modCount;
+			advance();
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return m_nextNode != null;
+		}
+		
+		@Override
+		public Map.Entry<K,V> next()
+		{
+			if (m_modCount != m_expectedModCount)
+			{
+				throw new ConcurrentModificationException();
+			}
+			if (m_nextNode == null)
+			{
+				throw new NoSuchElementException();
+			}
+			m_current = m_nextNode;
+			m_nextNode = m_nextNode.m_next;
+			if (m_nextNode == null)
+			{
+				advance();
+			}
+			return m_current;
+		}
+		
+		@Override
+		public void remove()
+		{
+			if (m_current == null)
+			{
+				throw new IllegalStateException();
+			}
+			if (m_modCount != m_expectedModCount)
+			{
+				throw new ConcurrentModificationException();
+			}
+			removeNode(m_current.m_key);
+			m_current = null;
+			m_expectedModCount = m_modCount;
+		}
+		
+		/**
+		 * Moves to the first entry of the next non-empty bucket.
+		 */
+		protected void advance()
+		{
+			while (m_nextNode == null && m_index < m_table.length)
+			{
+				m_nextNode = m_table[m_index++];
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ca.uqac.lif.crypto.util.ByteArray;
+
+/**
+ * Implementation of the
+ * <a href="https://github.com/Cyan4973/xxHash">XXH64</a> hash function.
+ * This function is not cryptographic: it is meant for uses where a fast
+ * and well-distributed hash is enough, such as sharding, deduplication and
+ * Bloom filters.
+ * <p>
+ * The input is read eight bytes at a time through a little-endian
+ * {@link ByteBuffer}, which works on arrays as well as on direct
+ * (off-heap) buffers. The digest is a <tt>long</tt>; as an array, it is
+ * the 8 bytes of this <tt>long</tt> in big-endian order, which is the
+ * canonical representation of XXH64.
+ */
+public class XXHash64 implements HashFunction<byte[],byte[]>, LongHashFunction<byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * A single publicly visible instance of the hash function, with a seed
+	 * of 0.
+	 */
+	public static final XXHash64 instance = new XXHash64(0);
+	
+	/**
+	 * The first prime of the algorithm.
+	 */
+	protected static final long P1 = 0x9E3779B185EBCA87L;
+	
+	/**
+	 * The second prime of the algorithm.
+	 */
+	protected static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	
+	/**
+	 * The third prime of the algorithm.
+	 */
+	protected static final long P3 = 0x165667B19E3779F9L;
+	
+	/**
+	 * The fourth prime of the algorithm.
+	 */
+	protected static final long P4 = 0x85EBCA77C2B2AE63L;
+	
+	/**
+	 * The fifth prime of the algorithm.
+	 */
+	protected static final long P5 = 0x27D4EB2F165667C5L;
+	
+	/**
+	 * The seed of the function.
+	 */
+	protected final long m_seed;
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param seed The seed of the function
+	 */
+	public XXHash64(long seed)
+	{
+		super();
+		m_seed = seed;
+	}
+	
+	@Override
+	public long getLongDigest(byte[] m)
+	{
+		return hash(m, 0, m.length);
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		byte[] out = new byte[8];
+		getDigest(m, out, 0);
+		return out;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return 8;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset)
+	{
+		long h = hash(m, 0, m.length);
+		for (int i = 0; i < 8; i++)
+		{
+			out[offset + i] = (byte) (h >>> (56 - 8 * i));
+		}
+		return 8;
+	}
+	
+	/**
+	 * Computes the digest of a part of an array.
+	 * @param m The array
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @return The digest
+	 */
+	public long hash(/*@ non_null @*/ byte[] m, int offset, int length)
+	{
+		return hash(ByteBuffer.wrap(m).order(ByteOrder.LITTLE_ENDIAN), offset, length);
+	}
+	
+	/**
+	 * Computes the digest of the remaining bytes of a buffer. The position of
+	 * the buffer is left unchanged.
+	 * @param b The buffer
+	 * @return The digest
+	 */
+	public long hash(/*@ non_null @*/ ByteBuffer b)
+	{
+		return hash(ByteArray.littleEndian(b), b.position(), b.remaining());
+	}
+	
+	/**
+	 * Gets a view of this hash function operating on buffers. The digest of a
+	 * buffer is computed over its remaining bytes.
+	 * @return The function
+	 */
+	/*@ non_null @*/ public LongHashFunction<ByteBuffer> forBuffers()
+	{
+		return new LongHashFunction<ByteBuffer>()
+		{
+			@Override
+			public long getLongDigest(ByteBuffer b)
+			{
+				return hash(b);
+			}
+		};
+	}
+	
+	/**
+	 * Computes the digest of a part of a little-endian buffer.
+	 * @param b The buffer
+	 * @param offset The position of the first byte to hash
+	 * @param length The number of bytes to hash
+	 * @return The digest
+	 */
+	protected long hash(/*@ non_null @*/ ByteBuffer b, int offset, int length)
+	{
+		int i = offset;
+		int end = offset + length;
+		long h;
+		if (length >= 32)
+		{
+			long v1 = m_seed + P1 + P2;
+			long v2 = m_seed + P2;
+			long v3 = m_seed;
+			long v4 = m_seed - P1;
+			int limit = end - 32;
+			do
+			{
+				v1 = round(v1, b.getLong(i));
+				v2 = round(v2, b.getLong(i + 8));
+				v3 = round(v3, b.getLong(i + 16));
+				v4 = round(v4, b.getLong(i + 24));
+				i += 32;
+			} while (i <= limit);
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		}
+		else
+		{
+			h = m_seed + P5;
+		}
+		h += length;
+		while (i + 8 <= end)
+		{
+			h ^= round(0, b.getLong(i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+			i += 8;
+		}
+		if (i + 4 <= end)
+		{
+			h ^= (b.getInt(i) & 0xFFFFFFFFL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		while (i < end)
+		{
+			h ^= (b.get(i) & 0xFF) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+			i++;
+		}
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+	
+	/**
+	 * Mixes eight bytes of input into an accumulator.
+	 * @param acc The accumulator
+	 * @param input The input
+	 * @return The new value of the accumulator
+	 */
+	protected static long round(long acc, long input)
+	{
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * P1;
+	}
+	
+	/**
+	 * Merges one of the four accumulators into the digest.
+	 * @param h The digest
+	 * @param v The accumulator
+	 * @return The new value of the digest
+	 */
+	protected static long merge(long h, long v)
+	{
+		h ^= round(0, v);
+		return h * P1 + P4;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "XXH64";
+	}
+}
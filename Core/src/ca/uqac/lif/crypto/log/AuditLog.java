@@ -0,0 +1,1075 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.HashFunction;
+
+/**
+ * Append-only log whose entries are chained with a hash function. The
+ * <em>chain</em> of entry <i>i</i> is the digest of the chain of entry
+ * <i>i</i>&minus;1, followed by <i>i</i> as an 8-byte big-endian integer
+ * and by the contents of the entry; the chain before the first entry is
+ * made of zeros. Changing, removing or reordering an entry therefore
+ * changes the chain of all the entries after it, and publishing the chain
+ * of the last entry (the <em>head</em>) commits to the whole log.
+ * <p>
+ * The log is stored in a directory, as a sequence of segment files of
+ * fixed size that are mapped in memory. Each segment starts with the
+ * number of its first entry and the chain before it, followed by the
+ * entries, each one stored with its chain. A range of entries can
+ * therefore be checked, or proven to a third party with a {@link Proof},
+ * starting from the chain stored before it, without reading the rest of
+ * the log. When the log is opened, only the last segment is checked, and
+ * entries at its end whose chain is wrong, such as those left partially
+ * written by a crash, are discarded. A last segment whose header was never
+ * written is deleted, and the log resumes from the segment before it.
+ * <p>
+ * Multiple threads can append entries at the same time. The entries
+ * waiting to be written are committed in groups: the thread that gets
+ * to write takes all the entries queued so far, writes them, and forces
+ * the segment to the storage device once for the whole group, while the
+ * other threads wait for it. An append returns once its entries are
+ * written and, unless the log was created otherwise, forced to the
+ * device. Entries can be read while others are appended.
+ */
+public class AuditLog implements AutoCloseable
+{
+	/**
+	 * The default size of a segment file, in bytes.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	/**
+	 * The first four bytes of a segment file.
+	 */
+	protected static final int MAGIC = 0x41554C47;
+	
+	/**
+	 * The byte marking the start of an entry. The end of the entries of a
+	 * segment is marked by a zero byte.
+	 */
+	protected static final byte ENTRY = 1;
+	
+	/**
+	 * The extension of the names of segment files.
+	 */
+	protected static final String EXTENSION = ".log";
+	
+	/**
+	 * The hash function computing the chain.
+	 */
+	/*@ non_null @*/ protected final HashFunction<byte[],byte[]> m_hash;
+	
+	/**
+	 * The directory containing the segment files.
+	 */
+	/*@ non_null @*/ protected final File m_directory;
+	
+	/**
+	 * The size of a segment file, in bytes.
+	 */
+	protected final int m_segmentSize;
+	
+	/**
+	 * Whether segments are forced to the storage device after each group
+	 * of entries.
+	 */
+	protected final boolean m_force;
+	
+	/**
+	 * The length of the digests computed by {@link #m_hash}.
+	 */
+	protected final int m_digestLength;
+	
+	/**
+	 * The segments of the log, indexed by the number of their first entry.
+	 */
+	/*@ non_null @*/ protected final ConcurrentSkipListMap<Long,Segment> m_segments;
+	
+	/**
+	 * The appends waiting to be written.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<Append> m_queue;
+	
+	/**
+	 * The lock held by the thread writing a group of entries. The fields
+	 * below it are only used while holding it.
+	 */
+	/*@ non_null @*/ protected final Object m_writeLock = new Object();
+	
+	/**
+	 * The segment where entries are written.
+	 */
+	/*@ non_null @*/ protected Segment m_current;
+	
+	/**
+	 * The chain of the last entry written.
+	 */
+	/*@ non_null @*/ protected byte[] m_head;
+	
+	/**
+	 * The error that made the log unusable, or <tt>null</tt> if none
+	 * occurred.
+	 */
+	/*@ null @*/ protected CryptoException m_failure;
+	
+	/**
+	 * Whether the log has been closed.
+	 */
+	protected boolean m_closed;
+	
+	/**
+	 * The number of entries that have been committed, and can be read.
+	 */
+	protected volatile long m_size;
+	
+	/**
+	 * Opens a log with segments of the default size, which are forced to
+	 * the storage device after each group of entries. The log is created if
+	 * the directory contains no segment.
+	 * @param h The hash function computing the chain
+	 * @param directory The directory containing the segment files
+	 * @throws CryptoException Thrown if the log cannot be opened
+	 */
+	public AuditLog(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ File directory) throws CryptoException
+	{
+		this(h, directory, DEFAULT_SEGMENT_SIZE, true);
+	}
+	
+	/**
+	 * Opens a log. The log is created if the directory contains no segment.
+	 * @param h The hash function computing the chain
+	 * @param directory The directory containing the segment files
+	 * @param segment_size The size of a new segment file, in bytes; an entry
+	 * must fit in a single segment
+	 * @param force Set to <tt>true</tt> to force segments to the storage
+	 * device after each group of entries, <tt>false</tt> to leave it to the
+	 * operating system
+	 * @throws CryptoException Thrown if the log cannot be opened
+	 */
+	public AuditLog(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ File directory, int segment_size, boolean force) throws CryptoException
+	{
+		super();
+		m_hash = h;
+		m_directory = directory;
+		m_force = force;
+		m_digestLength = h.getDigest(new byte[0]).length;
+		m_segmentSize = segment_size;
+		if (segment_size < getHeaderSize() + getRecordSize(0))
+		{
+			throw new IllegalArgumentException("Segment size too small");
+		}
+		m_segments = new ConcurrentSkipListMap<Long,Segment>();
+		m_queue = new ConcurrentLinkedQueue<Append>();
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new CryptoException("Cannot create directory " + directory);
+		}
+		File[] files = directory.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(EXTENSION);
+			}
+		});
+		try
+		{
+			// Segments are named after their first entry, padded with zeros
+			Arrays.sort(files);
+			for (int i = 0; i < files.length; i++)
+			{
+				if (i == files.length - 1 && isBlank(files[i]))
+				{
+					// A crash occurred before the header of the last segment was written
+					if (!files[i].delete())
+					{
+						throw new IOException("Cannot delete " + files[i]);
+					}
+					break;
+				}
+				Segment s = new Segment(files[i]);
+				m_segments.put(s.m_first, s);
+			}
+			if (m_segments.isEmpty())
+			{
+				m_current = createSegment(0, new byte[m_digestLength]);
+			}
+			else
+			{
+				m_current = m_segments.lastEntry().getValue();
+				m_current.recover();
+			}
+		}
+		catch (IOException e)
+		{
+			try
+			{
+				close(m_segments.values());
+			}
+			catch (IOException ex)
+			{
+				// The first error is the one reported
+			}
+			throw new CryptoException(e);
+		}
+		m_head = m_current.getLastChain();
+		m_size = m_current.m_first + m_current.m_count;
+	}
+	
+	/**
+	 * Appends an entry to the log.
+	 * @param entry The contents of the entry
+	 * @return The number of the entry
+	 * @throws CryptoException Thrown if the entry cannot be written, or if the
+	 * log is closed
+	 */
+	public long append(/*@ non_null @*/ byte[] entry) throws CryptoException
+	{
+		return appendAll(Collections.singletonList(entry));
+	}
+	
+	/**
+	 * Appends entries to the log. The entries are given consecutive numbers,
+	 * without entries of other threads between them.
+	 * @param entries The contents of the entries
+	 * @return The number of the first entry
+	 * @throws CryptoException Thrown if the entries cannot be written, or if
+	 * the log is closed
+	 */
+	public long appendAll(/*@ non_null @*/ List<byte[]> entries) throws CryptoException
+	{
+		for (byte[] entry : entries)
+		{
+			if (getRecordSize(entry.length) > m_segmentSize - getHeaderSize())
+			{
+				throw new CryptoException("Entry does not fit in a segment");
+			}
+		}
+		Append a = new Append(entries);
+		m_queue.add(a);
+		synchronized (m_writeLock)
+		{
+			// The entries may have been written by the group of another thread
+			if (!a.m_done)
+			{
+				commit();
+			}
+			if (a.m_error != null)
+			{
+				throw a.m_error;
+			}
+			return a.m_first;
+		}
+	}
+	
+	/**
+	 * Gets the number of entries in the log.
+	 * @return The number of entries
+	 */
+	/*@ pure @*/ public long size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Gets the contents of an entry.
+	 * @param index The number of the entry
+	 * @return The contents
+	 * @throws IndexOutOfBoundsException Thrown if the entry does not exist
+	 */
+	/*@ non_null @*/ public byte[] get(long index)
+	{
+		checkRange(index, index + 1);
+		Segment s = getSegment(index);
+		return s.getEntry(s.getOffset(index));
+	}
+	
+	/**
+	 * Gets the chain of an entry.
+	 * @param index The number of the entry
+	 * @return The chain
+	 * @throws IndexOutOfBoundsException Thrown if the entry does not exist
+	 */
+	/*@ non_null @*/ public byte[] getChain(long index)
+	{
+		checkRange(index, index + 1);
+		Segment s = getSegment(index);
+		return s.getChain(s.getOffset(index));
+	}
+	
+	/**
+	 * Gets the chain of the last entry of the log, which depends on all the
+	 * entries of the log.
+	 * @return The chain, made of zeros if the log is empty
+	 */
+	/*@ non_null @*/ public byte[] getHead()
+	{
+		long size = m_size;
+		return size == 0 ? new byte[m_digestLength] : getChain(size - 1);
+	}
+	
+	/**
+	 * Checks that the entries of a range match their chain. The chain
+	 * before the range is taken as is; to check that the range belongs to
+	 * the log whose head is known, this head must be compared to the result
+	 * of {@link #getHead()} after checking the range up to the last entry.
+	 * @param from The number of the first entry of the range
+	 * @param to The number of the entry after the last entry of the range
+	 * @return <tt>true</tt> if all the entries match their chain,
+	 * <tt>false</tt> otherwise
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 * @throws IndexOutOfBoundsException Thrown if the range is not within the
+	 * log
+	 */
+	public boolean verify(long from, long to) throws CryptoException
+	{
+		checkRange(from, to);
+		if (from == to)
+		{
+			return true;
+		}
+		byte[] chain = getPreviousChain(from);
+		Segment s = getSegment(from);
+		s.index();
+		for (long i = from; i < to; i++)
+		{
+			if (i == s.m_first + s.m_count)
+			{
+				s = getSegment(i);
+				s.index();
+				if (!MessageDigest.isEqual(chain, s.m_previous))
+				{
+					return false;
+				}
+			}
+			int offset = s.getOffset(i);
+			chain = computeChain(chain, i, s.getEntry(offset));
+			if (!MessageDigest.isEqual(chain, s.getChain(offset)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets a proof that a range of entries belongs to the log. The proof
+	 * can be checked by a party knowing the chain of the last entry of the
+	 * range, with {@link #verify(HashFunction, Proof, byte[]) verify()}.
+	 * @param from The number of the first entry of the range
+	 * @param to The number of the entry after the last entry of the range
+	 * @return The proof
+	 * @throws IndexOutOfBoundsException Thrown if the range is not within the
+	 * log
+	 */
+	/*@ non_null @*/ public Proof getProof(long from, long to)
+	{
+		checkRange(from, to);
+		List<byte[]> entries = new ArrayList<byte[]>((int) (to - from));
+		for (long i = from; i < to; i++)
+		{
+			entries.add(get(i));
+		}
+		return new Proof(from, getPreviousChain(from), entries);
+	}
+	
+	/**
+	 * Checks a proof that a range of entries belongs to a log.
+	 * @param h The hash function computing the chain of the log
+	 * @param proof The proof
+	 * @param chain The chain of the last entry of the range, as obtained
+	 * from a trusted source
+	 * @return <tt>true</tt> if the entries of the proof lead to this chain,
+	 * <tt>false</tt> otherwise
+	 * @throws CryptoException Thrown if a digest cannot be computed
+	 */
+	public static boolean verify(/*@ non_null @*/ HashFunction<byte[],byte[]> h, /*@ non_null @*/ Proof proof, /*@ non_null @*/ byte[] chain) throws CryptoException
+	{
+		byte[] current = proof.getPrevious();
+		long index = proof.getFirst();
+		for (byte[] entry : proof.getEntries())
+		{
+			current = h.getDigest(chainInput(current, index++, entry));
+		}
+		return MessageDigest.isEqual(current, chain);
+	}
+	
+	/**
+	 * Writes the entries still waiting, and closes the segment files. The
+	 * log cannot be used afterwards.
+	 * @throws CryptoException Thrown if the entries cannot be written, or if
+	 * a segment cannot be closed
+	 */
+	@Override
+	public void close() throws CryptoException
+	{
+		synchronized (m_writeLock)
+		{
+			if (m_closed)
+			{
+				return;
+			}
+			try
+			{
+				commit();
+				if (m_failure == null)
+				{
+					m_current.m_buffer.force();
+				}
+			}
+			finally
+			{
+				m_closed = true;
+				if (m_failure == null)
+				{
+					m_failure = new CryptoException("Log is closed");
+				}
+				try
+				{
+					close(m_segments.values());
+				}
+				catch (IOException e)
+				{
+					throw new CryptoException(e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes all the appends waiting in the queue as a single group, and
+	 * forces the segments they were written to. Must be called while holding
+	 * {@link #m_writeLock}. If writing fails, the log becomes unusable, and
+	 * all the appends of the group and the following ones fail.
+	 */
+	protected void commit()
+	{
+		List<Append> group = new ArrayList<Append>();
+		Append a;
+		while ((a = m_queue.poll()) != null)
+		{
+			group.add(a);
+		}
+		if (group.isEmpty())
+		{
+			return;
+		}
+		long next = m_size;
+		if (m_failure == null)
+		{
+			try
+			{
+				for (Append append : group)
+				{
+					append.m_first = next;
+					for (byte[] entry : append.m_entries)
+					{
+						write(next++, entry);
+					}
+				}
+				if (m_force)
+				{
+					m_current.m_buffer.force();
+				}
+				m_size = next;
+			}
+			catch (CryptoException e)
+			{
+				m_failure = e;
+			}
+			catch (IOException e)
+			{
+				m_failure = new CryptoException(e);
+			}
+		}
+		for (Append append : group)
+		{
+			append.m_error = m_failure;
+			append.m_done = true;
+		}
+	}
+	
+	/**
+	 * Writes an entry at the end of the current segment, or in a new segment
+	 * if it does not fit. Must be called while holding {@link #m_writeLock}.
+	 * @param index The number of the entry
+	 * @param entry The contents of the entry
+	 * @throws CryptoException Thrown if the chain cannot be computed
+	 * @throws IOException Thrown if a new segment cannot be created
+	 */
+	protected void write(long index, /*@ non_null @*/ byte[] entry) throws CryptoException, IOException
+	{
+		if (m_current.m_end + getRecordSize(entry.length) > m_current.m_buffer.capacity())
+		{
+			// The previous segments of the group were forced when they were left
+			m_current.m_buffer.force();
+			m_current = createSegment(index, m_head);
+		}
+		m_head = computeChain(m_head, index, entry);
+		m_current.append(entry, m_head);
+	}
+	
+	/**
+	 * Creates a new empty segment file.
+	 * @param first The number of the first entry of the segment
+	 * @param previous The chain before the first entry of the segment
+	 * @return The segment
+	 * @throws IOException Thrown if the file cannot be created
+	 */
+	/*@ non_null @*/ protected Segment createSegment(long first, /*@ non_null @*/ byte[] previous) throws IOException
+	{
+		File file = new File(m_directory, String.format("%020d", first) + EXTENSION);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			// Mapping the file extends it with zeros
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, m_segmentSize);
+			buffer.putInt(MAGIC).putLong(first).putInt(m_digestLength).put(previous);
+			buffer.force();
+			Segment s = new Segment(raf, buffer, first, previous);
+			m_segments.put(first, s);
+			return s;
+		}
+		catch (IOException e)
+		{
+			raf.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Determines if the header of a segment file was never written, that is,
+	 * if the file is empty or starts with zeros only. This happens if a crash
+	 * occurs between the creation of a segment and the moment its header
+	 * reaches the storage device.
+	 * @param f The file
+	 * @return <tt>true</tt> if the header is blank, <tt>false</tt> otherwise
+	 * @throws IOException Thrown if the file cannot be read
+	 */
+	protected boolean isBlank(/*@ non_null @*/ File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			byte[] header = new byte[(int) Math.min(raf.length(), getHeaderSize())];
+			raf.readFully(header);
+			for (byte b : header)
+			{
+				if (b != 0)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Gets the segment containing an entry.
+	 * @param index The number of the entry
+	 * @return The segment
+	 */
+	/*@ non_null @*/ protected Segment getSegment(long index)
+	{
+		return m_segments.floorEntry(index).getValue();
+	}
+	
+	/**
+	 * Gets the chain before an entry.
+	 * @param index The number of the entry
+	 * @return The chain
+	 */
+	/*@ non_null @*/ protected byte[] getPreviousChain(long index)
+	{
+		Segment s = getSegment(index);
+		return index == s.m_first ? s.m_previous.clone() : getChain(index - 1);
+	}
+	
+	/**
+	 * Computes the chain of an entry.
+	 * @param previous The chain before the entry
+	 * @param index The number of the entry
+	 * @param entry The contents of the entry
+	 * @return The chain
+	 * @throws CryptoException Thrown if the digest cannot be computed
+	 */
+	/*@ non_null @*/ protected byte[] computeChain(/*@ non_null @*/ byte[] previous, long index, /*@ non_null @*/ byte[] entry) throws CryptoException
+	{
+		return m_hash.getDigest(chainInput(previous, index, entry));
+	}
+	
+	/**
+	 * Checks that a range of entries is within the committed entries.
+	 * @param from The number of the first entry of the range
+	 * @param to The number of the entry after the last entry of the range
+	 * @throws IndexOutOfBoundsException Thrown if the range is not within the
+	 * log
+	 */
+	protected void checkRange(long from, long to)
+	{
+		if (from < 0 || to < from || to > m_size)
+		{
+			throw new IndexOutOfBoundsException("Invalid range [" + from + "," + to + "[");
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes taken by the header of a segment.
+	 * @return The number of bytes
+	 */
+	protected int getHeaderSize()
+	{
+		return 16 + m_digestLength;
+	}
+	
+	/**
+	 * Gets the number of bytes taken by an entry in a segment.
+	 * @param length The length of the contents of the entry
+	 * @return The number of bytes
+	 */
+	protected long getRecordSize(int length)
+	{
+		return 5L + length + m_digestLength;
+	}
+	
+	/**
+	 * Builds the input of the digest giving the chain of an entry.
+	 * @param previous The chain before the entry
+	 * @param index The number of the entry
+	 * @param entry The contents of the entry
+	 * @return The input
+	 */
+	/*@ non_null @*/ protected static byte[] chainInput(/*@ non_null @*/ byte[] previous, long index, /*@ non_null @*/ byte[] entry)
+	{
+		byte[] input = new byte[previous.length + 8 + entry.length];
+		System.arraycopy(previous, 0, input, 0, previous.length);
+		for (int i = 0; i < 8; i++)
+		{
+			input[previous.length + i] = (byte) (index >>> (56 - 8 * i));
+		}
+		System.arraycopy(entry, 0, input, previous.length + 8, entry.length);
+		return input;
+	}
+	
+	/**
+	 * Closes the files of segments.
+	 * @param segments The segments
+	 * @throws IOException Thrown if a file cannot be closed
+	 */
+	protected static void close(/*@ non_null @*/ Iterable<Segment> segments) throws IOException
+	{
+		IOException error = null;
+		for (Segment s : segments)
+		{
+			try
+			{
+				s.m_file.close();
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+	}
+	
+	/**
+	 * Entries waiting to be written, and the outcome of writing them.
+	 */
+	protected static class Append
+	{
+		/**
+		 * The contents of the entries.
+		 */
+		/*@ non_null @*/ protected final List<byte[]> m_entries;
+		
+		/**
+		 * The number of the first entry, once written.
+		 */
+		protected long m_first = -1;
+		
+		/**
+		 * Whether the group containing the entries has been processed.
+		 */
+		protected boolean m_done = false;
+		
+		/**
+		 * The error that prevented the entries from being written, if any.
+		 */
+		/*@ null @*/ protected CryptoException m_error;
+		
+		/**
+		 * Creates a new append.
+		 * @param entries The contents of the entries
+		 */
+		public Append(/*@ non_null @*/ List<byte[]> entries)
+		{
+			super();
+			m_entries = entries;
+		}
+	}
+	
+	/**
+	 * A segment file mapped in memory. The positions of the entries in the
+	 * file are found the first time one of them is read, by skipping from
+	 * one entry to the next without computing any digest.
+	 */
+	protected class Segment
+	{
+		/**
+		 * The file of the segment.
+		 */
+		/*@ non_null @*/ protected final RandomAccessFile m_file;
+		
+		/**
+		 * The contents of the file. Its position is only used by the thread
+		 * writing entries; other threads read from duplicates.
+		 */
+		/*@ non_null @*/ protected final MappedByteBuffer m_buffer;
+		
+		/**
+		 * The number of the first entry of the segment.
+		 */
+		protected final long m_first;
+		
+		/**
+		 * The chain before the first entry of the segment.
+		 */
+		/*@ non_null @*/ protected final byte[] m_previous;
+		
+		/**
+		 * The positions of the entries in the file, or <tt>null</tt> if they
+		 * have not been found yet.
+		 */
+		/*@ null @*/ protected int[] m_offsets;
+		
+		/**
+		 * The number of entries of the segment whose position is known. It is
+		 * written after {@link #m_offsets}, so that a thread reading it sees
+		 * the positions of these entries.
+		 */
+		protected volatile int m_count;
+		
+		/**
+		 * The position after the last entry of the segment.
+		 */
+		protected int m_end;
+		
+		/**
+		 * Creates a segment for a new file.
+		 * @param file The file
+		 * @param buffer The contents of the file, positioned after the header
+		 * @param first The number of the first entry of the segment
+		 * @param previous The chain before the first entry of the segment
+		 */
+		protected Segment(/*@ non_null @*/ RandomAccessFile file, /*@ non_null @*/ MappedByteBuffer buffer, long first, /*@ non_null @*/ byte[] previous)
+		{
+			super();
+			m_file = file;
+			m_buffer = buffer;
+			m_first = first;
+			m_previous = previous.clone();
+			m_offsets = new int[64];
+			m_count = 0;
+			m_end = buffer.position();
+		}
+		
+		/**
+		 * Opens an existing segment file.
+		 * @param f The file
+		 * @throws IOException Thrown if the file cannot be read, or is not a
+		 * segment of a log using the same hash function
+		 */
+		protected Segment(/*@ non_null @*/ File f) throws IOException
+		{
+			super();
+			m_file = new RandomAccessFile(f, "rw");
+			try
+			{
+				m_buffer = m_file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, m_file.length());
+				if (m_buffer.capacity() < getHeaderSize() || m_buffer.getInt() != MAGIC)
+				{
+					throw new IOException("Not a log segment: " + f);
+				}
+				m_first = m_buffer.getLong();
+				if (m_buffer.getInt() != m_digestLength)
+				{
+					throw new IOException("Segment uses another hash function: " + f);
+				}
+				m_previous = new byte[m_digestLength];
+				m_buffer.get(m_previous);
+				m_end = m_buffer.position();
+			}
+			catch (IOException e)
+			{
+				m_file.close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Finds the positions of the entries of the segment, if they are not
+		 * known yet.
+		 */
+		protected synchronized void index()
+		{
+			if (m_offsets != null)
+			{
+				return;
+			}
+			int[] offsets = new int[64];
+			int count = 0;
+			int position = getHeaderSize();
+			while (position < m_buffer.capacity() && m_buffer.get(position) == ENTRY)
+			{
+				long size = position + 5 < m_buffer.capacity() ? getRecordSize(m_buffer.getInt(position + 1)) : -1;
+				if (size < getRecordSize(0) || position + size > m_buffer.capacity())
+				{
+					break;
+				}
+				if (count == offsets.length)
+				{
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				offsets[count++] = position;
+				position += size;
+			}
+			m_offsets = offsets;
+			m_end = position;
+			m_count = count;
+		}
+		
+		/**
+		 * Finds the positions of the entries of the last segment of the log,
+		 * and discards the entries at its end whose chain is wrong.
+		 * @throws IOException Thrown if a digest cannot be computed
+		 */
+		protected void recover() throws IOException
+		{
+			index();
+			byte[] chain = m_previous;
+			int valid = 0;
+			try
+			{
+				for (; valid < m_count; valid++)
+				{
+					int offset = m_offsets[valid];
+					chain = computeChain(chain, m_first + valid, getEntry(offset));
+					if (!MessageDigest.isEqual(chain, getChain(offset)))
+					{
+						break;
+					}
+				}
+			}
+			catch (CryptoException e)
+			{
+				throw new IOException(e);
+			}
+			int end = valid < m_count ? m_offsets[valid] : m_end;
+			// Erases the discarded entries, so that later entries cannot be mixed with them
+			ByteBuffer b = m_buffer.duplicate();
+			b.position(end);
+			byte[] zeros = new byte[Math.min(4096, Math.max(1, m_end - end))];
+			while (b.position() < m_end)
+			{
+				b.put(zeros, 0, Math.min(zeros.length, m_end - b.position()));
+			}
+			if (end < m_buffer.capacity())
+			{
+				b.put(end, (byte) 0);
+			}
+			m_buffer.force();
+			m_count = valid;
+			m_end = end;
+			m_buffer.position(end);
+		}
+		
+		/**
+		 * Gets the position of an entry of the segment.
+		 * @param index The number of the entry
+		 * @return The position
+		 */
+		protected int getOffset(long index)
+		{
+			index();
+			int count = m_count;
+			int[] offsets = m_offsets;
+			int i = (int) (index - m_first);
+			if (i >= count)
+			{
+				throw new IndexOutOfBoundsException("No entry " + index);
+			}
+			return offsets[i];
+		}
+		
+		/**
+		 * Gets the chain of the last entry of the segment, or the chain before
+		 * the segment if it is empty.
+		 * @return The chain
+		 */
+		/*@ non_null @*/ protected byte[] getLastChain()
+		{
+			return m_count == 0 ? m_previous.clone() : getChain(m_offsets[m_count - 1]);
+		}
+		
+		/**
+		 * Reads the contents of an entry.
+		 * @param offset The position of the entry
+		 * @return The contents
+		 */
+		/*@ non_null @*/ protected byte[] getEntry(int offset)
+		{
+			ByteBuffer b = m_buffer.duplicate();
+			byte[] entry = new byte[b.getInt(offset + 1)];
+			b.position(offset + 5);
+			b.get(entry);
+			return entry;
+		}
+		
+		/**
+		 * Reads the chain of an entry.
+		 * @param offset The position of the entry
+		 * @return The chain
+		 */
+		/*@ non_null @*/ protected byte[] getChain(int offset)
+		{
+			ByteBuffer b = m_buffer.duplicate();
+			byte[] chain = new byte[m_digestLength];
+			b.position(offset + 5 + b.getInt(offset + 1));
+			b.get(chain);
+			return chain;
+		}
+		
+		/**
+		 * Writes an entry at the end of the segment. The marker starting the
+		 * entry is written last, so that a partially written entry is not
+		 * taken as one.
+		 * @param entry The contents of the entry
+		 * @param chain The chain of the entry
+		 */
+		protected void append(/*@ non_null @*/ byte[] entry, /*@ non_null @*/ byte[] chain)
+		{
+			int offset = m_end;
+			m_buffer.position(offset + 1);
+			m_buffer.putInt(entry.length).put(entry).put(chain);
+			m_end = m_buffer.position();
+			if (m_end < m_buffer.capacity())
+			{
+				m_buffer.put(m_end, (byte) 0);
+			}
+			m_buffer.put(offset, ENTRY);
+			int count = m_count;
+			if (count == m_offsets.length)
+			{
+				m_offsets = Arrays.copyOf(m_offsets, count * 2);
+			}
+			m_offsets[count] = offset;
+			m_count = count + 1;
+		}
+	}
+	
+	/**
+	 * Proof that a range of entries belongs to a log. It is made of the
+	 * number of the first entry, the chain before it, and the contents of
+	 * the entries; recomputing the chain from them must give the chain of
+	 * the last entry of the range.
+	 */
+	public static class Proof
+	{
+		/**
+		 * The number of the first entry of the range.
+		 */
+		protected final long m_first;
+		
+		/**
+		 * The chain before the first entry of the range.
+		 */
+		/*@ non_null @*/ protected final byte[] m_previous;
+		
+		/**
+		 * The contents of the entries of the range.
+		 */
+		/*@ non_null @*/ protected final List<byte[]> m_entries;
+		
+		/**
+		 * Creates a new proof.
+		 * @param first The number of the first entry of the range
+		 * @param previous The chain before the first entry of the range
+		 * @param entries The contents of the entries of the range
+		 */
+		public Proof(long first, /*@ non_null @*/ byte[] previous, /*@ non_null @*/ List<byte[]> entries)
+		{
+			super();
+			m_first = first;
+			m_previous = previous;
+			m_entries = entries;
+		}
+		
+		/**
+		 * Gets the number of the first entry of the range.
+		 * @return The number
+		 */
+		/*@ pure @*/ public long getFirst()
+		{
+			return m_first;
+		}
+		
+		/**
+		 * Gets the chain before the first entry of the range.
+		 * @return The chain
+		 */
+		/*@ pure non_null @*/ public byte[] getPrevious()
+		{
+			return m_previous;
+		}
+		
+		/**
+		 * Gets the contents of the entries of the range.
+		 * @return The contents
+		 */
+		/*@ pure non_null @*/ public List<byte[]> getEntries()
+		{
+			return m_entries;
+		}
+	}
+}
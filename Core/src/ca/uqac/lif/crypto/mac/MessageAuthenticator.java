@@ -0,0 +1,82 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.mac;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Function that computes an authentication tag out of a message and a
+ * secret key. Contrary to a
+ * {@link ca.uqac.lif.crypto.hash.HashFunction HashFunction}, the tag cannot
+ * be computed without the key, so that a valid tag shows that the message
+ * comes from a holder of the key and has not been altered.
+ * 
+ * @param <O> The type of the authenticated messages
+ * @param <T> The type of the tags
+ */
+public interface MessageAuthenticator<O,T>
+{
+	/**
+	 * Computes the tag of a message.
+	 * @param k The key
+	 * @param m The message
+	 * @return The tag
+	 * @throws CryptoException Thrown if the key cannot be used by this
+	 * authenticator, or if the tag cannot be computed
+	 */
+	/*@ non_null @*/ public T getTag(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ O m) throws CryptoException;
+	
+	/**
+	 * Checks the tag of a message. Implementations compare tags in constant
+	 * time, so that the time taken does not tell how much of a forged tag is
+	 * correct.
+	 * @param k The key
+	 * @param m The message
+	 * @param tag The tag to check
+	 * @return <tt>true</tt> if the tag is the tag of the message, <tt>false</tt>
+	 * otherwise
+	 * @throws CryptoException Thrown if the key cannot be used by this
+	 * authenticator, or if the tag cannot be computed
+	 */
+	public boolean verify(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ O m, /*@ non_null @*/ T tag) throws CryptoException;
+	
+	/**
+	 * Computes the tags of several messages with the same key. By default,
+	 * this method calls {@link #getTag(SymmetricKey, Object) getTag()} on each
+	 * message; authenticators can override it to prepare the key only once
+	 * for the whole list.
+	 * @param k The key
+	 * @param messages The messages
+	 * @return The tags, in the same order as the messages
+	 * @throws CryptoException Thrown if the key cannot be used by this
+	 * authenticator, or if a tag cannot be computed
+	 */
+	/*@ non_null @*/ public default List<T> getTags(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ List<? extends O> messages) throws CryptoException
+	{
+		List<T> tags = new ArrayList<T>(messages.size());
+		for (O m : messages)
+		{
+			tags.add(getTag(k, m));
+		}
+		return tags;
+	}
+}
@@ -0,0 +1,333 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.symmetric;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Symmetric cipher that compresses messages with the DEFLATE algorithm
+ * before passing them to another cipher. Since encrypted bytes cannot be
+ * compressed, this is the only place where compression can reduce both the
+ * number of bytes to encrypt and the size of the result.
+ * <p>
+ * Each message is prefixed by a one-byte header telling whether it has been
+ * compressed, so that decryption knows whether to inflate it. A message is
+ * left as is when:
+ * <ul>
+ * <li>it is shorter than a minimum size, where the savings would not be
+ * worth the cost of compression;</li>
+ * <li>its compressed form would not be shorter;</li>
+ * <li>the compression ratio of recent messages is poor, in which case the
+ * next few messages are not even tried. The ratio is tracked as an
+ * exponentially weighted moving average of the ratios of the messages
+ * that were tried.</li>
+ * </ul>
+ * The deflaters and inflaters are kept in pools and reused from one message
+ * to the next. Since they hold native memory until they are ended,
+ * {@link #close()} ends the pooled ones once the cipher is no longer used.
+ */
+public class CompressingSymmetricCipher implements SymmetricCipher<byte[]>, AutoCloseable
+{
+	/**
+	 * Header byte of a message stored without compression.
+	 */
+	protected static final byte STORED = 0;
+	
+	/**
+	 * Header byte of a compressed message. It is followed by the length of
+	 * the original message, written as a 4-byte big-endian integer.
+	 */
+	protected static final byte DEFLATED = 1;
+	
+	/**
+	 * The weight given to the ratio of the last message in the moving average.
+	 */
+	protected static final double ALPHA = 0.25;
+	
+	/**
+	 * The number of messages that are not tried after the average ratio
+	 * becomes poor.
+	 */
+	protected static final int SKIP_COUNT = 16;
+	
+	/**
+	 * The cipher encrypting the (possibly compressed) messages.
+	 */
+	/*@ non_null @*/ protected final SymmetricCipher<byte[]> m_cipher;
+	
+	/**
+	 * The minimum size of a message, in bytes, for compression to be tried.
+	 */
+	protected final int m_minSize;
+	
+	/**
+	 * The average compression ratio above which compression is skipped.
+	 */
+	protected final double m_maxRatio;
+	
+	/**
+	 * The compression level passed to the deflaters.
+	 */
+	protected final int m_level;
+	
+	/**
+	 * The deflaters not in use.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<Deflater> m_deflaters;
+	
+	/**
+	 * The inflaters not in use.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<Inflater> m_inflaters;
+	
+	/**
+	 * Whether the cipher has been closed. Deflaters and inflaters are then
+	 * ended after use instead of being returned to their pool.
+	 */
+	protected volatile boolean m_closed = false;
+	
+	/**
+	 * The moving average of the compression ratio of the last messages, or
+	 * -1 if no message has been tried yet.
+	 */
+	protected volatile double m_ratio = -1;
+	
+	/**
+	 * The number of messages still to be stored without trying compression.
+	 */
+	/*@ non_null @*/ protected final AtomicInteger m_skip = new AtomicInteger(0);
+	
+	/**
+	 * Creates a new compressing cipher.
+	 * @param cipher The cipher encrypting the messages
+	 * @param level The compression level, between 0 and 9
+	 * @param min_size The minimum size of a message, in bytes, for
+	 * compression to be tried
+	 * @param max_ratio The average ratio of compressed to original size
+	 * above which compression is skipped for a while
+	 */
+	public CompressingSymmetricCipher(/*@ non_null @*/ SymmetricCipher<byte[]> cipher, int level, int min_size, double max_ratio)
+	{
+		super();
+		m_cipher = cipher;
+		m_level = level;
+		m_minSize = min_size;
+		m_maxRatio = max_ratio;
+		m_deflaters = new ConcurrentLinkedQueue<Deflater>();
+		m_inflaters = new ConcurrentLinkedQueue<Inflater>();
+	}
+	
+	/**
+	 * Creates a new compressing cipher favoring speed over compression,
+	 * trying messages of at least 256 bytes, and skipping compression when
+	 * it saves less than 10% of the bytes.
+	 * @param cipher The cipher encrypting the messages
+	 */
+	public CompressingSymmetricCipher(/*@ non_null @*/ SymmetricCipher<byte[]> cipher)
+	{
+		this(cipher, Deflater.BEST_SPEED, 256, 0.9);
+	}
+	
+	@Override
+	public byte[] encrypt(SymmetricKey k, byte[] m) throws CryptoException
+	{
+		byte[] out = null;
+		if (m.length >= m_minSize && shouldTry())
+		{
+			out = compress(m);
+		}
+		if (out == null)
+		{
+			out = new byte[m.length + 1];
+			out[0] = STORED;
+			System.arraycopy(m, 0, out, 1, m.length);
+		}
+		return m_cipher.encrypt(k, out);
+	}
+	
+	@Override
+	public byte[] decrypt(SymmetricKey k, byte[] m) throws CryptoException
+	{
+		byte[] in = m_cipher.decrypt(k, m);
+		if (in.length == 0)
+		{
+			throw new CryptoException("Missing compression header");
+		}
+		if (in[0] == STORED)
+		{
+			byte[] out = new byte[in.length - 1];
+			System.arraycopy(in, 1, out, 0, out.length);
+			return out;
+		}
+		if (in[0] != DEFLATED || in.length < 5)
+		{
+			throw new CryptoException("Invalid compression header");
+		}
+		int len = ((in[1] & 0xFF) << 24) | ((in[2] & 0xFF) << 16) | ((in[3] & 0xFF) << 8) | (in[4] & 0xFF);
+		// DEFLATE cannot compress by more than about 1032:1
+		if (len < 0 || len > (long) (in.length - 5) * 1032 + 64)
+		{
+			throw new CryptoException("Invalid message length");
+		}
+		Inflater inflater = m_inflaters.poll();
+		if (inflater == null)
+		{
+			inflater = new Inflater();
+		}
+		inflater.setInput(in, 5, in.length - 5);
+		byte[] out = new byte[len];
+		try
+		{
+			int n = 0;
+			while (n < len && !inflater.finished() && !inflater.needsInput())
+			{
+				n += inflater.inflate(out, n, len - n);
+			}
+			if (n != len || !inflater.finished())
+			{
+				throw new CryptoException("Invalid compressed message");
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new CryptoException(e);
+		}
+		finally
+		{
+			inflater.reset();
+			m_inflaters.offer(inflater);
+			// If the cipher was closed meanwhile, the pool may already have been emptied
+			if (m_closed && m_inflaters.remove(inflater))
+			{
+				inflater.end();
+			}
+		}
+		return out;
+	}
+	
+	/**
+	 * Ends the deflaters and inflaters of the pools, releasing their native
+	 * memory. The cipher can still be used afterwards, but its deflaters and
+	 * inflaters are then ended after each message.
+	 */
+	@Override
+	public void close()
+	{
+		m_closed = true;
+		Deflater deflater;
+		while ((deflater = m_deflaters.poll()) != null)
+		{
+			deflater.end();
+		}
+		Inflater inflater;
+		while ((inflater = m_inflaters.poll()) != null)
+		{
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Gets the moving average of the compression ratio of the last messages
+	 * for which compression was tried.
+	 * @return The ratio of compressed to original size, or -1 if no message
+	 * has been tried yet
+	 */
+	/*@ pure @*/ public double getRatio()
+	{
+		return m_ratio;
+	}
+	
+	/**
+	 * Compresses a message and adds the header in front of it.
+	 * @param m The message
+	 * @return The compressed message, or <tt>null</tt> if it would not be
+	 * shorter than the original
+	 */
+	protected byte[] compress(byte[] m)
+	{
+		Deflater deflater = m_deflaters.poll();
+		if (deflater == null)
+		{
+			deflater = new Deflater(m_level);
+		}
+		deflater.setInput(m);
+		deflater.finish();
+		// Compression is abandoned as soon as it takes as many bytes as the original
+		byte[] out = new byte[m.length];
+		int len = 5;
+		while (!deflater.finished() && len < out.length)
+		{
+			len += deflater.deflate(out, len, out.length - len);
+		}
+		boolean finished = deflater.finished();
+		deflater.reset();
+		m_deflaters.offer(deflater);
+		if (m_closed && m_deflaters.remove(deflater))
+		{
+			deflater.end();
+		}
+		if (!finished)
+		{
+			updateRatio(1);
+			return null;
+		}
+		updateRatio((double) (len - 5) / m.length);
+		out[0] = DEFLATED;
+		out[1] = (byte) (m.length >>> 24);
+		out[2] = (byte) (m.length >>> 16);
+		out[3] = (byte) (m.length >>> 8);
+		out[4] = (byte) m.length;
+		byte[] trimmed = new byte[len];
+		System.arraycopy(out, 0, trimmed, 0, len);
+		return trimmed;
+	}
+	
+	/**
+	 * Decides whether compression should be tried on the next message.
+	 * @return <tt>true</tt> if compression should be tried, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean shouldTry()
+	{
+		if (m_skip.get() <= 0)
+		{
+			return true;
+		}
+		return m_skip.decrementAndGet() < 0;
+	}
+	
+	/**
+	 * Updates the moving average of the compression ratio, and starts
+	 * skipping messages if it becomes too high.
+	 * @param ratio The ratio of the last message
+	 */
+	protected synchronized void updateRatio(double ratio)
+	{
+		m_ratio = m_ratio < 0 ? ratio : ALPHA * ratio + (1 - ALPHA) * m_ratio;
+		if (m_ratio > m_maxRatio)
+		{
+			m_skip.set(SKIP_COUNT);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.symmetric;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import ca.uqac.lif.crypto.CryptoException;
+
+/**
+ * Symmetric cipher on byte arrays that can also encrypt and decrypt
+ * incrementally, by wrapping a stream of bytes. Contrary to
+ * {@link #encrypt(SymmetricKey, Object) encrypt()} and
+ * {@link #decrypt(SymmetricKey, Object) decrypt()}, the streams never hold
+ * the whole message in memory.
+ */
+public interface StreamSymmetricCipher extends SymmetricCipher<byte[]>
+{
+	/**
+	 * Gets a stream that encrypts the bytes written to it and writes the
+	 * result to another stream. Closing the returned stream writes the last
+	 * encrypted bytes and flushes <tt>os</tt>, but does not close it.
+	 * @param k The key
+	 * @param os The stream receiving the encrypted bytes
+	 * @return The encrypting stream
+	 * @throws CryptoException Thrown if the encryption could not proceed
+	 */
+	/*@ non_null @*/ public OutputStream getEncryptionStream(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ OutputStream os) throws CryptoException;
+	
+	/**
+	 * Gets a stream that decrypts the bytes read from another stream. The
+	 * whole contents of <tt>is</tt>, up to its end, is considered to be a
+	 * single encrypted message.
+	 * @param k The key
+	 * @param is The stream providing the encrypted bytes
+	 * @return The decrypting stream
+	 * @throws CryptoException Thrown if the decryption could not proceed
+	 */
+	/*@ non_null @*/ public InputStream getDecryptionStream(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ InputStream is) throws CryptoException;
+}
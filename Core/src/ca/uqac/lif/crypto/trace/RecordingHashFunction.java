@@ -0,0 +1,70 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.trace;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.trace.TraceEvent.Operation;
+
+/**
+ * Hash function that passes its operations to another function, and
+ * records each successful one in a {@link Trace}.
+ *
+ * @param <O> The type of the hashed objects
+ * @param <H> The type of the computed hash
+ */
+public class RecordingHashFunction<O,H> implements HashFunction<O,H>
+{
+	/**
+	 * The function computing the digests.
+	 */
+	/*@ non_null @*/ protected final HashFunction<O,H> m_function;
+	
+	/**
+	 * The name given to the function in the trace.
+	 */
+	/*@ non_null @*/ protected final String m_algorithm;
+	
+	/**
+	 * The trace receiving the operations.
+	 */
+	/*@ non_null @*/ protected final Trace m_trace;
+	
+	/**
+	 * Creates a new recording hash function.
+	 * @param algorithm The name given to the function in the trace
+	 * @param function The function computing the digests
+	 * @param trace The trace receiving the operations
+	 */
+	public RecordingHashFunction(/*@ non_null @*/ String algorithm, /*@ non_null @*/ HashFunction<O,H> function, /*@ non_null @*/ Trace trace)
+	{
+		super();
+		m_algorithm = algorithm;
+		m_function = function;
+		m_trace = trace;
+	}
+	
+	@Override
+	public H getDigest(O o) throws CryptoException
+	{
+		long start = System.nanoTime();
+		H out = m_function.getDigest(o);
+		m_trace.record(start, Operation.HASH, m_algorithm, null, o);
+		return out;
+	}
+}
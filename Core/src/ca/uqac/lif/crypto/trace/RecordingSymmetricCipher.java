@@ -0,0 +1,79 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.trace;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+import ca.uqac.lif.crypto.trace.TraceEvent.Operation;
+
+/**
+ * Symmetric cipher that passes its operations to another cipher, and
+ * records each successful one in a {@link Trace}.
+ *
+ * @param <M> The type of the messages
+ */
+public class RecordingSymmetricCipher<M> implements SymmetricCipher<M>
+{
+	/**
+	 * The cipher performing the operations.
+	 */
+	/*@ non_null @*/ protected final SymmetricCipher<M> m_cipher;
+	
+	/**
+	 * The name given to the cipher in the trace.
+	 */
+	/*@ non_null @*/ protected final String m_algorithm;
+	
+	/**
+	 * The trace receiving the operations.
+	 */
+	/*@ non_null @*/ protected final Trace m_trace;
+	
+	/**
+	 * Creates a new recording cipher.
+	 * @param algorithm The name given to the cipher in the trace
+	 * @param cipher The cipher performing the operations
+	 * @param trace The trace receiving the operations
+	 */
+	public RecordingSymmetricCipher(/*@ non_null @*/ String algorithm, /*@ non_null @*/ SymmetricCipher<M> cipher, /*@ non_null @*/ Trace trace)
+	{
+		super();
+		m_algorithm = algorithm;
+		m_cipher = cipher;
+		m_trace = trace;
+	}
+	
+	@Override
+	public M encrypt(SymmetricKey k, M m) throws CryptoException
+	{
+		long start = System.nanoTime();
+		M out = m_cipher.encrypt(k, m);
+		m_trace.record(start, Operation.SYMMETRIC_ENCRYPT, m_algorithm, k, m);
+		return out;
+	}
+	
+	@Override
+	public M decrypt(SymmetricKey k, M m) throws CryptoException
+	{
+		long start = System.nanoTime();
+		M out = m_cipher.decrypt(k, m);
+		m_trace.record(start, Operation.SYMMETRIC_DECRYPT, m_algorithm, k, out);
+		return out;
+	}
+}
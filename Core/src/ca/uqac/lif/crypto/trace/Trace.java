@@ -0,0 +1,270 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.Key;
+import ca.uqac.lif.crypto.trace.TraceEvent.Operation;
+
+/**
+ * A sequence of cryptographic operations, which can be recorded by
+ * multiple threads at the same time. A trace can be written as CSV, with
+ * one line per event and the columns <tt>time</tt>, <tt>thread</tt>,
+ * <tt>operation</tt>, <tt>algorithm</tt>, <tt>key</tt> and <tt>size</tt>,
+ * and read back from this format.
+ */
+public class Trace
+{
+	/**
+	 * The first line of a trace written as CSV.
+	 */
+	public static final String HEADER = "time,thread,operation,algorithm,key,size";
+	
+	/**
+	 * The events of this trace, in no particular order.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<TraceEvent> m_events;
+	
+	/**
+	 * The value of {@link System#nanoTime()} when the trace was created.
+	 */
+	protected final long m_start;
+	
+	/**
+	 * Creates a new empty trace.
+	 */
+	public Trace()
+	{
+		super();
+		m_events = new ConcurrentLinkedQueue<TraceEvent>();
+		m_start = System.nanoTime();
+	}
+	
+	/**
+	 * Adds an event to this trace.
+	 * @param e The event
+	 */
+	public void add(/*@ non_null @*/ TraceEvent e)
+	{
+		m_events.add(e);
+	}
+	
+	/**
+	 * Adds an event to this trace for an operation made by the current
+	 * thread.
+	 * @param start The value of {@link System#nanoTime()} when the operation
+	 * started
+	 * @param operation The kind of operation
+	 * @param algorithm The name of the cipher or hash function
+	 * @param k The key, or <tt>null</tt> for hashing
+	 * @param m The message in clear
+	 */
+	public void record(long start, /*@ non_null @*/ Operation operation, /*@ non_null @*/ String algorithm, /*@ null @*/ Key k, /*@ null @*/ Object m)
+	{
+		add(new TraceEvent(start - m_start, Thread.currentThread().getId(), operation, algorithm, k == null ? null : k.getName(), sizeOf(m)));
+	}
+	
+	/**
+	 * Gets the size of a message in bytes. The size is known for arrays of
+	 * bytes and for character strings, which are assumed to be encoded in
+	 * UTF-8.
+	 * @param m The message
+	 * @return The size, or -1 if it is unknown
+	 */
+	protected int sizeOf(/*@ null @*/ Object m)
+	{
+		if (m instanceof byte[])
+		{
+			return ((byte[]) m).length;
+		}
+		if (m instanceof String)
+		{
+			return ((String) m).getBytes(StandardCharsets.UTF_8).length;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the number of events in this trace.
+	 * @return The number of events
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_events.size();
+	}
+	
+	/**
+	 * Gets the events of this trace, sorted by the time they started.
+	 * @return The list of events
+	 */
+	/*@ non_null @*/ public List<TraceEvent> getEvents()
+	{
+		List<TraceEvent> events = new ArrayList<TraceEvent>(m_events);
+		Collections.sort(events, new Comparator<TraceEvent>()
+		{
+			@Override
+			public int compare(TraceEvent e1, TraceEvent e2)
+			{
+				return Long.compare(e1.getTime(), e2.getTime());
+			}
+		});
+		return events;
+	}
+	
+	/**
+	 * Writes this trace as CSV.
+	 * @param out The destination of the CSV
+	 * @throws IOException Thrown if writing fails
+	 */
+	public void write(/*@ non_null @*/ Appendable out) throws IOException
+	{
+		out.append(HEADER).append('\n');
+		for (TraceEvent e : getEvents())
+		{
+			out.append(Long.toString(e.getTime())).append(',');
+			out.append(Long.toString(e.getThread())).append(',');
+			out.append(e.getOperation().name()).append(',');
+			appendField(out, e.getAlgorithm());
+			out.append(',');
+			if (e.getKey() != null)
+			{
+				appendField(out, e.getKey());
+			}
+			out.append(',').append(Integer.toString(e.getSize())).append('\n');
+		}
+	}
+	
+	/**
+	 * Reads a trace written as CSV by {@link #write(Appendable) write()}.
+	 * @param in The source of the CSV
+	 * @return The trace
+	 * @throws CryptoException Thrown if the CSV cannot be read or is not a
+	 * valid trace
+	 */
+	/*@ non_null @*/ public static Trace read(/*@ non_null @*/ Reader in) throws CryptoException
+	{
+		Trace t = new Trace();
+		BufferedReader reader = new BufferedReader(in);
+		try
+		{
+			String line = reader.readLine();
+			if (line == null || !line.equals(HEADER))
+			{
+				throw new CryptoException("Missing trace header");
+			}
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.isEmpty())
+				{
+					continue;
+				}
+				List<String> fields = splitFields(line);
+				if (fields.size() != 6)
+				{
+					throw new CryptoException("Invalid trace line: " + line);
+				}
+				String key = fields.get(4);
+				t.add(new TraceEvent(Long.parseLong(fields.get(0)), Long.parseLong(fields.get(1)), Operation.valueOf(fields.get(2)), fields.get(3), key.isEmpty() ? null : key, Integer.parseInt(fields.get(5))));
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CryptoException(e);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Also catches NumberFormatException
+			throw new CryptoException(e);
+		}
+		return t;
+	}
+	
+	/**
+	 * Appends a CSV field, which is enclosed in quotes if it contains a
+	 * comma or a quote.
+	 * @param out The destination of the field
+	 * @param s The contents of the field
+	 * @throws IOException Thrown if writing fails
+	 */
+	protected static void appendField(/*@ non_null @*/ Appendable out, /*@ non_null @*/ String s) throws IOException
+	{
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0)
+		{
+			out.append(s);
+			return;
+		}
+		out.append('"').append(s.replace("\"", "\"\"")).append('"');
+	}
+	
+	/**
+	 * Splits a line of CSV into its fields.
+	 * @param line The line
+	 * @return The fields
+	 */
+	/*@ non_null @*/ protected static List<String> splitFields(/*@ non_null @*/ String line)
+	{
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if (quoted)
+			{
+				if (c != '"')
+				{
+					field.append(c);
+				}
+				else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+				{
+					field.append('"');
+					i++;
+				}
+				else
+				{
+					quoted = false;
+				}
+			}
+			else if (c == '"')
+			{
+				quoted = true;
+			}
+			else if (c == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+			{
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.trace;
+
+/**
+ * A cryptographic operation recorded in a {@link Trace}. An event records
+ * what was done and on how many bytes, but not the contents of the message
+ * or of the key.
+ */
+public class TraceEvent
+{
+	/**
+	 * The kinds of operations that can be recorded.
+	 */
+	public enum Operation
+	{
+		/**
+		 * Encryption with a symmetric key.
+		 */
+		SYMMETRIC_ENCRYPT,
+		/**
+		 * Decryption with a symmetric key.
+		 */
+		SYMMETRIC_DECRYPT,
+		/**
+		 * Encryption with a public key.
+		 */
+		PUBLIC_ENCRYPT,
+		/**
+		 * Encryption with a private key.
+		 */
+		PRIVATE_ENCRYPT,
+		/**
+		 * Decryption with a public key.
+		 */
+		PUBLIC_DECRYPT,
+		/**
+		 * Decryption with a private key.
+		 */
+		PRIVATE_DECRYPT,
+		/**
+		 * Computation of a digest.
+		 */
+		HASH
+	}
+	
+	/**
+	 * The time at which the operation started, in nanoseconds since the
+	 * start of the trace.
+	 */
+	protected final long m_time;
+	
+	/**
+	 * The identifier of the thread that made the operation.
+	 */
+	protected final long m_thread;
+	
+	/**
+	 * The kind of operation.
+	 */
+	/*@ non_null @*/ protected final Operation m_operation;
+	
+	/**
+	 * The name given to the cipher or hash function when it was recorded.
+	 */
+	/*@ non_null @*/ protected final String m_algorithm;
+	
+	/**
+	 * The name of the key used by the operation, or <tt>null</tt> for
+	 * hashing.
+	 */
+	/*@ null @*/ protected final String m_key;
+	
+	/**
+	 * The size of the message in bytes, or -1 if it is unknown. For an
+	 * encryption or a decryption, this is the size of the message in clear.
+	 */
+	protected final int m_size;
+	
+	/**
+	 * Creates a new event.
+	 * @param time The time at which the operation started, in nanoseconds
+	 * since the start of the trace
+	 * @param thread The identifier of the thread that made the operation
+	 * @param operation The kind of operation
+	 * @param algorithm The name of the cipher or hash function
+	 * @param key The name of the key, or <tt>null</tt> for hashing
+	 * @param size The size of the message in bytes, or -1 if it is unknown
+	 */
+	public TraceEvent(long time, long thread, /*@ non_null @*/ Operation operation, /*@ non_null @*/ String algorithm, /*@ null @*/ String key, int size)
+	{
+		super();
+		m_time = time;
+		m_thread = thread;
+		m_operation = operation;
+		m_algorithm = algorithm;
+		m_key = key;
+		m_size = size;
+	}
+	
+	/**
+	 * Gets the time at which the operation started.
+	 * @return The time, in nanoseconds since the start of the trace
+	 */
+	/*@ pure @*/ public long getTime()
+	{
+		return m_time;
+	}
+	
+	/**
+	 * Gets the identifier of the thread that made the operation.
+	 * @return The identifier
+	 */
+	/*@ pure @*/ public long getThread()
+	{
+		return m_thread;
+	}
+	
+	/**
+	 * Gets the kind of operation.
+	 * @return The kind of operation
+	 */
+	/*@ pure non_null @*/ public Operation getOperation()
+	{
+		return m_operation;
+	}
+	
+	/**
+	 * Gets the name of the cipher or hash function.
+	 * @return The name
+	 */
+	/*@ pure non_null @*/ public String getAlgorithm()
+	{
+		return m_algorithm;
+	}
+	
+	/**
+	 * Gets the name of the key used by the operation.
+	 * @return The name, or <tt>null</tt> for hashing
+	 */
+	/*@ pure null @*/ public String getKey()
+	{
+		return m_key;
+	}
+	
+	/**
+	 * Gets the size of the message.
+	 * @return The size in bytes, or -1 if it is unknown
+	 */
+	/*@ pure @*/ public int getSize()
+	{
+		return m_size;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return m_time + "," + m_thread + "," + m_operation + "," + m_algorithm + "," + (m_key == null ? "" : m_key) + "," + m_size;
+	}
+}
@@ -0,0 +1,510 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.trace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.asymmetric.AsymmetricCipher;
+import ca.uqac.lif.crypto.asymmetric.KeyPair;
+import ca.uqac.lif.crypto.asymmetric.KeyPairGenerator;
+import ca.uqac.lif.crypto.asymmetric.PrivateKey;
+import ca.uqac.lif.crypto.asymmetric.PublicKey;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.symmetric.KeyGenerator;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Replays the operations of a {@link Trace} against actual ciphers and hash
+ * functions operating on arrays of bytes. Each algorithm name found in the
+ * trace must first be associated to an implementation with
+ * {@link #setSymmetric(String, SymmetricCipher, KeyGenerator) setSymmetric()},
+ * {@link #setAsymmetric(String, AsymmetricCipher, KeyPairGenerator) setAsymmetric()}
+ * or {@link #setHash(String, HashFunction) setHash()}.
+ * <p>
+ * Everything an operation needs is prepared before the replay starts: a key
+ * (or key pair) is generated for each key name in the trace, messages are
+ * filled with random bytes of the recorded size, and the messages to
+ * decrypt are encrypted beforehand. The operations of each thread of the
+ * trace are then executed in their original order by a thread of their own,
+ * without waiting between them, so that the replay reproduces the
+ * concurrency of the recorded application at full speed.
+ */
+public class TraceReplayer
+{
+	/**
+	 * The events to replay.
+	 */
+	/*@ non_null @*/ protected final List<TraceEvent> m_events;
+	
+	/**
+	 * The implementations used for each algorithm name.
+	 */
+	/*@ non_null @*/ protected final Map<String,Target> m_targets;
+	
+	/**
+	 * The messages of each size, shared by all operations.
+	 */
+	/*@ non_null @*/ protected final Map<Integer,byte[]> m_messages;
+	
+	/**
+	 * The source of the random contents of the messages.
+	 */
+	/*@ non_null @*/ protected final Random m_random;
+	
+	/**
+	 * The size of messages whose size was not recorded.
+	 */
+	protected int m_defaultSize = 64;
+	
+	/**
+	 * Creates a new replayer.
+	 * @param t The trace to replay
+	 */
+	public TraceReplayer(/*@ non_null @*/ Trace t)
+	{
+		super();
+		m_events = t.getEvents();
+		m_targets = new HashMap<String,Target>();
+		m_messages = new HashMap<Integer,byte[]>();
+		m_random = new Random(0);
+	}
+	
+	/**
+	 * Sets the symmetric cipher used for an algorithm name.
+	 * @param algorithm The name of the algorithm in the trace
+	 * @param cipher The cipher
+	 * @param generator The generator of the keys
+	 * @return This replayer
+	 */
+	/*@ non_null @*/ public TraceReplayer setSymmetric(/*@ non_null @*/ String algorithm, /*@ non_null @*/ SymmetricCipher<byte[]> cipher, /*@ non_null @*/ KeyGenerator generator)
+	{
+		m_targets.put(algorithm, new SymmetricTarget(cipher, generator));
+		return this;
+	}
+	
+	/**
+	 * Sets the asymmetric cipher used for an algorithm name.
+	 * @param algorithm The name of the algorithm in the trace
+	 * @param cipher The cipher
+	 * @param generator The generator of the key pairs
+	 * @return This replayer
+	 */
+	/*@ non_null @*/ public TraceReplayer setAsymmetric(/*@ non_null @*/ String algorithm, /*@ non_null @*/ AsymmetricCipher<byte[]> cipher, /*@ non_null @*/ KeyPairGenerator generator)
+	{
+		m_targets.put(algorithm, new AsymmetricTarget(cipher, generator));
+		return this;
+	}
+	
+	/**
+	 * Sets the hash function used for an algorithm name.
+	 * @param algorithm The name of the algorithm in the trace
+	 * @param function The hash function
+	 * @return This replayer
+	 */
+	/*@ non_null @*/ public TraceReplayer setHash(/*@ non_null @*/ String algorithm, /*@ non_null @*/ HashFunction<byte[],?> function)
+	{
+		m_targets.put(algorithm, new HashTarget(function));
+		return this;
+	}
+	
+	/**
+	 * Sets the size of the messages whose size was not recorded.
+	 * @param size The size in bytes
+	 * @return This replayer
+	 */
+	/*@ non_null @*/ public TraceReplayer setDefaultSize(int size)
+	{
+		m_defaultSize = size;
+		return this;
+	}
+	
+	/**
+	 * Replays the trace.
+	 * @return The time taken by the replay, in nanoseconds, excluding the
+	 * preparation of the operations
+	 * @throws CryptoException Thrown if an operation cannot be prepared or
+	 * fails
+	 */
+	public long replay() throws CryptoException
+	{
+		Map<Long,List<Step>> threads = new LinkedHashMap<Long,List<Step>>();
+		for (TraceEvent e : m_events)
+		{
+			Target t = m_targets.get(e.getAlgorithm());
+			if (t == null)
+			{
+				throw new CryptoException("No implementation for algorithm " + e.getAlgorithm());
+			}
+			List<Step> steps = threads.get(e.getThread());
+			if (steps == null)
+			{
+				steps = new ArrayList<Step>();
+				threads.put(e.getThread(), steps);
+			}
+			steps.add(t.prepare(e, getMessage(e.getSize() < 0 ? m_defaultSize : e.getSize())));
+		}
+		final CountDownLatch go = new CountDownLatch(1);
+		final AtomicReference<CryptoException> error = new AtomicReference<CryptoException>();
+		List<Thread> workers = new ArrayList<Thread>(threads.size());
+		for (final List<Step> steps : threads.values())
+		{
+			Thread w = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						go.await();
+						for (Step s : steps)
+						{
+							s.run();
+						}
+					}
+					catch (CryptoException e)
+					{
+						error.compareAndSet(null, e);
+					}
+					catch (RuntimeException e)
+					{
+						// Recorded too, lest the replay be timed as if it had succeeded
+						error.compareAndSet(null, new CryptoException(e));
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			w.start();
+			workers.add(w);
+		}
+		long start = System.nanoTime();
+		go.countDown();
+		try
+		{
+			for (Thread w : workers)
+			{
+				w.join();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CryptoException(e);
+		}
+		long time = System.nanoTime() - start;
+		if (error.get() != null)
+		{
+			throw error.get();
+		}
+		return time;
+	}
+	
+	/**
+	 * Gets a message of a given size filled with random bytes.
+	 * @param size The size in bytes
+	 * @return The message
+	 */
+	/*@ non_null @*/ protected byte[] getMessage(int size)
+	{
+		byte[] m = m_messages.get(size);
+		if (m == null)
+		{
+			m = new byte[size];
+			m_random.nextBytes(m);
+			m_messages.put(size, m);
+		}
+		return m;
+	}
+	
+	/**
+	 * An operation ready to be replayed.
+	 */
+	protected interface Step
+	{
+		/**
+		 * Executes the operation.
+		 * @throws CryptoException Thrown if the operation fails
+		 */
+		public void run() throws CryptoException;
+	}
+	
+	/**
+	 * An implementation of an algorithm, which prepares the operations of the
+	 * trace that use it.
+	 */
+	protected interface Target
+	{
+		/**
+		 * Prepares the replay of an operation.
+		 * @param e The event of the operation
+		 * @param m A message in clear of the size of the operation
+		 * @return The operation ready to be replayed
+		 * @throws CryptoException Thrown if the operation cannot be prepared
+		 */
+		/*@ non_null @*/ public Step prepare(/*@ non_null @*/ TraceEvent e, /*@ non_null @*/ byte[] m) throws CryptoException;
+	}
+	
+	/**
+	 * A symmetric cipher used by the replay.
+	 */
+	protected static class SymmetricTarget implements Target
+	{
+		/**
+		 * The cipher.
+		 */
+		/*@ non_null @*/ protected final SymmetricCipher<byte[]> m_cipher;
+		
+		/**
+		 * The generator of the keys.
+		 */
+		/*@ non_null @*/ protected final KeyGenerator m_generator;
+		
+		/**
+		 * The key generated for each key name of the trace.
+		 */
+		/*@ non_null @*/ protected final Map<String,SymmetricKey> m_keys;
+		
+		/**
+		 * The messages to decrypt, indexed by key name and size.
+		 */
+		/*@ non_null @*/ protected final Map<String,byte[]> m_encrypted;
+		
+		/**
+		 * Creates a new symmetric target.
+		 * @param cipher The cipher
+		 * @param generator The generator of the keys
+		 */
+		public SymmetricTarget(/*@ non_null @*/ SymmetricCipher<byte[]> cipher, /*@ non_null @*/ KeyGenerator generator)
+		{
+			super();
+			m_cipher = cipher;
+			m_generator = generator;
+			m_keys = new HashMap<String,SymmetricKey>();
+			m_encrypted = new HashMap<String,byte[]>();
+		}
+		
+		@Override
+		public Step prepare(TraceEvent e, byte[] m) throws CryptoException
+		{
+			String name = e.getKey() == null ? "" : e.getKey();
+			final SymmetricKey k;
+			if (m_keys.containsKey(name))
+			{
+				k = m_keys.get(name);
+			}
+			else
+			{
+				k = name.isEmpty() ? m_generator.generateKey() : m_generator.generateKey(name);
+				m_keys.put(name, k);
+			}
+			switch (e.getOperation())
+			{
+			case SYMMETRIC_ENCRYPT:
+				final byte[] in = m;
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.encrypt(k, in);
+					}
+				};
+			case SYMMETRIC_DECRYPT:
+				String index = name + "/" + m.length;
+				byte[] encrypted = m_encrypted.get(index);
+				if (encrypted == null)
+				{
+					encrypted = m_cipher.encrypt(k, m);
+					m_encrypted.put(index, encrypted);
+				}
+				final byte[] in_d = encrypted;
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.decrypt(k, in_d);
+					}
+				};
+			default:
+				throw new CryptoException("Not a symmetric operation: " + e.getOperation());
+			}
+		}
+	}
+	
+	/**
+	 * An asymmetric cipher used by the replay. A key pair is generated for
+	 * each key name of the trace, and the operations use whichever key of the
+	 * pair they need.
+	 */
+	protected static class AsymmetricTarget implements Target
+	{
+		/**
+		 * The cipher.
+		 */
+		/*@ non_null @*/ protected final AsymmetricCipher<byte[]> m_cipher;
+		
+		/**
+		 * The generator of the key pairs.
+		 */
+		/*@ non_null @*/ protected final KeyPairGenerator m_generator;
+		
+		/**
+		 * The key pair generated for each key name of the trace.
+		 */
+		/*@ non_null @*/ protected final Map<String,KeyPair> m_pairs;
+		
+		/**
+		 * The messages to decrypt, indexed by operation, key name and size.
+		 */
+		/*@ non_null @*/ protected final Map<String,byte[]> m_encrypted;
+		
+		/**
+		 * Creates a new asymmetric target.
+		 * @param cipher The cipher
+		 * @param generator The generator of the key pairs
+		 */
+		public AsymmetricTarget(/*@ non_null @*/ AsymmetricCipher<byte[]> cipher, /*@ non_null @*/ KeyPairGenerator generator)
+		{
+			super();
+			m_cipher = cipher;
+			m_generator = generator;
+			m_pairs = new HashMap<String,KeyPair>();
+			m_encrypted = new HashMap<String,byte[]>();
+		}
+		
+		@Override
+		public Step prepare(TraceEvent e, final byte[] m) throws CryptoException
+		{
+			String name = e.getKey() == null ? "" : e.getKey();
+			KeyPair pair = m_pairs.get(name);
+			if (pair == null)
+			{
+				pair = name.isEmpty() ? m_generator.generateKeyPair() : m_generator.generateKeyPair(name, name);
+				m_pairs.put(name, pair);
+			}
+			final PublicKey pu = pair.getPublicKey();
+			final PrivateKey pr = pair.getPrivateKey();
+			String index = e.getOperation() + "/" + name + "/" + m.length;
+			switch (e.getOperation())
+			{
+			case PUBLIC_ENCRYPT:
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.encrypt(pu, m);
+					}
+				};
+			case PRIVATE_ENCRYPT:
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.encrypt(pr, m);
+					}
+				};
+			case PUBLIC_DECRYPT:
+				byte[] by_private = m_encrypted.get(index);
+				if (by_private == null)
+				{
+					by_private = m_cipher.encrypt(pr, m);
+					m_encrypted.put(index, by_private);
+				}
+				final byte[] in_pu = by_private;
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.decrypt(pu, in_pu);
+					}
+				};
+			case PRIVATE_DECRYPT:
+				byte[] by_public = m_encrypted.get(index);
+				if (by_public == null)
+				{
+					by_public = m_cipher.encrypt(pu, m);
+					m_encrypted.put(index, by_public);
+				}
+				final byte[] in_pr = by_public;
+				return new Step()
+				{
+					@Override
+					public void run() throws CryptoException
+					{
+						m_cipher.decrypt(pr, in_pr);
+					}
+				};
+			default:
+				throw new CryptoException("Not an asymmetric operation: " + e.getOperation());
+			}
+		}
+	}
+	
+	/**
+	 * A hash function used by the replay.
+	 */
+	protected static class HashTarget implements Target
+	{
+		/**
+		 * The hash function.
+		 */
+		/*@ non_null @*/ protected final HashFunction<byte[],?> m_function;
+		
+		/**
+		 * Creates a new hash target.
+		 * @param function The hash function
+		 */
+		public HashTarget(/*@ non_null @*/ HashFunction<byte[],?> function)
+		{
+			super();
+			m_function = function;
+		}
+		
+		@Override
+		public Step prepare(TraceEvent e, final byte[] m) throws CryptoException
+		{
+			if (e.getOperation() != TraceEvent.Operation.HASH)
+			{
+				throw new CryptoException("Not a hashing operation: " + e.getOperation());
+			}
+			return new Step()
+			{
+				@Override
+				public void run() throws CryptoException
+				{
+					m_function.getDigest(m);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,26 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Recording and replay of the cryptographic operations made by an
+ * application. Ciphers and hash functions wrapped in recording decorators
+ * add an event to a {@link Trace} for each operation; the trace can be
+ * saved, and later replayed at full speed against other implementations
+ * with the same threads as the original application.
+ */
+package ca.uqac.lif.crypto.trace;
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Utilities to manipulate and display byte arrays.
@@ -118,6 +120,22 @@ public abstract class ByteArray
 		return readHexString(new ByteArrayInputStream(s.getBytes()));
 	}
 
+	/**
+	 * Gets a little-endian view of a buffer, with the same contents, position
+	 * and limit.
+	 * @param b The buffer
+	 * @return The buffer itself if it is already little-endian, or a view of
+	 * it otherwise
+	 */
+	/*@ non_null @*/ public static ByteBuffer littleEndian(/*@ non_null @*/ ByteBuffer b)
+	{
+		if (b.order() == ByteOrder.LITTLE_ENDIAN)
+		{
+			return b;
+		}
+		return b.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
 	protected static byte[] readAllBytes(InputStream is) throws IOException
 	{
 		final int bufLen = 1024;
@@ -0,0 +1,873 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.HashFunction;
+
+/**
+ * Executes cryptographic operations on separate pools of threads according
+ * to their cost. Operations of very different cost, such as
+ * a decryption with an RSA private key and a DES encryption, are typically
+ * submitted to different <em>cost classes</em>; each class has its own
+ * threads and its own bounded queue, so that a burst of expensive operations
+ * cannot delay the cheap ones (the so-called "bulkhead" pattern).
+ * <p>
+ * Within a class, operations are executed by decreasing priority, and then
+ * in the order they were submitted. A class can also be given a limit on the
+ * time an operation may wait in its queue; an operation that waits longer is
+ * not executed and fails instead. Identical hashing requests (same function,
+ * equal input) that are submitted while a previous one is still pending are
+ * not queued again, and receive the result of the pending one.
+ * <p>
+ * The scheduler is created with two classes, {@link #CHEAP} and
+ * {@link #EXPENSIVE}; other classes can be added with
+ * {@link #addClass(String, int, int, long) addClass()}.
+ */
+public class CryptoScheduler
+{
+	/**
+	 * The name of the default class for cheap operations, such as symmetric
+	 * encryption and hashing.
+	 */
+	public static final String CHEAP = "cheap";
+	
+	/**
+	 * The name of the default class for expensive operations, such as
+	 * asymmetric encryption with a private key and password hashing.
+	 */
+	public static final String EXPENSIVE = "expensive";
+	
+	/**
+	 * An operation to be executed by the scheduler.
+	 * @param <T> The type of the operation's result
+	 */
+	public interface Operation<T>
+	{
+		/**
+		 * Runs the operation.
+		 * @return The result of the operation
+		 * @throws CryptoException Thrown if the operation fails
+		 */
+		public T run() throws CryptoException;
+	}
+	
+	/**
+	 * The cost classes of this scheduler, indexed by name.
+	 */
+	/*@ non_null @*/ protected final Map<String,CostClass> m_classes;
+	
+	/**
+	 * The hashing requests that are queued or running, used to coalesce
+	 * identical requests.
+	 */
+	/*@ non_null @*/ protected final Map<HashRequest,CompletableFuture<?>> m_pendingHashes;
+	
+	/**
+	 * A counter used to order operations of equal priority.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_sequence;
+	
+	/**
+	 * Creates a new scheduler with the two default cost classes. The
+	 * {@link #CHEAP} class has one thread per available processor, and
+	 * the {@link #EXPENSIVE} class half as many; neither has a limit on
+	 * queue time.
+	 */
+	public CryptoScheduler()
+	{
+		super();
+		m_classes = new HashMap<String,CostClass>();
+		m_pendingHashes = new ConcurrentHashMap<HashRequest,CompletableFuture<?>>();
+		m_sequence = new AtomicLong();
+		int cpus = Runtime.getRuntime().availableProcessors();
+		addClass(CHEAP, cpus, 1024, 0);
+		addClass(EXPENSIVE, Math.max(1, cpus / 2), 256, 0);
+	}
+	
+	/**
+	 * Adds a cost class to this scheduler, or replaces an existing class with
+	 * the same name. Operations still waiting in the queue of a replaced
+	 * class fail with a {@link CryptoException}.
+	 * @param name The name of the class
+	 * @param threads The number of threads executing operations of this
+	 * class
+	 * @param capacity The maximum number of operations waiting in the queue
+	 * of this class
+	 * @param max_wait The maximum time an operation may wait in the queue, in
+	 * milliseconds; 0 for no limit
+	 * @return This scheduler
+	 */
+	/*@ non_null @*/ public CryptoScheduler addClass(/*@ non_null @*/ String name, int threads, int capacity, long max_wait)
+	{
+		if (threads < 1 || capacity < 1)
+		{
+			throw new IllegalArgumentException("Number of threads and capacity must be positive");
+		}
+		CostClass c = new CostClass(name, threads, capacity, TimeUnit.MILLISECONDS.toNanos(max_wait));
+		CostClass old;
+		synchronized (m_classes)
+		{
+			old = m_classes.put(name, c);
+		}
+		if (old != null)
+		{
+			old.stop();
+		}
+		return this;
+	}
+	
+	/**
+	 * Submits an operation with priority 0.
+	 * @param <T> The type of the operation's result
+	 * @param cost_class The name of the cost class of the operation
+	 * @param op The operation
+	 * @return A future holding the result of the operation
+	 * @throws CryptoException Thrown if the class does not exist or if its
+	 * queue is full
+	 */
+	/*@ non_null @*/ public <T> CompletableFuture<T> submit(/*@ non_null @*/ String cost_class, /*@ non_null @*/ Operation<T> op) throws CryptoException
+	{
+		return submit(cost_class, 0, op);
+	}
+	
+	/**
+	 * Submits an operation.
+	 * @param <T> The type of the operation's result
+	 * @param cost_class The name of the cost class of the operation
+	 * @param priority The priority of the operation; operations of higher
+	 * priority are executed first
+	 * @param op The operation
+	 * @return A future holding the result of the operation. If the operation
+	 * fails, the future completes exceptionally with a
+	 * {@link CryptoException}.
+	 * @throws CryptoException Thrown if the class does not exist or if its
+	 * queue is full
+	 */
+	/*@ non_null @*/ public <T> CompletableFuture<T> submit(/*@ non_null @*/ String cost_class, int priority, /*@ non_null @*/ Operation<T> op) throws CryptoException
+	{
+		Task<T> t = new Task<T>(op, priority, m_sequence.getAndIncrement());
+		getCostClass(cost_class).enqueue(t);
+		return t.m_future;
+	}
+	
+	/**
+	 * Submits the calculation of a digest with priority 0. If an equal
+	 * request for the same function is already waiting or running, no new
+	 * operation is queued and the future of the pending request is returned.
+	 * @param <O> The type of the hashed object
+	 * @param <H> The type of the digest
+	 * @param cost_class The name of the cost class of the operation
+	 * @param f The hash function
+	 * @param o The object to hash
+	 * @return A future holding the digest
+	 * @throws CryptoException Thrown if the class does not exist or if its
+	 * queue is full
+	 */
+	/*@ non_null @*/ public <O,H> CompletableFuture<H> submitHash(/*@ non_null @*/ String cost_class, /*@ non_null @*/ HashFunction<O,H> f, /*@ non_null @*/ O o) throws CryptoException
+	{
+		return submitHash(cost_class, 0, f, o);
+	}
+	
+	/**
+	 * Submits the calculation of a digest. If an equal request for the same
+	 * function is already waiting or running, no new operation is queued and
+	 * the future of the pending request is returned.
+	 * @param <O> The type of the hashed object
+	 * @param <H> The type of the digest
+	 * @param cost_class The name of the cost class of the operation
+	 * @param priority The priority of the operation
+	 * @param f The hash function
+	 * @param o The object to hash
+	 * @return A future holding the digest
+	 * @throws CryptoException Thrown if the class does not exist or if its
+	 * queue is full
+	 */
+	@SuppressWarnings("unchecked")
+	/*@ non_null @*/ public <O,H> CompletableFuture<H> submitHash(/*@ non_null @*/ String cost_class, int priority, /*@ non_null @*/ final HashFunction<O,H> f, /*@ non_null @*/ final O o) throws CryptoException
+	{
+		CostClass c = getCostClass(cost_class);
+		final HashRequest request = new HashRequest(f, o);
+		final Task<H> t = new Task<H>(new Operation<H>()
+		{
+			@Override
+			public H run() throws CryptoException
+			{
+				return f.getDigest(o);
+			}
+		}, priority, m_sequence.getAndIncrement());
+		CompletableFuture<?> pending = m_pendingHashes.putIfAbsent(request, t.m_future);
+		if (pending != null)
+		{
+			c.m_coalesced.incrementAndGet();
+			return (CompletableFuture<H>) pending;
+		}
+		t.m_future.whenComplete(new BiConsumer<H,Throwable>()
+		{
+			@Override
+			public void accept(H h, Throwable e)
+			{
+				m_pendingHashes.remove(request, t.m_future);
+			}
+		});
+		try
+		{
+			c.enqueue(t);
+		}
+		catch (CryptoException e)
+		{
+			m_pendingHashes.remove(request, t.m_future);
+			// Other callers may already have coalesced onto this future
+			t.m_future.completeExceptionally(e);
+			throw e;
+		}
+		return t.m_future;
+	}
+	
+	/**
+	 * Gets a snapshot of the statistics of a cost class.
+	 * @param cost_class The name of the class
+	 * @return The statistics
+	 * @throws CryptoException Thrown if the class does not exist
+	 */
+	/*@ non_null @*/ public ClassStatistics getStatistics(/*@ non_null @*/ String cost_class) throws CryptoException
+	{
+		return getCostClass(cost_class).getStatistics();
+	}
+	
+	/**
+	 * Gets a snapshot of the statistics of every cost class.
+	 * @return The list of statistics
+	 */
+	/*@ non_null @*/ public List<ClassStatistics> getStatistics()
+	{
+		List<ClassStatistics> list = new ArrayList<ClassStatistics>();
+		synchronized (m_classes)
+		{
+			for (CostClass c : m_classes.values())
+			{
+				list.add(c.getStatistics());
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Stops the threads of every cost class. Operations still in the queues
+	 * fail with a {@link CryptoException}.
+	 */
+	public void shutdown()
+	{
+		synchronized (m_classes)
+		{
+			for (CostClass c : m_classes.values())
+			{
+				c.stop();
+			}
+			m_classes.clear();
+		}
+	}
+	
+	/**
+	 * Gets a cost class by its name.
+	 * @param name The name
+	 * @return The class
+	 * @throws CryptoException Thrown if the class does not exist
+	 */
+	protected CostClass getCostClass(String name) throws CryptoException
+	{
+		CostClass c;
+		synchronized (m_classes)
+		{
+			c = m_classes.get(name);
+		}
+		if (c == null)
+		{
+			throw new CryptoException("No such cost class: " + name);
+		}
+		return c;
+	}
+	
+	/**
+	 * An operation waiting in a queue, along with the future receiving its
+	 * result.
+	 * @param <T> The type of the operation's result
+	 */
+	protected static class Task<T> implements Comparable<Task<?>>
+	{
+		/**
+		 * The operation.
+		 */
+		/*@ non_null @*/ protected final Operation<T> m_operation;
+		
+		/**
+		 * The priority of the operation.
+		 */
+		protected final int m_priority;
+		
+		/**
+		 * The rank of submission of the operation.
+		 */
+		protected final long m_sequence;
+		
+		/**
+		 * The moment the operation was queued, in nanoseconds.
+		 */
+		protected long m_queuedAt;
+		
+		/**
+		 * The future receiving the result of the operation.
+		 */
+		/*@ non_null @*/ protected final CompletableFuture<T> m_future;
+		
+		/**
+		 * Creates a new task.
+		 * @param op The operation
+		 * @param priority The priority of the operation
+		 * @param sequence The rank of submission of the operation
+		 */
+		public Task(Operation<T> op, int priority, long sequence)
+		{
+			super();
+			m_operation = op;
+			m_priority = priority;
+			m_sequence = sequence;
+			m_future = new CompletableFuture<T>();
+		}
+		
+		/**
+		 * Runs the operation and completes the future with its outcome. Errors
+		 * thrown by the operation also complete the future, so that the
+		 * caller does not wait forever and the worker thread survives.
+		 */
+		public void run()
+		{
+			try
+			{
+				m_future.complete(m_operation.run());
+			}
+			catch (CryptoException e)
+			{
+				m_future.completeExceptionally(e);
+			}
+			catch (Throwable e)
+			{
+				m_future.completeExceptionally(new CryptoException(e));
+			}
+		}
+		
+		@Override
+		public int compareTo(Task<?> t)
+		{
+			if (m_priority != t.m_priority)
+			{
+				return m_priority > t.m_priority ? -1 : 1;
+			}
+			return Long.compare(m_sequence, t.m_sequence);
+		}
+	}
+	
+	/**
+	 * A group of threads executing operations of similar cost, along with
+	 * their queue.
+	 */
+	protected static class CostClass
+	{
+		/**
+		 * The name of the class.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * The maximum number of operations in the queue.
+		 */
+		protected final int m_capacity;
+		
+		/**
+		 * The maximum time an operation may wait in the queue, in nanoseconds;
+		 * 0 for no limit.
+		 */
+		protected final long m_maxWait;
+		
+		/**
+		 * The queue of operations waiting to be executed.
+		 */
+		/*@ non_null @*/ protected final PriorityBlockingQueue<Task<?>> m_queue;
+		
+		/**
+		 * The number of operations in the queue. The queue itself is unbounded;
+		 * this counter is used to enforce its capacity.
+		 */
+		/*@ non_null @*/ protected final AtomicInteger m_depth = new AtomicInteger();
+		
+		/**
+		 * The threads executing the operations.
+		 */
+		/*@ non_null @*/ protected final List<Thread> m_workers;
+		
+		/**
+		 * Whether the class has been stopped.
+		 */
+		protected volatile boolean m_stopped = false;
+		
+		/**
+		 * The number of operations accepted in the queue.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_submitted = new AtomicLong();
+		
+		/**
+		 * The number of operations executed.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_completed = new AtomicLong();
+		
+		/**
+		 * The number of operations refused because the queue was full.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_rejected = new AtomicLong();
+		
+		/**
+		 * The number of operations that exceeded the queue time limit.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_expired = new AtomicLong();
+		
+		/**
+		 * The number of hashing requests answered by a pending request.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_coalesced = new AtomicLong();
+		
+		/**
+		 * The cumulative time operations spent in the queue, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_totalWait = new AtomicLong();
+		
+		/**
+		 * The longest time an operation spent in the queue, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_maxObservedWait = new AtomicLong();
+		
+		/**
+		 * The largest number of operations ever in the queue.
+		 */
+		/*@ non_null @*/ protected final AtomicInteger m_maxDepth = new AtomicInteger();
+		
+		/**
+		 * Creates a new cost class and starts its threads.
+		 * @param name The name of the class
+		 * @param threads The number of threads executing operations
+		 * @param capacity The maximum number of operations in the queue
+		 * @param max_wait The maximum time an operation may wait in the queue,
+		 * in nanoseconds; 0 for no limit
+		 */
+		public CostClass(String name, int threads, int capacity, long max_wait)
+		{
+			super();
+			m_name = name;
+			m_capacity = capacity;
+			m_maxWait = max_wait;
+			m_queue = new PriorityBlockingQueue<Task<?>>(Math.min(capacity, 64));
+			m_workers = new ArrayList<Thread>(threads);
+			for (int i = 0; i < threads; i++)
+			{
+				Thread t = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						work();
+					}
+				}, "CryptoScheduler-" + name + "-" + i);
+				t.setDaemon(true);
+				m_workers.add(t);
+				t.start();
+			}
+		}
+		
+		/**
+		 * Puts a task in the queue of this class.
+		 * @param t The task
+		 * @throws CryptoException Thrown if the queue is full or the class has
+		 * been stopped
+		 */
+		public void enqueue(Task<?> t) throws CryptoException
+		{
+			if (m_stopped)
+			{
+				throw new CryptoException("Cost class " + m_name + " is stopped");
+			}
+			int depth = m_depth.incrementAndGet();
+			if (depth > m_capacity)
+			{
+				m_depth.decrementAndGet();
+				m_rejected.incrementAndGet();
+				throw new CryptoException("Queue of cost class " + m_name + " is full");
+			}
+			updateMax(m_maxDepth, depth);
+			m_submitted.incrementAndGet();
+			t.m_queuedAt = System.nanoTime();
+			m_queue.put(t);
+			// If the class was stopped meanwhile, the queue may already have been
+			// emptied; the task is then failed here, unless it was taken since
+			if (m_stopped && m_queue.remove(t))
+			{
+				m_depth.decrementAndGet();
+				CryptoException e = new CryptoException("Cost class " + m_name + " is stopped");
+				t.m_future.completeExceptionally(e);
+				throw e;
+			}
+		}
+		
+		/**
+		 * Executes tasks from the queue until the class is stopped.
+		 */
+		protected void work()
+		{
+			while (!m_stopped)
+			{
+				Task<?> t;
+				try
+				{
+					t = m_queue.take();
+				}
+				catch (InterruptedException e)
+				{
+					// The interrupt may have been left by an operation rather than
+					// by stop(); the loop only ends if the class is stopped
+					continue;
+				}
+				m_depth.decrementAndGet();
+				long wait = System.nanoTime() - t.m_queuedAt;
+				m_totalWait.addAndGet(wait);
+				updateMax(m_maxObservedWait, wait);
+				if (m_maxWait > 0 && wait > m_maxWait)
+				{
+					m_expired.incrementAndGet();
+					t.m_future.completeExceptionally(new CryptoException("Operation exceeded the queue time limit of cost class " + m_name));
+					continue;
+				}
+				t.run();
+				m_completed.incrementAndGet();
+			}
+		}
+		
+		/**
+		 * Stops the threads of this class and fails the operations still in its
+		 * queue.
+		 */
+		public void stop()
+		{
+			m_stopped = true;
+			for (Thread t : m_workers)
+			{
+				t.interrupt();
+			}
+			Task<?> t;
+			while ((t = m_queue.poll()) != null)
+			{
+				m_depth.decrementAndGet();
+				t.m_future.completeExceptionally(new CryptoException("Cost class " + m_name + " is stopped"));
+			}
+		}
+		
+		/**
+		 * Gets a snapshot of the statistics of this class.
+		 * @return The statistics
+		 */
+		public ClassStatistics getStatistics()
+		{
+			return new ClassStatistics(m_name, m_depth.get(), m_maxDepth.get(), m_submitted.get(), m_completed.get(), m_rejected.get(), m_expired.get(), m_coalesced.get(), m_totalWait.get(), m_maxObservedWait.get());
+		}
+		
+		/**
+		 * Raises the value of a counter if a new value is higher.
+		 * @param max The counter
+		 * @param value The new value
+		 */
+		protected static void updateMax(AtomicInteger max, int value)
+		{
+			int current;
+			while ((current = max.get()) < value && !max.compareAndSet(current, value))
+			{
+				// Retry
+			}
+		}
+		
+		/**
+		 * Raises the value of a counter if a new value is higher.
+		 * @param max The counter
+		 * @param value The new value
+		 */
+		protected static void updateMax(AtomicLong max, long value)
+		{
+			long current;
+			while ((current = max.get()) < value && !max.compareAndSet(current, value))
+			{
+				// Retry
+			}
+		}
+	}
+	
+	/**
+	 * A hashing request, used as a key to find identical pending requests.
+	 * Two requests are equal if they use the same hash function and equal
+	 * inputs; arrays are compared by their contents.
+	 */
+	protected static class HashRequest
+	{
+		/**
+		 * The hash function.
+		 */
+		/*@ non_null @*/ protected final HashFunction<?,?> m_function;
+		
+		/**
+		 * The object to hash.
+		 */
+		/*@ non_null @*/ protected final Object m_input;
+		
+		/**
+		 * The hash code of this request, computed once.
+		 */
+		protected final int m_hashCode;
+		
+		/**
+		 * Creates a new hashing request.
+		 * @param f The hash function
+		 * @param o The object to hash
+		 */
+		public HashRequest(HashFunction<?,?> f, Object o)
+		{
+			super();
+			m_function = f;
+			m_input = o;
+			int h = o instanceof byte[] ? Arrays.hashCode((byte[]) o) : o.hashCode();
+			m_hashCode = 31 * System.identityHashCode(f) + h;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof HashRequest))
+			{
+				return false;
+			}
+			HashRequest r = (HashRequest) o;
+			if (m_function != r.m_function || m_hashCode != r.m_hashCode)
+			{
+				return false;
+			}
+			if (m_input instanceof byte[] && r.m_input instanceof byte[])
+			{
+				return Arrays.equals((byte[]) m_input, (byte[]) r.m_input);
+			}
+			return m_input.equals(r.m_input);
+		}
+	}
+	
+	/**
+	 * A snapshot of the activity of a cost class.
+	 */
+	public static class ClassStatistics
+	{
+		/**
+		 * The name of the cost class.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * The number of operations in the queue.
+		 */
+		protected final int m_queueDepth;
+		
+		/**
+		 * The largest number of operations ever in the queue.
+		 */
+		protected final int m_maxQueueDepth;
+		
+		/**
+		 * The number of operations accepted in the queue.
+		 */
+		protected final long m_submitted;
+		
+		/**
+		 * The number of operations executed.
+		 */
+		protected final long m_completed;
+		
+		/**
+		 * The number of operations refused because the queue was full.
+		 */
+		protected final long m_rejected;
+		
+		/**
+		 * The number of operations that exceeded the queue time limit.
+		 */
+		protected final long m_expired;
+		
+		/**
+		 * The number of hashing requests answered by a pending request.
+		 */
+		protected final long m_coalesced;
+		
+		/**
+		 * The cumulative time operations spent in the queue, in nanoseconds.
+		 */
+		protected final long m_totalWait;
+		
+		/**
+		 * The longest time an operation spent in the queue, in nanoseconds.
+		 */
+		protected final long m_maxWait;
+		
+		ClassStatistics(String name, int depth, int max_depth, long submitted, long completed, long rejected, long expired, long coalesced, long total_wait, long max_wait)
+		{
+			super();
+			m_name = name;
+			m_queueDepth = depth;
+			m_maxQueueDepth = max_depth;
+			m_submitted = submitted;
+			m_completed = completed;
+			m_rejected = rejected;
+			m_expired = expired;
+			m_coalesced = coalesced;
+			m_totalWait = total_wait;
+			m_maxWait = max_wait;
+		}
+		
+		/**
+		 * Gets the name of the cost class.
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+		
+		/**
+		 * Gets the number of operations waiting in the queue at the moment of
+		 * the snapshot.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public int getQueueDepth()
+		{
+			return m_queueDepth;
+		}
+		
+		/**
+		 * Gets the largest number of operations ever waiting in the queue.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public int getMaxQueueDepth()
+		{
+			return m_maxQueueDepth;
+		}
+		
+		/**
+		 * Gets the number of operations accepted in the queue.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getSubmitted()
+		{
+			return m_submitted;
+		}
+		
+		/**
+		 * Gets the number of operations that were executed.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getCompleted()
+		{
+			return m_completed;
+		}
+		
+		/**
+		 * Gets the number of operations refused because the queue was full.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getRejected()
+		{
+			return m_rejected;
+		}
+		
+		/**
+		 * Gets the number of operations that failed because they exceeded the
+		 * queue time limit.
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getExpired()
+		{
+			return m_expired;
+		}
+		
+		/**
+		 * Gets the number of hashing requests that were answered by an
+		 * identical pending request.
+		 * @return The number of requests
+		 */
+		/*@ pure @*/ public long getCoalesced()
+		{
+			return m_coalesced;
+		}
+		
+		/**
+		 * Gets the average time operations waited in the queue.
+		 * @return The time, in milliseconds
+		 */
+		/*@ pure @*/ public double getAverageWait()
+		{
+			long dequeued = m_completed + m_expired;
+			if (dequeued == 0)
+			{
+				return 0;
+			}
+			return (double) m_totalWait / (double) dequeued / 1e6;
+		}
+		
+		/**
+		 * Gets the longest time an operation waited in the queue.
+		 * @return The time, in milliseconds
+		 */
+		/*@ pure @*/ public double getMaxWait()
+		{
+			return (double) m_maxWait / 1e6;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("%s: depth %d (max %d), %d submitted, %d completed, %d rejected, %d expired, %d coalesced, wait %.3f ms avg, %.3f ms max", m_name, m_queueDepth, m_maxQueueDepth, m_submitted, m_completed, m_rejected, m_expired, m_coalesced, getAverageWait(), getMaxWait());
+		}
+	}
+}
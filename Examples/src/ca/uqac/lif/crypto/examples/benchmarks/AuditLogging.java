@@ -0,0 +1,112 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.java.SHA;
+import ca.uqac.lif.crypto.log.AuditLog;
+
+/**
+ * Measures the number of 100-byte entries per second appended to an
+ * {@link AuditLog} chained with SHA-256, by one thread and by several
+ * threads whose entries are committed in groups, with and without forcing
+ * each group to the storage device.
+ */
+public class AuditLogging
+{
+	public static void main(String[] args) throws CryptoException, IOException, InterruptedException
+	{
+		for (boolean force : new boolean[] {true, false})
+		{
+			System.out.println(force ? "Forcing each group" : "Not forcing");
+			for (int threads : new int[] {1, 4, 16, 64})
+			{
+				File dir = Files.createTempDirectory("auditlog").toFile();
+				try
+				{
+					run(dir, threads, force);
+				}
+				finally
+				{
+					for (File f : dir.listFiles())
+					{
+						f.delete();
+					}
+					dir.delete();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Appends entries to a new log from several threads, and prints the
+	 * number of entries appended per second.
+	 * @param dir The directory of the log
+	 * @param threads The number of threads
+	 * @param force Whether groups are forced to the storage device
+	 * @throws CryptoException Thrown if the log cannot be used
+	 * @throws InterruptedException Thrown if the current thread is
+	 * interrupted while waiting for the others
+	 */
+	protected static void run(File dir, int threads, boolean force) throws CryptoException, InterruptedException
+	{
+		final AuditLog log = new AuditLog(SHA.SHA256, dir, AuditLog.DEFAULT_SEGMENT_SIZE, force);
+		final int entries = force ? 4000 : 100000;
+		final byte[] entry = new byte[100];
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++)
+		{
+			final int count = entries / threads;
+			workers[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int j = 0; j < count; j++)
+						{
+							log.append(entry);
+						}
+					}
+					catch (CryptoException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (Thread t : workers)
+		{
+			t.join();
+		}
+		long time = System.nanoTime() - start;
+		if (!log.verify(0, log.size()))
+		{
+			System.out.println("  Invalid log");
+		}
+		log.close();
+		System.out.println(String.format("  %2d thread(s) %12.0f entries/s", threads, log.size() / (time / 1e9)));
+	}
+}
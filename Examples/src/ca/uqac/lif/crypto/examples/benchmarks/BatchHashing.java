@@ -0,0 +1,80 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.Random;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the time taken to hash many short records with SHA-256, either
+ * one call per record, or in batches with
+ * {@link ca.uqac.lif.crypto.java.JavaHashFunction#getDigests(byte[][], byte[], int)
+ * getDigests()} on separate arrays and on records stored in a single array.
+ */
+public class BatchHashing
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		int count = 4096;
+		Random r = new Random(0);
+		for (int size : new int[] {32, 64, 128, 256})
+		{
+			byte[][] records = new byte[count][size];
+			byte[] data = new byte[count * size];
+			int[] bounds = new int[count + 1];
+			for (int i = 0; i < count; i++)
+			{
+				r.nextBytes(records[i]);
+				System.arraycopy(records[i], 0, data, i * size, size);
+				bounds[i + 1] = (i + 1) * size;
+			}
+			byte[] out = new byte[count * SHA.SHA256.getDigestLength()];
+			System.out.println("Records of " + size + " bytes");
+			long sink = 0;
+			long[] times = new long[3];
+			// The first half of the rounds warm up the JIT and are not counted
+			int rounds = 200;
+			for (int i = 0; i < rounds; i++)
+			{
+				long start = System.nanoTime();
+				for (byte[] m : records)
+				{
+					sink += SHA.SHA256.getDigest(m)[0];
+				}
+				long mid = System.nanoTime();
+				sink += SHA.SHA256.getDigests(records, out, 0) + out[0];
+				long end = System.nanoTime();
+				sink += SHA.SHA256.getDigests(data, bounds, out, 0) + out[0];
+				if (i >= rounds / 2)
+				{
+					times[0] += mid - start;
+					times[1] += end - mid;
+					times[2] += System.nanoTime() - end;
+				}
+			}
+			long n = (long) count * (rounds - rounds / 2);
+			System.out.println(String.format("  %-22s %8.1f ns/record", "getDigest", (double) times[0] / n));
+			System.out.println(String.format("  %-22s %8.1f ns/record", "getDigests (arrays)", (double) times[1] / n));
+			System.out.println(String.format("  %-22s %8.1f ns/record", "getDigests (packed)", (double) times[2] / n));
+			// The sink is printed so that the JIT cannot remove the computations
+			System.out.println(String.format("  (%x)", sink & 0xF));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.azrael.json.JsonStringPrinter;
+import ca.uqac.lif.azrael.json.JsonStringReader;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.azrael.BinaryPrinter;
+import ca.uqac.lif.crypto.azrael.BinaryReader;
+import ca.uqac.lif.crypto.java.DES;
+import ca.uqac.lif.crypto.java.DES.DESKey;
+import ca.uqac.lif.crypto.util.PredictableRandom;
+
+/**
+ * Compares the size of the serialized form of an object, and the time
+ * taken to serialize and encrypt it (and then decrypt and read it back),
+ * when using JSON and when using the binary format of
+ * {@link BinaryPrinter}. The object is a list of records such as one would
+ * find in a small database table, where the same keys repeat in every
+ * record.
+ */
+public class BinaryVsJson
+{
+	public static void main(String[] args) throws CryptoException, PrintException, ReadException
+	{
+		int num_records = 2000, rounds = 50;
+		List<Object> records = createRecords(num_records);
+		DESKey k = new DES.DESKeyGenerator(new PredictableRandom(0)).generateKey();
+		BinaryPrinter b_printer = new BinaryPrinter();
+		BinaryReader b_reader = new BinaryReader();
+		
+		/* Compare sizes */
+		byte[] json = JsonStringPrinter.toJson(records).getBytes(StandardCharsets.UTF_8);
+		byte[] binary = b_printer.print(records);
+		System.out.println("Records:     " + num_records);
+		System.out.println("JSON size:   " + json.length + " bytes");
+		System.out.println("Binary size: " + binary.length + " bytes");
+		
+		/* Compare times; the first rounds warm up the JIT and are not counted */
+		for (int pass = 0; pass < 2; pass++)
+		{
+			long json_time = 0, binary_time = 0;
+			for (int i = 0; i < rounds; i++)
+			{
+				long start = System.nanoTime();
+				byte[] encrypted = DES.instance.encrypt(k, JsonStringPrinter.toJson(records).getBytes(StandardCharsets.UTF_8));
+				JsonStringReader.fromJson(new String(DES.instance.decrypt(k, encrypted), StandardCharsets.UTF_8));
+				json_time += System.nanoTime() - start;
+				start = System.nanoTime();
+				encrypted = DES.instance.encrypt(k, b_printer.print(records));
+				b_reader.read(DES.instance.decrypt(k, encrypted));
+				binary_time += System.nanoTime() - start;
+			}
+			if (pass == 1)
+			{
+				System.out.println("JSON round trip:   " + (json_time / rounds / 1000) + " us");
+				System.out.println("Binary round trip: " + (binary_time / rounds / 1000) + " us");
+			}
+		}
+	}
+	
+	/**
+	 * Creates a list of records to serialize.
+	 * @param num_records The number of records
+	 * @return The list
+	 */
+	protected static List<Object> createRecords(int num_records)
+	{
+		String[] cities = new String[] {"Chicoutimi", "Jonquière", "Alma", "Roberval"};
+		List<Object> records = new ArrayList<Object>(num_records);
+		for (int i = 0; i < num_records; i++)
+		{
+			Map<String,Object> record = new HashMap<String,Object>();
+			record.put("id", i);
+			record.put("name", "user" + i);
+			record.put("city", cities[i % cities.length]);
+			record.put("balance", i * 1.25);
+			record.put("active", i % 3 != 0);
+			records.add(record);
+		}
+		return records;
+	}
+}
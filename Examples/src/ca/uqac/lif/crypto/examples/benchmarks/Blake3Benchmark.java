@@ -0,0 +1,93 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.java.Blake3;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the throughput of BLAKE3 compared to SHA-256, for messages from
+ * 1 KiB to 1 GiB. BLAKE3 is measured both with the common fork-join pool,
+ * which hashes the subtrees of large messages on all processors, and with a
+ * pool of a single thread. Sizes that do not fit in a quarter of the
+ * maximum heap are skipped; run with a larger <tt>-Xmx</tt> to include
+ * them.
+ */
+public class Blake3Benchmark
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+		Blake3 sequential = new Blake3(new ForkJoinPool(1));
+		long max_size = Runtime.getRuntime().maxMemory() / 4;
+		for (int size = 1024; size > 0 && size <= 1 << 30; size <<= 4)
+		{
+			if (size > max_size)
+			{
+				System.out.println("Skipping messages of " + size + " bytes");
+				continue;
+			}
+			byte[] m = new byte[size];
+			new Random(0).nextBytes(m);
+			System.out.println("Messages of " + size + " bytes");
+			run("BLAKE3", Blake3.instance, m);
+			run("BLAKE3 (1 thread)", sequential, m);
+			run("SHA-256", SHA.SHA256, m);
+		}
+	}
+	
+	/**
+	 * Hashes a message repeatedly for a while, and prints the number of bytes
+	 * hashed per second.
+	 * @param title The title to print
+	 * @param f The hash function
+	 * @param m The message
+	 * @throws CryptoException Thrown if hashing fails
+	 */
+	protected static void run(String title, HashFunction<byte[],byte[]> f, byte[] m) throws CryptoException
+	{
+		long sink = 0;
+		long bytes = 0;
+		long time = 0;
+		// The first half of the rounds warm up the JIT and are not counted
+		int rounds = 10;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			long n = 0;
+			// Large messages are hashed at least once per round
+			do
+			{
+				sink += f.getDigest(m)[0];
+				n++;
+			} while (System.nanoTime() - start < 100000000L);
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+				bytes += n * m.length;
+			}
+		}
+		// The sink is printed so that the JIT cannot remove the computations
+		System.out.println(String.format("  %-22s %8.2f GB/s (%x)", title, bytes / (time / 1e9) / 1e9, sink & 0xF));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.azrael.BinaryPrinter;
+import ca.uqac.lif.crypto.java.DES;
+import ca.uqac.lif.crypto.java.DES.DESKey;
+import ca.uqac.lif.crypto.symmetric.CompressingSymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.util.PredictableRandom;
+
+/**
+ * Measures the throughput of DES encryption, and the number of bytes it
+ * produces, with and without a {@link CompressingSymmetricCipher} in front
+ * of it. Two kinds of messages are used: serialized objects, which compress
+ * well, and random bytes, which do not and for which the compressing cipher
+ * should quickly stop trying.
+ */
+public class CompressionBenchmark
+{
+	public static void main(String[] args) throws CryptoException, PrintException
+	{
+		DESKey k = new DES.DESKeyGenerator(new PredictableRandom(0)).generateKey();
+		List<byte[]> objects = new ArrayList<byte[]>();
+		List<byte[]> random = new ArrayList<byte[]>();
+		BinaryPrinter printer = new BinaryPrinter();
+		Random r = new Random(0);
+		for (int i = 0; i < 200; i++)
+		{
+			objects.add(printer.print(createRecords(r, 100)));
+			byte[] bytes = new byte[objects.get(i).length];
+			r.nextBytes(bytes);
+			random.add(bytes);
+		}
+		run("Objects, DES only", DES.instance, k, objects);
+		run("Objects, compressed", new CompressingSymmetricCipher(DES.instance), k, objects);
+		run("Random, DES only", DES.instance, k, random);
+		run("Random, compressed", new CompressingSymmetricCipher(DES.instance), k, random);
+	}
+	
+	/**
+	 * Encrypts and decrypts a list of messages a few times with a cipher, and
+	 * prints the throughput and the number of encrypted bytes.
+	 * @param title The title to print
+	 * @param cipher The cipher
+	 * @param k The key
+	 * @param messages The messages
+	 * @throws CryptoException Thrown if encryption fails
+	 */
+	protected static void run(String title, SymmetricCipher<byte[]> cipher, DESKey k, List<byte[]> messages) throws CryptoException
+	{
+		int rounds = 20;
+		long in_bytes = 0, out_bytes = 0, time = 0;
+		for (int i = 0; i < rounds; i++)
+		{
+			in_bytes = 0;
+			out_bytes = 0;
+			long start = System.nanoTime();
+			for (byte[] m : messages)
+			{
+				byte[] encrypted = cipher.encrypt(k, m);
+				cipher.decrypt(k, encrypted);
+				in_bytes += m.length;
+				out_bytes += encrypted.length;
+			}
+			// The first half of the rounds warm up the JIT and are not counted
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+			}
+		}
+		double mb_per_s = (in_bytes * (rounds - rounds / 2)) / (time / 1e9) / (1024 * 1024);
+		System.out.println(String.format("%-20s %6.1f MB/s, %9d bytes in, %9d bytes out (%.1f%% saved)", title, mb_per_s, in_bytes, out_bytes, 100 - 100.0 * out_bytes / in_bytes));
+	}
+	
+	/**
+	 * Creates a list of records to serialize.
+	 * @param r A source of randomness
+	 * @param num_records The number of records
+	 * @return The list
+	 */
+	protected static List<Object> createRecords(Random r, int num_records)
+	{
+		String[] cities = new String[] {"Chicoutimi", "Jonquière", "Alma", "Roberval"};
+		List<Object> records = new ArrayList<Object>(num_records);
+		for (int i = 0; i < num_records; i++)
+		{
+			Map<String,Object> record = new HashMap<String,Object>();
+			record.put("id", r.nextInt(100000));
+			record.put("name", "user" + r.nextInt(1000));
+			record.put("city", cities[r.nextInt(cities.length)]);
+			record.put("comment", "No comment for this record");
+			records.add(record);
+		}
+		return records;
+	}
+}
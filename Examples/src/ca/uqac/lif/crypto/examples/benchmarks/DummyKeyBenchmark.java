@@ -0,0 +1,115 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.Key;
+import ca.uqac.lif.crypto.asymmetric.KeyPair;
+import ca.uqac.lif.crypto.asymmetric.PrivateKey;
+import ca.uqac.lif.crypto.stubs.DummyAsymmetricCipher;
+
+/**
+ * Measures the time taken by the decryption of objects with the
+ * {@link DummyAsymmetricCipher}, and the number of bytes it allocates, when
+ * keys are matched by their numerical identifier and when they are matched
+ * by name. The number of allocated bytes is only available on virtual
+ * machines that can measure it.
+ */
+public class DummyKeyBenchmark
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		int num_keys = 64;
+		PrivateKey[] private_keys = new PrivateKey[num_keys];
+		Object[] messages = new Object[num_keys];
+		for (int i = 0; i < num_keys; i++)
+		{
+			KeyPair pair = DummyAsymmetricCipher.generator.generateKeyPair("user" + i, "user" + i);
+			private_keys[i] = pair.getPrivateKey();
+			messages[i] = DummyAsymmetricCipher.instance.encrypt(pair.getPublicKey(), "message " + i);
+		}
+		run("Matched by id", DummyAsymmetricCipher.instance, private_keys, messages);
+		run("Matched by name", new NameMatchingCipher(), private_keys, messages);
+	}
+	
+	/**
+	 * Decrypts a set of messages many times with a cipher, and prints the
+	 * time and the number of bytes allocated per decryption.
+	 * @param title The title to print
+	 * @param cipher The cipher
+	 * @param keys The keys used to decrypt each message
+	 * @param messages The messages
+	 * @throws CryptoException Thrown if decryption fails
+	 */
+	protected static void run(String title, DummyAsymmetricCipher cipher, PrivateKey[] keys, Object[] messages) throws CryptoException
+	{
+		int rounds = 20, repetitions = 50000;
+		long time = 0, allocated = 0;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start_bytes = getAllocatedBytes();
+			long start = System.nanoTime();
+			for (int j = 0; j < repetitions; j++)
+			{
+				for (int k = 0; k < keys.length; k++)
+				{
+					cipher.decrypt(keys[k], messages[k]);
+				}
+			}
+			// The first half of the rounds warm up the JIT and are not counted
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+				allocated += getAllocatedBytes() - start_bytes;
+			}
+		}
+		long ops = (long) (rounds - rounds / 2) * repetitions * keys.length;
+		System.out.println(String.format("%-16s %6.1f ns/decryption, %6.1f bytes/decryption", title, (double) time / ops, (double) allocated / ops));
+	}
+	
+	/**
+	 * Gets the number of bytes allocated by the current thread so far.
+	 * @return The number of bytes, or 0 if the virtual machine cannot
+	 * measure it
+	 */
+	protected static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+	
+	/**
+	 * Dummy asymmetric cipher that always matches keys by name, as the cipher
+	 * did before keys had a numerical identifier.
+	 */
+	protected static class NameMatchingCipher extends DummyAsymmetricCipher
+	{
+		@Override
+		protected Object dummyDecrypt(Key k, Object m) throws CryptoException
+		{
+			return dummyDecrypt(k.getName(), m);
+		}
+	}
+}
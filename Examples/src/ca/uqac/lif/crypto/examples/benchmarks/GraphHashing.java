@@ -0,0 +1,154 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.Printable;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.azrael.AzraelHashFunction;
+import ca.uqac.lif.crypto.azrael.BinaryPrinter;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the time taken to compute a content digest of object graphs.
+ * A graph is either printed into an array of bytes that is then hashed, or
+ * hashed while it is printed by an {@link AzraelHashFunction}. In the
+ * second graph, a large object is shared by many others, and the function
+ * can remember its digest.
+ * <p>
+ * Note that the printed form of the second graph is much shorter than its
+ * contents, since the printer replaces repeated strings by references;
+ * the elements of the maps, hashed separately so that their order does not
+ * matter, do not benefit from these references.
+ */
+public class GraphHashing
+{
+	public static void main(String[] args) throws PrintException, CryptoException
+	{
+		// A graph of distinct records, where no value repeats
+		List<Object> records = new ArrayList<Object>();
+		for (int i = 0; i < 2000; i++)
+		{
+			List<Object> record = new ArrayList<Object>();
+			record.add(i);
+			record.add("Record number " + i);
+			for (int j = 0; j < 20; j++)
+			{
+				record.add(i * j);
+			}
+			records.add(record);
+		}
+		// A graph of orders sharing the same large catalog
+		List<String> entries = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++)
+		{
+			entries.add("Entry number " + i);
+		}
+		Catalog catalog = new Catalog(entries);
+		List<Object> orders = new ArrayList<Object>();
+		for (int i = 0; i < 1000; i++)
+		{
+			Map<String,Object> order = new HashMap<String,Object>();
+			order.put("id", i);
+			order.put("catalog", catalog);
+			orders.add(order);
+		}
+		AzraelHashFunction streaming = new AzraelHashFunction("SHA-256");
+		AzraelHashFunction remembering = new AzraelHashFunction("SHA-256", Catalog.class);
+		System.out.println("Distinct records");
+		run("Print, then SHA-256", null, records);
+		run("Streaming", streaming, records);
+		System.out.println("Orders sharing a catalog");
+		run("Print, then SHA-256", null, orders);
+		run("Streaming", streaming, orders);
+		run("Streaming, remembering", remembering, orders);
+	}
+	
+	/**
+	 * Hashes a graph repeatedly, and prints the average time taken.
+	 * @param title The title to print
+	 * @param f The function hashing the graph, or <tt>null</tt> to print the
+	 * graph with a {@link BinaryPrinter} and hash the result with SHA-256
+	 * @param graph The graph
+	 * @throws PrintException Thrown if the graph cannot be printed
+	 * @throws CryptoException Thrown if the graph cannot be hashed
+	 */
+	protected static void run(String title, AzraelHashFunction f, Object graph) throws PrintException, CryptoException
+	{
+		long sink = 0;
+		long time = 0;
+		// The first half of the rounds warm up the JIT and are not counted
+		int rounds = 50;
+		for (int i = 0; i < rounds; i++)
+		{
+			if (f != null)
+			{
+				// Remembered objects are forgotten, so that each round hashes them once
+				f.clearMemo();
+			}
+			long start = System.nanoTime();
+			if (f == null)
+			{
+				sink += SHA.SHA256.getDigest(new BinaryPrinter().print(graph))[0];
+			}
+			else
+			{
+				sink += f.getDigest(graph)[0];
+			}
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+			}
+		}
+		// The sink is printed so that the JIT cannot remove the computations
+		System.out.println(String.format("  %-26s %8.2f ms (%x)", title, time / 1e6 / (rounds - rounds / 2), sink & 0xF));
+	}
+	
+	/**
+	 * A large object that never changes once created.
+	 */
+	public static class Catalog implements Printable
+	{
+		/**
+		 * The entries of the catalog.
+		 */
+		protected final List<String> m_entries;
+		
+		/**
+		 * Creates a new catalog.
+		 * @param entries The entries of the catalog
+		 */
+		public Catalog(List<String> entries)
+		{
+			super();
+			m_entries = entries;
+		}
+		
+		@Override
+		public Object print(ObjectPrinter<?> printer) throws PrintException
+		{
+			return m_entries;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ca.uqac.lif.crypto.hash.SipHashMap;
+
+/**
+ * Compares the time taken to fill and query a {@link HashMap} and a
+ * {@link SipHashMap} with ordinary keys, and with keys chosen by an attacker
+ * so that they all have the same {@link String#hashCode()}. The
+ * {@link HashMap} falls back to a tree in each bucket when this happens,
+ * which is still much slower than the constant time of the
+ * {@link SipHashMap}, where the colliding keys are spread over all buckets.
+ */
+public class HashFlooding
+{
+	public static void main(String[] args)
+	{
+		int bits = 15;
+		List<String> random = new ArrayList<String>();
+		Random r = new Random(0);
+		for (int i = 0; i < 1 << bits; i++)
+		{
+			random.add(Long.toString(r.nextLong(), 36));
+		}
+		List<String> colliding = createColliding(bits);
+		System.out.println(colliding.size() + " keys, all with hash code " + colliding.get(0).hashCode());
+		for (int i = 0; i < 5; i++)
+		{
+			// The first iteration warms up the JIT
+			boolean print = i == 4;
+			run("HashMap, random keys", new HashMap<String,Integer>(), random, print);
+			run("SipHashMap, random keys", new SipHashMap<String,Integer>(), random, print);
+			run("HashMap, colliding keys", new HashMap<String,Integer>(), colliding, print);
+			run("SipHashMap, colliding keys", new SipHashMap<String,Integer>(), colliding, print);
+		}
+	}
+	
+	/**
+	 * Puts keys into a map and looks each of them up a few times, and prints
+	 * the time taken.
+	 * @param title The title to print
+	 * @param map The map
+	 * @param keys The keys
+	 * @param print Set to <tt>true</tt> to print the time
+	 */
+	protected static void run(String title, Map<String,Integer> map, List<String> keys, boolean print)
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < keys.size(); i++)
+		{
+			map.put(keys.get(i), i);
+		}
+		long sum = 0;
+		for (int j = 0; j < 10; j++)
+		{
+			for (String k : keys)
+			{
+				sum += map.get(k);
+			}
+		}
+		long time = System.nanoTime() - start;
+		if (print)
+		{
+			System.out.println(String.format("%-28s %8.1f ms (%d)", title, time / 1e6, sum));
+		}
+	}
+	
+	/**
+	 * Creates strings with the same hash code, by concatenating blocks that
+	 * are either "Aa" or "BB", which have the same hash code.
+	 * @param bits The number of blocks; 2<sup><i>bits</i></sup> strings are
+	 * created
+	 * @return The strings
+	 */
+	protected static List<String> createColliding(int bits)
+	{
+		List<String> out = new ArrayList<String>(1 << bits);
+		for (int i = 0; i < 1 << bits; i++)
+		{
+			StringBuilder s = new StringBuilder();
+			for (int j = 0; j < bits; j++)
+			{
+				s.append((i & (1 << j)) == 0 ? "Aa" : "BB");
+			}
+			out.add(s.toString());
+		}
+		return out;
+	}
+}
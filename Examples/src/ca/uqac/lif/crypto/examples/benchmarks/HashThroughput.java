@@ -0,0 +1,176 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.hash.Murmur3Hash128;
+import ca.uqac.lif.crypto.hash.Murmur3Hash32;
+import ca.uqac.lif.crypto.hash.XXHash64;
+import ca.uqac.lif.crypto.java.MD5;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the throughput of the non-cryptographic hash functions on arrays
+ * of bytes and on direct buffers, compared to MD5 and SHA-256, for short and
+ * long messages.
+ */
+public class HashThroughput
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		for (int size : new int[] {64, 1024 * 1024})
+		{
+			final byte[] m = new byte[size];
+			new Random(0).nextBytes(m);
+			final ByteBuffer direct = ByteBuffer.allocateDirect(size);
+			direct.put(m);
+			direct.flip();
+			System.out.println("Messages of " + size + " bytes");
+			run("XXH64", m.length, new Task()
+			{
+				@Override
+				public long run()
+				{
+					return XXHash64.instance.getLongDigest(m);
+				}
+			});
+			run("XXH64 (direct)", m.length, new Task()
+			{
+				@Override
+				public long run()
+				{
+					return XXHash64.instance.hash(direct);
+				}
+			});
+			run("Murmur3-32", m.length, new Task()
+			{
+				@Override
+				public long run()
+				{
+					return Murmur3Hash32.instance.getIntDigest(m);
+				}
+			});
+			run("Murmur3-128", m.length, new Task()
+			{
+				@Override
+				public long run()
+				{
+					return Murmur3Hash128.instance.getLongDigest(m);
+				}
+			});
+			run("Murmur3-128 (direct)", m.length, new Task()
+			{
+				@Override
+				public long run()
+				{
+					return Murmur3Hash128.instance.hash(direct, null, 0);
+				}
+			});
+			run("MD5", m.length, new DigestTask(MD5.instance, m));
+			run("SHA-256", m.length, new DigestTask(SHA.SHA256, m));
+		}
+	}
+	
+	/**
+	 * Repeats a task for a while, and prints the number of bytes it hashes
+	 * per second.
+	 * @param title The title to print
+	 * @param size The number of bytes hashed by each execution of the task
+	 * @param t The task
+	 * @throws CryptoException Thrown if the task fails
+	 */
+	protected static void run(String title, int size, Task t) throws CryptoException
+	{
+		long sink = 0;
+		long bytes = 0;
+		long time = 0;
+		// The first half of the rounds warm up the JIT and are not counted
+		int rounds = 10;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			long n = 0;
+			while (System.nanoTime() - start < 100000000L)
+			{
+				for (int j = 0; j < 64; j++)
+				{
+					sink += t.run();
+				}
+				n += 64;
+			}
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+				bytes += n * size;
+			}
+		}
+		// The sink is printed so that the JIT cannot remove the computations
+		System.out.println(String.format("  %-22s %8.2f GB/s (%x)", title, bytes / (time / 1e9) / 1e9, sink & 0xF));
+	}
+	
+	/**
+	 * A hashing task to measure.
+	 */
+	protected interface Task
+	{
+		/**
+		 * Hashes a message once.
+		 * @return A value depending on the digest
+		 * @throws CryptoException Thrown if hashing fails
+		 */
+		public long run() throws CryptoException;
+	}
+	
+	/**
+	 * A task computing the digest of a message as an array of bytes.
+	 */
+	protected static class DigestTask implements Task
+	{
+		/**
+		 * The hash function.
+		 */
+		protected final HashFunction<byte[],byte[]> m_function;
+		
+		/**
+		 * The message.
+		 */
+		protected final byte[] m_message;
+		
+		/**
+		 * Creates a new task.
+		 * @param function The hash function
+		 * @param m The message
+		 */
+		public DigestTask(HashFunction<byte[],byte[]> function, byte[] m)
+		{
+			super();
+			m_function = function;
+			m_message = m;
+		}
+		
+		@Override
+		public long run() throws CryptoException
+		{
+			return m_function.getDigest(m_message)[0];
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.java.HMAC;
+import ca.uqac.lif.crypto.java.HMAC.HMACKey;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the time taken to compute HMAC-SHA256 tags with {@link HMAC},
+ * compared to building HMAC by hand on {@link SHA#SHA256}, which hashes
+ * the pads of the key for every message, and to a {@link Mac} initialized
+ * for every message.
+ */
+public class HmacBenchmark
+{
+	public static void main(String[] args) throws CryptoException, GeneralSecurityException
+	{
+		final byte[] key_bytes = new byte[32];
+		new Random(0).nextBytes(key_bytes);
+		final HMACKey key = HMAC.readFrom(key_bytes);
+		final byte[] ipad = new byte[64];
+		final byte[] opad = new byte[64];
+		for (int i = 0; i < 64; i++)
+		{
+			byte b = i < key_bytes.length ? key_bytes[i] : 0;
+			ipad[i] = (byte) (b ^ 0x36);
+			opad[i] = (byte) (b ^ 0x5C);
+		}
+		final byte[] tag = new byte[HMAC.SHA256.getTagLength()];
+		for (int size : new int[] {32, 256, 4096})
+		{
+			final byte[] m = new byte[size];
+			new Random(0).nextBytes(m);
+			System.out.println("Messages of " + size + " bytes");
+			run("By hand on SHA-256", new Task()
+			{
+				@Override
+				public long run()
+				{
+					byte[] inner = new byte[64 + m.length];
+					System.arraycopy(ipad, 0, inner, 0, 64);
+					System.arraycopy(m, 0, inner, 64, m.length);
+					byte[] outer = new byte[64 + 32];
+					System.arraycopy(opad, 0, outer, 0, 64);
+					System.arraycopy(SHA.SHA256.getDigest(inner), 0, outer, 64, 32);
+					return SHA.SHA256.getDigest(outer)[0];
+				}
+			});
+			run("New javax.crypto.Mac", new Task()
+			{
+				@Override
+				public long run() throws GeneralSecurityException
+				{
+					Mac mac = Mac.getInstance("HmacSHA256");
+					mac.init(new SecretKeySpec(key_bytes, "HmacSHA256"));
+					return mac.doFinal(m)[0];
+				}
+			});
+			run("HMAC.getTag", new Task()
+			{
+				@Override
+				public long run() throws CryptoException
+				{
+					return HMAC.SHA256.getTag(key, m)[0];
+				}
+			});
+			run("HMAC.getTag (buffer)", new Task()
+			{
+				@Override
+				public long run() throws CryptoException
+				{
+					return HMAC.SHA256.getTag(key, m, tag, 0) + tag[0];
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Repeats a task for a while, and prints the average time it takes.
+	 * @param title The title to print
+	 * @param t The task
+	 * @throws CryptoException Thrown if the task fails
+	 * @throws GeneralSecurityException Thrown if the task fails
+	 */
+	protected static void run(String title, Task t) throws CryptoException, GeneralSecurityException
+	{
+		long sink = 0;
+		long count = 0;
+		long time = 0;
+		// The first half of the rounds warm up the JIT and are not counted
+		int rounds = 10;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			long n = 0;
+			while (System.nanoTime() - start < 100000000L)
+			{
+				sink += t.run();
+				n++;
+			}
+			if (i >= rounds / 2)
+			{
+				time += System.nanoTime() - start;
+				count += n;
+			}
+		}
+		// The sink is printed so that the JIT cannot remove the computations
+		System.out.println(String.format("  %-22s %8.1f ns/tag (%x)", title, (double) time / count, sink & 0xF));
+	}
+	
+	/**
+	 * A task to measure.
+	 */
+	protected interface Task
+	{
+		/**
+		 * Computes one tag.
+		 * @return A value depending on the tag
+		 * @throws CryptoException Thrown if the computation fails
+		 * @throws GeneralSecurityException Thrown if the computation fails
+		 */
+		public long run() throws CryptoException, GeneralSecurityException;
+	}
+}
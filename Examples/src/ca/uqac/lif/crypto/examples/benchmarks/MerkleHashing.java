@@ -0,0 +1,94 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.MerkleTree;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the time taken to keep a SHA-256 digest of a dataset of 64 MiB,
+ * split into blocks of 4 KiB, when a single block changes. The digest is
+ * either computed again over the whole dataset, or kept as the root of a
+ * {@link MerkleTree} whose leaves are the blocks. The time taken to build
+ * the tree is also measured, in the current thread and with one thread per
+ * processor.
+ */
+public class MerkleHashing
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		Random r = new Random(0);
+		List<byte[]> blocks = new ArrayList<byte[]>();
+		for (int i = 0; i < 16384; i++)
+		{
+			byte[] block = new byte[4096];
+			r.nextBytes(block);
+			blocks.add(block);
+		}
+		byte[] data = new byte[blocks.size() * 4096];
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		long sink = 0;
+		long[] times = new long[4];
+		// The first half of the rounds warm up the JIT and are not counted
+		int rounds = 10;
+		int updates = 1000;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			MerkleTree tree = new MerkleTree(SHA.SHA256, blocks);
+			long built = System.nanoTime();
+			sink += new MerkleTree(SHA.SHA256, blocks, executor).getRoot()[0];
+			long parallel = System.nanoTime();
+			for (int j = 0; j < updates; j++)
+			{
+				int index = r.nextInt(blocks.size());
+				r.nextBytes(blocks.get(index));
+				tree.update(index, blocks.get(index));
+				sink += tree.getRoot()[0];
+			}
+			long updated = System.nanoTime();
+			// Hashing the whole dataset again is only done once per round
+			int index = r.nextInt(blocks.size());
+			r.nextBytes(blocks.get(index));
+			System.arraycopy(blocks.get(index), 0, data, index * 4096, 4096);
+			sink += SHA.SHA256.getDigest(data)[0];
+			if (i >= rounds / 2)
+			{
+				times[0] += built - start;
+				times[1] += parallel - built;
+				times[2] += updated - parallel;
+				times[3] += System.nanoTime() - updated;
+			}
+		}
+		executor.shutdown();
+		int n = rounds - rounds / 2;
+		System.out.println(String.format("  %-26s %10.2f ms", "Build tree", times[0] / 1e6 / n));
+		System.out.println(String.format("  %-26s %10.2f ms", "Build tree in parallel", times[1] / 1e6 / n));
+		System.out.println(String.format("  %-26s %10.2f ms", "Update a leaf", times[2] / 1e6 / n / updates));
+		System.out.println(String.format("  %-26s %10.2f ms", "Hash the whole dataset", times[3] / 1e6 / n));
+		// The sink is printed so that the JIT cannot remove the computations
+		System.out.println(String.format("  (%x)", sink & 0xF));
+	}
+}
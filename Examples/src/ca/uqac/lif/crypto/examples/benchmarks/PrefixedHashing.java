@@ -0,0 +1,87 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.java.PrefixedHashFunction;
+import ca.uqac.lif.crypto.java.SHA;
+
+/**
+ * Measures the time taken to hash 32-byte messages after a fixed prefix
+ * with SHA-256, either by concatenating the prefix and each message, or
+ * with a {@link PrefixedHashFunction} that hashes the prefix only once.
+ */
+public class PrefixedHashing
+{
+	public static void main(String[] args) throws CryptoException
+	{
+		Random r = new Random(0);
+		byte[][] messages = new byte[4096][32];
+		for (byte[] m : messages)
+		{
+			r.nextBytes(m);
+		}
+		byte[] out = new byte[SHA.SHA256.getDigestLength()];
+		for (int size : new int[] {16, 64, 128, 512})
+		{
+			byte[] prefix = new byte[size];
+			r.nextBytes(prefix);
+			PrefixedHashFunction f = SHA.SHA256.withPrefix(prefix);
+			byte[] concat = Arrays.copyOf(prefix, size + 32);
+			System.out.println("Prefix of " + size + " bytes");
+			long sink = 0;
+			long[] times = new long[3];
+			// The first half of the rounds warm up the JIT and are not counted
+			int rounds = 200;
+			for (int i = 0; i < rounds; i++)
+			{
+				long start = System.nanoTime();
+				for (byte[] m : messages)
+				{
+					System.arraycopy(m, 0, concat, size, 32);
+					sink += SHA.SHA256.getDigest(concat)[0];
+				}
+				long mid = System.nanoTime();
+				for (byte[] m : messages)
+				{
+					sink += f.getDigest(m)[0];
+				}
+				long end = System.nanoTime();
+				for (byte[] m : messages)
+				{
+					sink += f.getDigest(m, out, 0) + out[0];
+				}
+				if (i >= rounds / 2)
+				{
+					times[0] += mid - start;
+					times[1] += end - mid;
+					times[2] += System.nanoTime() - end;
+				}
+			}
+			long n = (long) messages.length * (rounds - rounds / 2);
+			System.out.println(String.format("  %-22s %8.1f ns/digest", "Concatenation", (double) times[0] / n));
+			System.out.println(String.format("  %-22s %8.1f ns/digest", "Prefixed", (double) times[1] / n));
+			System.out.println(String.format("  %-22s %8.1f ns/digest", "Prefixed (buffer)", (double) times[2] / n));
+			// The sink is printed so that the JIT cannot remove the computations
+			System.out.println(String.format("  (%x)", sink & 0xF));
+		}
+	}
+}
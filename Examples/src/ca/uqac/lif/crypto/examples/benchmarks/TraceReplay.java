@@ -0,0 +1,142 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.examples.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.asymmetric.AsymmetricCipher;
+import ca.uqac.lif.crypto.asymmetric.KeyPair;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.java.DES;
+import ca.uqac.lif.crypto.java.RSA;
+import ca.uqac.lif.crypto.java.SHA;
+import ca.uqac.lif.crypto.stubs.DummyAsymmetricCipher;
+import ca.uqac.lif.crypto.stubs.DummyHashFunction;
+import ca.uqac.lif.crypto.stubs.DummyHashFunction.HashValue;
+import ca.uqac.lif.crypto.stubs.DummySymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+import ca.uqac.lif.crypto.trace.RecordingAsymmetricCipher;
+import ca.uqac.lif.crypto.trace.RecordingHashFunction;
+import ca.uqac.lif.crypto.trace.RecordingSymmetricCipher;
+import ca.uqac.lif.crypto.trace.Trace;
+import ca.uqac.lif.crypto.trace.TraceReplayer;
+
+/**
+ * Records the operations of a small application running on the dummy
+ * ciphers of the stubs, and replays them against DES, RSA and SHA-256.
+ * The application has a few threads, each of which sends messages: every
+ * message is hashed and encrypted with a session key, and every few
+ * messages, the session key is sent again encrypted with the public key of
+ * a server, which decrypts it.
+ */
+public class TraceReplay
+{
+	public static void main(String[] args) throws CryptoException, IOException, InterruptedException
+	{
+		final Trace trace = new Trace();
+		final SymmetricCipher<Object> sym = new RecordingSymmetricCipher<Object>("DES", DummySymmetricCipher.instance, trace);
+		final AsymmetricCipher<Object> asym = new RecordingAsymmetricCipher<Object>("RSA", DummyAsymmetricCipher.instance, trace);
+		final HashFunction<Object,?> hash = new RecordingHashFunction<Object,HashValue>("SHA-256", DummyHashFunction.instance, trace);
+		final KeyPair server = DummyAsymmetricCipher.generator.generateKeyPair("server", "server");
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++)
+		{
+			final int client = i;
+			threads.add(new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						runClient(client, sym, asym, hash, server);
+					}
+					catch (CryptoException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}));
+		}
+		for (Thread t : threads)
+		{
+			t.start();
+		}
+		for (Thread t : threads)
+		{
+			t.join();
+		}
+		StringBuilder csv = new StringBuilder();
+		trace.write(csv);
+		System.out.println("Recorded " + trace.size() + " operations; the trace starts with:");
+		String[] lines = csv.toString().split("\n");
+		for (int i = 0; i < 6 && i < lines.length; i++)
+		{
+			System.out.println("  " + lines[i]);
+		}
+		TraceReplayer replayer = new TraceReplayer(Trace.read(new StringReader(csv.toString())));
+		replayer.setSymmetric("DES", DES.instance, DES.generator);
+		replayer.setAsymmetric("RSA", RSA.instance, RSA.generator);
+		replayer.setHash("SHA-256", SHA.SHA256);
+		// The first replays warm up the JIT and are not counted
+		long time = 0;
+		int rounds = 10;
+		for (int i = 0; i < rounds; i++)
+		{
+			long t = replayer.replay();
+			if (i >= rounds / 2)
+			{
+				time += t;
+			}
+		}
+		double ms = time / 1e6 / (rounds - rounds / 2);
+		System.out.println(String.format("Replay against DES, RSA and SHA-256: %.1f ms, %.0f operations/s", ms, trace.size() / (ms / 1000)));
+	}
+	
+	/**
+	 * Runs the operations of one client of the application.
+	 * @param client The number of the client
+	 * @param sym The symmetric cipher
+	 * @param asym The asymmetric cipher
+	 * @param hash The hash function
+	 * @param server The key pair of the server
+	 * @throws CryptoException Thrown if an operation fails
+	 */
+	protected static void runClient(int client, SymmetricCipher<Object> sym, AsymmetricCipher<Object> asym, HashFunction<Object,?> hash, KeyPair server) throws CryptoException
+	{
+		Random r = new Random(client);
+		SymmetricKey session = DummySymmetricCipher.generator.generateKey("session" + client);
+		for (int i = 0; i < 500; i++)
+		{
+			if (i % 50 == 0)
+			{
+				Object sent = asym.encrypt(server.getPublicKey(), new byte[8]);
+				asym.decrypt(server.getPrivateKey(), sent);
+			}
+			byte[] message = new byte[64 + r.nextInt(4096)];
+			hash.getDigest(message);
+			sym.encrypt(session, message);
+		}
+	}
+}
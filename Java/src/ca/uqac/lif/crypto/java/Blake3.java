@@ -0,0 +1,838 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.java;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.BufferHashFunction;
+import ca.uqac.lif.crypto.hash.HashFunction;
+
+/**
+ * Pure Java implementation of the
+ * <a href="https://github.com/BLAKE3-team/BLAKE3">BLAKE3</a> hash function.
+ * Unlike {@link SHA}, which processes its input one block after the other,
+ * BLAKE3 splits its input into chunks of 1 KiB that are hashed
+ * independently, and combines the results in a binary tree. Inputs of more
+ * than {@link #PARALLEL_SIZE} bytes are therefore split into subtrees that
+ * are hashed by the threads of a {@link ForkJoinPool}; the result is the
+ * same as if the input were hashed sequentially.
+ * <p>
+ * Besides one-shot digests of 32 bytes, the function offers:
+ * <ul>
+ * <li>an incremental {@link Hasher}, for inputs that arrive in pieces;</li>
+ * <li>extendable output: {@link #getDigest(byte[], int)} and
+ * {@link Output} produce digests of any length, the first 32 bytes of
+ * which are the regular digest;</li>
+ * <li>a keyed mode, which turns the function into a MAC.</li>
+ * </ul>
+ */
+public class Blake3 implements HashFunction<byte[],byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * The length of the default digest, in bytes.
+	 */
+	public static final int OUT_LEN = 32;
+	
+	/**
+	 * The length of a key, in bytes.
+	 */
+	public static final int KEY_LEN = 32;
+	
+	/**
+	 * The size, in bytes, above which an input is split into subtrees hashed
+	 * in parallel. Each subtree handed to a thread is at least half this size,
+	 * so that the cost of a task is small compared to its work.
+	 */
+	public static final int PARALLEL_SIZE = 128 * 1024;
+	
+	/**
+	 * The length of a block, in bytes.
+	 */
+	protected static final int BLOCK_LEN = 64;
+	
+	/**
+	 * The length of a chunk, in bytes.
+	 */
+	protected static final int CHUNK_LEN = 1024;
+	
+	/**
+	 * Flag of the first block of a chunk.
+	 */
+	protected static final int CHUNK_START = 1;
+	
+	/**
+	 * Flag of the last block of a chunk.
+	 */
+	protected static final int CHUNK_END = 2;
+	
+	/**
+	 * Flag of a parent node of the tree.
+	 */
+	protected static final int PARENT = 4;
+	
+	/**
+	 * Flag of the root node of the tree.
+	 */
+	protected static final int ROOT = 8;
+	
+	/**
+	 * Flag of every node in keyed mode.
+	 */
+	protected static final int KEYED_HASH = 16;
+	
+	/**
+	 * The initialization vector, which is also the key of the unkeyed mode.
+	 */
+	protected static final int[] IV = {0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19};
+	
+	/**
+	 * The number of rounds of the compression function. The words of the
+	 * block are permuted between rounds.
+	 */
+	protected static final int ROUNDS = 7;
+	
+	/**
+	 * A single publicly visible instance of the unkeyed hash function, using
+	 * the common fork-join pool. It is declared after the constants it uses,
+	 * so that they are initialized when it is created.
+	 */
+	public static final Blake3 instance = new Blake3();
+	
+	/**
+	 * The key words used as the chaining value of the first block of every
+	 * chunk and of every parent node.
+	 */
+	/*@ non_null @*/ protected final int[] m_key;
+	
+	/**
+	 * The flags added to every node, which depend on the mode.
+	 */
+	protected final int m_flags;
+	
+	/**
+	 * The pool hashing the subtrees of large inputs, or <tt>null</tt> to use
+	 * the common pool.
+	 */
+	/*@ null @*/ protected final ForkJoinPool m_pool;
+	
+	/**
+	 * Creates a new instance of the unkeyed hash function, using the common
+	 * fork-join pool.
+	 */
+	public Blake3()
+	{
+		this(IV, 0, null);
+	}
+	
+	/**
+	 * Creates a new instance of the unkeyed hash function.
+	 * @param pool The pool hashing the subtrees of large inputs
+	 */
+	public Blake3(/*@ non_null @*/ ForkJoinPool pool)
+	{
+		this(IV, 0, pool);
+	}
+	
+	/**
+	 * Creates a new instance of the keyed hash function, using the common
+	 * fork-join pool.
+	 * @param key The key, which must be {@link #KEY_LEN} bytes long
+	 * @throws CryptoException Thrown if the key does not have the right
+	 * length
+	 */
+	public Blake3(/*@ non_null @*/ byte[] key) throws CryptoException
+	{
+		this(keyWords(key), KEYED_HASH, null);
+	}
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param key The key words
+	 * @param flags The flags added to every node
+	 * @param pool The pool hashing the subtrees of large inputs, or
+	 * <tt>null</tt> to use the common pool
+	 */
+	protected Blake3(/*@ non_null @*/ int[] key, int flags, /*@ null @*/ ForkJoinPool pool)
+	{
+		super();
+		m_key = key;
+		m_flags = flags;
+		m_pool = pool;
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		return getDigest(m, OUT_LEN);
+	}
+	
+	/**
+	 * Computes a digest of arbitrary length. Shorter digests are prefixes of
+	 * longer ones.
+	 * @param m The message
+	 * @param length The length of the digest, in bytes
+	 * @return The digest
+	 */
+	/*@ non_null @*/ public byte[] getDigest(/*@ non_null @*/ byte[] m, int length)
+	{
+		byte[] out = new byte[length];
+		getOutput(m).read(0, out, 0, length);
+		return out;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset)
+	{
+		getOutput(m).read(0, out, offset, OUT_LEN);
+		return OUT_LEN;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return OUT_LEN;
+	}
+	
+	/**
+	 * Gets the extendable output of a message, from which digests of any
+	 * length can be read.
+	 * @param m The message
+	 * @return The output
+	 */
+	/*@ non_null @*/ public Output getOutput(/*@ non_null @*/ byte[] m)
+	{
+		if (m.length <= CHUNK_LEN)
+		{
+			return chunkOutput(m, 0, m.length, 0);
+		}
+		int left_len = leftLength(m.length);
+		int[] left, right;
+		if (m.length <= PARALLEL_SIZE)
+		{
+			left = subtree(m, 0, left_len, 0);
+			right = subtree(m, left_len, m.length - left_len, left_len / CHUNK_LEN);
+		}
+		else
+		{
+			SubtreeTask left_task = new SubtreeTask(m, 0, left_len, 0);
+			SubtreeTask right_task = new SubtreeTask(m, left_len, m.length - left_len, left_len / CHUNK_LEN);
+			ForkJoinPool pool = m_pool == null ? ForkJoinPool.commonPool() : m_pool;
+			pool.execute(left_task);
+			right = pool.invoke(right_task);
+			left = left_task.join();
+		}
+		return parentOutput(left, right);
+	}
+	
+	/**
+	 * Creates a new incremental hasher using the key and mode of this
+	 * function.
+	 * @return The hasher
+	 */
+	/*@ non_null @*/ public Hasher newHasher()
+	{
+		return new Hasher();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "BLAKE3";
+	}
+	
+	/**
+	 * Computes the chaining value of a subtree sequentially.
+	 * @param m The array containing the input
+	 * @param offset The position of the subtree's input in the array
+	 * @param len The length of the subtree's input, which is a power of 2
+	 * times {@link #CHUNK_LEN} unless the subtree is the rightmost one
+	 * @param chunk The index of the first chunk of the subtree
+	 * @return The chaining value
+	 */
+	protected int[] subtree(byte[] m, int offset, int len, long chunk)
+	{
+		if (len <= CHUNK_LEN)
+		{
+			return chunkOutput(m, offset, len, chunk).chainingValue();
+		}
+		int left_len = leftLength(len);
+		int[] left = subtree(m, offset, left_len, chunk);
+		int[] right = subtree(m, offset + left_len, len - left_len, chunk + left_len / CHUNK_LEN);
+		return parentOutput(left, right).chainingValue();
+	}
+	
+	/**
+	 * Compresses all the blocks of a chunk but the last one.
+	 * @param m The array containing the chunk
+	 * @param offset The position of the chunk in the array
+	 * @param len The length of the chunk, at most {@link #CHUNK_LEN}
+	 * @param chunk The index of the chunk
+	 * @return The output of the last block
+	 */
+	protected Output chunkOutput(byte[] m, int offset, int len, long chunk)
+	{
+		int[] cv = m_key.clone();
+		int[] words = new int[16];
+		int start = CHUNK_START;
+		int end = offset + len;
+		while (end - offset > BLOCK_LEN)
+		{
+			readWords(m, offset, BLOCK_LEN, words);
+			compress(cv, words, chunk, BLOCK_LEN, m_flags | start, cv);
+			offset += BLOCK_LEN;
+			start = 0;
+		}
+		readWords(m, offset, end - offset, words);
+		return new Output(cv, words, chunk, end - offset, m_flags | start | CHUNK_END);
+	}
+	
+	/**
+	 * Gets the output of a parent node.
+	 * @param left The chaining value of the left child
+	 * @param right The chaining value of the right child
+	 * @return The output
+	 */
+	protected Output parentOutput(int[] left, int[] right)
+	{
+		int[] words = new int[16];
+		System.arraycopy(left, 0, words, 0, 8);
+		System.arraycopy(right, 0, words, 8, 8);
+		return new Output(m_key, words, 0, BLOCK_LEN, m_flags | PARENT);
+	}
+	
+	/**
+	 * Gets the length of the left subtree of an input, which is the largest
+	 * power of 2 times {@link #CHUNK_LEN} that leaves at least one byte to
+	 * the right subtree.
+	 * @param len The length of the input, greater than {@link #CHUNK_LEN}
+	 * @return The length of the left subtree
+	 */
+	protected static int leftLength(int len)
+	{
+		return Integer.highestOneBit((len - 1) / CHUNK_LEN) * CHUNK_LEN;
+	}
+	
+	/**
+	 * Reads a block as little-endian words, padding it with zeros.
+	 * @param m The array containing the block
+	 * @param offset The position of the block in the array
+	 * @param len The length of the block, at most {@link #BLOCK_LEN}
+	 * @param words The array receiving the 16 words
+	 */
+	protected static void readWords(byte[] m, int offset, int len, int[] words)
+	{
+		if (len == BLOCK_LEN)
+		{
+			for (int i = 0; i < 16; i++, offset += 4)
+			{
+				words[i] = (m[offset] & 0xFF) | (m[offset + 1] & 0xFF) << 8 | (m[offset + 2] & 0xFF) << 16 | m[offset + 3] << 24;
+			}
+			return;
+		}
+		for (int i = 0; i < 16; i++)
+		{
+			words[i] = 0;
+		}
+		for (int i = 0; i < len; i++)
+		{
+			words[i >> 2] |= (m[offset + i] & 0xFF) << ((i & 3) << 3);
+		}
+	}
+	
+	/**
+	 * Converts a key into words.
+	 * @param key The key
+	 * @return The words
+	 * @throws CryptoException Thrown if the key is not {@link #KEY_LEN}
+	 * bytes long
+	 */
+	protected static int[] keyWords(byte[] key) throws CryptoException
+	{
+		if (key.length != KEY_LEN)
+		{
+			throw new CryptoException("A BLAKE3 key must be " + KEY_LEN + " bytes long");
+		}
+		int[] words = new int[16];
+		readWords(key, 0, KEY_LEN, words);
+		int[] cv = new int[8];
+		System.arraycopy(words, 0, cv, 0, 8);
+		return cv;
+	}
+	
+	/**
+	 * The compression function. It writes 8 words of output, or 16 for the
+	 * extended output used by the root node.
+	 * @param cv The input chaining value
+	 * @param m The words of the block
+	 * @param counter The counter, which is the index of the chunk for chunk
+	 * blocks, and the index of the output block for the root node
+	 * @param block_len The number of bytes in the block
+	 * @param flags The flags of the block
+	 * @param out The array receiving the output, whose length is either 8 or
+	 * 16; with 8 words, it can be the same array as <tt>cv</tt>
+	 */
+	protected static void compress(int[] cv, int[] m, long counter, int block_len, int flags, int[] out)
+	{
+		int v0 = cv[0], v1 = cv[1], v2 = cv[2], v3 = cv[3];
+		int v4 = cv[4], v5 = cv[5], v6 = cv[6], v7 = cv[7];
+		int v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+		int v12 = (int) counter, v13 = (int) (counter >>> 32), v14 = block_len, v15 = flags;
+		int m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+		int m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11], m12 = m[12], m13 = m[13], m14 = m[14], m15 = m[15];
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			// Mix the columns
+			v0 += v4 + m0;
+			v12 = Integer.rotateRight(v12 ^ v0, 16);
+			v8 += v12;
+			v4 = Integer.rotateRight(v4 ^ v8, 12);
+			v0 += v4 + m1;
+			v12 = Integer.rotateRight(v12 ^ v0, 8);
+			v8 += v12;
+			v4 = Integer.rotateRight(v4 ^ v8, 7);
+			v1 += v5 + m2;
+			v13 = Integer.rotateRight(v13 ^ v1, 16);
+			v9 += v13;
+			v5 = Integer.rotateRight(v5 ^ v9, 12);
+			v1 += v5 + m3;
+			v13 = Integer.rotateRight(v13 ^ v1, 8);
+			v9 += v13;
+			v5 = Integer.rotateRight(v5 ^ v9, 7);
+			v2 += v6 + m4;
+			v14 = Integer.rotateRight(v14 ^ v2, 16);
+			v10 += v14;
+			v6 = Integer.rotateRight(v6 ^ v10, 12);
+			v2 += v6 + m5;
+			v14 = Integer.rotateRight(v14 ^ v2, 8);
+			v10 += v14;
+			v6 = Integer.rotateRight(v6 ^ v10, 7);
+			v3 += v7 + m6;
+			v15 = Integer.rotateRight(v15 ^ v3, 16);
+			v11 += v15;
+			v7 = Integer.rotateRight(v7 ^ v11, 12);
+			v3 += v7 + m7;
+			v15 = Integer.rotateRight(v15 ^ v3, 8);
+			v11 += v15;
+			v7 = Integer.rotateRight(v7 ^ v11, 7);
+			// Mix the diagonals
+			v0 += v5 + m8;
+			v15 = Integer.rotateRight(v15 ^ v0, 16);
+			v10 += v15;
+			v5 = Integer.rotateRight(v5 ^ v10, 12);
+			v0 += v5 + m9;
+			v15 = Integer.rotateRight(v15 ^ v0, 8);
+			v10 += v15;
+			v5 = Integer.rotateRight(v5 ^ v10, 7);
+			v1 += v6 + m10;
+			v12 = Integer.rotateRight(v12 ^ v1, 16);
+			v11 += v12;
+			v6 = Integer.rotateRight(v6 ^ v11, 12);
+			v1 += v6 + m11;
+			v12 = Integer.rotateRight(v12 ^ v1, 8);
+			v11 += v12;
+			v6 = Integer.rotateRight(v6 ^ v11, 7);
+			v2 += v7 + m12;
+			v13 = Integer.rotateRight(v13 ^ v2, 16);
+			v8 += v13;
+			v7 = Integer.rotateRight(v7 ^ v8, 12);
+			v2 += v7 + m13;
+			v13 = Integer.rotateRight(v13 ^ v2, 8);
+			v8 += v13;
+			v7 = Integer.rotateRight(v7 ^ v8, 7);
+			v3 += v4 + m14;
+			v14 = Integer.rotateRight(v14 ^ v3, 16);
+			v9 += v14;
+			v4 = Integer.rotateRight(v4 ^ v9, 12);
+			v3 += v4 + m15;
+			v14 = Integer.rotateRight(v14 ^ v3, 8);
+			v9 += v14;
+			v4 = Integer.rotateRight(v4 ^ v9, 7);
+			// Permute the words for the next round
+			int t0 = m0, t1 = m1, t2 = m2, t3 = m3, t4 = m4, t5 = m5, t6 = m6, t7 = m7;
+			int t8 = m8, t9 = m9, t10 = m10, t11 = m11, t12 = m12, t13 = m13, t14 = m14, t15 = m15;
+			m0 = t2;
+			m1 = t6;
+			m2 = t3;
+			m3 = t10;
+			m4 = t7;
+			m5 = t0;
+			m6 = t4;
+			m7 = t13;
+			m8 = t1;
+			m9 = t11;
+			m10 = t12;
+			m11 = t5;
+			m12 = t9;
+			m13 = t14;
+			m14 = t15;
+			m15 = t8;
+		}
+		if (out.length > 8)
+		{
+			out[8] = v8 ^ cv[0];
+			out[9] = v9 ^ cv[1];
+			out[10] = v10 ^ cv[2];
+			out[11] = v11 ^ cv[3];
+			out[12] = v12 ^ cv[4];
+			out[13] = v13 ^ cv[5];
+			out[14] = v14 ^ cv[6];
+			out[15] = v15 ^ cv[7];
+		}
+		out[0] = v0 ^ v8;
+		out[1] = v1 ^ v9;
+		out[2] = v2 ^ v10;
+		out[3] = v3 ^ v11;
+		out[4] = v4 ^ v12;
+		out[5] = v5 ^ v13;
+		out[6] = v6 ^ v14;
+		out[7] = v7 ^ v15;
+	}
+	
+	/**
+	 * The last compression of a node, kept uncompressed so that it can either
+	 * produce the chaining value of the node, or, if the node is the root,
+	 * any number of output bytes. An output does not depend on the state of
+	 * the function or hasher that produced it, and can be read by multiple
+	 * threads at the same time.
+	 */
+	public static class Output
+	{
+		/**
+		 * The input chaining value.
+		 */
+		/*@ non_null @*/ protected final int[] m_cv;
+		
+		/**
+		 * The words of the block.
+		 */
+		/*@ non_null @*/ protected final int[] m_words;
+		
+		/**
+		 * The counter of the block.
+		 */
+		protected final long m_counter;
+		
+		/**
+		 * The number of bytes in the block.
+		 */
+		protected final int m_blockLen;
+		
+		/**
+		 * The flags of the block.
+		 */
+		protected final int m_flags;
+		
+		/**
+		 * Creates a new output.
+		 * @param cv The input chaining value
+		 * @param words The words of the block
+		 * @param counter The counter of the block
+		 * @param block_len The number of bytes in the block
+		 * @param flags The flags of the block
+		 */
+		protected Output(int[] cv, int[] words, long counter, int block_len, int flags)
+		{
+			super();
+			m_cv = cv;
+			m_words = words;
+			m_counter = counter;
+			m_blockLen = block_len;
+			m_flags = flags;
+		}
+		
+		/**
+		 * Gets the chaining value of the node.
+		 * @return The chaining value
+		 */
+		protected int[] chainingValue()
+		{
+			int[] cv = new int[8];
+			compress(m_cv, m_words, m_counter, m_blockLen, m_flags, cv);
+			return cv;
+		}
+		
+		/**
+		 * Reads bytes of the extendable output, which is the root output of the
+		 * node.
+		 * @param position The position of the first byte to read in the output
+		 * @param out The array receiving the bytes
+		 * @param offset The position in the array where the bytes are written
+		 * @param len The number of bytes to read
+		 */
+		public void read(long position, /*@ non_null @*/ byte[] out, int offset, int len)
+		{
+			int[] words = new int[16];
+			long block = position / BLOCK_LEN;
+			int skip = (int) (position % BLOCK_LEN);
+			while (len > 0)
+			{
+				compress(m_cv, m_words, block++, m_blockLen, m_flags | ROOT, words);
+				for (int i = skip; i < BLOCK_LEN && len > 0; i++, len--)
+				{
+					out[offset++] = (byte) (words[i >> 2] >>> ((i & 3) << 3));
+				}
+				skip = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Incremental context of the hash function, to which the input can be
+	 * given in pieces of any size. Completed chunks are merged as soon as
+	 * possible, so that the hasher only keeps one chaining value per level of
+	 * the tree. A hasher must not be used by multiple threads at the same
+	 * time.
+	 */
+	public class Hasher
+	{
+		/**
+		 * The chaining values of the subtrees waiting for their right sibling,
+		 * the largest first.
+		 */
+		/*@ non_null @*/ protected final int[][] m_stack = new int[54][];
+		
+		/**
+		 * The number of chaining values in the stack.
+		 */
+		protected int m_stackLen;
+		
+		/**
+		 * The chaining value of the current chunk.
+		 */
+		/*@ non_null @*/ protected final int[] m_cv = new int[8];
+		
+		/**
+		 * The index of the current chunk.
+		 */
+		protected long m_chunk;
+		
+		/**
+		 * The number of blocks of the current chunk already compressed.
+		 */
+		protected int m_blocks;
+		
+		/**
+		 * The bytes of the current block.
+		 */
+		/*@ non_null @*/ protected final byte[] m_block = new byte[BLOCK_LEN];
+		
+		/**
+		 * The number of bytes in the current block.
+		 */
+		protected int m_blockLen;
+		
+		/**
+		 * The words of the current block.
+		 */
+		/*@ non_null @*/ protected final int[] m_words = new int[16];
+		
+		/**
+		 * Creates a new hasher.
+		 */
+		protected Hasher()
+		{
+			super();
+			reset();
+		}
+		
+		/**
+		 * Discards the input given so far.
+		 * @return This hasher
+		 */
+		/*@ non_null @*/ public Hasher reset()
+		{
+			System.arraycopy(m_key, 0, m_cv, 0, 8);
+			m_stackLen = 0;
+			m_chunk = 0;
+			m_blocks = 0;
+			m_blockLen = 0;
+			return this;
+		}
+		
+		/**
+		 * Adds bytes to the input.
+		 * @param m The bytes
+		 * @return This hasher
+		 */
+		/*@ non_null @*/ public Hasher update(/*@ non_null @*/ byte[] m)
+		{
+			return update(m, 0, m.length);
+		}
+		
+		/**
+		 * Adds bytes to the input.
+		 * @param m The array containing the bytes
+		 * @param offset The position of the first byte in the array
+		 * @param len The number of bytes
+		 * @return This hasher
+		 */
+		/*@ non_null @*/ public Hasher update(/*@ non_null @*/ byte[] m, int offset, int len)
+		{
+			while (len > 0)
+			{
+				// The last block is only compressed once more input arrives
+				if (m_blockLen == BLOCK_LEN)
+				{
+					if (m_blocks == CHUNK_LEN / BLOCK_LEN - 1)
+					{
+						pushChunk();
+					}
+					else
+					{
+						readWords(m_block, 0, BLOCK_LEN, m_words);
+						compress(m_cv, m_words, m_chunk, BLOCK_LEN, m_flags | startFlag(), m_cv);
+						m_blocks++;
+						m_blockLen = 0;
+					}
+				}
+				int n = Math.min(BLOCK_LEN - m_blockLen, len);
+				System.arraycopy(m, offset, m_block, m_blockLen, n);
+				m_blockLen += n;
+				offset += n;
+				len -= n;
+			}
+			return this;
+		}
+		
+		/**
+		 * Gets the digest of the input given so far. The hasher is left
+		 * unchanged, so that more input can be added afterwards.
+		 * @return The digest, which is {@link #OUT_LEN} bytes long
+		 */
+		/*@ non_null @*/ public byte[] digest()
+		{
+			byte[] out = new byte[OUT_LEN];
+			getOutput().read(0, out, 0, OUT_LEN);
+			return out;
+		}
+		
+		/**
+		 * Gets the extendable output of the input given so far. The hasher is
+		 * left unchanged, so that more input can be added afterwards.
+		 * @return The output
+		 */
+		/*@ non_null @*/ public Output getOutput()
+		{
+			int[] words = new int[16];
+			readWords(m_block, 0, m_blockLen, words);
+			Output out = new Output(m_cv.clone(), words, m_chunk, m_blockLen, m_flags | startFlag() | CHUNK_END);
+			for (int i = m_stackLen - 1; i >= 0; i--)
+			{
+				out = parentOutput(m_stack[i], out.chainingValue());
+			}
+			return out;
+		}
+		
+		/**
+		 * Gets the flag marking the first block of a chunk.
+		 * @return The flag if the current block is the first of its chunk, 0
+		 * otherwise
+		 */
+		protected int startFlag()
+		{
+			return m_blocks == 0 ? CHUNK_START : 0;
+		}
+		
+		/**
+		 * Completes the current chunk, merges its chaining value with those of
+		 * the subtrees it completes, and starts a new chunk.
+		 */
+		protected void pushChunk()
+		{
+			readWords(m_block, 0, BLOCK_LEN, m_words);
+			compress(m_cv, m_words, m_chunk, BLOCK_LEN, m_flags | startFlag() | CHUNK_END, m_cv);
+			int[] cv = m_cv.clone();
+			long total = ++m_chunk;
+			// Each trailing zero of the chunk count completes a subtree
+			while ((total & 1) == 0)
+			{
+				cv = parentOutput(m_stack[--m_stackLen], cv).chainingValue();
+				total >>>= 1;
+			}
+			m_stack[m_stackLen++] = cv;
+			System.arraycopy(m_key, 0, m_cv, 0, 8);
+			m_blocks = 0;
+			m_blockLen = 0;
+		}
+	}
+	
+	/**
+	 * Task computing the chaining value of a subtree, which splits itself
+	 * into two tasks as long as the subtree is large enough.
+	 */
+	protected class SubtreeTask extends RecursiveTask<int[]>
+	{
+		/**
+		 * Dummy UID.
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The array containing the input.
+		 */
+		/*@ non_null @*/ protected final byte[] m_input;
+		
+		/**
+		 * The position of the subtree's input in the array.
+		 */
+		protected final int m_offset;
+		
+		/**
+		 * The length of the subtree's input.
+		 */
+		protected final int m_len;
+		
+		/**
+		 * The index of the first chunk of the subtree.
+		 */
+		protected final long m_chunk;
+		
+		/**
+		 * Creates a new task.
+		 * @param m The array containing the input
+		 * @param offset The position of the subtree's input in the array
+		 * @param len The length of the subtree's input
+		 * @param chunk The index of the first chunk of the subtree
+		 */
+		protected SubtreeTask(byte[] m, int offset, int len, long chunk)
+		{
+			super();
+			m_input = m;
+			m_offset = offset;
+			m_len = len;
+			m_chunk = chunk;
+		}
+		
+		@Override
+		protected int[] compute()
+		{
+			if (m_len <= PARALLEL_SIZE / 2)
+			{
+				return subtree(m_input, m_offset, m_len, m_chunk);
+			}
+			int left_len = leftLength(m_len);
+			SubtreeTask left = new SubtreeTask(m_input, m_offset, left_len, m_chunk);
+			SubtreeTask right = new SubtreeTask(m_input, m_offset + left_len, m_len - left_len, m_chunk + left_len / CHUNK_LEN);
+			left.fork();
+			int[] right_cv = right.compute();
+			return parentOutput(left.join(), right_cv).chainingValue();
+		}
+	}
+}
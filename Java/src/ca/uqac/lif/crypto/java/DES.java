@@ -17,6 +17,8 @@
  */
 package ca.uqac.lif.crypto.java;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 
 import javax.crypto.SecretKey;
@@ -30,6 +32,7 @@ import ca.uqac.lif.azrael.ReadException;
 import ca.uqac.lif.azrael.Readable;
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.symmetric.ByteKeyConverter;
+import ca.uqac.lif.crypto.symmetric.StreamSymmetricCipher;
 import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
 import ca.uqac.lif.crypto.symmetric.SymmetricKey;
 
@@ -40,7 +43,7 @@ import ca.uqac.lif.crypto.symmetric.SymmetricKey;
  * 
  * @author Sylvain Hallé
  */
-public class DES extends JavaCipher implements SymmetricCipher<byte[]>
+public class DES extends JavaCipher implements SymmetricCipher<byte[]>, StreamSymmetricCipher
 {
 	/**
 	 * A single publicly visible instance of the hash function.
@@ -86,6 +89,26 @@ public class DES extends JavaCipher implements SymmetricCipher<byte[]>
 		return cipherDecrypt(((DESKey) k).getContents(), m);
 	}
 	
+	@Override
+	public OutputStream getEncryptionStream(SymmetricKey k, OutputStream os) throws CryptoException
+	{
+		if (!(k instanceof DESKey))
+		{
+			throw new CryptoException("Expected a DESKey");
+		}
+		return cipherEncryptStream(((DESKey) k).getContents(), os);
+	}
+	
+	@Override
+	public InputStream getDecryptionStream(SymmetricKey k, InputStream is) throws CryptoException
+	{
+		if (!(k instanceof DESKey))
+		{
+			throw new CryptoException("Expected a DESKey");
+		}
+		return cipherDecryptStream(((DESKey) k).getContents(), is);
+	}
+	
 	public static DESKey readFrom(byte[] key_contents)
 	{
 		SecretKey sk = new SecretKeySpec(key_contents, "DES");
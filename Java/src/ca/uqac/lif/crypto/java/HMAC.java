@@ -0,0 +1,548 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.java;
+
+import java.io.OutputStream;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.ObjectReader;
+import ca.uqac.lif.azrael.PrintException;
+import ca.uqac.lif.azrael.Printable;
+import ca.uqac.lif.azrael.ReadException;
+import ca.uqac.lif.azrael.Readable;
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.mac.MessageAuthenticator;
+import ca.uqac.lif.crypto.symmetric.ByteKeyConverter;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Implementation of
+ * <a href="https://en.wikipedia.org/wiki/HMAC">HMAC</a> over the SHA-2 hash
+ * functions of the JDK.
+ * <p>
+ * HMAC hashes the key XORed with an inner pad, then the message; the result
+ * is hashed again after the key XORed with an outer pad. Since the padded
+ * key fills exactly one block, the state of the hash function after each
+ * pad depends only on the key. This state is computed the first time a key
+ * is used, kept in the key, and each tag starts from a copy of it; the two
+ * pad blocks are therefore never hashed again, which saves two of the four
+ * compressions taken by a short message. As each tag works on its own
+ * copies, the authenticator can be used by multiple threads at the same
+ * time.
+ * <p>
+ * Besides one tag at a time, tags can be computed for a batch of messages,
+ * written into an array supplied by the caller, or computed on a message
+ * written in pieces to a {@link Session}.
+ */
+public class HMAC implements MessageAuthenticator<byte[],byte[]>
+{
+	/**
+	 * A single publicly visible instance of HMAC-SHA256.
+	 */
+	/*@ non_null @*/ public static final HMAC SHA256 = new HMAC("SHA-256", 64);
+	
+	/**
+	 * A single publicly visible instance of HMAC-SHA512.
+	 */
+	/*@ non_null @*/ public static final HMAC SHA512 = new HMAC("SHA-512", 128);
+	
+	/**
+	 * A static reference to an instance of HMAC key generator with default
+	 * settings.
+	 */
+	/*@ non_null @*/ public static final HMACKeyGenerator generator = new HMACKeyGenerator();
+	
+	/**
+	 * A static reference to an instance of HMAC byte key converter.
+	 */
+	/*@ non_null @*/ public static final HMACByteKeyConverter converter = new HMACByteKeyConverter();
+	
+	/**
+	 * The byte XORed with the key to form the inner pad.
+	 */
+	protected static final byte IPAD = 0x36;
+	
+	/**
+	 * The byte XORed with the key to form the outer pad.
+	 */
+	protected static final byte OPAD = 0x5C;
+	
+	/**
+	 * The name of the underlying hash function.
+	 */
+	/*@ non_null @*/ protected final String m_algorithm;
+	
+	/**
+	 * The size of a block of the underlying hash function, in bytes.
+	 */
+	protected final int m_blockSize;
+	
+	/**
+	 * The length of the tags, in bytes.
+	 */
+	protected final int m_tagLength;
+	
+	/**
+	 * Creates a new HMAC authenticator.
+	 * @param algorithm The name of the underlying hash function
+	 * @param block_size The size of a block of the hash function, in bytes
+	 */
+	protected HMAC(/*@ non_null @*/ String algorithm, int block_size)
+	{
+		super();
+		m_algorithm = algorithm;
+		m_blockSize = block_size;
+		m_tagLength = JavaHashFunction.getInstance(algorithm).getDigestLength();
+	}
+	
+	@Override
+	public byte[] getTag(SymmetricKey k, byte[] m) throws CryptoException
+	{
+		byte[] tag = new byte[m_tagLength];
+		getState(k).getTag(m, tag, 0);
+		return tag;
+	}
+	
+	/**
+	 * Computes the tag of a message and writes it into an array.
+	 * @param k The key
+	 * @param m The message
+	 * @param out The array where the tag is written, which must have room
+	 * for {@link #getTagLength()} bytes from <tt>offset</tt>
+	 * @param offset The position in the array where the tag is written
+	 * @return The number of bytes written
+	 * @throws CryptoException Thrown if the key is not an HMAC key, or if the
+	 * tag cannot be computed
+	 */
+	public int getTag(/*@ non_null @*/ SymmetricKey k, /*@ non_null @*/ byte[] m, /*@ non_null @*/ byte[] out, int offset) throws CryptoException
+	{
+		getState(k).getTag(m, out, offset);
+		return m_tagLength;
+	}
+	
+	/**
+	 * Computes the tags of several messages, getting the state of the key
+	 * only once for the whole list.
+	 */
+	@Override
+	public List<byte[]> getTags(SymmetricKey k, List<? extends byte[]> messages) throws CryptoException
+	{
+		PadState state = getState(k);
+		List<byte[]> tags = new ArrayList<byte[]>(messages.size());
+		for (byte[] m : messages)
+		{
+			byte[] tag = new byte[m_tagLength];
+			state.getTag(m, tag, 0);
+			tags.add(tag);
+		}
+		return tags;
+	}
+	
+	@Override
+	public boolean verify(SymmetricKey k, byte[] m, byte[] tag) throws CryptoException
+	{
+		return MessageDigest.isEqual(getTag(k, m), tag);
+	}
+	
+	/**
+	 * Starts the computation of a tag on a message that is given in pieces.
+	 * @param k The key
+	 * @return The session receiving the message
+	 * @throws CryptoException Thrown if the key is not an HMAC key
+	 */
+	/*@ non_null @*/ public Session newSession(/*@ non_null @*/ SymmetricKey k) throws CryptoException
+	{
+		return new Session(getState(k));
+	}
+	
+	/**
+	 * Gets the length of the tags produced by this authenticator.
+	 * @return The length, in bytes
+	 */
+	/*@ pure @*/ public int getTagLength()
+	{
+		return m_tagLength;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "HMAC-" + m_algorithm;
+	}
+	
+	/**
+	 * Gets the state of the hash function after the pads of a key. The state
+	 * is kept in the key for the last authenticator that used it, and
+	 * computed again if another one uses it.
+	 * @param k The key
+	 * @return The state
+	 * @throws CryptoException Thrown if the key is not an HMAC key
+	 */
+	protected PadState getState(SymmetricKey k) throws CryptoException
+	{
+		if (!(k instanceof HMACKey))
+		{
+			throw new CryptoException("Expected an HMACKey");
+		}
+		HMACKey key = (HMACKey) k;
+		PadState state = key.m_state;
+		if (state == null || state.m_owner != this)
+		{
+			state = new PadState(this, key.getContents().getEncoded());
+			key.m_state = state;
+		}
+		return state;
+	}
+	
+	/**
+	 * The state of the hash function after hashing the inner pad and the
+	 * outer pad of a key. The state is never modified: each tag is computed
+	 * on copies of it.
+	 */
+	protected static class PadState
+	{
+		/**
+		 * The authenticator for which the state was computed.
+		 */
+		/*@ non_null @*/ protected final HMAC m_owner;
+		
+		/**
+		 * The hash function after hashing the inner pad.
+		 */
+		/*@ non_null @*/ protected final MessageDigest m_inner;
+		
+		/**
+		 * The hash function after hashing the outer pad.
+		 */
+		/*@ non_null @*/ protected final MessageDigest m_outer;
+		
+		/**
+		 * The inner pad, used to recreate the state if the hash function
+		 * cannot be copied.
+		 */
+		/*@ non_null @*/ protected final byte[] m_innerPad;
+		
+		/**
+		 * The outer pad, used to recreate the state if the hash function
+		 * cannot be copied.
+		 */
+		/*@ non_null @*/ protected final byte[] m_outerPad;
+		
+		/**
+		 * Computes the state of a key.
+		 * @param owner The authenticator for which the state is computed
+		 * @param key The bytes of the key
+		 */
+		protected PadState(/*@ non_null @*/ HMAC owner, /*@ non_null @*/ byte[] key)
+		{
+			super();
+			m_owner = owner;
+			if (key.length > owner.m_blockSize)
+			{
+				// Keys longer than a block are replaced by their digest
+				key = JavaHashFunction.getInstance(owner.m_algorithm).digest(key);
+			}
+			m_innerPad = new byte[owner.m_blockSize];
+			m_outerPad = new byte[owner.m_blockSize];
+			for (int i = 0; i < owner.m_blockSize; i++)
+			{
+				byte b = i < key.length ? key[i] : 0;
+				m_innerPad[i] = (byte) (b ^ IPAD);
+				m_outerPad[i] = (byte) (b ^ OPAD);
+			}
+			m_inner = JavaHashFunction.getInstance(owner.m_algorithm);
+			m_inner.update(m_innerPad);
+			m_outer = JavaHashFunction.getInstance(owner.m_algorithm);
+			m_outer.update(m_outerPad);
+		}
+		
+		/**
+		 * Gets a copy of the hash function after the inner pad, to which the
+		 * message can be added.
+		 * @return The copy
+		 */
+		protected MessageDigest newInner()
+		{
+			return copy(m_inner, m_innerPad);
+		}
+		
+		/**
+		 * Computes the tag of a message.
+		 * @param m The message
+		 * @param out The array where the tag is written
+		 * @param offset The position in the array where the tag is written
+		 * @throws CryptoException Thrown if the tag cannot be written
+		 */
+		protected void getTag(byte[] m, byte[] out, int offset) throws CryptoException
+		{
+			MessageDigest inner = newInner();
+			inner.update(m);
+			finish(inner, out, offset);
+		}
+		
+		/**
+		 * Completes the computation of a tag.
+		 * @param inner The hash function after the inner pad and the message
+		 * @param out The array where the tag is written
+		 * @param offset The position in the array where the tag is written
+		 * @throws CryptoException Thrown if the tag cannot be written
+		 */
+		protected void finish(MessageDigest inner, byte[] out, int offset) throws CryptoException
+		{
+			int len = m_owner.m_tagLength;
+			try
+			{
+				// The inner digest goes into the output first, then is overwritten
+				inner.digest(out, offset, len);
+				MessageDigest outer = copy(m_outer, m_outerPad);
+				outer.update(out, offset, len);
+				outer.digest(out, offset, len);
+			}
+			catch (DigestException e)
+			{
+				throw new CryptoException(e);
+			}
+		}
+		
+		/**
+		 * Copies the state of a hash function.
+		 * @param md The hash function
+		 * @param pad The pad hashed by the function, used if it cannot be
+		 * copied
+		 * @return The copy
+		 */
+		protected MessageDigest copy(MessageDigest md, byte[] pad)
+		{
+			try
+			{
+				return (MessageDigest) md.clone();
+			}
+			catch (CloneNotSupportedException e)
+			{
+				MessageDigest copy = JavaHashFunction.getInstance(md.getAlgorithm());
+				copy.update(pad);
+				return copy;
+			}
+		}
+	}
+	
+	/**
+	 * Computation of a tag on a message written in pieces, either with the
+	 * <tt>update</tt> methods or as an output stream. Once the tag is
+	 * obtained, the session starts over with an empty message and the same
+	 * key. A session must not be used by multiple threads at the same time.
+	 */
+	public static class Session extends OutputStream
+	{
+		/**
+		 * The state of the key.
+		 */
+		/*@ non_null @*/ protected final PadState m_state;
+		
+		/**
+		 * The hash function receiving the message.
+		 */
+		/*@ non_null @*/ protected MessageDigest m_inner;
+		
+		/**
+		 * Creates a new session.
+		 * @param state The state of the key
+		 */
+		protected Session(/*@ non_null @*/ PadState state)
+		{
+			super();
+			m_state = state;
+			m_inner = state.newInner();
+		}
+		
+		/**
+		 * Adds bytes to the message.
+		 * @param m The bytes
+		 * @return This session
+		 */
+		/*@ non_null @*/ public Session update(/*@ non_null @*/ byte[] m)
+		{
+			m_inner.update(m);
+			return this;
+		}
+		
+		/**
+		 * Adds bytes to the message.
+		 * @param m The array containing the bytes
+		 * @param offset The position of the first byte in the array
+		 * @param len The number of bytes
+		 * @return This session
+		 */
+		/*@ non_null @*/ public Session update(/*@ non_null @*/ byte[] m, int offset, int len)
+		{
+			m_inner.update(m, offset, len);
+			return this;
+		}
+		
+		@Override
+		public void write(int b)
+		{
+			m_inner.update((byte) b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			m_inner.update(b, off, len);
+		}
+		
+		/**
+		 * Gets the tag of the message, and starts over with an empty message.
+		 * @return The tag
+		 * @throws CryptoException Thrown if the tag cannot be computed
+		 */
+		/*@ non_null @*/ public byte[] getTag() throws CryptoException
+		{
+			byte[] tag = new byte[m_state.m_owner.m_tagLength];
+			m_state.finish(m_inner, tag, 0);
+			m_inner = m_state.newInner();
+			return tag;
+		}
+	}
+	
+	/**
+	 * A symmetric key used by HMAC. Any number of bytes can be used as a key;
+	 * keys generated by {@link HMACKeyGenerator} are 32 bytes long.
+	 */
+	public static class HMACKey extends JavaCipher.JavaSymmetricKey implements Readable, Printable
+	{
+		/**
+		 * The key's optional name.
+		 */
+		protected final String m_name;
+		
+		/**
+		 * The state of the hash function after the pads of this key, for the
+		 * last authenticator that used the key, or <tt>null</tt> if the key has
+		 * not been used yet.
+		 */
+		/*@ null @*/ protected transient volatile PadState m_state;
+		
+		HMACKey(SecretKey k, String name)
+		{
+			super(k);
+			m_name = name;
+		}
+		
+		HMACKey(SecretKey k)
+		{
+			this(k, "");
+		}
+		
+		protected HMACKey()
+		{
+			this(null, "");
+		}
+		
+		@Override
+		public String getName()
+		{
+			return m_name;
+		}
+		
+		@Override
+		public Object print(ObjectPrinter<?> printer) throws PrintException
+		{
+			return printer.print(m_key.getEncoded());
+		}
+		
+		@Override
+		public Object read(ObjectReader<?> reader, Object o) throws ReadException
+		{
+			Object o_read = reader.read(o);
+			if (!(o_read instanceof byte[]))
+			{
+				throw new ReadException("Expected a byte array");
+			}
+			return readFrom((byte[]) o_read);
+		}
+	}
+	
+	/**
+	 * Creates an HMAC key from its contents.
+	 * @param key_contents The bytes of the key
+	 * @return The key
+	 */
+	public static HMACKey readFrom(byte[] key_contents)
+	{
+		return new HMACKey(new SecretKeySpec(key_contents, "HMAC"));
+	}
+	
+	/**
+	 * A generator for HMAC keys.
+	 */
+	public static class HMACKeyGenerator extends JavaKeyGenerator
+	{
+		public HMACKeyGenerator(SecureRandom random)
+		{
+			super("HmacSHA256", random);
+		}
+		
+		public HMACKeyGenerator()
+		{
+			super("HmacSHA256");
+		}
+		
+		@Override
+		public HMACKey generateKey(String name) throws CryptoException
+		{
+			if (m_random != null)
+			{
+				m_generator.init(m_random);
+			}
+			return new HMACKey(m_generator.generateKey(), name);
+		}
+		
+		@Override
+		public HMACKey generateKey() throws CryptoException
+		{
+			return generateKey("");
+		}
+	}
+	
+	/**
+	 * Converts HMAC keys into byte arrays.
+	 */
+	public static class HMACByteKeyConverter implements ByteKeyConverter<HMACKey>
+	{
+		@Override
+		public byte[] getBytes(HMACKey key)
+		{
+			return key.getContents().getEncoded();
+		}
+		
+		@Override
+		public HMACKey getKey(byte[] contents)
+		{
+			return HMAC.readFrom(contents);
+		}
+	}
+}
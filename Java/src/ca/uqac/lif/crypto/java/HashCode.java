@@ -19,15 +19,18 @@ package ca.uqac.lif.crypto.java;
 
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.hash.IntHashFunction;
 
 /**
  * A hash function that takes as input an arbitrary object, and returns as its
  * digest the return value of calling
- * {@link HashCode#hashCode() hashCode()} on this object.
+ * {@link HashCode#hashCode() hashCode()} on this object. The digest can also
+ * be obtained without boxing with {@link #getIntDigest(Object)
+ * getIntDigest()}.
  * 
  * @author Sylvain Hallé
  */
-public class HashCode implements HashFunction<Object,Integer>
+public class HashCode implements HashFunction<Object,Integer>, IntHashFunction<Object>
 {
 	/**
 	 * A reference to a single visible instance of the object hash function.
@@ -47,4 +50,10 @@ public class HashCode implements HashFunction<Object,Integer>
 	{
 		return o.hashCode();
 	}
+	
+	@Override
+	public int getIntDigest(/*@ non_null @*/ Object o)
+	{
+		return o.hashCode();
+	}
 }
@@ -17,6 +17,10 @@
  */
 package ca.uqac.lif.crypto.java;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -27,6 +31,7 @@ import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.symmetric.SymmetricKey;
@@ -43,6 +48,20 @@ abstract class JavaCipher
 	 */
 	/*@ null @*/ protected final Cipher m_cipher;
 	
+	/**
+	 * The transformation of {@link #m_cipher}, or <tt>null</tt> if this
+	 * cipher has no {@link Cipher} object.
+	 */
+	/*@ null @*/ protected final String m_transformation;
+	
+	/**
+	 * The per-thread copies of {@link #m_cipher}. A {@link Cipher} object
+	 * holds state between its initialization and the call to
+	 * <tt>doFinal</tt>, and hence cannot be shared by threads that encrypt
+	 * concurrently.
+	 */
+	/*@ non_null @*/ protected final ThreadLocal<Cipher> m_localCipher;
+	
 	/**
 	 * Creates a new Java cipher.
 	 * @param c The instance of {@link Cipher} object used to perform
@@ -52,6 +71,46 @@ abstract class JavaCipher
 	{
 		super();
 		m_cipher = c;
+		m_transformation = c == null ? null : c.getAlgorithm();
+		m_localCipher = new ThreadLocal<Cipher>();
+	}
+	
+	/**
+	 * Gets the {@link Cipher} object to be used by the current thread.
+	 * @return The cipher
+	 * @throws CryptoException Thrown if this cipher has no {@link Cipher}
+	 * object
+	 */
+	protected Cipher getCipher() throws CryptoException
+	{
+		Cipher c = m_localCipher.get();
+		if (c == null)
+		{
+			c = newCipher();
+			m_localCipher.set(c);
+		}
+		return c;
+	}
+	
+	/**
+	 * Creates a new {@link Cipher} object for the same transformation as the
+	 * one of this cipher.
+	 * @return The new cipher
+	 * @throws CryptoException Thrown if this cipher has no {@link Cipher}
+	 * object, or if the transformation is no longer available
+	 */
+	protected Cipher newCipher() throws CryptoException
+	{
+		if (m_transformation == null)
+		{
+			throw new CryptoException("No cipher available");
+		}
+		Cipher c = getInstance(m_transformation);
+		if (c == null)
+		{
+			throw new CryptoException("Cipher " + m_transformation + " is not available");
+		}
+		return c;
 	}
 	
 	/**
@@ -66,8 +125,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.ENCRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.ENCRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -95,8 +155,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.DECRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.DECRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -124,8 +185,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.DECRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.DECRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -153,8 +215,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.DECRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.DECRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -182,8 +245,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.ENCRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.ENCRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -211,8 +275,9 @@ abstract class JavaCipher
 	{
 		try
 		{
-			m_cipher.init(Cipher.ENCRYPT_MODE, k);
-			return m_cipher.doFinal(m);
+			Cipher c = getCipher();
+			c.init(Cipher.ENCRYPT_MODE, k);
+			return c.doFinal(m);
 		}
 		catch (InvalidKeyException e) 
 		{
@@ -234,6 +299,52 @@ abstract class JavaCipher
 		return m_cipher.getAlgorithm();
 	}
 	
+	/**
+	 * Gets a stream that encrypts the bytes written to it with a secret key.
+	 * The stream uses its own {@link Cipher} object, so that many streams can
+	 * be open at the same time.
+	 * @param k The key used to perform the encryption
+	 * @param os The stream receiving the encrypted bytes
+	 * @return The encrypting stream
+	 * @throws CryptoException Thrown if the encryption could not proceed
+	 */
+	protected OutputStream cipherEncryptStream(SecretKey k, OutputStream os) throws CryptoException
+	{
+		try
+		{
+			Cipher c = newCipher();
+			c.init(Cipher.ENCRYPT_MODE, k);
+			return new CipherOutput(c, os);
+		}
+		catch (InvalidKeyException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Gets a stream that decrypts the bytes read from another stream with a
+	 * secret key. The stream uses its own {@link Cipher} object, so that many
+	 * streams can be open at the same time.
+	 * @param k The key used to perform the decryption
+	 * @param is The stream providing the encrypted bytes
+	 * @return The decrypting stream
+	 * @throws CryptoException Thrown if the decryption could not proceed
+	 */
+	protected InputStream cipherDecryptStream(SecretKey k, InputStream is) throws CryptoException
+	{
+		try
+		{
+			Cipher c = newCipher();
+			c.init(Cipher.DECRYPT_MODE, k);
+			return new CipherInput(c, is);
+		}
+		catch (InvalidKeyException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
 	/**
 	 * Gets the cipher object based on an algorithm name.
 	 * @param algorithm The name of the hashing algorithm
@@ -282,4 +393,240 @@ abstract class JavaCipher
 			return m_key;
 		}
 	}
+	
+	/**
+	 * Output stream passing the bytes written to it through a {@link Cipher}
+	 * in chunks of bounded size. Contrary to
+	 * {@link javax.crypto.CipherOutputStream}, closing this stream does not
+	 * close the underlying stream, so that more data can be written to it
+	 * after the encrypted message.
+	 */
+	protected static class CipherOutput extends OutputStream
+	{
+		/**
+		 * The size of the chunks passed to the cipher.
+		 */
+		protected static final int CHUNK_SIZE = 8192;
+		
+		/**
+		 * The cipher, already initialized.
+		 */
+		/*@ non_null @*/ protected final Cipher m_cipher;
+		
+		/**
+		 * The stream receiving the output of the cipher.
+		 */
+		/*@ non_null @*/ protected final OutputStream m_out;
+		
+		/**
+		 * A buffer receiving the output of the cipher, reused for every chunk.
+		 */
+		/*@ non_null @*/ protected final byte[] m_buffer;
+		
+		/**
+		 * Whether the stream has been closed.
+		 */
+		protected boolean m_closed = false;
+		
+		/**
+		 * Creates a new encrypting stream.
+		 * @param c The cipher, already initialized
+		 * @param os The stream receiving the output of the cipher
+		 */
+		public CipherOutput(Cipher c, OutputStream os)
+		{
+			super();
+			m_cipher = c;
+			m_out = os;
+			m_buffer = new byte[c.getOutputSize(CHUNK_SIZE)];
+		}
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (m_closed)
+			{
+				throw new IOException("Stream is closed");
+			}
+			while (len > 0)
+			{
+				int chunk = Math.min(len, CHUNK_SIZE);
+				try
+				{
+					int n = m_cipher.update(b, off, chunk, m_buffer, 0);
+					m_out.write(m_buffer, 0, n);
+				}
+				catch (ShortBufferException e)
+				{
+					throw new IOException(e);
+				}
+				off += chunk;
+				len -= chunk;
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException
+		{
+			m_out.flush();
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			if (m_closed)
+			{
+				return;
+			}
+			m_closed = true;
+			try
+			{
+				int n = m_cipher.doFinal(m_buffer, 0);
+				m_out.write(m_buffer, 0, n);
+				m_out.flush();
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new IOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Input stream passing the bytes read from another stream through a
+	 * {@link Cipher} in chunks of bounded size.
+	 */
+	protected static class CipherInput extends InputStream
+	{
+		/**
+		 * The cipher, already initialized.
+		 */
+		/*@ non_null @*/ protected final Cipher m_cipher;
+		
+		/**
+		 * The stream providing the input of the cipher.
+		 */
+		/*@ non_null @*/ protected final InputStream m_in;
+		
+		/**
+		 * A buffer receiving the bytes read from the underlying stream.
+		 */
+		/*@ non_null @*/ protected final byte[] m_inBuffer;
+		
+		/**
+		 * A buffer receiving the output of the cipher.
+		 */
+		/*@ non_null @*/ protected final byte[] m_outBuffer;
+		
+		/**
+		 * The position of the next byte to return in the output buffer.
+		 */
+		protected int m_position = 0;
+		
+		/**
+		 * The number of valid bytes in the output buffer.
+		 */
+		protected int m_available = 0;
+		
+		/**
+		 * Whether the end of the underlying stream has been reached.
+		 */
+		protected boolean m_finished = false;
+		
+		/**
+		 * Creates a new decrypting stream.
+		 * @param c The cipher, already initialized
+		 * @param is The stream providing the input of the cipher
+		 */
+		public CipherInput(Cipher c, InputStream is)
+		{
+			super();
+			m_cipher = c;
+			m_in = is;
+			m_inBuffer = new byte[CipherOutput.CHUNK_SIZE];
+			m_outBuffer = new byte[c.getOutputSize(CipherOutput.CHUNK_SIZE)];
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			if (!fill())
+			{
+				return -1;
+			}
+			return m_outBuffer[m_position++] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+			{
+				return 0;
+			}
+			if (!fill())
+			{
+				return -1;
+			}
+			int n = Math.min(len, m_available - m_position);
+			System.arraycopy(m_outBuffer, m_position, b, off, n);
+			m_position += n;
+			return n;
+		}
+		
+		@Override
+		public int available()
+		{
+			return m_available - m_position;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			m_in.close();
+		}
+		
+		/**
+		 * Makes sure the output buffer contains at least one byte to return.
+		 * @return <tt>false</tt> if the end of the message has been reached,
+		 * <tt>true</tt> otherwise
+		 * @throws IOException Thrown if the underlying stream cannot be read or
+		 * its contents cannot be decrypted
+		 */
+		protected boolean fill() throws IOException
+		{
+			while (m_position == m_available)
+			{
+				if (m_finished)
+				{
+					return false;
+				}
+				m_position = 0;
+				try
+				{
+					int read = m_in.read(m_inBuffer);
+					if (read < 0)
+					{
+						m_finished = true;
+						m_available = m_cipher.doFinal(m_outBuffer, 0);
+					}
+					else
+					{
+						m_available = m_cipher.update(m_inBuffer, 0, read, m_outBuffer, 0);
+					}
+				}
+				catch (GeneralSecurityException e)
+				{
+					throw new IOException(e);
+				}
+			}
+			return true;
+		}
+	}
 }
@@ -17,23 +17,35 @@
  */
 package ca.uqac.lif.crypto.java;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.BufferHashFunction;
 import ca.uqac.lif.crypto.hash.HashFunction;
 
 /**
- * A hash function based on Java's {@link MessageDigest} class.
+ * A hash function based on Java's {@link MessageDigest} class. Since a
+ * {@link MessageDigest} cannot be used by multiple threads at the same time,
+ * each thread computes digests with its own copy of it.
  * 
  * @author Sylvain Hallé
  */
-abstract class JavaHashFunction implements HashFunction<byte[],byte[]>
+abstract class JavaHashFunction implements HashFunction<byte[],byte[]>, BufferHashFunction<byte[]>
 {
 	/**
 	 * The MessageDigest object used to compute hash values.
 	 */
 	/*@ null @*/ protected final MessageDigest m_digest;
 	
+	/**
+	 * The copy of the MessageDigest object used by each thread.
+	 */
+	/*@ non_null @*/ protected final ThreadLocal<MessageDigest> m_digests;
+	
 	/**
 	 * Creates a new Java hash function.
 	 * @param digest The MessageDigest object used to compute hash values
@@ -42,13 +54,164 @@ abstract class JavaHashFunction implements HashFunction<byte[],byte[]>
 	{
 		super();
 		m_digest = digest;
+		m_digests = new ThreadLocal<MessageDigest>()
+		{
+			@Override
+			protected MessageDigest initialValue()
+			{
+				return copyDigest();
+			}
+		};
 	}
 	
 	@Override
 	public byte[] getDigest(byte[] m)
 	{
-		m_digest.update(m);
-		return m_digest.digest();
+		return m_digests.get().digest(m);
+	}
+	
+	/**
+	 * Gets the digests of several messages, looking up the thread's
+	 * MessageDigest only once for the whole list.
+	 */
+	@Override
+	public List<byte[]> getDigests(List<? extends byte[]> messages)
+	{
+		MessageDigest md = m_digests.get();
+		List<byte[]> digests = new ArrayList<byte[]>(messages.size());
+		for (byte[] m : messages)
+		{
+			digests.add(md.digest(m));
+		}
+		return digests;
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset) throws CryptoException
+	{
+		MessageDigest md = m_digests.get();
+		md.update(m);
+		try
+		{
+			return md.digest(out, offset, md.getDigestLength());
+		}
+		catch (DigestException e)
+		{
+			md.reset();
+			throw new CryptoException(e);
+		}
+	}
+	
+	/**
+	 * Computes the digests of several messages, and writes them one after the
+	 * other into an array. Compared to calling {@link #getDigest(byte[])} on
+	 * each message, the batch looks up the thread's MessageDigest only once
+	 * and does not allocate an array per digest, which matters for short
+	 * messages where this overhead is comparable to the hashing itself.
+	 * @param messages The messages
+	 * @param out The array where the digests are written, which must have
+	 * room for {@link #getDigestLength()} bytes per message from
+	 * <tt>offset</tt>
+	 * @param offset The position in the array where the first digest is
+	 * written
+	 * @return The number of bytes written
+	 * @throws CryptoException Thrown if the digest calculation cannot be
+	 * executed
+	 */
+	public int getDigests(/*@ non_null @*/ byte[][] messages, /*@ non_null @*/ byte[] out, int offset) throws CryptoException
+	{
+		MessageDigest md = m_digests.get();
+		int len = md.getDigestLength();
+		try
+		{
+			for (byte[] m : messages)
+			{
+				md.update(m);
+				offset += md.digest(out, offset, len);
+			}
+		}
+		catch (DigestException e)
+		{
+			md.reset();
+			throw new CryptoException(e);
+		}
+		return messages.length * len;
+	}
+	
+	/**
+	 * Computes the digests of several messages stored one after the other in
+	 * a single array, and writes them one after the other into another
+	 * array. This avoids creating an array per message when the messages are
+	 * records read from a file or a buffer.
+	 * @param data The array containing the messages
+	 * @param bounds The positions of the messages in <tt>data</tt>: message
+	 * <i>i</i> goes from <tt>bounds[i]</tt> (inclusive) to
+	 * <tt>bounds[i + 1]</tt> (exclusive), so that <i>n</i> messages require
+	 * <i>n</i> + 1 bounds
+	 * @param out The array where the digests are written, which must have
+	 * room for {@link #getDigestLength()} bytes per message from
+	 * <tt>offset</tt>
+	 * @param offset The position in the array where the first digest is
+	 * written
+	 * @return The number of bytes written
+	 * @throws CryptoException Thrown if the digest calculation cannot be
+	 * executed
+	 */
+	public int getDigests(/*@ non_null @*/ byte[] data, /*@ non_null @*/ int[] bounds, /*@ non_null @*/ byte[] out, int offset) throws CryptoException
+	{
+		MessageDigest md = m_digests.get();
+		int len = md.getDigestLength();
+		try
+		{
+			for (int i = 1; i < bounds.length; i++)
+			{
+				md.update(data, bounds[i - 1], bounds[i] - bounds[i - 1]);
+				offset += md.digest(out, offset, len);
+			}
+		}
+		catch (DigestException e)
+		{
+			md.reset();
+			throw new CryptoException(e);
+		}
+		return Math.max(0, bounds.length - 1) * len;
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return m_digest.getDigestLength();
+	}
+	
+	/**
+	 * Creates a hash function computing the digest of a fixed prefix followed
+	 * by each message. The prefix is hashed only once, instead of once per
+	 * message.
+	 * @param prefix The prefix, such as a salt or a namespace
+	 * @return The new hash function
+	 */
+	/*@ non_null @*/ public PrefixedHashFunction withPrefix(/*@ non_null @*/ byte[] prefix)
+	{
+		MessageDigest md = copyDigest();
+		md.update(prefix);
+		return new PrefixedHashFunction(md, prefix.clone());
+	}
+	
+	/**
+	 * Creates a new MessageDigest object computing the same algorithm as
+	 * {@link #m_digest}.
+	 * @return The new object
+	 */
+	protected MessageDigest copyDigest()
+	{
+		try
+		{
+			return (MessageDigest) m_digest.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			return getInstance(m_digest.getAlgorithm());
+		}
 	}
 	
 	@Override
@@ -0,0 +1,131 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.java;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.hash.BufferHashFunction;
+import ca.uqac.lif.crypto.hash.HashFunction;
+
+/**
+ * Hash function computing the digest of a fixed prefix followed by each
+ * message, such as a salt or a namespace. The prefix is hashed once, when
+ * the function is created; each digest then starts from a copy of the
+ * state of the {@link MessageDigest} after the prefix, and only hashes the
+ * message. The saving is one compression per block of the prefix, which
+ * matters when the prefix is at least one block long (64 bytes for
+ * SHA-256) and the messages are short.
+ * <p>
+ * Instances are obtained with {@link JavaHashFunction#withPrefix(byte[])},
+ * and can be used by multiple threads at the same time.
+ */
+public class PrefixedHashFunction implements HashFunction<byte[],byte[]>, BufferHashFunction<byte[]>
+{
+	/**
+	 * The MessageDigest object after hashing the prefix. This object is never
+	 * modified: digests are computed on copies of it.
+	 */
+	/*@ non_null @*/ protected final MessageDigest m_state;
+	
+	/**
+	 * The prefix, used to recreate the state if the MessageDigest object
+	 * cannot be copied.
+	 */
+	/*@ non_null @*/ protected final byte[] m_prefix;
+	
+	/**
+	 * Creates a new prefixed hash function.
+	 * @param state The MessageDigest object after hashing the prefix
+	 * @param prefix The prefix
+	 */
+	PrefixedHashFunction(/*@ non_null @*/ MessageDigest state, /*@ non_null @*/ byte[] prefix)
+	{
+		super();
+		m_state = state;
+		m_prefix = prefix;
+	}
+	
+	@Override
+	public byte[] getDigest(byte[] m)
+	{
+		return copyState().digest(m);
+	}
+	
+	@Override
+	public int getDigest(byte[] m, byte[] out, int offset) throws CryptoException
+	{
+		MessageDigest md = copyState();
+		md.update(m);
+		try
+		{
+			return md.digest(out, offset, md.getDigestLength());
+		}
+		catch (DigestException e)
+		{
+			throw new CryptoException(e);
+		}
+	}
+	
+	@Override
+	public int getDigestLength()
+	{
+		return m_state.getDigestLength();
+	}
+	
+	/**
+	 * Creates a hash function whose prefix is the prefix of this function,
+	 * followed by other bytes.
+	 * @param prefix The bytes added to the prefix
+	 * @return The new hash function
+	 */
+	/*@ non_null @*/ public PrefixedHashFunction withPrefix(/*@ non_null @*/ byte[] prefix)
+	{
+		MessageDigest md = copyState();
+		md.update(prefix);
+		byte[] new_prefix = new byte[m_prefix.length + prefix.length];
+		System.arraycopy(m_prefix, 0, new_prefix, 0, m_prefix.length);
+		System.arraycopy(prefix, 0, new_prefix, m_prefix.length, prefix.length);
+		return new PrefixedHashFunction(md, new_prefix);
+	}
+	
+	/**
+	 * Gets a copy of the MessageDigest object after hashing the prefix.
+	 * @return The copy
+	 */
+	protected MessageDigest copyState()
+	{
+		try
+		{
+			return (MessageDigest) m_state.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			MessageDigest md = JavaHashFunction.getInstance(m_state.getAlgorithm());
+			md.update(m_prefix);
+			return md;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return m_state.getAlgorithm() + " with a prefix of " + m_prefix.length + " bytes";
+	}
+}
@@ -0,0 +1,636 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.asymmetric.AsymmetricCipher;
+import ca.uqac.lif.crypto.asymmetric.PrivateKey;
+import ca.uqac.lif.crypto.asymmetric.PublicKey;
+import ca.uqac.lif.crypto.hash.HashFunction;
+import ca.uqac.lif.crypto.stubs.DummyHashFunction.HashValue;
+import ca.uqac.lif.crypto.symmetric.SymmetricCipher;
+import ca.uqac.lif.crypto.symmetric.SymmetricKey;
+
+/**
+ * Assigns a cost in time to the operations performed by the dummy ciphers
+ * and hash function, so that a simulation using them can say something
+ * about the load real cryptography would put on a system. The cost of an
+ * operation is a fixed time plus a time per byte of the message, and can
+ * either be given by hand or calibrated by timing a real cipher or hash
+ * function on messages of different sizes.
+ * <p>
+ * The model can then work in one of two modes:
+ * <ul>
+ * <li>{@link Mode#BURN}: each operation keeps the current thread busy for
+ * its cost, so that the simulation really takes the time and the CPU that
+ * real cryptography would;</li>
+ * <li>{@link Mode#VIRTUAL}: each operation returns immediately, and its
+ * cost is added to a virtual time, kept both in total for each operation
+ * and for each thread. Dividing the number of messages by the virtual time
+ * of a thread predicts throughput, and the virtual time elapsed between two
+ * points of a thread predicts latency.</li>
+ * </ul>
+ * The times of all the threads that used the model, including threads that
+ * have ended, can be read and reset from any thread; for example, the
+ * largest of them bounds the time a set of worker threads running in
+ * parallel would take.
+ * A model should be configured before it is given to a cipher.
+ */
+public class CostModel
+{
+	/**
+	 * The operations to which a cost can be assigned.
+	 */
+	public enum Operation
+	{
+		SYMMETRIC_ENCRYPT, SYMMETRIC_DECRYPT, ASYMMETRIC_ENCRYPT, ASYMMETRIC_DECRYPT, HASH
+	}
+	
+	/**
+	 * The ways in which the cost of an operation can be paid.
+	 */
+	public enum Mode
+	{
+		BURN, VIRTUAL
+	}
+	
+	/**
+	 * The mode of this model.
+	 */
+	/*@ non_null @*/ protected final Mode m_mode;
+	
+	/**
+	 * The fixed cost of each operation, in nanoseconds, indexed by the
+	 * ordinal of the operation.
+	 */
+	/*@ non_null @*/ protected final long[] m_fixedCost;
+	
+	/**
+	 * The cost per byte of each operation, in nanoseconds, indexed by the
+	 * ordinal of the operation.
+	 */
+	/*@ non_null @*/ protected final double[] m_byteCost;
+	
+	/**
+	 * The total virtual time spent in each operation, indexed by its ordinal.
+	 */
+	/*@ non_null @*/ protected final LongAdder[] m_totalTime;
+	
+	/**
+	 * The clock of each thread.
+	 */
+	/*@ non_null @*/ protected final ThreadLocal<ThreadClock> m_threadTime;
+	
+	/**
+	 * The clocks of all the threads that used the model since it was last
+	 * reset, and of the live threads that used it before.
+	 */
+	/*@ non_null @*/ protected final ConcurrentLinkedQueue<ThreadClock> m_clocks;
+	
+	/**
+	 * The size assumed for objects whose size cannot be estimated.
+	 */
+	protected int m_defaultSize = 64;
+	
+	/**
+	 * The size of the digests produced by the hash function.
+	 */
+	protected int m_digestSize = 32;
+	
+	/**
+	 * Creates a new cost model where every operation is free.
+	 * @param mode The mode of the model
+	 */
+	public CostModel(/*@ non_null @*/ Mode mode)
+	{
+		super();
+		m_mode = mode;
+		int n = Operation.values().length;
+		m_fixedCost = new long[n];
+		m_byteCost = new double[n];
+		m_totalTime = new LongAdder[n];
+		for (int i = 0; i < n; i++)
+		{
+			m_totalTime[i] = new LongAdder();
+		}
+		m_clocks = new ConcurrentLinkedQueue<ThreadClock>();
+		m_threadTime = new ThreadLocal<ThreadClock>()
+		{
+			@Override
+			protected ThreadClock initialValue()
+			{
+				ThreadClock c = new ThreadClock(Thread.currentThread());
+				m_clocks.add(c);
+				return c;
+			}
+		};
+	}
+	
+	/**
+	 * Sets the cost of an operation.
+	 * @param op The operation
+	 * @param fixed_ns The fixed cost of the operation, in nanoseconds
+	 * @param byte_ns The cost per byte of the message, in nanoseconds
+	 * @return This model
+	 */
+	/*@ non_null @*/ public CostModel setCost(/*@ non_null @*/ Operation op, long fixed_ns, double byte_ns)
+	{
+		m_fixedCost[op.ordinal()] = fixed_ns;
+		m_byteCost[op.ordinal()] = byte_ns;
+		return this;
+	}
+	
+	/**
+	 * Sets the size assumed for objects whose size cannot be estimated.
+	 * @param size The size, in bytes
+	 * @return This model
+	 */
+	/*@ non_null @*/ public CostModel setDefaultSize(int size)
+	{
+		m_defaultSize = size;
+		return this;
+	}
+	
+	/**
+	 * Sets the size of the digests produced by the hash function.
+	 * @param size The size, in bytes
+	 * @return This model
+	 */
+	/*@ non_null @*/ public CostModel setDigestSize(int size)
+	{
+		m_digestSize = size;
+		return this;
+	}
+	
+	/**
+	 * Gets the mode of this model.
+	 * @return The mode
+	 */
+	/*@ pure non_null @*/ public Mode getMode()
+	{
+		return m_mode;
+	}
+	
+	/**
+	 * Gets the fixed cost of an operation.
+	 * @param op The operation
+	 * @return The cost, in nanoseconds
+	 */
+	/*@ pure @*/ public long getFixedCost(/*@ non_null @*/ Operation op)
+	{
+		return m_fixedCost[op.ordinal()];
+	}
+	
+	/**
+	 * Gets the cost per byte of an operation.
+	 * @param op The operation
+	 * @return The cost, in nanoseconds
+	 */
+	/*@ pure @*/ public double getByteCost(/*@ non_null @*/ Operation op)
+	{
+		return m_byteCost[op.ordinal()];
+	}
+	
+	/**
+	 * Gets the cost of an operation on a message of a given size.
+	 * @param op The operation
+	 * @param size The size of the message, in bytes
+	 * @return The cost, in nanoseconds
+	 */
+	/*@ pure @*/ public long getCost(/*@ non_null @*/ Operation op, long size)
+	{
+		return m_fixedCost[op.ordinal()] + (long) (m_byteCost[op.ordinal()] * size);
+	}
+	
+	/**
+	 * Pays the cost of an operation on a message, either by keeping the
+	 * current thread busy or by adding it to the virtual time.
+	 * @param op The operation
+	 * @param m The message
+	 * @return The cost, in nanoseconds
+	 */
+	public long charge(/*@ non_null @*/ Operation op, Object m)
+	{
+		return pay(op, getCost(op, sizeOf(m)));
+	}
+	
+	/**
+	 * Pays the cost of the same operation on several messages. The cost is
+	 * the sum of the costs of the messages, and is paid at once, so that in
+	 * burn mode the clock is read for the whole batch rather than for each
+	 * message.
+	 * @param op The operation
+	 * @param messages The messages
+	 * @return The cost, in nanoseconds
+	 */
+	public long chargeAll(/*@ non_null @*/ Operation op, /*@ non_null @*/ Collection<?> messages)
+	{
+		long cost = 0;
+		for (Object m : messages)
+		{
+			cost += Math.max(0, getCost(op, sizeOf(m)));
+		}
+		return pay(op, cost);
+	}
+	
+	/**
+	 * Pays a cost, either by keeping the current thread busy or by adding it
+	 * to the virtual time.
+	 * @param op The operation whose cost is paid
+	 * @param cost The cost, in nanoseconds
+	 * @return The cost, or 0 if it is negative
+	 */
+	protected long pay(/*@ non_null @*/ Operation op, long cost)
+	{
+		if (cost <= 0)
+		{
+			return 0;
+		}
+		if (m_mode == Mode.BURN)
+		{
+			long end = System.nanoTime() + cost;
+			while (System.nanoTime() < end)
+			{
+				// Busy wait, to use the CPU as the real operation would
+			}
+		}
+		m_totalTime[op.ordinal()].add(cost);
+		m_threadTime.get().m_time.addAndGet(cost);
+		return cost;
+	}
+	
+	/**
+	 * Gets the total time spent in an operation, by all threads.
+	 * @param op The operation
+	 * @return The time, in nanoseconds
+	 */
+	/*@ pure @*/ public long getTotalTime(/*@ non_null @*/ Operation op)
+	{
+		return m_totalTime[op.ordinal()].sum();
+	}
+	
+	/**
+	 * Gets the total time spent in all operations, by all threads.
+	 * @return The time, in nanoseconds
+	 */
+	/*@ pure @*/ public long getTotalTime()
+	{
+		long total = 0;
+		for (LongAdder a : m_totalTime)
+		{
+			total += a.sum();
+		}
+		return total;
+	}
+	
+	/**
+	 * Gets the time spent in all operations by the current thread.
+	 * @return The time, in nanoseconds
+	 */
+	/*@ pure @*/ public long getThreadTime()
+	{
+		return m_threadTime.get().m_time.get();
+	}
+	
+	/**
+	 * Gets the time spent in all operations by each thread that used the
+	 * model since it was last reset, including threads that have ended.
+	 * @return The times, in nanoseconds, in no particular order
+	 */
+	/*@ pure non_null @*/ public List<Long> getThreadTimes()
+	{
+		List<Long> times = new ArrayList<Long>();
+		for (ThreadClock c : m_clocks)
+		{
+			long t = c.m_time.get();
+			if (t > 0)
+			{
+				times.add(t);
+			}
+		}
+		return times;
+	}
+	
+	/**
+	 * Gets the largest time spent in all operations by a single thread since
+	 * the model was last reset. When the operations are spread over threads
+	 * running in parallel, this is a lower bound on the time they take.
+	 * @return The time, in nanoseconds
+	 */
+	/*@ pure @*/ public long getMaxThreadTime()
+	{
+		long max = 0;
+		for (ThreadClock c : m_clocks)
+		{
+			max = Math.max(max, c.m_time.get());
+		}
+		return max;
+	}
+	
+	/**
+	 * Sets the total time of each operation, and the time of every thread,
+	 * back to zero. The threads that have ended are forgotten.
+	 */
+	public void reset()
+	{
+		for (LongAdder a : m_totalTime)
+		{
+			a.reset();
+		}
+		for (ThreadClock c : m_clocks)
+		{
+			c.m_time.set(0);
+			Thread t = c.m_thread.get();
+			if (t == null || !t.isAlive())
+			{
+				m_clocks.remove(c);
+			}
+		}
+	}
+	
+	/**
+	 * Estimates the size of a message. Dummy encryptions are counted as the
+	 * size of the object they contain, dummy hash values as the size of a
+	 * digest, and strings as their number of characters.
+	 * @param m The message
+	 * @return The size, in bytes
+	 */
+	/*@ pure @*/ public long sizeOf(Object m)
+	{
+		return sizeOf(m, m_defaultSize, m_digestSize);
+	}
+	
+	/**
+	 * Estimates the size of a message with the rules of
+	 * {@link #sizeOf(Object)}.
+	 * @param m The message
+	 * @param default_size The size assumed for objects whose size cannot be
+	 * estimated
+	 * @param digest_size The size of the digests produced by the hash
+	 * function
+	 * @return The size, in bytes
+	 */
+	/*@ pure @*/ static long sizeOf(Object m, int default_size, int digest_size)
+	{
+		while (m instanceof EncryptedObject)
+		{
+			m = ((EncryptedObject) m).getObject();
+		}
+		if (m == null)
+		{
+			return 0;
+		}
+		if (m instanceof byte[])
+		{
+			return ((byte[]) m).length;
+		}
+		if (m instanceof CharSequence)
+		{
+			return ((CharSequence) m).length();
+		}
+		if (m instanceof HashValue)
+		{
+			return digest_size;
+		}
+		if (m instanceof Number || m instanceof Boolean || m instanceof Character)
+		{
+			return 8;
+		}
+		if (m instanceof Collection)
+		{
+			return (long) ((Collection<?>) m).size() * default_size;
+		}
+		return default_size;
+	}
+	
+	/**
+	 * Sets the cost of symmetric encryption and decryption by timing a real
+	 * cipher.
+	 * @param c The cipher
+	 * @param k The key to use with the cipher
+	 * @return This model
+	 * @throws CryptoException Thrown if the cipher fails
+	 */
+	/*@ non_null @*/ public CostModel calibrate(/*@ non_null @*/ final SymmetricCipher<byte[]> c, /*@ non_null @*/ final SymmetricKey k) throws CryptoException
+	{
+		measure(Operation.SYMMETRIC_ENCRYPT, 16, 4096, new Workload()
+		{
+			@Override
+			public byte[] prepare(byte[] m)
+			{
+				return m;
+			}
+			
+			@Override
+			public void run(byte[] m) throws CryptoException
+			{
+				c.encrypt(k, m);
+			}
+		});
+		measure(Operation.SYMMETRIC_DECRYPT, 16, 4096, new Workload()
+		{
+			@Override
+			public byte[] prepare(byte[] m) throws CryptoException
+			{
+				return c.encrypt(k, m);
+			}
+			
+			@Override
+			public void run(byte[] m) throws CryptoException
+			{
+				c.decrypt(k, m);
+			}
+		});
+		return this;
+	}
+	
+	/**
+	 * Sets the cost of asymmetric encryption and decryption by timing a real
+	 * cipher. Encryption is timed with the public key and decryption with
+	 * the private key. Since public-key operations take the same time on
+	 * any message that fits in a single block, only a fixed cost is set.
+	 * @param c The cipher
+	 * @param pu The public key to use with the cipher
+	 * @param pr The private key to use with the cipher
+	 * @return This model
+	 * @throws CryptoException Thrown if the cipher fails
+	 */
+	/*@ non_null @*/ public CostModel calibrate(/*@ non_null @*/ final AsymmetricCipher<byte[]> c, /*@ non_null @*/ final PublicKey pu, /*@ non_null @*/ final PrivateKey pr) throws CryptoException
+	{
+		setCost(Operation.ASYMMETRIC_ENCRYPT, (long) time(new Workload()
+		{
+			@Override
+			public byte[] prepare(byte[] m)
+			{
+				return m;
+			}
+			
+			@Override
+			public void run(byte[] m) throws CryptoException
+			{
+				c.encrypt(pu, m);
+			}
+		}, 64), 0);
+		setCost(Operation.ASYMMETRIC_DECRYPT, (long) time(new Workload()
+		{
+			@Override
+			public byte[] prepare(byte[] m) throws CryptoException
+			{
+				return c.encrypt(pu, m);
+			}
+			
+			@Override
+			public void run(byte[] m) throws CryptoException
+			{
+				c.decrypt(pr, m);
+			}
+		}, 64), 0);
+		return this;
+	}
+	
+	/**
+	 * Sets the cost of hashing by timing a real hash function.
+	 * @param h The hash function
+	 * @return This model
+	 * @throws CryptoException Thrown if the hash function fails
+	 */
+	/*@ non_null @*/ public CostModel calibrate(/*@ non_null @*/ final HashFunction<byte[],?> h) throws CryptoException
+	{
+		measure(Operation.HASH, 16, 4096, new Workload()
+		{
+			@Override
+			public byte[] prepare(byte[] m)
+			{
+				return m;
+			}
+			
+			@Override
+			public void run(byte[] m) throws CryptoException
+			{
+				h.getDigest(m);
+			}
+		});
+		return this;
+	}
+	
+	/**
+	 * Sets the cost of an operation by timing it on messages of two sizes,
+	 * and fitting a line through the two times.
+	 * @param op The operation
+	 * @param small The size of the small messages
+	 * @param large The size of the large messages
+	 * @param w The workload performing the operation
+	 * @throws CryptoException Thrown if the operation fails
+	 */
+	protected void measure(/*@ non_null @*/ Operation op, int small, int large, /*@ non_null @*/ Workload w) throws CryptoException
+	{
+		double t_small = time(w, small);
+		double t_large = time(w, large);
+		double byte_ns = Math.max(0, (t_large - t_small) / (large - small));
+		long fixed_ns = Math.max(0, (long) (t_small - byte_ns * small));
+		setCost(op, fixed_ns, byte_ns);
+	}
+	
+	/**
+	 * Measures the average time taken by a workload on messages of a given
+	 * size. The workload is first run for a while without being timed, to
+	 * give the JIT compiler a chance to optimize it, and then timed for as
+	 * many runs as fit in a tenth of a second.
+	 * @param w The workload
+	 * @param size The size of the messages
+	 * @return The average time, in nanoseconds
+	 * @throws CryptoException Thrown if the operation fails
+	 */
+	protected static double time(/*@ non_null @*/ Workload w, int size) throws CryptoException
+	{
+		byte[] m = w.prepare(new byte[size]);
+		long duration = 100000000L;
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < duration)
+		{
+			w.run(m);
+		}
+		int rounds = 0;
+		start = System.nanoTime();
+		long elapsed;
+		do
+		{
+			w.run(m);
+			rounds++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < duration || rounds < 10);
+		return (double) elapsed / rounds;
+	}
+	
+	/**
+	 * An operation timed to calibrate the model.
+	 */
+	protected interface Workload
+	{
+		/**
+		 * Produces the input of the operation from a message.
+		 * @param m The message
+		 * @return The input of the operation
+		 * @throws CryptoException Thrown if the input cannot be produced
+		 */
+		public byte[] prepare(byte[] m) throws CryptoException;
+		
+		/**
+		 * Runs the operation.
+		 * @param m The input of the operation
+		 * @throws CryptoException Thrown if the operation fails
+		 */
+		public void run(byte[] m) throws CryptoException;
+	}
+	
+	/**
+	 * The virtual time of a thread. It is only increased by its thread, but
+	 * can be read and reset by any thread.
+	 */
+	protected static class ThreadClock
+	{
+		/**
+		 * The thread, which is not kept from being garbage collected.
+		 */
+		/*@ non_null @*/ protected final WeakReference<Thread> m_thread;
+		
+		/**
+		 * The virtual time of the thread, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final AtomicLong m_time;
+		
+		/**
+		 * Creates a new clock.
+		 * @param t The thread
+		 */
+		ThreadClock(/*@ non_null @*/ Thread t)
+		{
+			super();
+			m_thread = new WeakReference<Thread>(t);
+			m_time = new AtomicLong(0);
+		}
+	}
+}
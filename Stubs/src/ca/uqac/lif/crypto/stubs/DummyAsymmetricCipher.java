@@ -17,6 +17,8 @@
  */
 package ca.uqac.lif.crypto.stubs;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.Key;
 import ca.uqac.lif.crypto.asymmetric.KeyPair;
@@ -25,25 +27,129 @@ import ca.uqac.lif.crypto.asymmetric.AsymmetricObjectCipher;
 import ca.uqac.lif.crypto.asymmetric.PrivateKey;
 import ca.uqac.lif.crypto.asymmetric.PublicKey;
 
+/**
+ * A cipher that simulates the encryption of an object with public and
+ * private keys without performing any actual encryption.
+ * <p>
+ * Each key carries a numerical identifier made of a number given to its
+ * owner and a bit telling whether it is public or private, so that
+ * checking that two keys belong to the same pair, which happens on every
+ * decryption, is a comparison of integers. The owners are only held
+ * weakly: an owner is forgotten once no key of this owner is left, and is
+ * given a new number if keys of the same owner are created again.
+ */
 public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 {
+	/**
+	 * The owners of the dummy keys that exist.
+	 */
+	/*@ non_null @*/ protected static final WeakInterner<Owner> s_owners = new WeakInterner<Owner>();
+	
+	/**
+	 * The last number given to an owner of dummy keys.
+	 */
+	/*@ non_null @*/ protected static final AtomicInteger s_lastOwner = new AtomicInteger(0);
+	
 	/**
 	 * A single publicly visible instance of the dummy asymmetric cipher.
 	 */
 	public static final DummyAsymmetricCipher instance = new DummyAsymmetricCipher();
 	
+	/**
+	 * A single publicly visible instance of the dummy asymmetric cipher that
+	 * returns canonical instances of encrypted objects.
+	 * @see EncryptedObject#intern()
+	 */
+	public static final DummyAsymmetricCipher interning = new DummyAsymmetricCipher(true);
+	
 	/**
 	 * A static reference to an instance of key generator with default
 	 * settings.
 	 */
 	public static final DummyKeyPairGenerator generator = new DummyKeyPairGenerator();
 	
+	/**
+	 * Whether the cipher returns canonical instances of encrypted objects.
+	 */
+	protected final boolean m_intern;
+	
+	/**
+	 * The model giving a cost to each operation, or <tt>null</tt> if the
+	 * operations are free.
+	 */
+	/*@ null @*/ protected final CostModel m_costModel;
+	
+	/**
+	 * The counter of the operations, or <tt>null</tt> if the operations are
+	 * not counted.
+	 */
+	/*@ null @*/ protected final OperationCounter m_counter;
+	
 	/**
 	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations, or <tt>null</tt> if the
+	 * operations are not counted
 	 */
-	protected DummyAsymmetricCipher()
+	protected DummyAsymmetricCipher(boolean intern, /*@ null @*/ CostModel model, /*@ null @*/ OperationCounter counter)
 	{
 		super();
+		m_intern = intern;
+		m_costModel = model;
+		m_counter = counter;
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 */
+	protected DummyAsymmetricCipher(boolean intern, /*@ null @*/ CostModel model)
+	{
+		this(intern, model, null);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher whose operations are counted.
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations
+	 */
+	public DummyAsymmetricCipher(/*@ null @*/ CostModel model, /*@ non_null @*/ OperationCounter counter)
+	{
+		this(false, model, counter);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher whose operations have a cost.
+	 * @param model The model giving a cost to each operation
+	 */
+	public DummyAsymmetricCipher(/*@ non_null @*/ CostModel model)
+	{
+		this(false, model);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 */
+	protected DummyAsymmetricCipher(boolean intern)
+	{
+		this(intern, null);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 */
+	protected DummyAsymmetricCipher()
+	{
+		this(false);
 	}
 	
 	@Override
@@ -73,7 +179,7 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 		{
 			throw new CryptoException("Expected a DummyPublicKey");
 		}
-		return dummyDecrypt(k.getName(), m);
+		return dummyDecrypt(k, m);
 	}
 
 	@Override
@@ -83,7 +189,7 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 		{
 			throw new CryptoException("Expected a DummyPublicKey");
 		}
-		return dummyDecrypt(k.getName(), m);
+		return dummyDecrypt(k, m);
 	}
 	
 	/**
@@ -95,7 +201,47 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 	 */
 	protected Object dummyEncrypt(Key k, Object m) throws CryptoException
 	{
-		return new EncryptedObject(k, m);
+		int key_id = getId(k);
+		if (m_counter != null)
+		{
+			m_counter.count(CostModel.Operation.ASYMMETRIC_ENCRYPT, k, m);
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.ASYMMETRIC_ENCRYPT, m);
+		}
+		EncryptedObject eo = new EncryptedObject(k, m, key_id);
+		return m_intern ? eo.intern() : eo;
+	}
+	
+	/**
+	 * Performs the "dummy" decryption of an object. When both the key and the
+	 * key that encrypted the object have an identifier, the keys are compared
+	 * through these identifiers without any allocation; otherwise, or if the
+	 * identifiers do not match, they are compared by name. The identifiers of
+	 * keys of the same owner may differ, if the owner was forgotten between
+	 * the creation of the keys.
+	 * @param k The key used to decrypt
+	 * @param m The object to decrypt
+	 * @return The decrypted object
+	 * @throws CryptoException Thrown if the decryption could not proceed
+	 */
+	protected Object dummyDecrypt(Key k, Object m) throws CryptoException
+	{
+		int key_id = getId(k);
+		if (m_counter != null)
+		{
+			m_counter.count(CostModel.Operation.ASYMMETRIC_DECRYPT, k, m);
+		}
+		if (key_id == 0 || !(m instanceof EncryptedObject) || !samePair(key_id, ((EncryptedObject) m).m_keyId))
+		{
+			return dummyDecrypt(k.getName(), m);
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.ASYMMETRIC_DECRYPT, m);
+		}
+		return ((EncryptedObject) m).m_object;
 	}
 	
 	/**
@@ -111,6 +257,10 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 		{
 			throw new CryptoException("Invalid input object type");
 		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.ASYMMETRIC_DECRYPT, m);
+		}
 		EncryptedObject eo = (EncryptedObject) m;
 		if (!samePair(key_name, eo.getKeyName()))
 		{
@@ -129,6 +279,24 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 		 */
 		/*@ non_null @*/ protected final String m_owner;
 		
+		/**
+		 * The name of the key, computed the first time it is asked for, as
+		 * deserialization may set the owner after the key is created.
+		 */
+		/*@ null @*/ protected transient String m_name;
+		
+		/**
+		 * The identifier of the key, computed the first time it is asked for,
+		 * or 0 until then.
+		 */
+		protected transient int m_id;
+		
+		/**
+		 * The owner of the key, which is kept so that the owner keeps its
+		 * number as long as the key exists.
+		 */
+		/*@ null @*/ protected transient Owner m_ownerEntry;
+		
 		/**
 		 * Creates a new dummy private key.
 		 * @param owner The owner of the key
@@ -162,10 +330,33 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 			return m_owner;
 		}
 		
+		/**
+		 * Gets the numerical identifier of this key.
+		 * @return The identifier
+		 */
+		/*@ pure @*/ int getId()
+		{
+			int id = m_id;
+			if (id == 0)
+			{
+				Owner owner = s_owners.intern(new Owner(m_owner));
+				m_ownerEntry = owner;
+				id = owner.getId(false);
+				m_id = id;
+			}
+			return id;
+		}
+		
 		@Override
 		public String getName()
 		{
-			return "PR_" + m_owner;
+			String name = m_name;
+			if (name == null)
+			{
+				name = "PR_" + m_owner;
+				m_name = name;
+			}
+			return name;
 		}
 		
 		@Override
@@ -201,6 +392,24 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 		 */
 		/*@ non_null @*/ protected final String m_owner;
 		
+		/**
+		 * The name of the key, computed the first time it is asked for, as
+		 * deserialization may set the owner after the key is created.
+		 */
+		/*@ null @*/ protected transient String m_name;
+		
+		/**
+		 * The identifier of the key, computed the first time it is asked for,
+		 * or 0 until then.
+		 */
+		protected transient int m_id;
+		
+		/**
+		 * The owner of the key, which is kept so that the owner keeps its
+		 * number as long as the key exists.
+		 */
+		/*@ null @*/ protected transient Owner m_ownerEntry;
+		
 		/**
 		 * Creates a new dummy public key.
 		 * @param owner The owner of the key
@@ -234,10 +443,33 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 			return m_owner;
 		}
 		
+		/**
+		 * Gets the numerical identifier of this key.
+		 * @return The identifier
+		 */
+		/*@ pure @*/ int getId()
+		{
+			int id = m_id;
+			if (id == 0)
+			{
+				Owner owner = s_owners.intern(new Owner(m_owner));
+				m_ownerEntry = owner;
+				id = owner.getId(true);
+				m_id = id;
+			}
+			return id;
+		}
+		
 		@Override
 		public String getName()
 		{
-			return "PU_" + m_owner;
+			String name = m_name;
+			if (name == null)
+			{
+				name = "PU_" + m_owner;
+				m_name = name;
+			}
+			return name;
 		}
 		
 		@Override
@@ -374,8 +606,98 @@ public class DummyAsymmetricCipher implements AsymmetricObjectCipher
 	{
 		if ((name1.startsWith("PR_") && name2.startsWith("PU_")) || (name1.startsWith("PU_") && name2.startsWith("PR_")))
 		{
-			return name1.substring(3).compareTo(name2.substring(3)) == 0;
+			return name1.length() == name2.length() && name1.regionMatches(3, name2, 3, name1.length() - 3);
 		}
 		return false;
 	}
+	
+	/**
+	 * Determines if two identifiers correspond to the private and public key
+	 * of the same pair of <em>dummy</em> asymmetric keys.
+	 * @param id1 The first identifier
+	 * @param id2 The second identifier
+	 * @return <tt>true</tt> if the identifiers correspond to keys of the same
+	 * pair, <tt>false</tt> otherwise
+	 */
+	protected static boolean samePair(int id1, int id2)
+	{
+		// Same owner number, different role bit
+		return (id1 ^ id2) == 1;
+	}
+	
+	/**
+	 * Gets the numerical identifier of a dummy asymmetric key.
+	 * @param k The key
+	 * @return The identifier, or 0 if the key is not a dummy asymmetric key
+	 */
+	protected static int getId(Key k)
+	{
+		if (k instanceof DummyPrivateKey)
+		{
+			return ((DummyPrivateKey) k).getId();
+		}
+		if (k instanceof DummyPublicKey)
+		{
+			return ((DummyPublicKey) k).getId();
+		}
+		return 0;
+	}
+	
+	/**
+	 * The owner of dummy keys, of which a single instance is shared by all
+	 * the keys of the same owner through {@link #s_owners}. The number of the
+	 * owner is given the first time it is asked for.
+	 */
+	protected static class Owner
+	{
+		/**
+		 * The name of the owner.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+		
+		/**
+		 * The number of the owner, or 0 until it is given.
+		 */
+		protected int m_number;
+		
+		/**
+		 * Creates a new owner.
+		 * @param name The name of the owner
+		 */
+		protected Owner(/*@ non_null @*/ String name)
+		{
+			super();
+			m_name = name;
+			m_number = 0;
+		}
+		
+		/**
+		 * Gets the numerical identifier of a key of this owner. The lowest bit
+		 * of the identifier is the role of the key, and the other bits are the
+		 * number of the owner, which is never 0.
+		 * @param is_public <tt>true</tt> for a public key, <tt>false</tt> for a
+		 * private key
+		 * @return The identifier
+		 */
+		protected synchronized int getId(boolean is_public)
+		{
+			if (m_number == 0)
+			{
+				m_number = s_lastOwner.incrementAndGet();
+			}
+			return (m_number << 1) | (is_public ? 1 : 0);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_name.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Owner && ((Owner) o).m_name.equals(m_name);
+		}
+	}
 }
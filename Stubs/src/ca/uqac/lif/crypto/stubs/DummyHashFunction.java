@@ -17,6 +17,9 @@
  */
 package ca.uqac.lif.crypto.stubs;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import ca.uqac.lif.crypto.CryptoException;
 import ca.uqac.lif.crypto.hash.HashFunction;
 
@@ -33,23 +36,163 @@ public class DummyHashFunction implements HashFunction<Object,ca.uqac.lif.crypto
 	 */
 	public static final DummyHashFunction instance = new DummyHashFunction();
 	
+	/**
+	 * A single publicly visible instance of the dummy hash function that
+	 * returns canonical instances of hash values.
+	 * @see HashValue#intern()
+	 */
+	public static final DummyHashFunction interning = new DummyHashFunction(true);
+	
+	/**
+	 * Whether the function returns canonical instances of hash values.
+	 */
+	protected final boolean m_intern;
+	
+	/**
+	 * The model giving a cost to each operation, or <tt>null</tt> if the
+	 * operations are free.
+	 */
+	/*@ null @*/ protected final CostModel m_costModel;
+	
+	/**
+	 * The counter of the operations, or <tt>null</tt> if the operations are
+	 * not counted.
+	 */
+	/*@ null @*/ protected final OperationCounter m_counter;
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * hash values
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations, or <tt>null</tt> if the
+	 * operations are not counted
+	 */
+	protected DummyHashFunction(boolean intern, /*@ null @*/ CostModel model, /*@ null @*/ OperationCounter counter)
+	{
+		super();
+		m_intern = intern;
+		m_costModel = model;
+		m_counter = counter;
+	}
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * hash values
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 */
+	protected DummyHashFunction(boolean intern, /*@ null @*/ CostModel model)
+	{
+		this(intern, model, null);
+	}
+	
+	/**
+	 * Creates a new instance of the hash function whose operations are counted.
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations
+	 */
+	public DummyHashFunction(/*@ null @*/ CostModel model, /*@ non_null @*/ OperationCounter counter)
+	{
+		this(false, model, counter);
+	}
+	
+	/**
+	 * Creates a new instance of the hash function whose operations have a
+	 * cost.
+	 * @param model The model giving a cost to each operation
+	 */
+	public DummyHashFunction(/*@ non_null @*/ CostModel model)
+	{
+		this(false, model);
+	}
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * hash values
+	 */
+	protected DummyHashFunction(boolean intern)
+	{
+		this(intern, null);
+	}
+	
+	/**
+	 * Creates a new instance of the hash function.
+	 */
+	public DummyHashFunction()
+	{
+		this(false);
+	}
+	
 	@Override
 	public HashValue getDigest(Object o) throws CryptoException
 	{
-		return new HashValue(o);
+		if (m_counter != null)
+		{
+			m_counter.count(CostModel.Operation.HASH, null, o);
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.HASH, o);
+		}
+		HashValue h = new HashValue(o);
+		return m_intern ? h.intern() : h;
+	}
+	
+	/**
+	 * Gets the digests of several objects. The operations are counted one by
+	 * one, but their cost is paid all at once.
+	 */
+	@Override
+	public List<HashValue> getDigests(List<? extends Object> objects) throws CryptoException
+	{
+		if (m_counter != null)
+		{
+			for (Object o : objects)
+			{
+				m_counter.count(CostModel.Operation.HASH, null, o);
+			}
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.chargeAll(CostModel.Operation.HASH, objects);
+		}
+		List<HashValue> digests = new ArrayList<HashValue>(objects.size());
+		for (Object o : objects)
+		{
+			HashValue h = new HashValue(o);
+			digests.add(m_intern ? h.intern() : h);
+		}
+		return digests;
 	}
 	
 	/**
 	 * An object representing the fictitious "hashing" of a value with a hash
 	 * function. The object only stores the original value <i>O</i>, and its
-	 * string representation is "H(<i>O</i>)".
+	 * string representation is "H(<i>O</i>)". As for
+	 * {@link EncryptedObject}, the hash code is computed once when the hash
+	 * value is created, and nested values are compared without recursion.
 	 */
 	public static class HashValue
 	{
+		/**
+		 * The table of canonical instances of hash values.
+		 */
+		/*@ non_null @*/ protected static final WeakInterner<HashValue> s_interner = new WeakInterner<HashValue>();
+		
 		/**
 		 * The value to be hashed.
 		 */
 		/*@ non_null @*/ protected Object m_value;
+		
+		/**
+		 * The hash code of the hash value, computed when it is created.
+		 */
+		protected final int m_hashCode;
 
 		/**
 		 * Creates a new hash value.
@@ -59,6 +202,7 @@ public class DummyHashFunction implements HashFunction<Object,ca.uqac.lif.crypto
 		{
 			super();
 			m_value = value;
+			m_hashCode = value.hashCode();
 		}
 		
 		/**
@@ -70,26 +214,34 @@ public class DummyHashFunction implements HashFunction<Object,ca.uqac.lif.crypto
 			return m_value;
 		}
 
+		/**
+		 * Gets the canonical instance of this hash value, which is shared by
+		 * all the hash values equal to it.
+		 * @return The canonical instance
+		 */
+		/*@ non_null @*/ public HashValue intern()
+		{
+			return s_interner.intern(this);
+		}
+		
 		@Override
 		public String toString()
 		{
-			return "H(" + m_value.toString() + ")";
+			StringBuilder out = new StringBuilder();
+			EncryptedObject.appendTo(out, this);
+			return out.toString();
 		}
 
 		@Override
 		public int hashCode()
 		{
-			return m_value.hashCode();
+			return m_hashCode;
 		}
 
 		@Override
 		public boolean equals(Object o)
 		{
-			if (!(o instanceof HashValue))
-			{
-				return false;
-			}
-			return m_value.equals(((HashValue) o).m_value);
+			return EncryptedObject.nestedEquals(this, o);
 		}
 	}
 	
@@ -35,18 +35,101 @@ public class DummySymmetricCipher implements SymmetricObjectCipher
 	 */
 	public static final DummySymmetricCipher instance = new DummySymmetricCipher();
 	
+	/**
+	 * A single publicly visible instance of the dummy symmetric cipher that
+	 * returns canonical instances of encrypted objects.
+	 * @see EncryptedObject#intern()
+	 */
+	public static final DummySymmetricCipher interning = new DummySymmetricCipher(true);
+	
 	/**
 	 * A static reference to an instance of DES key generator with default
 	 * settings.
 	 */
 	public static final DummyKeyGenerator generator = new DummyKeyGenerator();
 	
+	/**
+	 * Whether the cipher returns canonical instances of encrypted objects.
+	 */
+	protected final boolean m_intern;
+	
+	/**
+	 * The model giving a cost to each operation, or <tt>null</tt> if the
+	 * operations are free.
+	 */
+	/*@ null @*/ protected final CostModel m_costModel;
+	
+	/**
+	 * The counter of the operations, or <tt>null</tt> if the operations are
+	 * not counted.
+	 */
+	/*@ null @*/ protected final OperationCounter m_counter;
+	
 	/**
 	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations, or <tt>null</tt> if the
+	 * operations are not counted
 	 */
-	protected DummySymmetricCipher()
+	protected DummySymmetricCipher(boolean intern, /*@ null @*/ CostModel model, /*@ null @*/ OperationCounter counter)
 	{
 		super();
+		m_intern = intern;
+		m_costModel = model;
+		m_counter = counter;
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 */
+	protected DummySymmetricCipher(boolean intern, /*@ null @*/ CostModel model)
+	{
+		this(intern, model, null);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher whose operations are counted.
+	 * @param model The model giving a cost to each operation, or
+	 * <tt>null</tt> if the operations are free
+	 * @param counter The counter of the operations
+	 */
+	public DummySymmetricCipher(/*@ null @*/ CostModel model, /*@ non_null @*/ OperationCounter counter)
+	{
+		this(false, model, counter);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher whose operations have a cost.
+	 * @param model The model giving a cost to each operation
+	 */
+	public DummySymmetricCipher(/*@ non_null @*/ CostModel model)
+	{
+		this(false, model);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 * @param intern Set to <tt>true</tt> to return canonical instances of
+	 * encrypted objects
+	 */
+	protected DummySymmetricCipher(boolean intern)
+	{
+		this(intern, null);
+	}
+	
+	/**
+	 * Creates a new instance of the cipher.
+	 */
+	protected DummySymmetricCipher()
+	{
+		this(false);
 	}
 	
 	@Override
@@ -56,7 +139,16 @@ public class DummySymmetricCipher implements SymmetricObjectCipher
 		{
 			throw new CryptoException("Expected a DummySymmetricKey");
 		}
-		return new EncryptedObject(k, m);
+		if (m_counter != null)
+		{
+			m_counter.count(CostModel.Operation.SYMMETRIC_ENCRYPT, k, m);
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.SYMMETRIC_ENCRYPT, m);
+		}
+		EncryptedObject eo = new EncryptedObject(k, m);
+		return m_intern ? eo.intern() : eo;
 	}
 
 	@Override
@@ -70,6 +162,14 @@ public class DummySymmetricCipher implements SymmetricObjectCipher
 		{
 			throw new CryptoException("Invalid input object type");
 		}
+		if (m_counter != null)
+		{
+			m_counter.count(CostModel.Operation.SYMMETRIC_DECRYPT, k, m);
+		}
+		if (m_costModel != null)
+		{
+			m_costModel.charge(CostModel.Operation.SYMMETRIC_DECRYPT, m);
+		}
 		EncryptedObject eo = (EncryptedObject) m;
 		if (k.getName().compareTo(eo.getKeyName()) != 0)
 		{
@@ -18,6 +18,7 @@
 package ca.uqac.lif.crypto.stubs;
 
 import ca.uqac.lif.crypto.Key;
+import ca.uqac.lif.crypto.stubs.DummyHashFunction.HashValue;
 
 /**
  * An object representing the fictitious "encryption" of a value with a
@@ -29,9 +30,25 @@ import ca.uqac.lif.crypto.Key;
  * properties of an actually encrypted value: two such objects are considered
  * equal if and only if they contain the same internal object encrypted with
  * the same key.
+ * <p>
+ * Encrypted objects can optionally be replaced by a canonical instance with
+ * {@link #intern()}, so that equal objects share the same memory and are
+ * most often compared by reference.
+ * <p>
+ * Encryptions are often nested, as in "E[k1,E[k2,E[k3,...]]]". To keep
+ * such values cheap to use as keys of maps, the hash code of an encrypted
+ * object is computed once when it is created, which assumes that the
+ * object it contains does not change. Comparisons and string
+ * representations go through the nested encryptions (and hash values)
+ * in a loop rather than recursively, so that they work at any depth.
  */
 public class EncryptedObject
 {
+	/**
+	 * The table of canonical instances of encrypted objects.
+	 */
+	/*@ non_null @*/ protected static final WeakInterner<EncryptedObject> s_interner = new WeakInterner<EncryptedObject>();
+	
 	/**
 	 * The name of the key used to "encrypt" the object.
 	 */
@@ -42,16 +59,47 @@ public class EncryptedObject
 	 */
 	/*@ non_null @*/ protected final Object m_object;
 	
+	/**
+	 * A numerical identifier of the key used to "encrypt" the object, or 0
+	 * if the key has no such identifier.
+	 */
+	protected final int m_keyId;
+	
+	/**
+	 * The hash code of the encrypted object, computed when it is created.
+	 */
+	protected final int m_hashCode;
+	
+	/**
+	 * The number of nested encryptions in this object, including itself.
+	 */
+	protected final int m_depth;
+	
 	/**
 	 * Creates a new encrypted object.
 	 * @param k The key used to "encrypt" the object
 	 * @param o The "encrypted" object
+	 * @param key_id A numerical identifier of the key, or 0 if the key has
+	 * no such identifier
 	 */
-	EncryptedObject(/*@ non_null @*/ Key k, /*@ non_null @*/ Object o)
+	EncryptedObject(/*@ non_null @*/ Key k, /*@ non_null @*/ Object o, int key_id)
 	{
 		super();
 		m_keyName = k.getName();
 		m_object = o;
+		m_keyId = key_id;
+		m_hashCode = m_keyName.hashCode() + o.hashCode();
+		m_depth = o instanceof EncryptedObject ? ((EncryptedObject) o).m_depth + 1 : 1;
+	}
+	
+	/**
+	 * Creates a new encrypted object.
+	 * @param k The key used to "encrypt" the object
+	 * @param o The "encrypted" object
+	 */
+	EncryptedObject(/*@ non_null @*/ Key k, /*@ non_null @*/ Object o)
+	{
+		this(k, o, 0);
 	}
 	
 	/**
@@ -72,26 +120,124 @@ public class EncryptedObject
 		return m_object;
 	}
 	
+	/**
+	 * Gets the number of encryptions directly nested in this object,
+	 * including itself. For example, the depth of "E[k1,E[k2,abc]]" is 2.
+	 * @return The depth
+	 */
+	/*@ pure @*/ public int getDepth()
+	{
+		return m_depth;
+	}
+	
+	/**
+	 * Gets the canonical instance of this encrypted object, which is shared
+	 * by all the encrypted objects equal to it.
+	 * @return The canonical instance
+	 */
+	/*@ non_null @*/ public EncryptedObject intern()
+	{
+		return s_interner.intern(this);
+	}
+	
 	@Override
 	public String toString()
 	{
-		return "E[" + m_keyName + "," + m_object.toString() + "]";
+		StringBuilder out = new StringBuilder();
+		appendTo(out, this);
+		return out.toString();
 	}
 	
 	@Override
 	public int hashCode()
 	{
-		return m_keyName.hashCode() + m_object.hashCode();
+		return m_hashCode;
 	}
 	
 	@Override
 	public boolean equals(Object o)
 	{
-		if (!(o instanceof EncryptedObject))
+		return nestedEquals(this, o);
+	}
+	
+	/**
+	 * Compares two values that may contain nested encrypted objects and hash
+	 * values, without recursion.
+	 * @param o1 The first value
+	 * @param o2 The second value
+	 * @return <tt>true</tt> if the values are equal, <tt>false</tt> otherwise
+	 */
+	static boolean nestedEquals(/*@ non_null @*/ Object o1, Object o2)
+	{
+		while (o1 != o2)
+		{
+			// The cached hash codes quickly tell most unequal values apart
+			if (o1 instanceof EncryptedObject)
+			{
+				if (!(o2 instanceof EncryptedObject))
+				{
+					return false;
+				}
+				EncryptedObject eo1 = (EncryptedObject) o1, eo2 = (EncryptedObject) o2;
+				if (eo1.m_hashCode != eo2.m_hashCode || eo1.m_keyName.compareTo(eo2.m_keyName) != 0)
+				{
+					return false;
+				}
+				o1 = eo1.m_object;
+				o2 = eo2.m_object;
+			}
+			else if (o1 instanceof HashValue)
+			{
+				if (!(o2 instanceof HashValue))
+				{
+					return false;
+				}
+				HashValue h1 = (HashValue) o1, h2 = (HashValue) o2;
+				if (h1.m_hashCode != h2.m_hashCode)
+				{
+					return false;
+				}
+				o1 = h1.m_value;
+				o2 = h2.m_value;
+			}
+			else
+			{
+				return o1.equals(o2);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Appends the string representation of a value that may contain nested
+	 * encrypted objects and hash values, without recursion.
+	 * @param out The builder to append to
+	 * @param o The value
+	 */
+	static void appendTo(/*@ non_null @*/ StringBuilder out, /*@ non_null @*/ Object o)
+	{
+		StringBuilder closing = new StringBuilder();
+		while (true)
 		{
-			return false;
+			if (o instanceof EncryptedObject)
+			{
+				EncryptedObject eo = (EncryptedObject) o;
+				out.append("E[").append(eo.m_keyName).append(",");
+				closing.append(']');
+				o = eo.m_object;
+			}
+			else if (o instanceof HashValue)
+			{
+				out.append("H(");
+				closing.append(')');
+				o = ((HashValue) o).m_value;
+			}
+			else
+			{
+				out.append(o.toString());
+				break;
+			}
 		}
-		EncryptedObject eo = (EncryptedObject) o;
-		return m_keyName.compareTo(eo.m_keyName) == 0 && m_object.equals(eo.m_object);
+		out.append(closing.reverse());
 	}
-}
\ No newline at end of file
+}
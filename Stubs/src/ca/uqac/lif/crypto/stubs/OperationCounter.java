@@ -0,0 +1,440 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.uqac.lif.crypto.Key;
+import ca.uqac.lif.crypto.stubs.CostModel.Operation;
+
+/**
+ * Counts the operations performed by the dummy ciphers and hash function,
+ * and the number of bytes they process, so that a design running on the
+ * stubs can tell how much work real cryptography would have to do. Counts
+ * are kept in total for each operation, and also broken down by key and by
+ * nesting depth, which is the number of layers of encryption around the
+ * message given to the operation.
+ * <p>
+ * The counters are striped, so that threads counting at the same time do
+ * not contend with each other. A {@link Snapshot} of the counters can be
+ * taken at any time, and turned into an estimate of the CPU time the
+ * operations would take with a {@link CostModel}.
+ */
+public class OperationCounter
+{
+	/**
+	 * The largest nesting depth counted on its own; deeper operations are
+	 * counted with this depth.
+	 */
+	public static final int MAX_DEPTH = 8;
+	
+	/**
+	 * The counts of all operations.
+	 */
+	/*@ non_null @*/ protected final Tally m_total;
+	
+	/**
+	 * The counts of operations for each key name.
+	 */
+	/*@ non_null @*/ protected final ConcurrentHashMap<String,Tally> m_byKey;
+	
+	/**
+	 * The counts of operations for each nesting depth.
+	 */
+	/*@ non_null @*/ protected final Tally[] m_byDepth;
+	
+	/**
+	 * The value of {@link System#nanoTime()} when the counters were last
+	 * reset.
+	 */
+	protected volatile long m_start;
+	
+	/**
+	 * The size assumed for objects whose size cannot be estimated.
+	 */
+	protected int m_defaultSize = 64;
+	
+	/**
+	 * The size of the digests produced by the hash function.
+	 */
+	protected int m_digestSize = 32;
+	
+	/**
+	 * Creates a new counter.
+	 */
+	public OperationCounter()
+	{
+		super();
+		m_total = new Tally();
+		m_byKey = new ConcurrentHashMap<String,Tally>();
+		m_byDepth = new Tally[MAX_DEPTH + 1];
+		for (int i = 0; i < m_byDepth.length; i++)
+		{
+			m_byDepth[i] = new Tally();
+		}
+		m_start = System.nanoTime();
+	}
+	
+	/**
+	 * Sets the size assumed for objects whose size cannot be estimated.
+	 * @param size The size, in bytes
+	 * @return This counter
+	 * @see CostModel#setDefaultSize(int)
+	 */
+	/*@ non_null @*/ public OperationCounter setDefaultSize(int size)
+	{
+		m_defaultSize = size;
+		return this;
+	}
+	
+	/**
+	 * Sets the size of the digests produced by the hash function.
+	 * @param size The size, in bytes
+	 * @return This counter
+	 * @see CostModel#setDigestSize(int)
+	 */
+	/*@ non_null @*/ public OperationCounter setDigestSize(int size)
+	{
+		m_digestSize = size;
+		return this;
+	}
+	
+	/**
+	 * Counts an operation.
+	 * @param op The operation
+	 * @param k The key used by the operation, or <tt>null</tt> for hashing
+	 * @param m The message given to the operation
+	 */
+	public void count(/*@ non_null @*/ Operation op, /*@ null @*/ Key k, Object m)
+	{
+		long size = CostModel.sizeOf(m, m_defaultSize, m_digestSize);
+		int depth = m instanceof EncryptedObject ? ((EncryptedObject) m).getDepth() : 0;
+		m_total.add(op, size);
+		m_byDepth[Math.min(depth, MAX_DEPTH)].add(op, size);
+		if (k != null)
+		{
+			String name = k.getName();
+			Tally t = m_byKey.get(name);
+			if (t == null)
+			{
+				Tally new_t = new Tally();
+				t = m_byKey.putIfAbsent(name, new_t);
+				if (t == null)
+				{
+					t = new_t;
+				}
+			}
+			t.add(op, size);
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the counters. Operations counted while the snapshot
+	 * is being taken may or may not be included in it.
+	 * @return The snapshot
+	 */
+	/*@ non_null @*/ public Snapshot snapshot()
+	{
+		Map<String,long[][]> by_key = new TreeMap<String,long[][]>();
+		for (Map.Entry<String,Tally> e : m_byKey.entrySet())
+		{
+			by_key.put(e.getKey(), e.getValue().sum());
+		}
+		long[][][] by_depth = new long[m_byDepth.length][][];
+		for (int i = 0; i < m_byDepth.length; i++)
+		{
+			by_depth[i] = m_byDepth[i].sum();
+		}
+		return new Snapshot(m_total.sum(), by_key, by_depth, System.nanoTime() - m_start);
+	}
+	
+	/**
+	 * Sets all the counters back to zero, and forgets the keys seen so far.
+	 */
+	public void reset()
+	{
+		m_total.reset();
+		m_byKey.clear();
+		for (Tally t : m_byDepth)
+		{
+			t.reset();
+		}
+		m_start = System.nanoTime();
+	}
+	
+	/**
+	 * The number of operations and of bytes processed, for each operation.
+	 */
+	protected static class Tally
+	{
+		/**
+		 * The number of operations, indexed by the ordinal of the operation.
+		 */
+		/*@ non_null @*/ protected final LongAdder[] m_counts;
+		
+		/**
+		 * The number of bytes processed, indexed by the ordinal of the
+		 * operation.
+		 */
+		/*@ non_null @*/ protected final LongAdder[] m_bytes;
+		
+		/**
+		 * Creates a new tally where all counts are zero.
+		 */
+		Tally()
+		{
+			super();
+			int n = Operation.values().length;
+			m_counts = new LongAdder[n];
+			m_bytes = new LongAdder[n];
+			for (int i = 0; i < n; i++)
+			{
+				m_counts[i] = new LongAdder();
+				m_bytes[i] = new LongAdder();
+			}
+		}
+		
+		/**
+		 * Counts an operation.
+		 * @param op The operation
+		 * @param size The size of the message, in bytes
+		 */
+		void add(/*@ non_null @*/ Operation op, long size)
+		{
+			m_counts[op.ordinal()].increment();
+			m_bytes[op.ordinal()].add(size);
+		}
+		
+		/**
+		 * Gets the current counts.
+		 * @return An array containing the number of operations and the number
+		 * of bytes, each indexed by the ordinal of the operation
+		 */
+		/*@ non_null @*/ long[][] sum()
+		{
+			long[][] out = new long[2][m_counts.length];
+			for (int i = 0; i < m_counts.length; i++)
+			{
+				out[0][i] = m_counts[i].sum();
+				out[1][i] = m_bytes[i].sum();
+			}
+			return out;
+		}
+		
+		/**
+		 * Sets all counts back to zero.
+		 */
+		void reset()
+		{
+			for (int i = 0; i < m_counts.length; i++)
+			{
+				m_counts[i].reset();
+				m_bytes[i].reset();
+			}
+		}
+	}
+	
+	/**
+	 * The values of the counters of an {@link OperationCounter} at some point
+	 * in time.
+	 */
+	public static class Snapshot
+	{
+		/**
+		 * The counts of all operations, as returned by {@link Tally#sum()}.
+		 */
+		/*@ non_null @*/ protected final long[][] m_total;
+		
+		/**
+		 * The counts of operations for each key name, sorted by name.
+		 */
+		/*@ non_null @*/ protected final Map<String,long[][]> m_byKey;
+		
+		/**
+		 * The counts of operations for each nesting depth.
+		 */
+		/*@ non_null @*/ protected final long[][][] m_byDepth;
+		
+		/**
+		 * The time elapsed between the last reset of the counters and the
+		 * snapshot, in nanoseconds.
+		 */
+		protected final long m_elapsed;
+		
+		/**
+		 * Creates a new snapshot.
+		 * @param total The counts of all operations
+		 * @param by_key The counts of operations for each key name
+		 * @param by_depth The counts of operations for each nesting depth
+		 * @param elapsed The time elapsed since the last reset of the counters,
+		 * in nanoseconds
+		 */
+		Snapshot(/*@ non_null @*/ long[][] total, /*@ non_null @*/ Map<String,long[][]> by_key, /*@ non_null @*/ long[][][] by_depth, long elapsed)
+		{
+			super();
+			m_total = total;
+			m_byKey = by_key;
+			m_byDepth = by_depth;
+			m_elapsed = elapsed;
+		}
+		
+		/**
+		 * Gets the number of times an operation was performed.
+		 * @param op The operation
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getCount(/*@ non_null @*/ Operation op)
+		{
+			return m_total[0][op.ordinal()];
+		}
+		
+		/**
+		 * Gets the number of bytes processed by an operation.
+		 * @param op The operation
+		 * @return The number of bytes
+		 */
+		/*@ pure @*/ public long getBytes(/*@ non_null @*/ Operation op)
+		{
+			return m_total[1][op.ordinal()];
+		}
+		
+		/**
+		 * Gets the number of times an operation was performed with a key.
+		 * @param op The operation
+		 * @param key The name of the key
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getCount(/*@ non_null @*/ Operation op, /*@ non_null @*/ String key)
+		{
+			long[][] counts = m_byKey.get(key);
+			return counts == null ? 0 : counts[0][op.ordinal()];
+		}
+		
+		/**
+		 * Gets the number of times an operation was performed on a message with
+		 * a given nesting depth.
+		 * @param op The operation
+		 * @param depth The nesting depth; all depths of {@link #MAX_DEPTH}
+		 * and more are counted together
+		 * @return The number of operations
+		 */
+		/*@ pure @*/ public long getCount(/*@ non_null @*/ Operation op, int depth)
+		{
+			if (depth < 0)
+			{
+				return 0;
+			}
+			return m_byDepth[Math.min(depth, MAX_DEPTH)][0][op.ordinal()];
+		}
+		
+		/**
+		 * Gets the names of the keys used by the operations.
+		 * @return The names, in alphabetical order
+		 */
+		/*@ pure non_null @*/ public Iterable<String> getKeys()
+		{
+			return Collections.unmodifiableSet(m_byKey.keySet());
+		}
+		
+		/**
+		 * Gets the time elapsed between the last reset of the counters and the
+		 * snapshot.
+		 * @return The time, in nanoseconds
+		 */
+		/*@ pure @*/ public long getElapsed()
+		{
+			return m_elapsed;
+		}
+		
+		/**
+		 * Estimates the CPU time real cryptography would take to perform an
+		 * operation as many times as counted.
+		 * @param op The operation
+		 * @param model The model giving a cost to each operation
+		 * @return The time, in nanoseconds
+		 */
+		/*@ pure @*/ public long getEstimatedTime(/*@ non_null @*/ Operation op, /*@ non_null @*/ CostModel model)
+		{
+			return getCount(op) * model.getFixedCost(op) + (long) (getBytes(op) * model.getByteCost(op));
+		}
+		
+		/**
+		 * Estimates the CPU time real cryptography would take to perform all
+		 * the operations counted.
+		 * @param model The model giving a cost to each operation
+		 * @return The time, in nanoseconds
+		 */
+		/*@ pure @*/ public long getEstimatedTime(/*@ non_null @*/ CostModel model)
+		{
+			long total = 0;
+			for (Operation op : Operation.values())
+			{
+				total += getEstimatedTime(op, model);
+			}
+			return total;
+		}
+		
+		/**
+		 * Produces a report of the operations counted, with the CPU time they
+		 * would take according to a cost model, and the number of processor
+		 * cores that would be kept busy if the operations took place in the
+		 * time elapsed since the counters were reset.
+		 * @param model The model giving a cost to each operation
+		 * @return The report, as a multi-line string
+		 */
+		/*@ non_null @*/ public String report(/*@ non_null @*/ CostModel model)
+		{
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("%-18s %12s %14s %12s%n", "Operation", "Count", "Bytes", "CPU (ms)"));
+			for (Operation op : Operation.values())
+			{
+				out.append(String.format("%-18s %12d %14d %12.1f%n", op, getCount(op), getBytes(op), getEstimatedTime(op, model) / 1e6));
+			}
+			long cpu = getEstimatedTime(model);
+			out.append(String.format("Total CPU time: %.1f ms over %.1f ms elapsed (%.2f cores)%n", cpu / 1e6, m_elapsed / 1e6, m_elapsed > 0 ? (double) cpu / m_elapsed : 0));
+			out.append("Operations by nesting depth:");
+			for (int i = 0; i < m_byDepth.length; i++)
+			{
+				long n = 0;
+				for (long c : m_byDepth[i][0])
+				{
+					n += c;
+				}
+				if (n > 0)
+				{
+					out.append(' ').append(i).append(i == MAX_DEPTH ? "+" : "").append('=').append(n);
+				}
+			}
+			out.append(String.format("%nOperations by key:%n"));
+			for (Map.Entry<String,long[][]> e : m_byKey.entrySet())
+			{
+				long n = 0;
+				for (long c : e.getValue()[0])
+				{
+					n += c;
+				}
+				out.append(String.format("  %-24s %12d%n", e.getKey(), n));
+			}
+			return out.toString();
+		}
+	}
+}
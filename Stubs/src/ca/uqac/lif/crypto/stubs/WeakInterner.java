@@ -0,0 +1,160 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table returning a canonical instance for objects that are equal. The table
+ * only holds weak references to its instances, so that an instance that is
+ * no longer used anywhere else can be garbage collected; the entries of
+ * collected instances are removed the next time the table is used. The
+ * table can be used by multiple threads at the same time.
+ *
+ * @param <T> The type of the objects in the table
+ */
+public class WeakInterner<T>
+{
+	/**
+	 * The references to the canonical instances. Each reference is stored as
+	 * both the key and the value of its entry.
+	 */
+	/*@ non_null @*/ protected final ConcurrentHashMap<Entry<T>,Entry<T>> m_table;
+	
+	/**
+	 * The queue receiving the references whose instance has been collected.
+	 */
+	/*@ non_null @*/ protected final ReferenceQueue<T> m_queue;
+	
+	/**
+	 * Creates a new empty table.
+	 */
+	public WeakInterner()
+	{
+		super();
+		m_table = new ConcurrentHashMap<Entry<T>,Entry<T>>();
+		m_queue = new ReferenceQueue<T>();
+	}
+	
+	/**
+	 * Gets the canonical instance of an object. If the table already contains
+	 * an object equal to it, this object is returned; otherwise the object
+	 * becomes the canonical instance and is returned.
+	 * @param o The object
+	 * @return The canonical instance
+	 */
+	/*@ non_null @*/ public T intern(/*@ non_null @*/ T o)
+	{
+		expunge();
+		Entry<T> entry = new Entry<T>(o, m_queue);
+		while (true)
+		{
+			Entry<T> existing = m_table.putIfAbsent(entry, entry);
+			if (existing == null)
+			{
+				return o;
+			}
+			T canonical = existing.get();
+			if (canonical != null)
+			{
+				return canonical;
+			}
+			// The instance was collected in the meantime; replace its entry
+			m_table.remove(existing, existing);
+		}
+	}
+	
+	/**
+	 * Gets the number of entries in the table. This includes entries whose
+	 * instance has been collected but that have not been removed yet.
+	 * @return The number of entries
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_table.size();
+	}
+	
+	/**
+	 * Removes the entries whose instance has been collected.
+	 */
+	protected void expunge()
+	{
+		Reference<? extends T> ref;
+		while ((ref = m_queue.poll()) != null)
+		{
+			m_table.remove(ref, ref);
+		}
+	}
+	
+	/**
+	 * A weak reference to an instance, which is equal to other references to
+	 * an equal instance. The hash code of the instance is kept, so that the
+	 * entry can still be found in the table once the instance is collected;
+	 * a reference to a collected instance is only equal to itself.
+	 *
+	 * @param <T> The type of the instance
+	 */
+	protected static class Entry<T> extends WeakReference<T>
+	{
+		/**
+		 * The hash code of the instance.
+		 */
+		protected final int m_hashCode;
+		
+		/**
+		 * Creates a new reference.
+		 * @param o The instance
+		 * @param q The queue receiving the reference once the instance is
+		 * collected
+		 */
+		Entry(/*@ non_null @*/ T o, /*@ non_null @*/ ReferenceQueue<T> q)
+		{
+			super(o, q);
+			m_hashCode = o.hashCode();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof Entry))
+			{
+				return false;
+			}
+			Entry<?> e = (Entry<?>) o;
+			if (e.m_hashCode != m_hashCode)
+			{
+				return false;
+			}
+			Object mine = get();
+			return mine != null && mine.equals(e.get());
+		}
+	}
+}
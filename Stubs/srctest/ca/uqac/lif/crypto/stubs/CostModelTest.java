@@ -0,0 +1,83 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.stubs.CostModel.Mode;
+import ca.uqac.lif.crypto.stubs.CostModel.Operation;
+import ca.uqac.lif.crypto.stubs.DummySymmetricCipher.DummySymmetricKey;
+
+/**
+ * Unit tests for {@link CostModel}.
+ */
+public class CostModelTest
+{
+	@Test
+	public void testVirtual1() throws CryptoException
+	{
+		CostModel model = new CostModel(Mode.VIRTUAL).setCost(Operation.SYMMETRIC_ENCRYPT, 100, 10);
+		DummySymmetricCipher c = new DummySymmetricCipher(model);
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		Object o = c.encrypt(k1, "abcd");
+		c.decrypt(k1, o);
+		assertEquals(140, model.getTotalTime(Operation.SYMMETRIC_ENCRYPT));
+		assertEquals(0, model.getTotalTime(Operation.SYMMETRIC_DECRYPT));
+		assertEquals(140, model.getThreadTime());
+	}
+	
+	@Test
+	public void testVirtual2() throws CryptoException
+	{
+		CostModel model = new CostModel(Mode.VIRTUAL).setCost(Operation.HASH, 0, 1).setDigestSize(20);
+		DummyHashFunction h = new DummyHashFunction(model);
+		DummySymmetricCipher c = new DummySymmetricCipher(model);
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		h.getDigest(c.encrypt(k1, h.getDigest("abcd")));
+		assertEquals(24, model.getTotalTime());
+		model.reset();
+		assertEquals(0, model.getTotalTime());
+		assertEquals(0, model.getThreadTime());
+	}
+	
+	@Test
+	public void testChargeAll() throws CryptoException
+	{
+		CostModel model = new CostModel(Mode.VIRTUAL).setCost(Operation.HASH, 100, 1);
+		DummyHashFunction h = new DummyHashFunction(model);
+		h.getDigests(Arrays.asList("a", "bcd", "ef"));
+		assertEquals(306, model.getTotalTime(Operation.HASH));
+		assertEquals(306, model.getThreadTime());
+	}
+	
+	@Test
+	public void testBurn() throws CryptoException
+	{
+		CostModel model = new CostModel(Mode.BURN).setCost(Operation.SYMMETRIC_ENCRYPT, 2000000, 0);
+		DummySymmetricCipher c = new DummySymmetricCipher(model);
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		long start = System.nanoTime();
+		c.encrypt(k1, "abcd");
+		assertTrue(System.nanoTime() - start >= 2000000);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.stubs.DummyAsymmetricCipher.DummyPrivateKey;
+import ca.uqac.lif.crypto.stubs.DummyAsymmetricCipher.DummyPublicKey;
+
+/**
+ * Unit tests for {@link DummyAsymmetricCipher}.
+ */
+public class DummyAsymmetricCipherTest
+{
+	@Test
+	public void testEncryption1() throws CryptoException
+	{
+		DummyPublicKey pu = new DummyPublicKey("alice");
+		DummyPrivateKey pr = new DummyPrivateKey("alice");
+		Object o1 = DummyAsymmetricCipher.instance.encrypt(pu, "abc");
+		assertEquals("abc", DummyAsymmetricCipher.instance.decrypt(pr, o1));
+		Object o2 = DummyAsymmetricCipher.instance.encrypt(pr, "abc");
+		assertEquals("abc", DummyAsymmetricCipher.instance.decrypt(pu, o2));
+	}
+	
+	@Test(expected = CryptoException.class)
+	public void testEncryption2() throws CryptoException
+	{
+		DummyPublicKey pu = new DummyPublicKey("alice");
+		DummyPrivateKey pr = new DummyPrivateKey("bob");
+		Object o1 = DummyAsymmetricCipher.instance.encrypt(pu, "abc");
+		DummyAsymmetricCipher.instance.decrypt(pr, o1);
+	}
+	
+	@Test(expected = CryptoException.class)
+	public void testEncryption3() throws CryptoException
+	{
+		DummyPublicKey pu = new DummyPublicKey("alice");
+		Object o1 = DummyAsymmetricCipher.instance.encrypt(pu, "abc");
+		DummyAsymmetricCipher.instance.decrypt(pu, o1);
+	}
+	
+	@Test
+	public void testSamePair() throws CryptoException
+	{
+		DummyPublicKey pu = new DummyPublicKey("alice");
+		DummyPrivateKey pr = new DummyPrivateKey("alice");
+		assertTrue(DummyAsymmetricCipher.samePair(pu.getId(), pr.getId()));
+		assertTrue(DummyAsymmetricCipher.samePair(pr.getId(), pu.getId()));
+		assertFalse(DummyAsymmetricCipher.samePair(pu.getId(), pu.getId()));
+		assertFalse(DummyAsymmetricCipher.samePair(pr.getId(), new DummyPublicKey("alicia").getId()));
+		assertTrue(DummyAsymmetricCipher.samePair("PU_alice", "PR_alice"));
+		assertFalse(DummyAsymmetricCipher.samePair("PU_alice", "PR_alicia"));
+		assertFalse(DummyAsymmetricCipher.samePair("PU_alice", "PU_alice"));
+	}
+	
+	@Test
+	public void testNestedEncryption() throws CryptoException
+	{
+		DummyPublicKey pu_a = new DummyPublicKey("alice");
+		DummyPrivateKey pr_a = new DummyPrivateKey("alice");
+		DummyPublicKey pu_b = new DummyPublicKey("bob");
+		DummyPrivateKey pr_b = new DummyPrivateKey("bob");
+		Object o = DummyAsymmetricCipher.instance.encrypt(pr_a, "abc");
+		o = DummyAsymmetricCipher.instance.encrypt(pu_b, o);
+		o = DummyAsymmetricCipher.instance.decrypt(pr_b, o);
+		assertEquals("abc", DummyAsymmetricCipher.instance.decrypt(pu_a, o));
+	}
+}
@@ -19,6 +19,11 @@ package ca.uqac.lif.crypto.stubs;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.junit.Test;
 
 import ca.uqac.lif.crypto.CryptoException;
@@ -52,4 +57,51 @@ public class DummyHashFunctionTest
 		assertTrue(h1 instanceof HashValue);
 		assertEquals("H(abc)", h1.toString());
 	}
+	
+	@Test
+	public void testInterning() throws CryptoException
+	{
+		Object h1 = DummyHashFunction.interning.getDigest("abc");
+		Object h2 = DummyHashFunction.interning.getDigest("abc");
+		Object h3 = DummyHashFunction.interning.getDigest("def");
+		assertSame(h1, h2);
+		assertNotEquals(h1, h3);
+	}
+	
+	@Test
+	public void testBatch() throws CryptoException
+	{
+		OperationCounter counter = new OperationCounter();
+		DummyHashFunction h = new DummyHashFunction(null, counter);
+		List<HashValue> digests = h.getDigests(Arrays.asList("abc", "def", "abc"));
+		assertEquals(3, digests.size());
+		assertEquals(h.getDigest("abc"), digests.get(0));
+		assertEquals(h.getDigest("def"), digests.get(1));
+		assertEquals(digests.get(0), digests.get(2));
+		assertEquals(5, counter.snapshot().getCount(CostModel.Operation.HASH));
+	}
+	
+	@Test
+	public void testBatchExecutor() throws CryptoException
+	{
+		Object[] objects = new Object[100];
+		for (int i = 0; i < objects.length; i++)
+		{
+			objects[i] = "o" + i;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<HashValue> digests = DummyHashFunction.instance.getDigests(Arrays.asList(objects), executor);
+			assertEquals(objects.length, digests.size());
+			for (int i = 0; i < objects.length; i++)
+			{
+				assertEquals(objects[i], digests.get(i).getObject());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
 }
@@ -84,4 +84,56 @@ public class DummySymmetricCipherTest
 		assertTrue(o1 instanceof EncryptedObject);
 		assertEquals("E[k1,abc]", o1.toString());
 	}
+	
+	@Test
+	public void testInterning1() throws CryptoException
+	{
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		Object o1 = DummySymmetricCipher.interning.encrypt(k1, "abc");
+		Object o2 = DummySymmetricCipher.interning.encrypt(k1, "abc");
+		assertSame(o1, o2);
+		assertEquals("abc", DummySymmetricCipher.interning.decrypt(k1, o1));
+	}
+	
+	@Test
+	public void testInterning2() throws CryptoException
+	{
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		DummySymmetricKey k2 = DummySymmetricCipher.generator.generateKey("k2");
+		Object o1 = DummySymmetricCipher.interning.encrypt(k1, "abc");
+		Object o2 = DummySymmetricCipher.interning.encrypt(k2, "abc");
+		Object o3 = DummySymmetricCipher.instance.encrypt(k1, "abc");
+		assertNotEquals(o1, o2);
+		assertNotSame(o1, o3);
+		assertEquals(o1, o3);
+	}
+	
+	@Test
+	public void testNesting() throws CryptoException
+	{
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		Object o1 = "abc", o2 = "abc";
+		for (int i = 0; i < 100000; i++)
+		{
+			o1 = DummySymmetricCipher.instance.encrypt(k1, o1);
+			o2 = DummySymmetricCipher.instance.encrypt(k1, o2);
+		}
+		assertEquals(100000, ((EncryptedObject) o1).getDepth());
+		assertEquals(o1.hashCode(), o2.hashCode());
+		assertEquals(o1, o2);
+		assertTrue(o1.toString().startsWith("E[k1,E[k1,"));
+		assertTrue(o1.toString().contains(",abc]]"));
+	}
+	
+	@Test
+	public void testNestingWithHash() throws CryptoException
+	{
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		Object o1 = DummySymmetricCipher.instance.encrypt(k1, DummyHashFunction.instance.getDigest("abc"));
+		Object o2 = DummySymmetricCipher.instance.encrypt(k1, DummyHashFunction.instance.getDigest("abc"));
+		Object o3 = DummySymmetricCipher.instance.encrypt(k1, "abc");
+		assertEquals("E[k1,H(abc)]", o1.toString());
+		assertEquals(o1, o2);
+		assertNotEquals(o1, o3);
+	}
 }
@@ -0,0 +1,93 @@
+/*
+  Simple tools for cryptographic operations
+  Copyright (C) 2022 Sylvain Hallé
+  
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+  
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+  
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.crypto.stubs;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.crypto.CryptoException;
+import ca.uqac.lif.crypto.asymmetric.KeyPair;
+import ca.uqac.lif.crypto.stubs.CostModel.Mode;
+import ca.uqac.lif.crypto.stubs.CostModel.Operation;
+import ca.uqac.lif.crypto.stubs.DummySymmetricCipher.DummySymmetricKey;
+import ca.uqac.lif.crypto.stubs.OperationCounter.Snapshot;
+
+/**
+ * Unit tests for {@link OperationCounter}.
+ */
+public class OperationCounterTest
+{
+	@Test
+	public void testCount1() throws CryptoException
+	{
+		OperationCounter counter = new OperationCounter();
+		DummySymmetricCipher c = new DummySymmetricCipher(null, counter);
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		DummySymmetricKey k2 = DummySymmetricCipher.generator.generateKey("k2");
+		Object o = c.encrypt(k2, c.encrypt(k1, "abcd"));
+		c.decrypt(k1, c.decrypt(k2, o));
+		Snapshot s = counter.snapshot();
+		assertEquals(2, s.getCount(Operation.SYMMETRIC_ENCRYPT));
+		assertEquals(2, s.getCount(Operation.SYMMETRIC_DECRYPT));
+		assertEquals(8, s.getBytes(Operation.SYMMETRIC_ENCRYPT));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_ENCRYPT, "k1"));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_DECRYPT, "k2"));
+		assertEquals(0, s.getCount(Operation.SYMMETRIC_DECRYPT, "k3"));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_ENCRYPT, 0));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_ENCRYPT, 1));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_DECRYPT, 1));
+		assertEquals(1, s.getCount(Operation.SYMMETRIC_DECRYPT, 2));
+	}
+	
+	@Test
+	public void testCount2() throws CryptoException
+	{
+		OperationCounter counter = new OperationCounter().setDigestSize(20);
+		DummyAsymmetricCipher c = new DummyAsymmetricCipher(null, counter);
+		DummyHashFunction h = new DummyHashFunction(null, counter);
+		KeyPair pair = DummyAsymmetricCipher.generator.generateKeyPair("alice", "alice");
+		Object o = c.encrypt(pair.getPrivateKey(), h.getDigest("abcd"));
+		c.decrypt(pair.getPublicKey(), o);
+		Snapshot s = counter.snapshot();
+		assertEquals(1, s.getCount(Operation.HASH));
+		assertEquals(4, s.getBytes(Operation.HASH));
+		assertEquals(20, s.getBytes(Operation.ASYMMETRIC_ENCRYPT));
+		assertEquals(1, s.getCount(Operation.ASYMMETRIC_ENCRYPT, "PR_alice"));
+		assertEquals(1, s.getCount(Operation.ASYMMETRIC_DECRYPT, "PU_alice"));
+		counter.reset();
+		s = counter.snapshot();
+		assertEquals(0, s.getCount(Operation.HASH));
+		assertFalse(s.getKeys().iterator().hasNext());
+	}
+	
+	@Test
+	public void testEstimate() throws CryptoException
+	{
+		OperationCounter counter = new OperationCounter();
+		CostModel model = new CostModel(Mode.VIRTUAL).setCost(Operation.SYMMETRIC_ENCRYPT, 100, 10);
+		DummySymmetricCipher c = new DummySymmetricCipher(model, counter);
+		DummySymmetricKey k1 = DummySymmetricCipher.generator.generateKey("k1");
+		c.encrypt(k1, "abcd");
+		c.encrypt(k1, "abcdef");
+		Snapshot s = counter.snapshot();
+		assertEquals(300, s.getEstimatedTime(model));
+		assertEquals(model.getTotalTime(), s.getEstimatedTime(model));
+		assertTrue(s.report(model).contains("k1"));
+	}
+}